@@ -0,0 +1,84 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.benchmarks;
+
+import org.echocat.jomon.cache.*;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * The caches which are covered by the benchmarks.
+ */
+public enum CacheType {
+    lru {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            return limited(new LruCache<>(Integer.class, Integer.class), capacity);
+        }
+    },
+    lfu {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            return limited(new LfuCache<>(Integer.class, Integer.class), capacity);
+        }
+    },
+    fifo {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            return limited(new FifoCache<>(Integer.class, Integer.class), capacity);
+        }
+    },
+    wTinyLfu {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            return limited(new WTinyLfuCache<>(Integer.class, Integer.class), capacity);
+        }
+    },
+    concurrentLru {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            return limited(new ConcurrentLruCache<>(Integer.class, Integer.class), capacity);
+        }
+    },
+    /**
+     * A small {@link #lru} in front of a {@link #lfu} with the full capacity.
+     */
+    combined {
+        @Nonnull
+        @Override
+        public Cache<Integer, Integer> create(@Nonnegative long capacity) {
+            final Cache<Integer, Integer> first = lru.create(Math.max(capacity / 10, 1));
+            final Cache<Integer, Integer> second = lfu.create(capacity);
+            return new CombinedCache<>(Integer.class, Integer.class, first, second);
+        }
+    };
+
+    @Nonnull
+    public abstract Cache<Integer, Integer> create(@Nonnegative long capacity);
+
+    @Nonnull
+    protected static Cache<Integer, Integer> limited(@Nonnull LimitedCache<Integer, Integer> cache, @Nonnegative long capacity) {
+        cache.setCapacity(capacity);
+        return cache;
+    }
+
+}
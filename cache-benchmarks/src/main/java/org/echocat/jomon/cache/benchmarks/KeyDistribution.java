@@ -0,0 +1,84 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.benchmarks;
+
+import org.echocat.jomon.cache.ZipfianGenerator;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+/**
+ * The access patterns of the benchmarks.
+ */
+public enum KeyDistribution {
+    /**
+     * Every key is requested with the same probability.
+     */
+    uniform {
+        @Nonnull
+        @Override
+        public KeyGenerator newGenerator(@Nonnegative final int numberOfKeys, long seed) {
+            final Random random = new Random(seed);
+            return new KeyGenerator() { @Override public int next() {
+                return random.nextInt(numberOfKeys);
+            }};
+        }
+    },
+    /**
+     * Few keys are requested very often and a lot of keys are requested rarely (skew of 0.99 like common web workloads).
+     */
+    zipfian {
+        @Nonnull
+        @Override
+        public KeyGenerator newGenerator(@Nonnegative int numberOfKeys, long seed) {
+            final ZipfianGenerator generator = new ZipfianGenerator(numberOfKeys, false, new Random(seed));
+            return new KeyGenerator() { @Override public int next() {
+                return (int) generator.next();
+            }};
+        }
+    },
+    /**
+     * All keys are requested one after another, which flushes caches with a recency based eviction.
+     */
+    scan {
+        @Nonnull
+        @Override
+        public KeyGenerator newGenerator(@Nonnegative final int numberOfKeys, final long seed) {
+            return new KeyGenerator() {
+                private int _next = (int) Math.abs(seed % numberOfKeys);
+
+                @Override
+                public int next() {
+                    final int result = _next;
+                    _next = result + 1 < numberOfKeys ? result + 1 : 0;
+                    return result;
+                }
+            };
+        }
+    };
+
+    @Nonnull
+    public abstract KeyGenerator newGenerator(@Nonnegative int numberOfKeys, long seed);
+
+    public interface KeyGenerator {
+
+        @Nonnegative
+        public int next();
+
+    }
+
+}
@@ -0,0 +1,63 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.benchmarks;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 64 threads which request each time a new key through one producer. This shows how much the production of one key blocks the
+ * production of other keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ProducerBenchmark {
+
+    @Param({"lru", "lfu", "fifo", "wTinyLfu", "concurrentLru", "combined"})
+    private CacheType _cacheType;
+    @Param({"1000"})
+    private long _producerTokens;
+
+    private final AtomicInteger _keys = new AtomicInteger();
+    private Cache<Integer, Integer> _cache;
+    private ValueProducer<Integer, Integer> _producer;
+
+    @Setup
+    public void setUp() {
+        _cache = _cacheType.create(10000);
+        final long tokens = _producerTokens;
+        _producer = new ValueProducer<Integer, Integer>() { @Override public Integer produce(Integer key) throws Exception {
+            Blackhole.consumeCPU(tokens);
+            return key;
+        }};
+    }
+
+    @Benchmark
+    public Integer produceDistinctKeys() {
+        return _cache.get(_keys.incrementAndGet(), _producer);
+    }
+
+}
@@ -0,0 +1,85 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.benchmarks;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.benchmarks.KeyDistribution.KeyGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mixed read/write load of 6 reading and 2 writing threads against a cache which holds a fifth of all keys.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+    public static final int NUMBER_OF_KEYS = 100000;
+    public static final int CAPACITY = NUMBER_OF_KEYS / 5;
+
+    private static final AtomicLong SEEDS = new AtomicLong(666);
+
+    @Param({"lru", "lfu", "fifo", "wTinyLfu", "concurrentLru", "combined"})
+    private CacheType _cacheType;
+    @Param({"uniform", "zipfian", "scan"})
+    private KeyDistribution _distribution;
+
+    private Cache<Integer, Integer> _cache;
+
+    @Setup
+    public void setUp() {
+        _cache = _cacheType.create(CAPACITY);
+        final KeyGenerator generator = _distribution.newGenerator(NUMBER_OF_KEYS, 0);
+        for (int i = 0; i < CAPACITY; i++) {
+            final int key = generator.next();
+            _cache.put(key, key);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        private KeyGenerator _generator;
+
+        @Setup
+        public void setUp(ReadWriteBenchmark benchmark) {
+            _generator = benchmark._distribution.newGenerator(NUMBER_OF_KEYS, SEEDS.incrementAndGet());
+        }
+
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(6)
+    public Integer read(Keys keys) {
+        return _cache.get(keys._generator.next());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public void write(Keys keys) {
+        final int key = keys._generator.next();
+        _cache.put(key, key);
+    }
+
+}
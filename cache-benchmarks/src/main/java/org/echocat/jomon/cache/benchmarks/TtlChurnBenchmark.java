@@ -0,0 +1,75 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.benchmarks;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.benchmarks.KeyDistribution.KeyGenerator;
+import org.echocat.jomon.runtime.util.Duration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts and gets with a very short time to live, so most of the work of the caches is to handle expired entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TtlChurnBenchmark {
+
+    public static final int NUMBER_OF_KEYS = 50000;
+
+    private static final AtomicLong SEEDS = new AtomicLong(666);
+
+    @Param({"lru", "lfu", "fifo", "wTinyLfu", "concurrentLru", "combined"})
+    private CacheType _cacheType;
+    @Param({"1", "10"})
+    private long _expireAfterInMilliseconds;
+
+    private Cache<Integer, Integer> _cache;
+    private Duration _expireAfter;
+
+    @Setup
+    public void setUp() {
+        _cache = _cacheType.create(NUMBER_OF_KEYS / 2);
+        _expireAfter = new Duration(_expireAfterInMilliseconds);
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        private KeyGenerator _generator;
+
+        @Setup
+        public void setUp() {
+            _generator = KeyDistribution.uniform.newGenerator(NUMBER_OF_KEYS, SEEDS.incrementAndGet());
+        }
+
+    }
+
+    @Benchmark
+    public Integer putAndGet(Keys keys) {
+        final int key = keys._generator.next();
+        _cache.put(key, key, _expireAfter);
+        return _cache.get(keys._generator.next());
+    }
+
+}
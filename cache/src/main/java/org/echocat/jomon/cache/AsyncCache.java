@@ -0,0 +1,198 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.echocat.jomon.cache.RefreshEnabledCache.DefaultRefreshExecutor;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import static com.google.common.util.concurrent.Futures.addCallback;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>Non blocking access to a {@link Cache}. A missing value is produced without blocking the caller and every caller gets a
+ * {@link ListenableFuture} of the value. If multiple callers request the same missing key at the same time the value is produced only
+ * <b>once</b> and all of them get the same future. Different keys never wait for each other.</p>
+ *
+ * <p>The values are stored in the given cache (e.g. a {@link LruCache} or a {@link ConcurrentLruCache}) after they were produced.</p>
+ */
+@ThreadSafe
+public class AsyncCache<K, V> {
+
+    private static final Object NULL_KEY = new Object();
+
+    private final Cache<K, V> _cache;
+    private final Executor _executor;
+    private final ConcurrentMap<Object, SettableFuture<V>> _inProduction = new ConcurrentHashMap<>();
+
+    /**
+     * @param executor executes the {@link ValueProducer blocking producers}.
+     */
+    public AsyncCache(@Nonnull Cache<K, V> cache, @Nonnull Executor executor) {
+        _cache = cache;
+        _executor = executor;
+    }
+
+    /**
+     * The blocking producers are executed by the {@link DefaultRefreshExecutor#INSTANCE bounded default executor}. If it is
+     * saturated the production fails with a {@link java.util.concurrent.RejectedExecutionException} and is retried by the
+     * next request.
+     */
+    public AsyncCache(@Nonnull Cache<K, V> cache) {
+        this(cache, DefaultRefreshExecutor.INSTANCE);
+    }
+
+    @Nonnull
+    public ListenableFuture<V> get(@Nullable K key) {
+        return immediateFuture(_cache.get(key));
+    }
+
+    @Nonnull
+    public ListenableFuture<V> get(@Nullable K key, @Nonnull AsyncValueProducer<K, V> producer) {
+        return get(key, producer, null);
+    }
+
+    @Nonnull
+    public ListenableFuture<V> get(@Nullable K key, @Nonnull AsyncValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final V cached = _cache.get(key);
+        final ListenableFuture<V> result;
+        if (cached != null) {
+            result = immediateFuture(cached);
+        } else {
+            final SettableFuture<V> future = SettableFuture.create();
+            final SettableFuture<V> existing = _inProduction.putIfAbsent(toInternalKey(key), future);
+            if (existing != null) {
+                result = existing;
+            } else {
+                // A production could have been finished between the first look into the cache and putIfAbsent...
+                final V stored = _cache.get(key);
+                if (stored != null) {
+                    _inProduction.remove(toInternalKey(key), future);
+                    future.set(stored);
+                } else {
+                    produce(key, producer, expireAfter, future);
+                }
+                result = future;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The given producer is executed with the executor of this instance.
+     */
+    @Nonnull
+    public ListenableFuture<V> get(@Nullable K key, @Nonnull ValueProducer<K, V> producer) {
+        return get(key, producer, null);
+    }
+
+    /**
+     * The given producer is executed with the executor of this instance.
+     */
+    @Nonnull
+    public ListenableFuture<V> get(@Nullable K key, @Nonnull ValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        return get(key, asyncProducerFor(producer), expireAfter);
+    }
+
+    @Nonnull
+    public Cache<K, V> getCache() {
+        return _cache;
+    }
+
+    @Nonnull
+    public Executor getExecutor() {
+        return _executor;
+    }
+
+    /**
+     * @return the number of keys whose values are currently produced.
+     */
+    @Nonnegative
+    public int getNumberOfProductionsInProgress() {
+        return _inProduction.size();
+    }
+
+    protected void produce(@Nullable final K key, @Nonnull AsyncValueProducer<K, V> producer, @Nullable final Duration expireAfter, @Nonnull final SettableFuture<V> future) {
+        ListenableFuture<V> production;
+        try {
+            production = producer.produce(key);
+        } catch (Exception e) {
+            production = immediateFailedFuture(e);
+        }
+        addCallback(production, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(@Nullable V value) {
+                boolean stored = false;
+                try {
+                    // Store the value before the production is removed, so nobody could miss it in between...
+                    _cache.put(key, value, expireAfter);
+                    stored = true;
+                } catch (RuntimeException e) {
+                    onFailure(e);
+                }
+                if (stored) {
+                    _inProduction.remove(toInternalKey(key), future);
+                    future.set(value);
+                }
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable t) {
+                _inProduction.remove(toInternalKey(key), future);
+                future.setException(t);
+            }
+        });
+    }
+
+    @Nonnull
+    protected AsyncValueProducer<K, V> asyncProducerFor(@Nonnull final ValueProducer<K, V> producer) {
+        return new AsyncValueProducer<K, V>() { @Override public ListenableFuture<V> produce(@Nullable final K key) throws Exception {
+            final SettableFuture<V> result = SettableFuture.create();
+            _executor.execute(new Runnable() { @Override public void run() {
+                try {
+                    result.set(producer.produce(key));
+                } catch (Throwable e) {
+                    result.setException(e);
+                }
+            }});
+            return result;
+        }};
+    }
+
+    @Nonnull
+    private static Object toInternalKey(@Nullable Object key) {
+        return key != null ? key : NULL_KEY;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncCache{" + _cache + "}";
+    }
+
+}
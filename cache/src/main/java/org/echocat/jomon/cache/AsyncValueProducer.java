@@ -0,0 +1,33 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Produces a value without blocking the calling thread.
+ *
+ * @see AsyncCache#get(Object, AsyncValueProducer)
+ */
+public interface AsyncValueProducer<K, V> {
+
+    @Nonnull
+    public ListenableFuture<V> produce(@Nullable K key) throws Exception;
+
+}
@@ -0,0 +1,50 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * <p>A listener which receives the "after" events of a cache in batches from a {@link CacheEventDispatcher} instead of
+ * on the thread of the cache operation. All "before" methods of the listener are still called synchronously because
+ * they could veto the operation.</p>
+ *
+ * <p>The {@link #getEventDispatcher() dispatcher} is evaluated when the listener is set on a cache.</p>
+ */
+public interface AsynchronousCacheListener extends CacheListener {
+
+    /**
+     * @return <code>null</code> means that all events are delivered synchronously to the regular listener methods.
+     */
+    @Nullable
+    public CacheEventDispatcher getEventDispatcher();
+
+    /**
+     * Is called on the thread of the cache operation before the given event is queued. This is the place to evaluate
+     * state which is bound to the current thread.
+     *
+     * @return <code>false</code> if this listener is not interested in the given event.
+     */
+    public boolean accept(@Nonnull CacheEvent event);
+
+    /**
+     * Is called by the thread of the {@link #getEventDispatcher() dispatcher} with all accepted events of a batch in the
+     * order they occurred.
+     */
+    public void afterEvents(@Nonnull List<CacheEvent> events);
+
+}
@@ -0,0 +1,49 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * A cache which could access a lot of elements at once. Implementations should lock their internal structures only once per call and
+ * not once per element.
+ */
+public interface BulkEnabledCache<K, V> extends Cache<K, V> {
+
+    /**
+     * @return all values which are cached for the given keys. Keys without a cached value are not contained. The order of the given keys is
+     *         retained.
+     */
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys);
+
+    /**
+     * Returns the cached values for the given keys. The values of all keys which are not cached will be produced with <b>one</b> call of the
+     * given producer, inserted into the cache and than returned. In concurrent situations it is guaranteed that if multiple threads request
+     * the same key at the same time, the value will be produced only <b>once</b>.
+     */
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter);
+
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values);
+
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter);
+
+}
@@ -0,0 +1,91 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adapts a {@link BulkValueProducer} to the {@link ValueProducer} of every single missing entry. The first requested value triggers the
+ * production of all {@link #add(Object) added} keys. Because the entries are already visible to other threads while further keys are added
+ * (e.g. by the next segment of a {@link ConcurrentCacheSupport}), a requested value waits until the production is {@link #seal() sealed}.
+ */
+@ThreadSafe
+class BulkProduction<K, V> implements ValueProducer<K, V> {
+
+    private final BulkValueProducer<K, V> _producer;
+
+    @GuardedBy("this")
+    private final Set<K> _keys = new LinkedHashSet<>();
+    @GuardedBy("this")
+    private Map<K, V> _values;
+    @GuardedBy("this")
+    private Exception _exception;
+    @GuardedBy("this")
+    private boolean _sealed;
+
+    BulkProduction(@Nonnull BulkValueProducer<K, V> producer) {
+        _producer = producer;
+    }
+
+    synchronized void add(@Nullable K key) {
+        if (_sealed) {
+            throw new IllegalStateException("The production was already sealed.");
+        }
+        _keys.add(key);
+    }
+
+    /**
+     * Has to be called after all keys are {@link #add(Object) added} - also if this failed.
+     */
+    synchronized void seal() {
+        _sealed = true;
+        notifyAll();
+    }
+
+    synchronized boolean contains(@Nullable K key) {
+        return _keys.contains(key);
+    }
+
+    @Override
+    @Nullable
+    public synchronized V produce(@Nullable K key) throws Exception {
+        while (!_sealed) {
+            wait();
+        }
+        if (_values == null && _exception == null) {
+            try {
+                final Map<K, V> values = _producer.produce(Collections.unmodifiableSet(_keys));
+                _values = values != null ? values : Collections.<K, V>emptyMap();
+            } catch (Exception e) {
+                _exception = e;
+            }
+        }
+        if (_exception != null) {
+            throw _exception;
+        }
+        return _values.get(key);
+    }
+
+}
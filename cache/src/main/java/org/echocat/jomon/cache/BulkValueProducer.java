@@ -0,0 +1,36 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Produces the values of a lot of keys at once.
+ *
+ * @see BulkEnabledCache#getAll(Iterable, BulkValueProducer, org.echocat.jomon.runtime.util.Duration)
+ */
+public interface BulkValueProducer<K, V> {
+
+    /**
+     * @return the produced values by their keys. A key which is not contained in the result is handled like a produced <code>null</code> value.
+     */
+    @Nullable
+    public Map<K, V> produce(@Nonnull Collection<K> keys) throws Exception;
+
+}
@@ -40,10 +40,17 @@ public class CacheEntry<K, V> {
     private long _lastAccessed;
     @Nonnegative
     private int _hits;
+    @Nonnegative
+    private long _weight;
+    private boolean _refreshing;
     @Nullable
     private CacheEntry<K, V> _next;
     @Nullable
     private CacheEntry<K, V> _previous;
+    @Nullable
+    private CacheEntry<K, V> _nextInTimerWheel;
+    @Nullable
+    private CacheEntry<K, V> _previousInTimerWheel;
 
     public CacheEntry(@Nullable K key, @Nullable Long expireAfter, @Nullable Value<V> value) {
         _key = key;
@@ -103,6 +110,24 @@ public class CacheEntry<K, V> {
         return _next;
     }
 
+    public void setPreviousInTimerWheel(@Nullable CacheEntry<K, V> previous) {
+        _previousInTimerWheel = previous;
+    }
+
+    @Nullable
+    public CacheEntry<K, V> getPreviousInTimerWheel() {
+        return _previousInTimerWheel;
+    }
+
+    public void setNextInTimerWheel(@Nullable CacheEntry<K, V> next) {
+        _nextInTimerWheel = next;
+    }
+
+    @Nullable
+    public CacheEntry<K, V> getNextInTimerWheel() {
+        return _nextInTimerWheel;
+    }
+
     @Nonnegative
     public long getCreated() {
         return _created;
@@ -123,6 +148,31 @@ public class CacheEntry<K, V> {
         return _hits;
     }
 
+    public void setHits(@Nonnegative int hits) {
+        _hits = hits;
+    }
+
+    @Nonnegative
+    public long getWeight() {
+        return _weight;
+    }
+
+    public void setWeight(@Nonnegative long weight) {
+        _weight = weight;
+    }
+
+    /**
+     * @return <code>true</code> if a new value for this entry is currently produced in the background.
+     * @see RefreshEnabledCache
+     */
+    public boolean isRefreshing() {
+        return _refreshing;
+    }
+
+    public void setRefreshing(boolean refreshing) {
+        _refreshing = refreshing;
+    }
+
     public void hit() {
         _lastAccessed = currentTimeMillis();
         _hits++;
@@ -0,0 +1,89 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An "after" event of a cache which is delivered to {@link AsynchronousCacheListener asynchronous listeners}.
+ */
+@Immutable
+public class CacheEvent {
+
+    public static enum Type {
+        afterPut,
+        afterGet,
+        afterRemove,
+        afterClear,
+        afterResetStatistics,
+        afterSetMaximumLifetime,
+        afterEvict
+    }
+
+    private final Type _type;
+    private final Cache<?, ?> _cache;
+    private final Object _key;
+    private final Value<?> _value;
+    private final Duration _duration;
+
+    public CacheEvent(@Nonnull Type type, @Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration duration) {
+        _type = type;
+        _cache = cache;
+        _key = key;
+        _value = value;
+        _duration = duration;
+    }
+
+    @Nonnull
+    public Type getType() {
+        return _type;
+    }
+
+    @Nonnull
+    public Cache<?, ?> getCache() {
+        return _cache;
+    }
+
+    @Nullable
+    public Object getKey() {
+        return _key;
+    }
+
+    /**
+     * @return the put, got, removed or evicted value.
+     */
+    @Nullable
+    public Value<?> getValue() {
+        return _value;
+    }
+
+    /**
+     * @return the <code>expireAfter</code> of {@link Type#afterPut} or the new maximum lifetime of {@link Type#afterSetMaximumLifetime}.
+     */
+    @Nullable
+    public Duration getDuration() {
+        return _duration;
+    }
+
+    @Override
+    public String toString() {
+        return _type + "{cache: " + _cache + ", key: " + _key + "}";
+    }
+
+}
@@ -0,0 +1,461 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.nanoTime;
+import static java.lang.Thread.currentThread;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+import static java.util.concurrent.locks.LockSupport.unpark;
+
+/**
+ * <p>Delivers the events of {@link AsynchronousCacheListener asynchronous listeners} on an own daemon thread. Events are
+ * queued in a bounded lock free ring buffer and drained in batches of at most {@link #getMaximumBatchSize() maximum batch
+ * size} events. What happens if the buffer is full is controlled by the {@link #getOverflowPolicy() overflow policy}.</p>
+ *
+ * <p>One dispatcher could be shared by the listeners of many caches. After {@link #close()} events are delivered on the
+ * thread of the cache operation.</p>
+ */
+@ThreadSafe
+public class CacheEventDispatcher implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheEventDispatcher.class);
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAXIMUM_BATCH_SIZE = 256;
+
+    private static final long IDLE_PARK_IN_NANOS = MILLISECONDS.toNanos(100);
+    private static final long BLOCKED_PARK_IN_NANOS = 100000;
+
+    public static enum OverflowPolicy {
+        /**
+         * The event which could not be queued is dropped.
+         */
+        dropNewest,
+        /**
+         * The oldest queued event is dropped to make room for the new one.
+         */
+        dropOldest,
+        /**
+         * The event is delivered on the thread of the cache operation.
+         */
+        callerRuns,
+        /**
+         * The thread of the cache operation waits until the event could be queued.
+         */
+        block
+    }
+
+    private final int _mask;
+    private final AtomicLongArray _sequences;
+    private final AsynchronousCacheListener[] _listeners;
+    private final CacheEvent[] _events;
+    private final AtomicLong _head = new AtomicLong();
+    private final AtomicLong _tail = new AtomicLong();
+
+    private final AtomicBoolean _sleeping = new AtomicBoolean();
+    private final AtomicLong _completed = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _callerRuns = new AtomicLong();
+    private volatile long _delivered;
+    private volatile long _batches;
+    private volatile long _maximumQueueDepth;
+
+    private volatile OverflowPolicy _overflowPolicy = OverflowPolicy.callerRuns;
+    private volatile int _maximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+    private volatile String _name = "CacheEvents";
+    private volatile Thread _thread;
+    private volatile boolean _closed;
+
+    public CacheEventDispatcher() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity is rounded up to the next power of two.
+     */
+    public CacheEventDispatcher(@Nonnegative int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity has to be positive but was " + capacity + ".");
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        _mask = size - 1;
+        _sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            _sequences.set(i, i);
+        }
+        _listeners = new AsynchronousCacheListener[size];
+        _events = new CacheEvent[size];
+    }
+
+    @Nonnull
+    public OverflowPolicy getOverflowPolicy() {
+        return _overflowPolicy;
+    }
+
+    public void setOverflowPolicy(@Nonnull OverflowPolicy overflowPolicy) {
+        _overflowPolicy = overflowPolicy;
+    }
+
+    @Nonnegative
+    public int getMaximumBatchSize() {
+        return _maximumBatchSize;
+    }
+
+    public void setMaximumBatchSize(@Nonnegative int maximumBatchSize) {
+        if (maximumBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size has to be positive but was " + maximumBatchSize + ".");
+        }
+        _maximumBatchSize = maximumBatchSize;
+    }
+
+    @Nonnull
+    public String getName() {
+        return _name;
+    }
+
+    public void setName(@Nonnull String name) {
+        _name = name;
+        final Thread thread = _thread;
+        if (thread != null) {
+            thread.setName(name + ".Dispatcher");
+        }
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _mask + 1;
+    }
+
+    @PostConstruct
+    public void init() {
+        synchronized (this) {
+            if (_closed) {
+                throw new IllegalStateException("The dispatcher was already closed.");
+            }
+            if (_thread == null) {
+                final Thread thread = new Thread(new Dispatcher(), _name + ".Dispatcher");
+                thread.setDaemon(true);
+                thread.start();
+                _thread = thread;
+            }
+        }
+    }
+
+    /**
+     * Queues the given event for the given listener. The dispatcher thread is started with the first event.
+     */
+    public void dispatch(@Nonnull AsynchronousCacheListener listener, @Nonnull CacheEvent event) {
+        if (_thread == null && !_closed) {
+            init();
+        }
+        if (_closed) {
+            deliverOnCaller(listener, event);
+        } else if (offer(listener, event)) {
+            wakeUpDispatcher();
+            if (_closed) {
+                // The dispatcher thread could already be gone, so nobody else will take this event.
+                deliverRemainingOnCaller();
+            }
+        } else {
+            handleOverflow(listener, event);
+        }
+    }
+
+    protected void handleOverflow(@Nonnull AsynchronousCacheListener listener, @Nonnull CacheEvent event) {
+        final OverflowPolicy policy = _overflowPolicy;
+        if (policy == OverflowPolicy.dropNewest) {
+            _dropped.incrementAndGet();
+        } else if (policy == OverflowPolicy.dropOldest) {
+            final List<AsynchronousCacheListener> droppedListeners = new ArrayList<>(1);
+            final List<CacheEvent> droppedEvents = new ArrayList<>(1);
+            boolean queued = false;
+            while (!queued) {
+                if (drainTo(droppedListeners, droppedEvents, 1) > 0) {
+                    _dropped.incrementAndGet();
+                    _completed.incrementAndGet();
+                    droppedListeners.clear();
+                    droppedEvents.clear();
+                }
+                queued = offer(listener, event);
+            }
+            wakeUpDispatcher();
+        } else if (policy == OverflowPolicy.callerRuns) {
+            deliverOnCaller(listener, event);
+        } else if (policy == OverflowPolicy.block) {
+            boolean queued = false;
+            while (!queued && !_closed) {
+                wakeUpDispatcher();
+                parkNanos(BLOCKED_PARK_IN_NANOS);
+                queued = offer(listener, event);
+            }
+            if (!queued) {
+                deliverOnCaller(listener, event);
+            }
+        } else {
+            throw new IllegalStateException("Unsupported overflow policy: " + policy);
+        }
+    }
+
+    protected void deliverOnCaller(@Nonnull AsynchronousCacheListener listener, @Nonnull CacheEvent event) {
+        _callerRuns.incrementAndGet();
+        deliver(listener, singletonList(event));
+    }
+
+    protected void deliverRemainingOnCaller() {
+        final List<AsynchronousCacheListener> listeners = new ArrayList<>();
+        final List<CacheEvent> events = new ArrayList<>();
+        int drained;
+        while ((drained = drainTo(listeners, events, _maximumBatchSize)) > 0) {
+            _callerRuns.addAndGet(drained);
+            deliverBatch(listeners, events);
+            _completed.addAndGet(drained);
+            listeners.clear();
+            events.clear();
+        }
+    }
+
+    protected boolean offer(@Nonnull AsynchronousCacheListener listener, @Nonnull CacheEvent event) {
+        boolean result = false;
+        boolean done = false;
+        long position = _tail.get();
+        while (!done) {
+            final int index = (int) (position & _mask);
+            final long difference = _sequences.get(index) - position;
+            if (difference == 0) {
+                if (_tail.compareAndSet(position, position + 1)) {
+                    _listeners[index] = listener;
+                    _events[index] = event;
+                    _sequences.lazySet(index, position + 1);
+                    result = true;
+                    done = true;
+                } else {
+                    position = _tail.get();
+                }
+            } else if (difference < 0) {
+                done = true;
+            } else {
+                position = _tail.get();
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected int drainTo(@Nonnull List<AsynchronousCacheListener> listeners, @Nonnull List<CacheEvent> events, @Nonnegative int maximum) {
+        int result = 0;
+        long position = _head.get();
+        while (result < maximum) {
+            final int index = (int) (position & _mask);
+            final long difference = _sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (_head.compareAndSet(position, position + 1)) {
+                    listeners.add(_listeners[index]);
+                    events.add(_events[index]);
+                    _listeners[index] = null;
+                    _events[index] = null;
+                    _sequences.lazySet(index, position + _mask + 1);
+                    result++;
+                    position++;
+                } else {
+                    position = _head.get();
+                }
+            } else if (difference < 0) {
+                break;
+            } else {
+                position = _head.get();
+            }
+        }
+        return result;
+    }
+
+    protected void wakeUpDispatcher() {
+        if (_sleeping.get() && _sleeping.compareAndSet(true, false)) {
+            final Thread thread = _thread;
+            if (thread != null) {
+                unpark(thread);
+            }
+        }
+    }
+
+    protected void deliverBatch(@Nonnull List<AsynchronousCacheListener> listeners, @Nonnull List<CacheEvent> events) {
+        final AsynchronousCacheListener first = listeners.get(0);
+        boolean onlyOneListener = true;
+        for (int i = 1; onlyOneListener && i < listeners.size(); i++) {
+            // noinspection ObjectEquality
+            onlyOneListener = listeners.get(i) == first;
+        }
+        if (onlyOneListener) {
+            deliver(first, new ArrayList<>(events));
+        } else {
+            final Map<AsynchronousCacheListener, List<CacheEvent>> listenerToEvents = new IdentityHashMap<>();
+            for (int i = 0; i < listeners.size(); i++) {
+                List<CacheEvent> eventsOfListener = listenerToEvents.get(listeners.get(i));
+                if (eventsOfListener == null) {
+                    eventsOfListener = new ArrayList<>();
+                    listenerToEvents.put(listeners.get(i), eventsOfListener);
+                }
+                eventsOfListener.add(events.get(i));
+            }
+            for (Entry<AsynchronousCacheListener, List<CacheEvent>> listenerAndEvents : listenerToEvents.entrySet()) {
+                deliver(listenerAndEvents.getKey(), listenerAndEvents.getValue());
+            }
+        }
+    }
+
+    protected void deliver(@Nonnull AsynchronousCacheListener listener, @Nonnull List<CacheEvent> events) {
+        try {
+            listener.afterEvents(events);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not deliver " + events.size() + " event(s) to " + listener + ".", e);
+        }
+    }
+
+    /**
+     * Waits until all events which were queued before this call are delivered or dropped.
+     *
+     * @return <code>false</code> if the timeout was reached before.
+     */
+    public boolean awaitDelivery(@Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        final long target = _tail.get();
+        final long until = nanoTime() + unit.toNanos(timeout);
+        while (_completed.get() < target && nanoTime() < until) {
+            if (currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            wakeUpDispatcher();
+            parkNanos(BLOCKED_PARK_IN_NANOS);
+        }
+        return _completed.get() >= target;
+    }
+
+    @Nonnegative
+    public long getQueueDepth() {
+        return Math.max(0, _tail.get() - _head.get());
+    }
+
+    @Nonnegative
+    public long getMaximumQueueDepth() {
+        return _maximumQueueDepth;
+    }
+
+    @Nonnegative
+    public long getNumberOfQueuedEvents() {
+        return _tail.get();
+    }
+
+    @Nonnegative
+    public long getNumberOfDeliveredEvents() {
+        return _delivered;
+    }
+
+    @Nonnegative
+    public long getNumberOfDroppedEvents() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return the number of events which were delivered on the thread of the cache operation because of the
+     * {@link OverflowPolicy#callerRuns overflow policy} or because this dispatcher was closed.
+     */
+    @Nonnegative
+    public long getNumberOfCallerRunsEvents() {
+        return _callerRuns.get();
+    }
+
+    @Nonnegative
+    public long getNumberOfBatches() {
+        return _batches;
+    }
+
+    /**
+     * Delivers all remaining events and stops the dispatcher thread.
+     */
+    @Override
+    @PreDestroy
+    public void close() {
+        final Thread thread;
+        synchronized (this) {
+            _closed = true;
+            thread = _thread;
+        }
+        if (thread != null) {
+            unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+                currentThread().interrupt();
+                LOG.debug("Could not wait for termination of " + thread + ". This thread was interrupted.");
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + "{" + _name + "}";
+    }
+
+    protected class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            final List<AsynchronousCacheListener> listeners = new ArrayList<>();
+            final List<CacheEvent> events = new ArrayList<>();
+            boolean running = true;
+            while (running) {
+                final long depth = getQueueDepth();
+                if (depth > _maximumQueueDepth) {
+                    _maximumQueueDepth = depth;
+                }
+                final int drained = drainTo(listeners, events, _maximumBatchSize);
+                if (drained > 0) {
+                    deliverBatch(listeners, events);
+                    // noinspection NonAtomicOperationOnVolatileField - only written by this thread.
+                    _delivered += drained;
+                    // noinspection NonAtomicOperationOnVolatileField - only written by this thread.
+                    _batches++;
+                    _completed.addAndGet(drained);
+                    listeners.clear();
+                    events.clear();
+                } else if (_closed) {
+                    running = false;
+                } else {
+                    _sleeping.set(true);
+                    if (getQueueDepth() == 0 && !_closed) {
+                        parkNanos(IDLE_PARK_IN_NANOS);
+                    }
+                    _sleeping.set(false);
+                }
+            }
+        }
+    }
+
+}
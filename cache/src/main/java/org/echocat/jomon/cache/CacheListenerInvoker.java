@@ -24,7 +24,7 @@ import java.util.List;
 
 import static java.lang.reflect.Array.newInstance;
 
-public class CacheListenerInvoker implements PutCacheListener, GetCacheListener, RemoveCacheListener, ClearableCacheListener, StatisticsEnabledCacheListener, LimitedCacheListener {
+public class CacheListenerInvoker implements PutCacheListener, GetCacheListener, RemoveCacheListener, ClearableCacheListener, StatisticsEnabledCacheListener, LimitedCacheListener, EvictionCacheListener {
 
     public static final PutCacheListener[] EMPTY_PUT = new PutCacheListener[0];
     public static final GetCacheListener[] EMPTY_GET = new GetCacheListener[0];
@@ -32,6 +32,8 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
     public static final ClearableCacheListener[] EMPTY_CLEARABLE = new ClearableCacheListener[0];
     public static final StatisticsEnabledCacheListener[] EMPTY_STATISTICS = new StatisticsEnabledCacheListener[0];
     public static final LimitedCacheListener[] EMPTY_LIMITED = new LimitedCacheListener[0];
+    public static final EvictionCacheListener[] EMPTY_EVICTION = new EvictionCacheListener[0];
+    public static final AsynchronousCacheListener[] EMPTY_ASYNCHRONOUS = new AsynchronousCacheListener[0];
 
     private Collection<CacheListener> _all;
 
@@ -41,6 +43,24 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
     private ClearableCacheListener[] _clearable = EMPTY_CLEARABLE;
     private StatisticsEnabledCacheListener[] _statistics = EMPTY_STATISTICS;
     private LimitedCacheListener[] _limited = EMPTY_LIMITED;
+    private EvictionCacheListener[] _eviction = EMPTY_EVICTION;
+
+    // Subsets of the listeners above which receive their "after" events on the caller's thread.
+    private PutCacheListener[] _afterPut = EMPTY_PUT;
+    private GetCacheListener[] _afterGet = EMPTY_GET;
+    private RemoveCacheListener[] _afterRemove = EMPTY_REMOVE;
+    private ClearableCacheListener[] _afterClear = EMPTY_CLEARABLE;
+    private StatisticsEnabledCacheListener[] _afterResetStatistics = EMPTY_STATISTICS;
+    private LimitedCacheListener[] _afterSetMaximumLifetime = EMPTY_LIMITED;
+    private EvictionCacheListener[] _afterEvict = EMPTY_EVICTION;
+
+    private AsynchronousCacheListener[] _asynchronousPut = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousGet = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousRemove = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousClear = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousResetStatistics = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousSetMaximumLifetime = EMPTY_ASYNCHRONOUS;
+    private AsynchronousCacheListener[] _asynchronousEvict = EMPTY_ASYNCHRONOUS;
 
     public void setListeners(@Nullable Collection<CacheListener> listeners) {
         _all = listeners;
@@ -50,12 +70,32 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
         _clearable = filter(ClearableCacheListener.class, listeners);
         _statistics = filter(StatisticsEnabledCacheListener.class, listeners);
         _limited = filter(LimitedCacheListener.class, listeners);
+        _eviction = filter(EvictionCacheListener.class, listeners);
+        _afterPut = filterSynchronous(PutCacheListener.class, listeners);
+        _afterGet = filterSynchronous(GetCacheListener.class, listeners);
+        _afterRemove = filterSynchronous(RemoveCacheListener.class, listeners);
+        _afterClear = filterSynchronous(ClearableCacheListener.class, listeners);
+        _afterResetStatistics = filterSynchronous(StatisticsEnabledCacheListener.class, listeners);
+        _afterSetMaximumLifetime = filterSynchronous(LimitedCacheListener.class, listeners);
+        _afterEvict = filterSynchronous(EvictionCacheListener.class, listeners);
+        _asynchronousPut = filterAsynchronous(PutCacheListener.class, listeners);
+        _asynchronousGet = filterAsynchronous(GetCacheListener.class, listeners);
+        _asynchronousRemove = filterAsynchronous(RemoveCacheListener.class, listeners);
+        _asynchronousClear = filterAsynchronous(ClearableCacheListener.class, listeners);
+        _asynchronousResetStatistics = filterAsynchronous(StatisticsEnabledCacheListener.class, listeners);
+        _asynchronousSetMaximumLifetime = filterAsynchronous(LimitedCacheListener.class, listeners);
+        _asynchronousEvict = filterAsynchronous(EvictionCacheListener.class, listeners);
     }
 
     public Collection<CacheListener> getListeners() {
         return _all;
     }
 
+    public boolean hasListeners() {
+        final Collection<CacheListener> all = _all;
+        return all != null && !all.isEmpty();
+    }
+
     @Override
     public boolean beforePut(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration expireAfter) {
         boolean result = true;
@@ -68,10 +108,11 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterPut(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration expireAfter) {
-        final PutCacheListener[] listeners = _put;
+        final PutCacheListener[] listeners = _afterPut;
         for (final PutCacheListener listener : listeners) {
             listener.afterPut(cache, key, value, expireAfter);
         }
+        dispatch(_asynchronousPut, CacheEvent.Type.afterPut, cache, key, value, expireAfter);
     }
 
     @Override
@@ -86,10 +127,11 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterGet(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value) {
-        final GetCacheListener[] listeners = _get;
+        final GetCacheListener[] listeners = _afterGet;
         for (final GetCacheListener listener : listeners) {
             listener.afterGet(cache, key, value);
         }
+        dispatch(_asynchronousGet, CacheEvent.Type.afterGet, cache, key, value, null);
     }
 
     @Override
@@ -104,10 +146,11 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> oldValue) {
-        final RemoveCacheListener[] listeners = _remove;
+        final RemoveCacheListener[] listeners = _afterRemove;
         for (final RemoveCacheListener listener : listeners) {
             listener.afterRemove(cache, key, oldValue);
         }
+        dispatch(_asynchronousRemove, CacheEvent.Type.afterRemove, cache, key, oldValue, null);
     }
 
     @Override
@@ -122,10 +165,11 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterClear(@Nonnull Cache<?, ?> cache) {
-        final ClearableCacheListener[] listeners = _clearable;
+        final ClearableCacheListener[] listeners = _afterClear;
         for (final ClearableCacheListener listener : listeners) {
             listener.afterClear(cache);
         }
+        dispatch(_asynchronousClear, CacheEvent.Type.afterClear, cache, null, null, null);
     }
 
     @Override
@@ -140,10 +184,11 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterResetStatistics(@Nonnull Cache<?, ?> cache) {
-        final StatisticsEnabledCacheListener[] listeners = _statistics;
+        final StatisticsEnabledCacheListener[] listeners = _afterResetStatistics;
         for (final StatisticsEnabledCacheListener listener : listeners) {
             listener.afterResetStatistics(cache);
         }
+        dispatch(_asynchronousResetStatistics, CacheEvent.Type.afterResetStatistics, cache, null, null, null);
     }
 
     @Override
@@ -158,10 +203,62 @@ public class CacheListenerInvoker implements PutCacheListener, GetCacheListener,
 
     @Override
     public void afterSetMaximumLifetime(@Nonnull Cache<?, ?> cache, @Nullable Duration millis) {
-        final LimitedCacheListener[] listeners = _limited;
+        final LimitedCacheListener[] listeners = _afterSetMaximumLifetime;
         for (final LimitedCacheListener listener : listeners) {
             listener.afterSetMaximumLifetime(cache, millis);
         }
+        dispatch(_asynchronousSetMaximumLifetime, CacheEvent.Type.afterSetMaximumLifetime, cache, null, null, millis);
+    }
+
+    @Override
+    public void afterEvict(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value) {
+        final EvictionCacheListener[] listeners = _afterEvict;
+        for (final EvictionCacheListener listener : listeners) {
+            listener.afterEvict(cache, key, value);
+        }
+        dispatch(_asynchronousEvict, CacheEvent.Type.afterEvict, cache, key, value, null);
+    }
+
+    protected void dispatch(@Nonnull AsynchronousCacheListener[] listeners, @Nonnull CacheEvent.Type type, @Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration duration) {
+        if (listeners.length > 0) {
+            final CacheEvent event = new CacheEvent(type, cache, key, value, duration);
+            for (final AsynchronousCacheListener listener : listeners) {
+                final CacheEventDispatcher dispatcher = listener.getEventDispatcher();
+                if (dispatcher != null && listener.accept(event)) {
+                    dispatcher.dispatch(listener, event);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    protected <T extends CacheListener> T[] filterSynchronous(@Nonnull Class<T> requiredType, @Nullable Collection<CacheListener> all) {
+        final List<CacheListener> synchronous = new ArrayList<>();
+        if (all != null) {
+            for (CacheListener listener : all) {
+                if (!isAsynchronous(listener)) {
+                    synchronous.add(listener);
+                }
+            }
+        }
+        return filter(requiredType, synchronous);
+    }
+
+    @Nonnull
+    protected AsynchronousCacheListener[] filterAsynchronous(@Nonnull Class<? extends CacheListener> requiredType, @Nullable Collection<CacheListener> all) {
+        final List<CacheListener> asynchronous = new ArrayList<>();
+        if (all != null) {
+            for (CacheListener listener : all) {
+                if (requiredType.isInstance(listener) && isAsynchronous(listener)) {
+                    asynchronous.add(listener);
+                }
+            }
+        }
+        return filter(AsynchronousCacheListener.class, asynchronous);
+    }
+
+    protected boolean isAsynchronous(@Nullable CacheListener listener) {
+        return listener instanceof AsynchronousCacheListener && ((AsynchronousCacheListener) listener).getEventDispatcher() != null;
     }
 
     @Nonnull
@@ -0,0 +1,136 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.math.LatencyHistogram;
+import org.echocat.jomon.runtime.math.OverPeriodRatio;
+import org.echocat.jomon.runtime.math.StripedCounter;
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Detailed instrumentation of a {@link MetricsEnabledCache}. All durations are in nanoseconds.
+ */
+@ThreadSafe
+public class CacheMetrics {
+
+    public static final Duration DEFAULT_MEASURE_PERIOD = new Duration("1m");
+    public static final Duration DEFAULT_RESOLUTION = new Duration("1s");
+
+    private final LatencyHistogram _getDurations = new LatencyHistogram();
+    private final LatencyHistogram _loadDurations = new LatencyHistogram();
+    private final LatencyHistogram _lockWaitDurations = new LatencyHistogram();
+    private final LatencyHistogram _evictionDurations = new LatencyHistogram();
+    private final StripedCounter _numberOfLoads = new StripedCounter();
+    private final StripedCounter _numberOfEvictions = new StripedCounter();
+    private final OverPeriodRatio _hits;
+    private final OverPeriodRatio _evictions;
+
+    public CacheMetrics() {
+        this(DEFAULT_MEASURE_PERIOD, DEFAULT_RESOLUTION);
+    }
+
+    public CacheMetrics(@Nonnull Duration measurePeriod, @Nonnull Duration resolution) {
+        _hits = new OverPeriodRatio(measurePeriod, resolution);
+        _evictions = new OverPeriodRatio(measurePeriod, resolution);
+    }
+
+    public void recordGet(boolean hit, @Nonnegative long durationInNanos) {
+        _getDurations.record(durationInNanos);
+        _hits.record(hit);
+    }
+
+    public void recordLoad(@Nonnegative long durationInNanos) {
+        _loadDurations.record(durationInNanos);
+        _numberOfLoads.increment();
+    }
+
+    public void recordLockWait(@Nonnegative long durationInNanos) {
+        _lockWaitDurations.record(durationInNanos);
+    }
+
+    public void recordEviction(@Nonnegative long durationInNanos) {
+        _evictionDurations.record(durationInNanos);
+        _numberOfEvictions.increment();
+        _evictions.record(true);
+    }
+
+    /**
+     * @return the durations of all get calls including the loads of the producer.
+     */
+    @Nonnull
+    public LatencyHistogram getGetDurations() {
+        return _getDurations;
+    }
+
+    /**
+     * @return the durations of the value producers which were waited for.
+     */
+    @Nonnull
+    public LatencyHistogram getLoadDurations() {
+        return _loadDurations;
+    }
+
+    @Nonnull
+    public LatencyHistogram getLockWaitDurations() {
+        return _lockWaitDurations;
+    }
+
+    @Nonnull
+    public LatencyHistogram getEvictionDurations() {
+        return _evictionDurations;
+    }
+
+    @Nonnegative
+    public long getNumberOfLoads() {
+        return _numberOfLoads.get();
+    }
+
+    @Nonnegative
+    public long getNumberOfEvictions() {
+        return _numberOfEvictions.get();
+    }
+
+    /**
+     * @return the hit ratio of the gets over the measure period.
+     */
+    @Nonnull
+    public OverPeriodRatio getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return the evictions over the measure period.
+     */
+    @Nonnull
+    public OverPeriodRatio getEvictions() {
+        return _evictions;
+    }
+
+    public void reset() {
+        _getDurations.reset();
+        _loadDurations.reset();
+        _lockWaitDurations.reset();
+        _evictionDurations.reset();
+        _numberOfLoads.reset();
+        _numberOfEvictions.reset();
+        _hits.reset();
+        _evictions.reset();
+    }
+
+}
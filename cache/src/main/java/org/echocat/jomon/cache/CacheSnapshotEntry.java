@@ -0,0 +1,71 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An element of a {@link SnapshotEnabledCache#snapshot(int) snapshot}.
+ */
+@Immutable
+public class CacheSnapshotEntry<K, V> {
+
+    private final K _key;
+    private final V _value;
+    private final Long _expireAfter;
+    private final int _hits;
+
+    /**
+     * @param expireAfter the remaining lifetime in milliseconds or <code>null</code> if the element never expires.
+     */
+    public CacheSnapshotEntry(@Nullable K key, @Nullable V value, @Nullable Long expireAfter, @Nonnegative int hits) {
+        _key = key;
+        _value = value;
+        _expireAfter = expireAfter;
+        _hits = hits;
+    }
+
+    @Nullable
+    public K getKey() {
+        return _key;
+    }
+
+    @Nullable
+    public V getValue() {
+        return _value;
+    }
+
+    /**
+     * @return the remaining lifetime in milliseconds at the moment the snapshot was created or <code>null</code> if the element never expires.
+     */
+    @Nullable
+    public Long getExpireAfter() {
+        return _expireAfter;
+    }
+
+    @Nonnegative
+    public int getHits() {
+        return _hits;
+    }
+
+    @Override
+    public String toString() {
+        return _key + "=" + _value + (_expireAfter != null ? " (expires after " + _expireAfter + "ms)" : "");
+    }
+
+}
@@ -14,7 +14,13 @@
 
 package org.echocat.jomon.cache;
 
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducingFailedException;
+
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.*;
+import java.util.Map.Entry;
 
 import static java.lang.Character.isLetterOrDigit;
 
@@ -42,5 +48,82 @@ public class CacheUtils {
         }
     }
 
+    /**
+     * @see BulkEnabledCache#getAll(Iterable)
+     */
+    @Nonnull
+    public static <K, V> Map<K, V> getAll(@Nonnull Cache<K, V> cache, @Nonnull Iterable<K> keys) {
+        return getAll(cache, keys, null, null);
+    }
+
+    /**
+     * Uses {@link BulkEnabledCache#getAll(Iterable, BulkValueProducer, Duration)} if the given cache supports it. Otherwise the elements are
+     * requested one by one from the given cache but all missing values are still produced with one call of the given producer.
+     */
+    @Nonnull
+    public static <K, V> Map<K, V> getAll(@Nonnull Cache<K, V> cache, @Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final Map<K, V> result;
+        if (cache instanceof BulkEnabledCache) {
+            result = ((BulkEnabledCache<K, V>) cache).getAll(keys, producer, expireAfter);
+        } else {
+            final Map<K, V> cached = new HashMap<>();
+            final Set<K> missing = new LinkedHashSet<>();
+            for (K key : keys) {
+                if (!cached.containsKey(key) && !missing.contains(key)) {
+                    final V value = cache.get(key);
+                    if (value != null) {
+                        cached.put(key, value);
+                    } else {
+                        missing.add(key);
+                    }
+                }
+            }
+            if (producer != null && !missing.isEmpty()) {
+                final Map<K, V> produced = produce(producer, missing);
+                for (Entry<K, V> keyAndValue : produced.entrySet()) {
+                    if (keyAndValue.getValue() != null && missing.contains(keyAndValue.getKey())) {
+                        cache.put(keyAndValue.getKey(), keyAndValue.getValue(), expireAfter);
+                        cached.put(keyAndValue.getKey(), keyAndValue.getValue());
+                    }
+                }
+            }
+            result = new LinkedHashMap<>();
+            for (K key : keys) {
+                final V value = cached.get(key);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Uses {@link BulkEnabledCache#putAll(Map, Duration)} if the given cache supports it. Otherwise the elements are put one by one.
+     */
+    public static <K, V> void putAll(@Nonnull Cache<K, V> cache, @Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        if (cache instanceof BulkEnabledCache) {
+            ((BulkEnabledCache<K, V>) cache).putAll(values, expireAfter);
+        } else {
+            for (Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+                cache.put(keyAndValue.getKey(), keyAndValue.getValue(), expireAfter);
+            }
+        }
+    }
+
+    /**
+     * @throws ValueProducingFailedException if the given producer fails.
+     */
+    @Nonnull
+    public static <K, V> Map<K, V> produce(@Nonnull BulkValueProducer<K, V> producer, @Nonnull Collection<K> keys) throws ValueProducingFailedException {
+        final Map<K, V> result;
+        try {
+            result = producer.produce(Collections.unmodifiableCollection(keys));
+        } catch (Exception e) {
+            throw new ValueProducingFailedException(keys, e);
+        }
+        return result != null ? result : Collections.<K, V>emptyMap();
+    }
+
     private CacheUtils() {}
 }
@@ -0,0 +1,94 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the estimates of a {@link CapacityAdvisorEnabledCache}.
+ */
+@Immutable
+public class CapacityAdvice {
+
+    private final long _capacity;
+    private final long _size;
+    private final long _numberOfSampledRequests;
+    private final SortedMap<Double, Double> _estimatedHitRatios;
+    private final Long _estimatedRetainedHeap;
+
+    public CapacityAdvice(@Nonnegative long capacity, @Nonnegative long size, @Nonnegative long numberOfSampledRequests, @Nonnull SortedMap<Double, Double> estimatedHitRatios, @Nullable Long estimatedRetainedHeap) {
+        _capacity = capacity;
+        _size = size;
+        _numberOfSampledRequests = numberOfSampledRequests;
+        _estimatedHitRatios = Collections.unmodifiableSortedMap(new TreeMap<>(estimatedHitRatios));
+        _estimatedRetainedHeap = estimatedRetainedHeap;
+    }
+
+    @Nonnegative
+    public long getCapacity() {
+        return _capacity;
+    }
+
+    @Nonnegative
+    public long getSize() {
+        return _size;
+    }
+
+    @Nonnegative
+    public long getNumberOfSampledRequests() {
+        return _numberOfSampledRequests;
+    }
+
+    /**
+     * @return factors of the {@link #getCapacity() capacity} mapped to the hit ratio which is estimated for it.
+     */
+    @Nonnull
+    public SortedMap<Double, Double> getEstimatedHitRatios() {
+        return _estimatedHitRatios;
+    }
+
+    @Nullable
+    public Double getEstimatedHitRatioAt(double factorOfCapacity) {
+        return _estimatedHitRatios.get(factorOfCapacity);
+    }
+
+    /**
+     * @return the estimated bytes of heap which would be freed if this cache would be cleared.
+     */
+    @Nullable
+    public Long getEstimatedRetainedHeap() {
+        return _estimatedRetainedHeap;
+    }
+
+    /**
+     * @return the {@link #getEstimatedRetainedHeap() estimated retained heap} per element.
+     */
+    @Nullable
+    public Long getEstimatedRetainedHeapPerElement() {
+        return _estimatedRetainedHeap != null && _size > 0 ? _estimatedRetainedHeap / _size : null;
+    }
+
+    @Override
+    public String toString() {
+        return "capacity: " + _capacity + ", size: " + _size + ", estimatedHitRatios: " + _estimatedHitRatios + ", estimatedRetainedHeap: " + _estimatedRetainedHeap;
+    }
+
+}
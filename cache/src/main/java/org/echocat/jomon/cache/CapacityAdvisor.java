@@ -0,0 +1,498 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Estimates which hit ratios a cache would have with other capacities. It follows the SHARDS approach: Only keys
+ * whose hash falls into a fixed part of the hash space are sampled and every sampled request is replayed against LRU
+ * ghost lists which are scaled by the sampling rate. The ghost lists contain only the hashes of the keys, so neither
+ * keys nor values are retained.</p>
+ *
+ * <p>The estimates always assume a LRU eviction. For other eviction policies they are a good indicator of how the hit
+ * ratio changes with the capacity but not of its absolute value.</p>
+ *
+ * <p>{@link #record(Object) Recording} never blocks: The sampled hashes are written into a ring buffer and replayed in
+ * batches by the thread which gets the lock. If the buffer is full or another thread writes at the same position the
+ * sample is dropped, this lowers the sampling rate under contention but not the quality of the estimates.</p>
+ */
+@ThreadSafe
+public class CapacityAdvisor {
+
+    public static final double[] DEFAULT_FACTORS = {0.25, 0.5, 1, 2, 4};
+
+    /**
+     * The number of sampled keys the ghost list of the current capacity should hold by default.
+     */
+    public static final int DEFAULT_SAMPLED_CAPACITY = 1024;
+
+    private static final int HASH_SPACE = 1 << 24;
+    private static final int BUFFER_SIZE = 128;
+    private static final int DRAIN_THRESHOLD = 16;
+    private static final long EMPTY = 0;
+    private static final long PRESENT = 1L << 32;
+
+    private final double[] _factors;
+    private final boolean _adaptiveSamplingRate;
+    private final Lock _lock = new ReentrantLock();
+    private final AtomicLongArray _buffer = new AtomicLongArray(BUFFER_SIZE);
+    private final AtomicLong _writeCounter = new AtomicLong();
+    private volatile long _readCounter;
+    private volatile double _samplingRate;
+    private volatile int _threshold;
+    private volatile long _capacity;
+    @GuardedBy("_lock")
+    private final GhostList[] _ghostLists;
+    @GuardedBy("_lock")
+    private long _numberOfSampledRequests;
+
+    /**
+     * Uses the {@link #defaultSamplingRateFor(long) default sampling rate} which is adjusted on every
+     * {@link #resize(long) resize}.
+     */
+    public CapacityAdvisor(@Nonnegative long capacity) {
+        this(capacity, defaultSamplingRateFor(capacity), true, DEFAULT_FACTORS);
+    }
+
+    public CapacityAdvisor(@Nonnegative long capacity, double samplingRate, @Nonnull double... factors) {
+        this(capacity, samplingRate, false, factors);
+    }
+
+    protected CapacityAdvisor(@Nonnegative long capacity, double samplingRate, boolean adaptiveSamplingRate, @Nonnull double... factors) {
+        if (samplingRate <= 0 || samplingRate > 1) {
+            throw new IllegalArgumentException("The sampling rate has to be greater than 0 and less or equal than 1 but was " + samplingRate + ".");
+        }
+        _capacity = capacity;
+        _samplingRate = samplingRate;
+        _threshold = thresholdFor(samplingRate);
+        _adaptiveSamplingRate = adaptiveSamplingRate;
+        _factors = factors.clone();
+        Arrays.sort(_factors);
+        _ghostLists = new GhostList[_factors.length];
+        for (int i = 0; i < _factors.length; i++) {
+            _ghostLists[i] = new GhostList(sampledCapacityFor(_factors[i], capacity, samplingRate));
+        }
+    }
+
+    /**
+     * Adjusts the ghost lists to the given capacity of the cache. The recorded history is kept, so the estimates stay
+     * meaningful if the cache is resized often, e.g. by the {@link org.echocat.jomon.cache.management.MemoryGovernor}.
+     * Because of this the hits which were recorded before are still part of the estimated hit ratios. If the sampling
+     * rate was not given explicitly it is recomputed for the new capacity and hashes which are not sampled anymore are
+     * removed from the ghost lists.
+     */
+    public void resize(@Nonnegative long capacity) {
+        _lock.lock();
+        try {
+            drain();
+            _capacity = capacity;
+            if (_adaptiveSamplingRate) {
+                final double samplingRate = defaultSamplingRateFor(capacity);
+                final int threshold = thresholdFor(samplingRate);
+                if (threshold < _threshold) {
+                    for (GhostList ghostList : _ghostLists) {
+                        ghostList.retainSampled(threshold);
+                    }
+                }
+                _samplingRate = samplingRate;
+                _threshold = threshold;
+            }
+            for (int i = 0; i < _factors.length; i++) {
+                _ghostLists[i].setCapacity(sampledCapacityFor(_factors[i], capacity, _samplingRate));
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    public static double defaultSamplingRateFor(@Nonnegative long capacity) {
+        return capacity > DEFAULT_SAMPLED_CAPACITY ? (double) DEFAULT_SAMPLED_CAPACITY / capacity : 1d;
+    }
+
+    /**
+     * Has to be called for every request of the given key. Only sampled keys cost more than a hash calculation.
+     */
+    public void record(@Nullable Object key) {
+        final int hash = hashOf(key);
+        if (isSampled(hash, _threshold)) {
+            final long tail = _writeCounter.get();
+            final long numberOfBuffered = tail - _readCounter;
+            if (numberOfBuffered < BUFFER_SIZE && _writeCounter.compareAndSet(tail, tail + 1)) {
+                _buffer.lazySet(indexInBuffer(tail), PRESENT | (hash & 0xFFFFFFFFL));
+                if (numberOfBuffered + 1 >= DRAIN_THRESHOLD) {
+                    tryDrain();
+                }
+            } else if (numberOfBuffered >= BUFFER_SIZE) {
+                tryDrain();
+            }
+        }
+    }
+
+    /**
+     * @return the factors of the current capacity mapped to the estimated hit ratio with this capacity. The ratios are
+     * <code>null</code> if no request was sampled yet.
+     */
+    @Nonnull
+    public SortedMap<Double, Double> getEstimatedHitRatios() {
+        final SortedMap<Double, Double> result = new TreeMap<>();
+        _lock.lock();
+        try {
+            drain();
+            for (int i = 0; i < _factors.length; i++) {
+                result.put(_factors[i], _numberOfSampledRequests > 0 ? (double) _ghostLists[i].getNumberOfHits() / _numberOfSampledRequests : null);
+            }
+        } finally {
+            _lock.unlock();
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public long getCapacity() {
+        return _capacity;
+    }
+
+    public double getSamplingRate() {
+        return _samplingRate;
+    }
+
+    @Nonnegative
+    public long getNumberOfSampledRequests() {
+        _lock.lock();
+        try {
+            drain();
+            return _numberOfSampledRequests;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    public void reset() {
+        _lock.lock();
+        try {
+            drain();
+            _numberOfSampledRequests = 0;
+            for (GhostList ghostList : _ghostLists) {
+                ghostList.reset();
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    protected void tryDrain() {
+        if (_lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                _lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays all published samples of the buffer against the ghost lists. A sample which is not published yet stops
+     * the replay, it is replayed by the next drain.
+     */
+    @GuardedBy("_lock")
+    protected void drain() {
+        final long tail = _writeCounter.get();
+        long head = _readCounter;
+        while (head < tail) {
+            final int index = indexInBuffer(head);
+            final long sample = _buffer.get(index);
+            if (sample == EMPTY) {
+                break;
+            }
+            _buffer.lazySet(index, EMPTY);
+            _numberOfSampledRequests++;
+            for (GhostList ghostList : _ghostLists) {
+                ghostList.access((int) sample);
+            }
+            head++;
+        }
+        _readCounter = head;
+    }
+
+    protected static boolean isSampled(int hash, int threshold) {
+        return (hash & (HASH_SPACE - 1)) < threshold;
+    }
+
+    protected static int thresholdFor(double samplingRate) {
+        return (int) Math.ceil(samplingRate * HASH_SPACE);
+    }
+
+    protected static int sampledCapacityFor(double factor, @Nonnegative long capacity, double samplingRate) {
+        return (int) Math.max(1, Math.round(factor * capacity * samplingRate));
+    }
+
+    private static int indexInBuffer(long counter) {
+        return (int) (counter & (BUFFER_SIZE - 1));
+    }
+
+    protected static int hashOf(@Nullable Object key) {
+        int result = key != null ? key.hashCode() : 0;
+        // Spread the bits (finalizer of MurmurHash3), hashCode() implementations like Integer's are not uniform.
+        result ^= result >>> 16;
+        result *= 0x85ebca6b;
+        result ^= result >>> 13;
+        result *= 0xc2b2ae35;
+        result ^= result >>> 16;
+        return result;
+    }
+
+    /**
+     * A LRU list of hashes. Like the elements of the {@link LongKeyCache} the hashes are stored in slots of primitive
+     * arrays which are found by an open addressing hash index and linked by their indexes, so an access creates no
+     * objects.
+     */
+    @NotThreadSafe
+    protected static class GhostList {
+
+        private static final int NONE = -1;
+        private static final int INITIAL_NUMBER_OF_SLOTS = 16;
+
+        private int _capacity;
+        private long _numberOfHits;
+
+        // The hashes are stored in slots. Every slot is an index of the following arrays...
+        private int[] _hashes;
+        private int[] _previous;
+        private int[] _next;
+        private int _firstFreeSlot;
+        private int _first;
+        private int _last;
+        private int _size;
+        // Open addressing hash index of (slot + 1). 0 marks an empty position.
+        private int[] _table;
+
+        public GhostList(@Nonnegative int capacity) {
+            _capacity = capacity;
+            initSlots();
+        }
+
+        public void access(int hash) {
+            final int slot = find(hash);
+            if (slot != NONE) {
+                _numberOfHits++;
+                if (slot != _first) {
+                    unlink(slot);
+                    linkFirst(slot);
+                }
+            } else if (_capacity > 0) {
+                while (_size >= _capacity) {
+                    removeSlot(_last);
+                }
+                final int newSlot = takeSlot();
+                _hashes[newSlot] = hash;
+                addToIndex(newSlot);
+                linkFirst(newSlot);
+                _size++;
+            }
+        }
+
+        /**
+         * Removes the least recently accessed hashes if the list is larger than the new capacity.
+         */
+        public void setCapacity(@Nonnegative int capacity) {
+            _capacity = capacity;
+            while (_size > capacity) {
+                removeSlot(_last);
+            }
+        }
+
+        /**
+         * Removes all hashes which would not be sampled with the given threshold.
+         */
+        public void retainSampled(int threshold) {
+            int slot = _first;
+            while (slot != NONE) {
+                final int next = _next[slot];
+                if (!isSampled(_hashes[slot], threshold)) {
+                    removeSlot(slot);
+                }
+                slot = next;
+            }
+        }
+
+        public boolean contains(int hash) {
+            return find(hash) != NONE;
+        }
+
+        @Nonnegative
+        public int size() {
+            return _size;
+        }
+
+        @Nonnegative
+        public long getNumberOfHits() {
+            return _numberOfHits;
+        }
+
+        public void reset() {
+            initSlots();
+            _numberOfHits = 0;
+        }
+
+        private int find(int hash) {
+            final int mask = _table.length - 1;
+            int result = NONE;
+            for (int index = indexOf(hash, mask); result == NONE && _table[index] != 0; index = (index + 1) & mask) {
+                final int slot = _table[index] - 1;
+                if (_hashes[slot] == hash) {
+                    result = slot;
+                }
+            }
+            return result;
+        }
+
+        private void removeSlot(int slot) {
+            unlink(slot);
+            removeFromIndex(slot);
+            _next[slot] = _firstFreeSlot;
+            _firstFreeSlot = slot;
+            _size--;
+        }
+
+        private void addToIndex(int slot) {
+            if ((_size + 1) * 2 > _table.length) {
+                final int[] oldTable = _table;
+                _table = new int[oldTable.length * 2];
+                for (int entry : oldTable) {
+                    if (entry != 0) {
+                        putIntoTable(entry - 1);
+                    }
+                }
+            }
+            putIntoTable(slot);
+        }
+
+        private void putIntoTable(int slot) {
+            final int mask = _table.length - 1;
+            int index = indexOf(_hashes[slot], mask);
+            while (_table[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            _table[index] = slot + 1;
+        }
+
+        /**
+         * Removes the slot from the index and shifts the following entries back, so no tombstones are required.
+         */
+        private void removeFromIndex(int slot) {
+            final int mask = _table.length - 1;
+            int index = indexOf(_hashes[slot], mask);
+            while (_table[index] != slot + 1) {
+                index = (index + 1) & mask;
+            }
+            _table[index] = 0;
+            int next = (index + 1) & mask;
+            while (_table[next] != 0) {
+                final int home = indexOf(_hashes[_table[next] - 1], mask);
+                final boolean canBeMoved = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+                if (canBeMoved) {
+                    _table[index] = _table[next];
+                    _table[next] = 0;
+                    index = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private int takeSlot() {
+            if (_firstFreeSlot == NONE) {
+                final int oldLength = _hashes.length;
+                final int newLength = oldLength * 2;
+                _hashes = Arrays.copyOf(_hashes, newLength);
+                _previous = Arrays.copyOf(_previous, newLength);
+                _next = Arrays.copyOf(_next, newLength);
+                chainFreeSlots(oldLength, newLength);
+            }
+            final int result = _firstFreeSlot;
+            _firstFreeSlot = _next[result];
+            return result;
+        }
+
+        private void linkFirst(int slot) {
+            _previous[slot] = NONE;
+            _next[slot] = _first;
+            if (_first != NONE) {
+                _previous[_first] = slot;
+            } else {
+                _last = slot;
+            }
+            _first = slot;
+        }
+
+        private void unlink(int slot) {
+            final int previous = _previous[slot];
+            final int next = _next[slot];
+            if (previous != NONE) {
+                _next[previous] = next;
+            } else {
+                _first = next;
+            }
+            if (next != NONE) {
+                _previous[next] = previous;
+            } else {
+                _last = previous;
+            }
+            _previous[slot] = NONE;
+            _next[slot] = NONE;
+        }
+
+        private void initSlots() {
+            _hashes = new int[INITIAL_NUMBER_OF_SLOTS];
+            _previous = new int[INITIAL_NUMBER_OF_SLOTS];
+            _next = new int[INITIAL_NUMBER_OF_SLOTS];
+            _table = new int[INITIAL_NUMBER_OF_SLOTS * 2];
+            _first = NONE;
+            _last = NONE;
+            _size = 0;
+            _firstFreeSlot = NONE;
+            chainFreeSlots(0, INITIAL_NUMBER_OF_SLOTS);
+        }
+
+        private void chainFreeSlots(int from, int to) {
+            for (int slot = to - 1; slot >= from; slot--) {
+                _previous[slot] = NONE;
+                _next[slot] = _firstFreeSlot;
+                _firstFreeSlot = slot;
+            }
+        }
+
+        private static int indexOf(int hash, int mask) {
+            // The lower bits of sampled hashes are limited by the threshold, so spread the upper bits into them...
+            int result = hash * 0x9E3779B9;
+            result ^= result >>> 16;
+            return result & mask;
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link LimitedCache} which could track the hit ratios it would have with other capacities and estimate the heap it
+ * retains. Use this to find a good {@link LimitedCache#setCapacity(Long) capacity}.
+ *
+ * @see CapacityAdvisor
+ */
+public interface CapacityAdvisorEnabledCache<K, V> extends LimitedCache<K, V> {
+
+    public boolean isCapacityAdvisorEnabled();
+
+    /**
+     * The advisor will only track requests while the cache has a capacity. Changing the capacity resets it.
+     */
+    public void setCapacityAdvisorEnabled(boolean capacityAdvisorEnabled);
+
+    /**
+     * @return <code>null</code> if the advisor is not {@link #isCapacityAdvisorEnabled() enabled} or this cache has no capacity.
+     */
+    @Nullable
+    public CapacityAdvice getCapacityAdvice();
+
+}
@@ -14,42 +14,91 @@
 
 package org.echocat.jomon.cache;
 
+import org.echocat.jomon.cache.Value.Evicted;
 import org.echocat.jomon.cache.Value.Lazy;
 import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.runtime.util.ValueProducer;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static org.echocat.jomon.runtime.util.ProducingType.nonBlocking;
 
-public class CombinedCache<K, V> extends CacheSupport<K, V> {
+/**
+ * <p>Combines several caches to tiers. The first delegate is the L1 and is always written on the caller's thread, every
+ * following delegate is a lower tier which is queried only if all tiers above missed.</p>
+ *
+ * <p>In the default configuration this cache behaves like a plain write through chain. The tiered behavior could be
+ * tuned with:</p>
+ * <ul>
+ *     <li>{@link #setWriteBehindExecutor(Executor) write behind}: Writes to lower tiers are coalesced per key and executed
+ *     by the given executor.</li>
+ *     <li>{@link #setPromotion(boolean) promotion}: A hit on a lower tier copies the value to all tiers above.</li>
+ *     <li>{@link #setDemotion(boolean) demotion}: New values are only put into the L1 and elements evicted by the L1 are
+ *     moved to the next tier with their remaining lifetime. The L1 reports evictions while it holds its lock, so they are
+ *     only queued there and written after the operation on the L1 is done. This requires a L1 which is a
+ *     {@link ListenerEnabledCache}.</li>
+ *     <li>{@link #setTierStatisticsEnabled(boolean) tier statistics}: Records hits and latencies of every tier.</li>
+ * </ul>
+ */
+public class CombinedCache<K, V> extends CacheSupport<K, V> implements BulkEnabledCache<K, V> {
+
+    private static final Object NULL_KEY = new Object();
 
     private final Cache<? extends K, ? extends V>[] _delegates;
+    private final TierStatistics[] _tierStatistics;
+    private final ConcurrentMap<Object, Write<K, V>> _pendingWrites = new ConcurrentHashMap<>();
+    // Keys of demoted elements which were put in _pendingWrites by the L1 and still have to be executed or scheduled.
+    private final Queue<Object> _demotions = new ConcurrentLinkedQueue<>();
+    private final EvictionCacheListener _demotionListener = new EvictionCacheListener() { @Override public void afterEvict(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value) {
+        // noinspection unchecked
+        demote((K) key, (Value<V>) value);
+    }};
+
+    private Executor _writeBehindExecutor;
+    private boolean _promotion = true;
+    private boolean _demotion;
+    private boolean _tierStatisticsEnabled;
 
     public CombinedCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nullable Cache<? extends K, ? extends V>... delegates) {
         super(keyType, valueType);
         // noinspection unchecked
         _delegates = delegates != null ? delegates : new Cache[0];
+        _tierStatistics = new TierStatistics[_delegates.length];
+        for (int i = 0; i < _tierStatistics.length; i++) {
+            _tierStatistics[i] = new TierStatistics();
+        }
     }
 
     @Override
     public void put(@Nullable K key, @Nullable V value) {
-        checkKey(key);
-        checkValue(value);
-        for (Cache<? extends K, ? extends V> delegate : _delegates) {
-            cast(delegate).put(key, value);
-        }
+        put(key, value, null);
     }
 
     @Override
     public void put(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
         checkKey(key);
         checkValue(value);
-        for (Cache<? extends K, ? extends V> delegate : _delegates) {
-            cast(delegate).put(key, value, expireAfter);
+        if (_delegates.length > 0) {
+            cast(_delegates[0]).put(key, value, expireAfter);
+            if (_demotion) {
+                // Lower tiers will receive the value when it is evicted from the L1, an older value must not survive there.
+                removeFromLowerTiers(key);
+                executeDemotions();
+            } else {
+                writeToLowerTiers(key, value, expireAfter, 1, _delegates.length);
+            }
         }
     }
 
@@ -57,23 +106,42 @@ public class CombinedCache<K, V> extends CacheSupport<K, V> {
     public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer, @Nullable Duration expireAfter) {
         checkKey(key);
         V result = null;
-        final Set<Cache<K, V>> missedOn = new HashSet<>(_delegates.length);
-        for (Cache<? extends K, ? extends V> delegate : _delegates) {
-            final Cache<K, V> cache = cast(delegate);
-            result = cache.get(key);
+        int hitTier = -1;
+        for (int i = 0; result == null && i < _delegates.length; i++) {
+            result = getFromTier(i, key);
             if (result != null) {
-                break;
-            } else {
-                missedOn.add(cache);
+                hitTier = i;
             }
         }
+        if (result == null) {
+            result = getPendingValueOf(key);
+        }
         if (result == null && cacheValueProducer != null) {
             result = new Lazy<>(key, cacheValueProducer, nonBlocking).get();
-        }
-        if (result != null) {
-            for (Cache<K, V> cache : missedOn) {
-                cache.put(key, result, expireAfter);
+            if (result != null) {
+                hitTier = _demotion ? 1 : _delegates.length;
             }
+        } else if (!_promotion) {
+            hitTier = -1;
+        }
+        if (hitTier > 0) {
+            cast(_delegates[0]).put(key, result, expireAfter);
+            writeToLowerTiers(key, result, expireAfter, 1, hitTier);
+            executeDemotions();
+        }
+        return result;
+    }
+
+    @Nullable
+    protected V getFromTier(@Nonnegative int tier, @Nullable K key) {
+        final Cache<K, V> cache = cast(_delegates[tier]);
+        final V result;
+        if (_tierStatisticsEnabled) {
+            final long start = nanoTime();
+            result = cache.get(key);
+            _tierStatistics[tier].record(result != null, nanoTime() - start);
+        } else {
+            result = cache.get(key);
         }
         return result;
     }
@@ -88,9 +156,94 @@ public class CombinedCache<K, V> extends CacheSupport<K, V> {
         return get(key, null);
     }
 
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys) {
+        return getAll(keys, null, null);
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            checkKey(key);
+            missing.add(key);
+        }
+        final Map<K, V> found = new HashMap<>();
+        final Map<K, Integer> hitTiers = new HashMap<>();
+        for (int i = 0; !missing.isEmpty() && i < _delegates.length; i++) {
+            final Map<K, V> fromCache = CacheUtils.getAll(cast(_delegates[i]), missing);
+            for (Entry<K, V> keyAndValue : fromCache.entrySet()) {
+                found.put(keyAndValue.getKey(), keyAndValue.getValue());
+                hitTiers.put(keyAndValue.getKey(), i);
+            }
+            final Set<K> missedOnCache = new LinkedHashSet<>(missing);
+            missedOnCache.removeAll(fromCache.keySet());
+            missing = missedOnCache;
+        }
+        if (producer != null && !missing.isEmpty()) {
+            final Map<K, V> produced = CacheUtils.produce(producer, missing);
+            for (K key : missing) {
+                final V value = produced.get(key);
+                if (value != null) {
+                    found.put(key, value);
+                    hitTiers.put(key, _demotion ? 1 : _delegates.length);
+                }
+            }
+        }
+        if (_delegates.length > 0) {
+            final Map<K, V> toPutInFirstTier = new LinkedHashMap<>();
+            for (Entry<K, Integer> keyAndHitTier : hitTiers.entrySet()) {
+                final K key = keyAndHitTier.getKey();
+                final int hitTier = keyAndHitTier.getValue();
+                if (hitTier > 0 && (_promotion || missing.contains(key))) {
+                    final V value = found.get(key);
+                    toPutInFirstTier.put(key, value);
+                    writeToLowerTiers(key, value, expireAfter, 1, hitTier);
+                }
+            }
+            CacheUtils.putAll(cast(_delegates[0]), toPutInFirstTier, expireAfter);
+            executeDemotions();
+        }
+        final Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            final V value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values) {
+        putAll(values, null);
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        for (Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+            checkKey(keyAndValue.getKey());
+            checkValue(keyAndValue.getValue());
+        }
+        if (_delegates.length > 0) {
+            CacheUtils.putAll(cast(_delegates[0]), values, expireAfter);
+            for (Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+                if (_demotion) {
+                    removeFromLowerTiers(keyAndValue.getKey());
+                } else {
+                    writeToLowerTiers(keyAndValue.getKey(), keyAndValue.getValue(), expireAfter, 1, _delegates.length);
+                }
+            }
+            executeDemotions();
+        }
+    }
+
     @Override
     public Value<V> remove(@Nullable K key) {
         checkKey(key);
+        cancelPendingWrite(key);
         Value<V> result = null;
         for (Cache<? extends K, ? extends V> delegate : _delegates) {
             final Value<V> removed = cast(delegate).remove(key);
@@ -104,16 +257,151 @@ public class CombinedCache<K, V> extends CacheSupport<K, V> {
     @Override
     public boolean contains(@Nullable K key) {
         checkKey(key);
+        boolean result = getPendingValueOf(key) != null;
+        for (int i = 0; !result && i < _delegates.length; i++) {
+            result = cast(_delegates[i]).contains(key);
+        }
+        return result;
+    }
+
+    /**
+     * Executes all writes to lower tiers which are not yet executed by the {@link #getWriteBehindExecutor() write behind executor}.
+     */
+    public void flush() {
+        _demotions.clear();
+        for (Object pendingKey : new ArrayList<>(_pendingWrites.keySet())) {
+            executePending(pendingKey);
+        }
+    }
+
+    protected void writeToLowerTiers(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter, @Nonnegative int fromTier, @Nonnegative int toTier) {
+        if (fromTier < toTier) {
+            final Write<K, V> write = new Write<>(key, value, expireAfter, fromTier, toTier);
+            final Executor executor = _writeBehindExecutor;
+            if (executor == null) {
+                execute(write);
+            } else {
+                scheduleWriteBehind(executor, write);
+            }
+        }
+    }
+
+    protected void scheduleWriteBehind(@Nonnull Executor executor, @Nonnull Write<K, V> write) {
+        final Object pendingKey = pendingKeyOf(write.getKey());
+        if (enqueue(pendingKey, write)) {
+            schedule(executor, pendingKey);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if there was no pending write for the given key, so the write has to be scheduled.
+     */
+    protected boolean enqueue(@Nonnull Object pendingKey, @Nonnull Write<K, V> write) {
         boolean result = false;
-        for (Cache<? extends K, ? extends V> delegate : _delegates) {
-            if (cast(delegate).contains(key)) {
+        boolean merged = false;
+        while (!merged) {
+            final Write<K, V> pending = _pendingWrites.putIfAbsent(pendingKey, write);
+            if (pending == null) {
                 result = true;
-                break;
+                merged = true;
+            } else {
+                // The newer value wins but has to reach all tiers the older write would have reached.
+                merged = _pendingWrites.replace(pendingKey, pending, write.mergedWith(pending));
             }
         }
         return result;
     }
 
+    protected void schedule(@Nonnull Executor executor, @Nonnull final Object pendingKey) {
+        try {
+            executor.execute(new Runnable() { @Override public void run() {
+                executePending(pendingKey);
+            }});
+        } catch (RejectedExecutionException ignored) {
+            executePending(pendingKey);
+        }
+    }
+
+    /**
+     * Executes the pending write of the given key. It stays pending while it is executed, so a write or a removal
+     * which replaces it in the meantime is executed afterwards, too.
+     */
+    protected void executePending(@Nonnull Object pendingKey) {
+        Write<K, V> write = _pendingWrites.get(pendingKey);
+        while (write != null) {
+            execute(write);
+            write = _pendingWrites.remove(pendingKey, write) ? null : _pendingWrites.get(pendingKey);
+        }
+    }
+
+    protected void execute(@Nonnull Write<K, V> write) {
+        for (int i = write.getFromTier(); i < write.getToTier() && i < _delegates.length; i++) {
+            if (write.isRemoval()) {
+                cast(_delegates[i]).remove(write.getKey());
+            } else {
+                cast(_delegates[i]).put(write.getKey(), write.getValue(), write.getExpireAfter());
+            }
+        }
+    }
+
+    protected void removeFromLowerTiers(@Nullable K key) {
+        cancelPendingWrite(key);
+        for (int i = 1; i < _delegates.length; i++) {
+            cast(_delegates[i]).remove(key);
+        }
+    }
+
+    /**
+     * A pending write could already be executed by the write behind executor. It is replaced by a removal, so the
+     * executor removes the key again after it has written it.
+     */
+    protected void cancelPendingWrite(@Nullable K key) {
+        _pendingWrites.replace(pendingKeyOf(key), new Write<K, V>(key, 1, _delegates.length));
+    }
+
+    /**
+     * Is called by the L1 while it holds its lock, so the demotion is only queued here and written by
+     * {@link #executeDemotions()}.
+     */
+    protected void demote(@Nullable K key, @Nullable Value<V> value) {
+        if (_demotion && value != null) {
+            final V plainValue = value.get();
+            final Long expireAt = value instanceof Evicted ? ((Evicted<V>) value).getExpireAt() : null;
+            final long remainingLifetime = expireAt != null ? expireAt - currentTimeMillis() : Long.MAX_VALUE;
+            if (plainValue != null && remainingLifetime > 0) {
+                final Duration expireAfter = expireAt != null ? new Duration(remainingLifetime) : null;
+                final Object pendingKey = pendingKeyOf(key);
+                if (enqueue(pendingKey, new Write<>(key, plainValue, expireAfter, 1, Math.min(2, _delegates.length)))) {
+                    _demotions.add(pendingKey);
+                }
+            }
+        }
+    }
+
+    protected void executeDemotions() {
+        Object pendingKey = _demotions.poll();
+        while (pendingKey != null) {
+            final Executor executor = _writeBehindExecutor;
+            if (executor != null) {
+                schedule(executor, pendingKey);
+            } else {
+                executePending(pendingKey);
+            }
+            pendingKey = _demotions.poll();
+        }
+    }
+
+    @Nullable
+    protected V getPendingValueOf(@Nullable K key) {
+        final Write<K, V> write = _pendingWrites.get(pendingKeyOf(key));
+        return write != null ? write.getValue() : null;
+    }
+
+    @Nonnull
+    protected Object pendingKeyOf(@Nullable K key) {
+        return key != null ? key : NULL_KEY;
+    }
+
     @Nonnull
     protected Cache<K, V> cast(Cache<? extends K, ? extends V> delegate) {
         // noinspection unchecked
@@ -125,4 +413,191 @@ public class CombinedCache<K, V> extends CacheSupport<K, V> {
         // noinspection unchecked
         return (Cache<K, V>[]) _delegates;
     }
+
+    /**
+     * @param executor <code>null</code> means that all tiers are written on the caller's thread.
+     */
+    public void setWriteBehindExecutor(@Nullable Executor executor) {
+        _writeBehindExecutor = executor;
+        if (executor == null) {
+            flush();
+        }
+    }
+
+    @Nullable
+    public Executor getWriteBehindExecutor() {
+        return _writeBehindExecutor;
+    }
+
+    public boolean isPromotion() {
+        return _promotion;
+    }
+
+    public void setPromotion(boolean promotion) {
+        _promotion = promotion;
+    }
+
+    public boolean isDemotion() {
+        return _demotion;
+    }
+
+    public void setDemotion(boolean demotion) {
+        if (demotion != _demotion) {
+            if (demotion && (_delegates.length < 2 || !(_delegates[0] instanceof ListenerEnabledCache))) {
+                throw new IllegalStateException("Demotion requires at least two tiers and a first tier which is a " + ListenerEnabledCache.class.getName() + ".");
+            }
+            if (_delegates.length > 0 && _delegates[0] instanceof ListenerEnabledCache) {
+                final ListenerEnabledCache<?, ?> firstTier = (ListenerEnabledCache<?, ?>) _delegates[0];
+                final Collection<CacheListener> oldListeners = firstTier.getListeners();
+                final List<CacheListener> listeners = oldListeners != null ? new ArrayList<>(oldListeners) : new ArrayList<CacheListener>();
+                if (demotion) {
+                    listeners.add(_demotionListener);
+                } else {
+                    listeners.remove(_demotionListener);
+                }
+                firstTier.setListeners(listeners);
+            }
+            _demotion = demotion;
+        }
+    }
+
+    public boolean isTierStatisticsEnabled() {
+        return _tierStatisticsEnabled;
+    }
+
+    public void setTierStatisticsEnabled(boolean tierStatisticsEnabled) {
+        _tierStatisticsEnabled = tierStatisticsEnabled;
+    }
+
+    /**
+     * @return the statistics of every tier in the order of the {@link #getDelegates() delegates}. They are only recorded if
+     * {@link #isTierStatisticsEnabled() tier statistics are enabled}.
+     */
+    @Nonnull
+    public List<TierStatistics> getTierStatistics() {
+        return Collections.unmodifiableList(Arrays.asList(_tierStatistics));
+    }
+
+    public void resetTierStatistics() {
+        for (TierStatistics statistics : _tierStatistics) {
+            statistics.reset();
+        }
+    }
+
+    public static class TierStatistics {
+
+        private final AtomicLong _requests = new AtomicLong();
+        private final AtomicLong _hits = new AtomicLong();
+        private final AtomicLong _totalLatencyInNanos = new AtomicLong();
+
+        protected void record(boolean hit, @Nonnegative long latencyInNanos) {
+            _requests.incrementAndGet();
+            if (hit) {
+                _hits.incrementAndGet();
+            }
+            _totalLatencyInNanos.addAndGet(latencyInNanos);
+        }
+
+        protected void reset() {
+            _requests.set(0);
+            _hits.set(0);
+            _totalLatencyInNanos.set(0);
+        }
+
+        @Nonnegative
+        public long getNumberOfRequests() {
+            return _requests.get();
+        }
+
+        @Nonnegative
+        public long getNumberOfHits() {
+            return _hits.get();
+        }
+
+        @Nullable
+        public Double getHitRatio() {
+            final long requests = _requests.get();
+            return requests > 0 ? (double) _hits.get() / (double) requests : null;
+        }
+
+        @Nonnegative
+        public long getTotalLatencyInNanos() {
+            return _totalLatencyInNanos.get();
+        }
+
+        @Nullable
+        public Long getAverageLatencyInNanos() {
+            final long requests = _requests.get();
+            return requests > 0 ? _totalLatencyInNanos.get() / requests : null;
+        }
+
+        @Override
+        public String toString() {
+            return "requests: " + getNumberOfRequests() + ", hitRatio: " + getHitRatio() + ", averageLatency: " + getAverageLatencyInNanos() + "ns";
+        }
+    }
+
+    protected static class Write<K, V> {
+
+        private final K _key;
+        private final V _value;
+        private final Duration _expireAfter;
+        private final int _fromTier;
+        private final int _toTier;
+        private final boolean _removal;
+
+        protected Write(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter, @Nonnegative int fromTier, @Nonnegative int toTier) {
+            this(key, value, expireAfter, fromTier, toTier, false);
+        }
+
+        /**
+         * Creates a removal of the given key from the given tiers.
+         */
+        protected Write(@Nullable K key, @Nonnegative int fromTier, @Nonnegative int toTier) {
+            this(key, null, null, fromTier, toTier, true);
+        }
+
+        private Write(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter, @Nonnegative int fromTier, @Nonnegative int toTier, boolean removal) {
+            _key = key;
+            _value = value;
+            _expireAfter = expireAfter;
+            _fromTier = fromTier;
+            _toTier = toTier;
+            _removal = removal;
+        }
+
+        @Nonnull
+        protected Write<K, V> mergedWith(@Nonnull Write<K, V> older) {
+            return new Write<>(_key, _value, _expireAfter, Math.min(_fromTier, older.getFromTier()), Math.max(_toTier, older.getToTier()), _removal);
+        }
+
+        @Nullable
+        public K getKey() {
+            return _key;
+        }
+
+        @Nullable
+        public V getValue() {
+            return _value;
+        }
+
+        @Nullable
+        public Duration getExpireAfter() {
+            return _expireAfter;
+        }
+
+        @Nonnegative
+        public int getFromTier() {
+            return _fromTier;
+        }
+
+        @Nonnegative
+        public int getToTier() {
+            return _toTier;
+        }
+
+        public boolean isRemoval() {
+            return _removal;
+        }
+    }
 }
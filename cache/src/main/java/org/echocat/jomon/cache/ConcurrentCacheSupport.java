@@ -0,0 +1,927 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.RefreshEnabledCache.DefaultRefreshExecutor;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ProducingType;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+import static java.lang.System.currentTimeMillis;
+import static org.echocat.jomon.cache.Value.Fixed.fixed;
+import static org.echocat.jomon.runtime.CollectionUtils.asCloseableIterator;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>Base implementation of a lock striped cache. The keys are spread over a fixed number of segments and every segment is a
+ * {@link InMemoryBasedCacheSupport} with its own lock and its own order of elements. So a {@link #get(Object) get}, {@link #put(Object, Object) put}
+ * or {@link #remove(Object) remove} does only block other operations on the same segment and not the whole cache.</p>
+ *
+ * <p>The capacity is distributed exactly over the segments. Because of this the eviction order is only maintained per segment and not over the
+ * whole cache. If the capacity is smaller than the requested concurrency level less segments are used. Changing the capacity in a way that
+ * changes the number of segments moves all elements and the statistics into new segments. While the elements are moved all operations wait
+ * and writes which were already done on an old segment are repeated on the new one. Elements which are still produced are dropped by
+ * this.</p>
+ */
+@ThreadSafe
+public abstract class ConcurrentCacheSupport<K, V> extends CacheSupport<K, V> implements DetailedStatisticsEnabledCache<K, V>, LimitedCache<K, V>, ClearableCache<K, V>, ListenerEnabledCache<K, V>, IdentifiedCache<K, V>, ProducingTypeEnabledCache<K, V>, KeysEnabledCache<K, V>, WeightEnabledCache<K, V>, RefreshEnabledCache<K, V>, BulkEnabledCache<K, V>, SnapshotEnabledCache<K, V>, MetricsEnabledCache<K, V>, CapacityAdvisorEnabledCache<K, V>, NegativeCachingEnabledCache<K, V>, AutoCloseable {
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    public static final int MAXIMUM_CONCURRENCY_LEVEL = 1 << 16;
+
+    protected final CacheListenerInvoker _listenerInvoker = new CacheListenerInvoker();
+    protected final long _createdTimestamp;
+    protected final int _concurrencyLevel;
+
+    protected volatile InMemoryBasedCacheSupport<K, V>[] _segments;
+    // Is true while the elements are moved into new segments, see segments().
+    private volatile boolean _resegmenting;
+
+    // Forwards the evictions of the segments to the listeners of this cache.
+    private final Collection<CacheListener> _segmentListeners = Collections.<CacheListener>singletonList(new EvictionCacheListener() { @Override public void afterEvict(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value) {
+        _listenerInvoker.afterEvict(ConcurrentCacheSupport.this, key, value);
+    }});
+
+    private volatile String _id;
+    private volatile Long _capacity;
+    private volatile Duration _defaultExpireAfter;
+    private volatile Weigher<? super K, ? super V> _weigher;
+    private volatile Long _maximumWeight;
+    private volatile Duration _refreshAfter;
+    private volatile Duration _maximumWaitForProduction;
+    private volatile Executor _refreshExecutor = DefaultRefreshExecutor.INSTANCE;
+    private volatile ProducingType _producingType = ProducingType.DEFAULT;
+    private volatile Duration _negativeMaximumLifetime;
+    private volatile Long _negativeCapacity = DEFAULT_NEGATIVE_CAPACITY;
+    // Is shared by all segments.
+    private volatile CacheMetrics _metrics;
+    private volatile boolean _capacityAdvisorEnabled;
+    private volatile CapacityAdvisor _capacityAdvisor;
+
+    protected ConcurrentCacheSupport(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnegative int concurrencyLevel) {
+        super(keyType, valueType);
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("The concurrencyLevel have to be greater than 0.");
+        }
+        _concurrencyLevel = toPowerOfTwo(Math.min(concurrencyLevel, MAXIMUM_CONCURRENCY_LEVEL));
+        _createdTimestamp = currentTimeMillis();
+        _segments = createSegments(_concurrencyLevel);
+    }
+
+    protected ConcurrentCacheSupport(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        this(keyType, valueType, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates one segment of this cache. The returned cache must not be shared and must not have any listeners.
+     */
+    @Nonnull
+    protected abstract InMemoryBasedCacheSupport<K, V> newSegment();
+
+    @Override
+    public String getId() {
+        return _id;
+    }
+
+    @Override
+    public void setId(String id) {
+        _id = id;
+    }
+
+    @Override
+    public void setListeners(@Nullable Collection<CacheListener> listeners) {
+        _listenerInvoker.setListeners(listeners);
+    }
+
+    @Override
+    public Collection<CacheListener> getListeners() {
+        return _listenerInvoker.getListeners();
+    }
+
+    @Override
+    @Nonnull
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    @Override
+    public void setProducingType(@Nonnull ProducingType producingType) {
+        if (producingType == null) {
+            throw new NullPointerException();
+        }
+        _producingType = producingType;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            segment.setProducingType(producingType);
+        }
+    }
+
+    @Nonnegative
+    public int getConcurrencyLevel() {
+        return _concurrencyLevel;
+    }
+
+    @Nonnegative
+    public int getNumberOfSegments() {
+        return _segments.length;
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value) {
+        put(key, value, null);
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
+        checkKey(key);
+        checkValue(value);
+        final Value<V> fixed = new Value.Fixed<>(value);
+        if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
+            InMemoryBasedCacheSupport<K, V>[] segments = segments();
+            segments[indexFor(key, segments.length)].put(key, value, expireAfter);
+            while (segments != _segments) {
+                // The segments were replaced meanwhile, maybe after the elements of the used one were moved.
+                segments = segments();
+                segments[indexFor(key, segments.length)].put(key, value, expireAfter);
+            }
+            _listenerInvoker.afterPut(this, key, fixed, expireAfter);
+        }
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            value = segmentFor(key).get(key);
+            _listenerInvoker.afterGet(this, key, fixed(value));
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer) {
+        return get(key, cacheValueProducer, null);
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer, @Nullable Duration expireAfter) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            value = segmentFor(key).get(key, cacheValueProducer, expireAfter);
+            _listenerInvoker.afterGet(this, key, fixed(value));
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys) {
+        return getAll(keys, null, null);
+    }
+
+    /**
+     * Every affected segment is locked only once. The missing values of all segments are produced with one call of the given producer.
+     */
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final InMemoryBasedCacheSupport<K, V>[] segments = segments();
+        final Map<InMemoryBasedCacheSupport<K, V>, List<K>> keysBySegment = new IdentityHashMap<>();
+        final List<K> toGet = new ArrayList<>();
+        for (K key : keys) {
+            checkKey(key);
+            if (_listenerInvoker.beforeGet(this, key)) {
+                toGet.add(key);
+                final InMemoryBasedCacheSupport<K, V> segment = segments[indexFor(key, segments.length)];
+                List<K> keysOfSegment = keysBySegment.get(segment);
+                if (keysOfSegment == null) {
+                    keysOfSegment = new ArrayList<>();
+                    keysBySegment.put(segment, keysOfSegment);
+                }
+                keysOfSegment.add(key);
+            }
+        }
+        final BulkProduction<K, V> production = producer != null ? new BulkProduction<>(producer) : null;
+        final Map<InMemoryBasedCacheSupport<K, V>, Map<K, CacheEntry<K, V>>> entriesBySegment = new IdentityHashMap<>();
+        try {
+            for (Map.Entry<InMemoryBasedCacheSupport<K, V>, List<K>> segmentAndKeys : keysBySegment.entrySet()) {
+                final InMemoryBasedCacheSupport<K, V> segment = segmentAndKeys.getKey();
+                entriesBySegment.put(segment, segment.lookupAll(segmentAndKeys.getValue(), production, segment.getTargetExpireAfterBasedOn(expireAfter)));
+            }
+        } finally {
+            // Concurrent gets of already published entries wait for this.
+            if (production != null) {
+                production.seal();
+            }
+        }
+        final Map<K, V> values = new HashMap<>();
+        for (Map.Entry<InMemoryBasedCacheSupport<K, V>, Map<K, CacheEntry<K, V>>> segmentAndEntries : entriesBySegment.entrySet()) {
+            values.putAll(segmentAndEntries.getKey().resolveAll(segmentAndEntries.getValue(), production));
+        }
+        final Map<K, V> result = new LinkedHashMap<>();
+        for (K key : toGet) {
+            final V value = values.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+            _listenerInvoker.afterGet(this, key, fixed(value));
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values) {
+        putAll(values, null);
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        final Map<K, V> plainToPut = new LinkedHashMap<>();
+        final Map<K, Value<V>> toPut = new LinkedHashMap<>();
+        for (Map.Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+            final K key = keyAndValue.getKey();
+            final V value = keyAndValue.getValue();
+            checkKey(key);
+            checkValue(value);
+            final Value<V> fixed = new Value.Fixed<>(value);
+            if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
+                toPut.put(key, fixed);
+                plainToPut.put(key, value);
+            }
+        }
+        InMemoryBasedCacheSupport<K, V>[] segments = segments();
+        putAllInto(segments, plainToPut, expireAfter);
+        while (segments != _segments) {
+            segments = segments();
+            putAllInto(segments, plainToPut, expireAfter);
+        }
+        for (Map.Entry<K, Value<V>> keyAndValue : toPut.entrySet()) {
+            _listenerInvoker.afterPut(this, keyAndValue.getKey(), keyAndValue.getValue(), expireAfter);
+        }
+    }
+
+    protected void putAllInto(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nonnull Map<K, V> values, @Nullable Duration expireAfter) {
+        final Map<InMemoryBasedCacheSupport<K, V>, Map<K, V>> valuesBySegment = new IdentityHashMap<>();
+        for (Map.Entry<K, V> keyAndValue : values.entrySet()) {
+            final K key = keyAndValue.getKey();
+            final InMemoryBasedCacheSupport<K, V> segment = segments[indexFor(key, segments.length)];
+            Map<K, V> valuesOfSegment = valuesBySegment.get(segment);
+            if (valuesOfSegment == null) {
+                valuesOfSegment = new LinkedHashMap<>();
+                valuesBySegment.put(segment, valuesOfSegment);
+            }
+            valuesOfSegment.put(key, keyAndValue.getValue());
+        }
+        for (Map.Entry<InMemoryBasedCacheSupport<K, V>, Map<K, V>> segmentAndValues : valuesBySegment.entrySet()) {
+            segmentAndValues.getKey().putAll(segmentAndValues.getValue(), expireAfter);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<CacheSnapshotEntry<K, V>> snapshot(@Nonnegative int maximumNumberOfEntries) {
+        return snapshotOf(segments(), maximumNumberOfEntries);
+    }
+
+    /**
+     * The snapshots of all segments are merged alternately, so the hottest elements of every segment come first.
+     */
+    @Nonnull
+    protected List<CacheSnapshotEntry<K, V>> snapshotOf(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nonnegative int maximumNumberOfEntries) {
+        final List<List<CacheSnapshotEntry<K, V>>> snapshots = new ArrayList<>(segments.length);
+        int size = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : segments) {
+            final List<CacheSnapshotEntry<K, V>> snapshot = segment.snapshot(maximumNumberOfEntries);
+            snapshots.add(snapshot);
+            size += snapshot.size();
+        }
+        final List<CacheSnapshotEntry<K, V>> result = new ArrayList<>(Math.min(size, maximumNumberOfEntries));
+        for (int i = 0; result.size() < size && result.size() < maximumNumberOfEntries; i++) {
+            for (int j = 0; j < snapshots.size() && result.size() < maximumNumberOfEntries; j++) {
+                final List<CacheSnapshotEntry<K, V>> snapshot = snapshots.get(j);
+                if (i < snapshot.size()) {
+                    result.add(snapshot.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void restore(@Nonnull List<CacheSnapshotEntry<K, V>> entries) {
+        InMemoryBasedCacheSupport<K, V>[] segments = segments();
+        restoreInto(segments, entries);
+        while (segments != _segments) {
+            segments = segments();
+            restoreInto(segments, entries);
+        }
+    }
+
+    protected void restoreInto(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nonnull List<CacheSnapshotEntry<K, V>> entries) {
+        final Map<InMemoryBasedCacheSupport<K, V>, List<CacheSnapshotEntry<K, V>>> entriesBySegment = new IdentityHashMap<>();
+        for (CacheSnapshotEntry<K, V> entry : entries) {
+            final InMemoryBasedCacheSupport<K, V> segment = segments[indexFor(entry.getKey(), segments.length)];
+            List<CacheSnapshotEntry<K, V>> entriesOfSegment = entriesBySegment.get(segment);
+            if (entriesOfSegment == null) {
+                entriesOfSegment = new ArrayList<>();
+                entriesBySegment.put(segment, entriesOfSegment);
+            }
+            entriesOfSegment.add(entry);
+        }
+        for (Map.Entry<InMemoryBasedCacheSupport<K, V>, List<CacheSnapshotEntry<K, V>>> segmentAndEntries : entriesBySegment.entrySet()) {
+            segmentAndEntries.getKey().restore(segmentAndEntries.getValue());
+        }
+    }
+
+    @Override
+    @Nullable
+    public Value<V> remove(@Nullable K key) {
+        checkKey(key);
+        final Value<V> result;
+        if (_listenerInvoker.beforeRemove(this, key)) {
+            InMemoryBasedCacheSupport<K, V>[] segments = segments();
+            Value<V> removed = segments[indexFor(key, segments.length)].remove(key);
+            while (segments != _segments) {
+                segments = segments();
+                final Value<V> removedFromNewSegment = segments[indexFor(key, segments.length)].remove(key);
+                if (removed == null) {
+                    removed = removedFromNewSegment;
+                }
+            }
+            result = removed;
+            _listenerInvoker.afterRemove(this, key, result);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(@Nullable K key) {
+        checkKey(key);
+        return segmentFor(key).contains(key);
+    }
+
+    @Override
+    public void clear() {
+        if (_listenerInvoker.beforeClear(this)) {
+            InMemoryBasedCacheSupport<K, V>[] segments = segments();
+            clear(segments);
+            while (segments != _segments) {
+                segments = segments();
+                clear(segments);
+            }
+            _listenerInvoker.afterClear(this);
+        }
+    }
+
+    private void clear(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments) {
+        for (InMemoryBasedCacheSupport<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public void setMaximumLifetime(@Nullable Duration maxLifetime) {
+        if (_listenerInvoker.beforeSetMaximumLifetime(this, maxLifetime)) {
+            _defaultExpireAfter = maxLifetime;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setMaximumLifetime(maxLifetime);
+            }
+            _listenerInvoker.afterSetMaximumLifetime(this, maxLifetime);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getMaximumLifetime() {
+        return _defaultExpireAfter;
+    }
+
+    @Override
+    public void setCapacity(@Nullable Long capacity) {
+        if (capacity != null && capacity < 0) {
+            throw new IllegalArgumentException("The capacity have to be a positive number.");
+        }
+        synchronized (this) {
+            final int numberOfSegments = getNumberOfSegmentsFor(capacity);
+            final InMemoryBasedCacheSupport<K, V>[] oldSegments = _segments;
+            _capacity = capacity;
+            if (oldSegments.length != numberOfSegments) {
+                final InMemoryBasedCacheSupport<K, V>[] newSegments = createSegments(numberOfSegments);
+                _resegmenting = true;
+                try {
+                    // The new segments are published before the entries are taken, so every write which is done on an old segment
+                    // afterwards is repeated on the new ones...
+                    _segments = newSegments;
+                    // ... and the coldest entries of a new segment are evicted if it is full.
+                    restoreInto(newSegments, snapshotOf(oldSegments, Integer.MAX_VALUE));
+                    for (int i = 0; i < oldSegments.length; i++) {
+                        newSegments[i % newSegments.length].addStatisticsOf(oldSegments[i]);
+                    }
+                } finally {
+                    _resegmenting = false;
+                }
+            } else {
+                distributeCapacityOver(oldSegments, capacity);
+            }
+            if (_capacityAdvisorEnabled) {
+                updateCapacityAdvisor();
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getCapacity() {
+        return _capacity;
+    }
+
+    @Override
+    public void setWeigher(@Nullable Weigher<? super K, ? super V> weigher) {
+        synchronized (this) {
+            _weigher = weigher;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setWeigher(weigher);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Weigher<? super K, ? super V> getWeigher() {
+        return _weigher;
+    }
+
+    /**
+     * The maximum weight is distributed equally over all segments. So an element which is heavier than the share of one segment could not
+     * be held by this cache.
+     */
+    @Override
+    public void setMaximumWeight(@Nullable Long maximumWeight) {
+        if (maximumWeight != null && maximumWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight have to be a positive number.");
+        }
+        synchronized (this) {
+            _maximumWeight = maximumWeight;
+            distributeMaximumWeightOver(_segments, maximumWeight);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getMaximumWeight() {
+        return _maximumWeight;
+    }
+
+    @Override
+    @Nullable
+    public Long getWeightOf(@Nullable K key) {
+        return segmentFor(key).getWeightOf(key);
+    }
+
+    @Override
+    public void setRefreshAfter(@Nullable Duration refreshAfter) {
+        synchronized (this) {
+            _refreshAfter = refreshAfter;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setRefreshAfter(refreshAfter);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getRefreshAfter() {
+        return _refreshAfter;
+    }
+
+    @Override
+    public void setRefreshExecutor(@Nullable Executor executor) {
+        synchronized (this) {
+            _refreshExecutor = executor != null ? executor : DefaultRefreshExecutor.INSTANCE;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setRefreshExecutor(_refreshExecutor);
+            }
+        }
+    }
+
+    @Override
+    @Nonnull
+    public Executor getRefreshExecutor() {
+        return _refreshExecutor;
+    }
+
+    /**
+     * @see InMemoryBasedCacheSupport#setMaximumWaitForProduction(Duration)
+     */
+    public void setMaximumWaitForProduction(@Nullable Duration maximumWaitForProduction) {
+        synchronized (this) {
+            _maximumWaitForProduction = maximumWaitForProduction;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setMaximumWaitForProduction(maximumWaitForProduction);
+            }
+        }
+    }
+
+    @Nullable
+    public Duration getMaximumWaitForProduction() {
+        return _maximumWaitForProduction;
+    }
+
+    @Override
+    public Long size() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfRequests() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfRequests();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfHits() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfHits();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfDrops() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfDrops();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfExpirations() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfExpirations();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getTotalWeight() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getTotalWeight();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getEvictedWeight() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getEvictedWeight();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfRefreshes() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfRefreshes();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfFailedRefreshes() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfFailedRefreshes();
+        }
+        return result;
+    }
+
+    @Override
+    public Duration getRefreshDuration() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getRefreshDuration().toMilliSeconds();
+        }
+        return new Duration(result);
+    }
+
+    @Override
+    public Date getCreated() {
+        return new Date(_createdTimestamp);
+    }
+
+    @Override
+    public boolean isMetricsEnabled() {
+        return _metrics != null;
+    }
+
+    @Override
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        if (metricsEnabled != isMetricsEnabled()) {
+            synchronized (this) {
+                final CacheMetrics metrics = metricsEnabled ? new CacheMetrics() : null;
+                _metrics = metrics;
+                for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                    segment.setMetrics(metrics);
+                }
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public CacheMetrics getMetrics() {
+        return _metrics;
+    }
+
+    @Override
+    public void setNegativeMaximumLifetime(@Nullable Duration maximumLifetime) {
+        synchronized (this) {
+            _negativeMaximumLifetime = maximumLifetime;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.setNegativeMaximumLifetime(maximumLifetime);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getNegativeMaximumLifetime() {
+        return _negativeMaximumLifetime;
+    }
+
+    /**
+     * The negative capacity is distributed equally over all segments.
+     */
+    @Override
+    public void setNegativeCapacity(@Nullable Long capacity) {
+        if (capacity != null && capacity < 0) {
+            throw new IllegalArgumentException("The negative capacity have to be a positive number.");
+        }
+        synchronized (this) {
+            _negativeCapacity = capacity;
+            distributeNegativeCapacityOver(_segments, capacity);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getNegativeCapacity() {
+        return _negativeCapacity;
+    }
+
+    @Override
+    public Long getNegativeSize() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNegativeSize();
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumberOfNegativeHits() {
+        long result = 0;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            result += segment.getNumberOfNegativeHits();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isCapacityAdvisorEnabled() {
+        return _capacityAdvisorEnabled;
+    }
+
+    @Override
+    public void setCapacityAdvisorEnabled(boolean capacityAdvisorEnabled) {
+        if (capacityAdvisorEnabled != _capacityAdvisorEnabled) {
+            synchronized (this) {
+                _capacityAdvisorEnabled = capacityAdvisorEnabled;
+                updateCapacityAdvisor();
+            }
+        }
+    }
+
+    /**
+     * All segments share one advisor with the capacity of the whole cache. The retained heap is the sum of the
+     * estimates of all segments.
+     */
+    @Override
+    @Nullable
+    public CapacityAdvice getCapacityAdvice() {
+        final CapacityAdvisor advisor = _capacityAdvisor;
+        final CapacityAdvice result;
+        if (advisor != null) {
+            long estimatedRetainedHeap = 0;
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                estimatedRetainedHeap += segment.estimateRetainedHeap();
+            }
+            result = new CapacityAdvice(advisor.getCapacity(), size(), advisor.getNumberOfSampledRequests(), advisor.getEstimatedHitRatios(), estimatedRetainedHeap);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * An existing advisor is only resized, so it keeps its history.
+     */
+    protected void updateCapacityAdvisor() {
+        final Long capacity = _capacity;
+        final CapacityAdvisor oldAdvisor = _capacityAdvisor;
+        final CapacityAdvisor advisor;
+        if (!_capacityAdvisorEnabled || capacity == null) {
+            advisor = null;
+        } else if (oldAdvisor != null) {
+            oldAdvisor.resize(capacity);
+            advisor = oldAdvisor;
+        } else {
+            advisor = new CapacityAdvisor(capacity);
+        }
+        _capacityAdvisor = advisor;
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            segment.setCapacityAdvisor(advisor);
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (_listenerInvoker.beforeResetStatistics(this)) {
+            for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+                segment.resetStatistics();
+            }
+            _listenerInvoker.afterResetStatistics(this);
+        }
+    }
+
+    @Override
+    public CloseableIterator<K> iterator() {
+        final List<K> keys = new ArrayList<>();
+        for (InMemoryBasedCacheSupport<K, V> segment : _segments) {
+            try (final CloseableIterator<K> i = segment.iterator()) {
+                while (i.hasNext()) {
+                    keys.add(i.next());
+                }
+            }
+        }
+        return asCloseableIterator(keys.iterator());
+    }
+
+    @Override
+    public void close() throws Exception {
+        clear();
+    }
+
+    @Nonnull
+    protected InMemoryBasedCacheSupport<K, V> segmentFor(@Nullable K key) {
+        final InMemoryBasedCacheSupport<K, V>[] segments = segments();
+        return segments[indexFor(key, segments.length)];
+    }
+
+    /**
+     * @return the current segments. Waits if the elements are currently moved into new segments.
+     */
+    @Nonnull
+    protected InMemoryBasedCacheSupport<K, V>[] segments() {
+        InMemoryBasedCacheSupport<K, V>[] result = _segments;
+        if (_resegmenting) {
+            // The moving thread holds the monitor of this cache.
+            synchronized (this) {
+                result = _segments;
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected int indexFor(@Nullable K key, @Nonnegative int numberOfSegments) {
+        int hash = key != null ? key.hashCode() : 0;
+        // Spread the bits because a lot of hashCode() implementations only differ in the lower bits...
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash & (numberOfSegments - 1);
+    }
+
+    @Nonnegative
+    protected int getNumberOfSegmentsFor(@Nullable Long capacity) {
+        final int result;
+        if (capacity == null || capacity >= _concurrencyLevel) {
+            result = _concurrencyLevel;
+        } else if (capacity <= 1) {
+            result = 1;
+        } else {
+            result = Integer.highestOneBit(capacity.intValue());
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected InMemoryBasedCacheSupport<K, V>[] createSegments(@Nonnegative int numberOfSegments) {
+        // noinspection unchecked
+        final InMemoryBasedCacheSupport<K, V>[] segments = new InMemoryBasedCacheSupport[numberOfSegments];
+        for (int i = 0; i < numberOfSegments; i++) {
+            final InMemoryBasedCacheSupport<K, V> segment = newSegment();
+            segment.setProducingType(_producingType);
+            segment.setMaximumLifetime(_defaultExpireAfter);
+            segment.setWeigher(_weigher);
+            segment.setRefreshAfter(_refreshAfter);
+            segment.setRefreshExecutor(_refreshExecutor);
+            segment.setMaximumWaitForProduction(_maximumWaitForProduction);
+            segment.setListeners(_segmentListeners);
+            segment.setMetrics(_metrics);
+            segment.setCapacityAdvisor(_capacityAdvisor);
+            segment.setNegativeMaximumLifetime(_negativeMaximumLifetime);
+            segments[i] = segment;
+        }
+        distributeCapacityOver(segments, _capacity);
+        distributeNegativeCapacityOver(segments, _negativeCapacity);
+        distributeMaximumWeightOver(segments, _maximumWeight);
+        return segments;
+    }
+
+    protected void distributeMaximumWeightOver(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nullable Long maximumWeight) {
+        final int numberOfSegments = segments.length;
+        for (int i = 0; i < numberOfSegments; i++) {
+            if (maximumWeight != null) {
+                final long share = maximumWeight / numberOfSegments + (i < maximumWeight % numberOfSegments ? 1 : 0);
+                segments[i].setMaximumWeight(share);
+            } else {
+                segments[i].setMaximumWeight(null);
+            }
+        }
+    }
+
+    protected void distributeNegativeCapacityOver(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nullable Long negativeCapacity) {
+        final int numberOfSegments = segments.length;
+        for (int i = 0; i < numberOfSegments; i++) {
+            if (negativeCapacity != null) {
+                final long share = negativeCapacity / numberOfSegments + (i < negativeCapacity % numberOfSegments ? 1 : 0);
+                segments[i].setNegativeCapacity(share);
+            } else {
+                segments[i].setNegativeCapacity(null);
+            }
+        }
+    }
+
+    protected void distributeCapacityOver(@Nonnull InMemoryBasedCacheSupport<K, V>[] segments, @Nullable Long capacity) {
+        final int numberOfSegments = segments.length;
+        for (int i = 0; i < numberOfSegments; i++) {
+            if (capacity != null) {
+                final long share = capacity / numberOfSegments + (i < capacity % numberOfSegments ? 1 : 0);
+                segments[i].setCapacity(share);
+            } else {
+                segments[i].setCapacity(null);
+            }
+        }
+    }
+
+    @Nonnegative
+    private static int toPowerOfTwo(@Nonnegative int value) {
+        final int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>A lock striped Cache based on the Least Frequently Used algorithm. If a segment is full then the element of this segment that has been accessed the fewest times will be removed.</p>
+ *
+ * @see LfuCache
+ */
+@ThreadSafe
+public class ConcurrentLfuCache<K, V> extends ConcurrentCacheSupport<K, V> {
+
+    public ConcurrentLfuCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnegative int concurrencyLevel) {
+        super(keyType, valueType, concurrencyLevel);
+    }
+
+    public ConcurrentLfuCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        super(keyType, valueType);
+    }
+
+    @Nonnull
+    @Override
+    protected InMemoryBasedCacheSupport<K, V> newSegment() {
+        return new LfuCache<>(getKeyType(), getValueType());
+    }
+
+}
@@ -0,0 +1,44 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <p>A lock striped Cache based on the Least Recently Used algorithm. If a segment is full then the element of this segment that hasn't been accessed for the biggest period of time will be removed.</p>
+ *
+ * @see LruCache
+ */
+@ThreadSafe
+public class ConcurrentLruCache<K, V> extends ConcurrentCacheSupport<K, V> {
+
+    public ConcurrentLruCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnegative int concurrencyLevel) {
+        super(keyType, valueType, concurrencyLevel);
+    }
+
+    public ConcurrentLruCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        super(keyType, valueType);
+    }
+
+    @Nonnull
+    @Override
+    protected InMemoryBasedCacheSupport<K, V> newSegment() {
+        return new LruCache<>(getKeyType(), getValueType());
+    }
+
+}
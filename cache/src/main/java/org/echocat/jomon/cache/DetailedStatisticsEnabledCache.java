@@ -0,0 +1,46 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cache which also records expirations and the weights of its elements.
+ */
+public interface DetailedStatisticsEnabledCache<K, V> extends StatisticsEnabledCache<K, V> {
+
+    /**
+     * @return the number of entries which were removed because they reached their lifetime. These entries are also counted by
+     *          {@link #getNumberOfDrops()}.
+     */
+    @Nullable
+    public Long getNumberOfExpirations();
+
+    /**
+     * @return the sum of the weights of all elements of this cache.
+     * @see WeightEnabledCache
+     */
+    @Nullable
+    public Long getTotalWeight();
+
+    /**
+     * @return the sum of the weights of all elements that were removed because the capacity or maximum weight of this cache was reached.
+     * @see WeightEnabledCache
+     */
+    @Nullable
+    public Long getEvictedWeight();
+
+}
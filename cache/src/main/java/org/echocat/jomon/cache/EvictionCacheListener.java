@@ -0,0 +1,31 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Is informed about elements that were removed by a cache itself because its capacity or maximum weight was reached.
+ */
+public interface EvictionCacheListener extends CacheListener {
+
+    /**
+     * Is called while the cache holds its lock, so implementations should return fast and must not access the given cache.
+     */
+    public void afterEvict(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value);
+
+}
@@ -0,0 +1,150 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.lang.Long.bitCount;
+
+/**
+ * <p>A Count-Min sketch which estimates how often an element was recorded. Every element is mapped to four 4-bit counters (so the maximum
+ * estimated frequency is 15) and the smallest of these counters is the estimation.</p>
+ *
+ * <p>After <code>10 * maximumSize</code> recorded elements all counters are halved. So the sketch forgets the history over time and elements which
+ * are not popular anymore could be replaced by new ones.</p>
+ */
+@NotThreadSafe
+public class FrequencySketch {
+
+    public static final int MAXIMUM_FREQUENCY = 15;
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private long[] _table;
+    private int _tableMask;
+    private int _sampleSize;
+    private int _size;
+
+    public FrequencySketch(@Nonnegative long maximumSize) {
+        ensureCapacity(maximumSize);
+    }
+
+    /**
+     * Resizes the sketch for the given number of elements which are expected to be hold by the cache. All recorded frequencies are lost.
+     */
+    public void ensureCapacity(@Nonnegative long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximumSize have to be a positive number.");
+        }
+        final int maximum = (int) Math.min(Math.max(maximumSize, 1), Integer.MAX_VALUE >>> 1);
+        _table = new long[toPowerOfTwo(maximum)];
+        _tableMask = _table.length - 1;
+        _sampleSize = maximum <= Integer.MAX_VALUE / SAMPLE_FACTOR ? maximum * SAMPLE_FACTOR : Integer.MAX_VALUE;
+        _size = 0;
+    }
+
+    /**
+     * @return the estimated number of times the given element was recorded. This is a value between <code>0</code> and {@link #MAXIMUM_FREQUENCY}.
+     */
+    @Nonnegative
+    public int frequency(@Nullable Object element) {
+        final int hash = spread(element);
+        final int start = (hash & 3) << 2;
+        int result = MAXIMUM_FREQUENCY;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((_table[index] >>> ((start + i) << 2)) & 0xfL);
+            result = Math.min(result, count);
+        }
+        return result;
+    }
+
+    /**
+     * Records one occurrence of the given element.
+     */
+    public void increment(@Nullable Object element) {
+        final int hash = spread(element);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++_size >= _sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Removes all recorded frequencies.
+     */
+    public void clear() {
+        for (int i = 0; i < _table.length; i++) {
+            _table[i] = 0;
+        }
+        _size = 0;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    protected void reset() {
+        int numberOfOddCounters = 0;
+        for (int i = 0; i < _table.length; i++) {
+            numberOfOddCounters += bitCount(_table[i] & ONE_MASK);
+            _table[i] = (_table[i] >>> 1) & RESET_MASK;
+        }
+        _size = (_size >>> 1) - (numberOfOddCounters >>> 2);
+    }
+
+    private boolean incrementAt(@Nonnegative int index, @Nonnegative int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        final boolean result;
+        if ((_table[index] & mask) != mask) {
+            _table[index] += 1L << offset;
+            result = true;
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    @Nonnegative
+    private int indexOf(int hash, @Nonnegative int depth) {
+        long result = (hash + SEEDS[depth]) * SEEDS[depth];
+        result += result >>> 32;
+        return ((int) result) & _tableMask;
+    }
+
+    private static int spread(@Nullable Object element) {
+        int result = element != null ? element.hashCode() : 0;
+        result = ((result >>> 16) ^ result) * 0x45d9f3b;
+        result = ((result >>> 16) ^ result) * 0x45d9f3b;
+        return (result >>> 16) ^ result;
+    }
+
+    @Nonnegative
+    private static int toPowerOfTwo(@Nonnegative int value) {
+        final int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+
+}
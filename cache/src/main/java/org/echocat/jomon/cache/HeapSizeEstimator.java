@@ -0,0 +1,211 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.reflect.Modifier.isStatic;
+
+/**
+ * <p>Estimates the heap which is retained by objects by walking their object graph with reflection. The layout of a 64
+ * bit JVM with compressed object pointers is assumed, so the results are estimates and no exact measurements.</p>
+ *
+ * <p>Classes, class loaders, threads and enum constants are treated as shared and are not counted. The walk stops after
+ * {@link #getMaximumNumberOfObjects() a maximum number of objects}.</p>
+ */
+@ThreadSafe
+public class HeapSizeEstimator {
+
+    public static final HeapSizeEstimator INSTANCE = new HeapSizeEstimator();
+
+    protected static final int OBJECT_HEADER = 12;
+    protected static final int ARRAY_HEADER = 16;
+    protected static final int REFERENCE = 4;
+    protected static final int ALIGNMENT = 8;
+
+    private final ConcurrentMap<Class<?>, ClassLayout> _classToLayout = new ConcurrentHashMap<>();
+    private final int _maximumNumberOfObjects;
+
+    public HeapSizeEstimator() {
+        this(10000);
+    }
+
+    public HeapSizeEstimator(@Nonnegative int maximumNumberOfObjects) {
+        _maximumNumberOfObjects = maximumNumberOfObjects;
+    }
+
+    @Nonnegative
+    public int getMaximumNumberOfObjects() {
+        return _maximumNumberOfObjects;
+    }
+
+    /**
+     * @return the bytes of the given objects and all objects which are reachable from them.
+     */
+    @Nonnegative
+    public long estimateDeepSizeOf(@Nullable Object... roots) {
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        final Deque<Object> toVisit = new ArrayDeque<>();
+        if (roots != null) {
+            for (Object root : roots) {
+                if (root != null) {
+                    toVisit.push(root);
+                }
+            }
+        }
+        long result = 0;
+        while (!toVisit.isEmpty() && visited.size() < _maximumNumberOfObjects) {
+            final Object current = toVisit.pop();
+            if (!isShared(current) && visited.add(current)) {
+                final Class<?> type = current.getClass();
+                if (type.isArray()) {
+                    final int length = Array.getLength(current);
+                    final Class<?> componentType = type.getComponentType();
+                    result += align(ARRAY_HEADER + (long) length * sizeOf(componentType));
+                    if (!componentType.isPrimitive()) {
+                        for (int i = 0; i < length; i++) {
+                            final Object element = Array.get(current, i);
+                            if (element != null) {
+                                toVisit.push(element);
+                            }
+                        }
+                    }
+                } else {
+                    final ClassLayout layout = layoutOf(type);
+                    result += layout.getShallowSize();
+                    for (Field field : layout.getReferenceFields()) {
+                        final Object value = valueOf(field, current);
+                        if (value != null) {
+                            toVisit.push(value);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the bytes of an instance of the given type without the objects it references.
+     */
+    @Nonnegative
+    public long estimateShallowSizeOf(@Nonnull Class<?> type) {
+        return layoutOf(type).getShallowSize();
+    }
+
+    protected boolean isShared(@Nonnull Object object) {
+        return object instanceof Class || object instanceof ClassLoader || object instanceof Thread || object instanceof Enum;
+    }
+
+    @Nullable
+    protected Object valueOf(@Nonnull Field field, @Nonnull Object of) {
+        Object result;
+        try {
+            result = field.get(of);
+        } catch (IllegalAccessException ignored) {
+            result = null;
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected ClassLayout layoutOf(@Nonnull Class<?> type) {
+        ClassLayout result = _classToLayout.get(type);
+        if (result == null) {
+            long size = OBJECT_HEADER;
+            final List<Field> referenceFields = new ArrayList<>();
+            Class<?> current = type;
+            while (current != null) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!isStatic(field.getModifiers())) {
+                        final Class<?> fieldType = field.getType();
+                        size += sizeOf(fieldType);
+                        if (!fieldType.isPrimitive() && makeAccessible(field)) {
+                            referenceFields.add(field);
+                        }
+                    }
+                }
+                current = current.getSuperclass();
+            }
+            result = new ClassLayout(align(size), referenceFields.toArray(new Field[referenceFields.size()]));
+            _classToLayout.putIfAbsent(type, result);
+        }
+        return result;
+    }
+
+    protected boolean makeAccessible(@Nonnull Field field) {
+        boolean result;
+        try {
+            field.setAccessible(true);
+            result = true;
+        } catch (RuntimeException ignored) {
+            // Newer JVMs do not allow to access the internals of their modules.
+            result = false;
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected static int sizeOf(@Nonnull Class<?> type) {
+        final int result;
+        if (type == long.class || type == double.class) {
+            result = 8;
+        } else if (type == int.class || type == float.class) {
+            result = 4;
+        } else if (type == short.class || type == char.class) {
+            result = 2;
+        } else if (type == byte.class || type == boolean.class) {
+            result = 1;
+        } else {
+            result = REFERENCE;
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected static long align(@Nonnegative long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    protected static class ClassLayout {
+
+        private final long _shallowSize;
+        private final Field[] _referenceFields;
+
+        public ClassLayout(@Nonnegative long shallowSize, @Nonnull Field[] referenceFields) {
+            _shallowSize = shallowSize;
+            _referenceFields = referenceFields;
+        }
+
+        @Nonnegative
+        public long getShallowSize() {
+            return _shallowSize;
+        }
+
+        @Nonnull
+        public Field[] getReferenceFields() {
+            return _referenceFields;
+        }
+    }
+
+}
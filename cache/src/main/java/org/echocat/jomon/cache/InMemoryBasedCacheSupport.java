@@ -14,20 +14,29 @@
 
 package org.echocat.jomon.cache;
 
+import org.echocat.jomon.cache.RefreshEnabledCache.DefaultRefreshExecutor;
+import org.echocat.jomon.cache.Value.Evicted;
 import org.echocat.jomon.cache.Value.Fixed;
+import org.echocat.jomon.cache.Value.Lazy;
+import org.echocat.jomon.runtime.concurrent.StopWatch;
 import org.echocat.jomon.runtime.iterators.CloseableIterator;
-import org.echocat.jomon.runtime.util.Duration;
-import org.echocat.jomon.runtime.util.ProducingType;
-import org.echocat.jomon.runtime.util.ValueProducer;
-import org.echocat.jomon.runtime.util.ValueProducingFailedException;
+import org.echocat.jomon.runtime.math.StripedCounter;
+import org.echocat.jomon.runtime.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static org.echocat.jomon.runtime.CollectionUtils.asCloseableIterator;
 
 /**
@@ -39,7 +48,14 @@ import static org.echocat.jomon.runtime.CollectionUtils.asCloseableIterator;
  */
 @SuppressWarnings("ProtectedField")
 @ThreadSafe
-public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V> implements StatisticsEnabledCache<K, V>, LimitedCache<K, V>, ClearableCache<K, V>, ListenerEnabledCache<K, V>, IdentifiedCache<K, V>, ProducingTypeEnabledCache<K, V>, KeysEnabledCache<K, V>, AutoCloseable {
+public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V> implements DetailedStatisticsEnabledCache<K, V>, LimitedCache<K, V>, ClearableCache<K, V>, ListenerEnabledCache<K, V>, IdentifiedCache<K, V>, ProducingTypeEnabledCache<K, V>, KeysEnabledCache<K, V>, WeightEnabledCache<K, V>, RefreshEnabledCache<K, V>, BulkEnabledCache<K, V>, SnapshotEnabledCache<K, V>, MetricsEnabledCache<K, V>, CapacityAdvisorEnabledCache<K, V>, NegativeCachingEnabledCache<K, V>, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryBasedCacheSupport.class);
+    private static final int NUMBER_OF_ENTRIES_TO_ESTIMATE_HEAP_OF = 32;
+    /**
+     * The node of the {@link HashMap} and its share of the table.
+     */
+    private static final int HASH_MAP_OVERHEAD_PER_ENTRY = 40;
 
     protected final Object _lock = new Object();
     protected final CacheListenerInvoker _listenerInvoker = new CacheListenerInvoker();
@@ -49,14 +65,35 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
     protected Map<K, CacheEntry<K, V>> _entries;
     protected Integer _capacity;
     protected Duration _defaultExpireAfter;
+    protected Weigher<? super K, ? super V> _weigher;
+    protected Long _maximumWeight;
+    protected Duration _refreshAfter;
+    protected Duration _maximumWaitForProduction;
+    protected Executor _refreshExecutor = DefaultRefreshExecutor.INSTANCE;
     private ProducingType _producingType = ProducingType.DEFAULT;
 
-    protected long _numberOfRequests;
-    protected long _numberOfHits;
-    protected long _numberOfDrops;
+    protected final StripedCounter _numberOfRequests = new StripedCounter();
+    protected final StripedCounter _numberOfHits = new StripedCounter();
+    protected final StripedCounter _numberOfDrops = new StripedCounter();
+    protected final StripedCounter _numberOfExpirations = new StripedCounter();
+    protected final StripedCounter _numberOfNegativeHits = new StripedCounter();
+    protected final Tombstones<K> _tombstones = new Tombstones<>();
+    protected volatile Duration _negativeMaximumLifetime;
+    protected long _totalWeight;
+    protected long _evictedWeight;
+    protected long _numberOfRefreshes;
+    protected long _numberOfFailedRefreshes;
+    protected long _refreshDuration;
+    protected volatile CacheMetrics _metrics;
+    protected volatile CapacityAdvisor _capacityAdvisor;
+    private volatile boolean _capacityAdvisorEnabled;
     protected CacheEntry<K, V> _first;
     protected CacheEntry<K, V> _last;
-    protected long _nearstExpiringTime;
+    // Is only created with the first entry which expires, see scheduleExpiration().
+    @GuardedBy("_lock")
+    private TimerWheel<K, V> _timerWheel;
+    // Is true while evictLast() removes an entry, so handleRemove() could inform the EvictionCacheListeners.
+    private boolean _evicting;
 
     protected InMemoryBasedCacheSupport(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
         super(keyType, valueType);
@@ -64,9 +101,7 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         _entries = new HashMap<>();
         _first = null;
         _last = null;
-        _numberOfHits = 0;
-        _numberOfRequests = 0;
-        _nearstExpiringTime = currentTimeMillis();
+        _tombstones.setCapacity((int) DEFAULT_NEGATIVE_CAPACITY);
     }
 
     @Override
@@ -89,6 +124,83 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         return _capacity != null ? _capacity.longValue() : null;
     }
 
+    @Override
+    @Nullable
+    public Weigher<? super K, ? super V> getWeigher() {
+        return _weigher;
+    }
+
+    /**
+     * The weigher is only applied to elements that are put after this call.
+     */
+    @Override
+    public void setWeigher(@Nullable Weigher<? super K, ? super V> weigher) {
+        synchronized (_lock) {
+            _weigher = weigher;
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getMaximumWeight() {
+        return _maximumWeight;
+    }
+
+    @Override
+    public void setMaximumWeight(@Nullable Long maximumWeight) {
+        if (maximumWeight != null && maximumWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight have to be a positive number.");
+        }
+        synchronized (_lock) {
+            _maximumWeight = maximumWeight;
+            evictWhileOverweight();
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getWeightOf(@Nullable K key) {
+        synchronized (_lock) {
+            final CacheEntry<K, V> entry = _entries.get(key);
+            return entry != null ? entry.getWeight() : null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getRefreshAfter() {
+        return _refreshAfter;
+    }
+
+    @Override
+    public void setRefreshAfter(@Nullable Duration refreshAfter) {
+        _refreshAfter = refreshAfter;
+    }
+
+    @Override
+    @Nonnull
+    public Executor getRefreshExecutor() {
+        return _refreshExecutor;
+    }
+
+    @Override
+    public void setRefreshExecutor(@Nullable Executor executor) {
+        _refreshExecutor = executor != null ? executor : DefaultRefreshExecutor.INSTANCE;
+    }
+
+    @Nullable
+    public Duration getMaximumWaitForProduction() {
+        return _maximumWaitForProduction;
+    }
+
+    /**
+     * If the value of an expired element is produced by another thread, callers wait at most the given duration and get the expired value
+     * afterwards. <code>null</code> means that callers wait until the production is done.
+     */
+    public void setMaximumWaitForProduction(@Nullable Duration maximumWaitForProduction) {
+        _maximumWaitForProduction = maximumWaitForProduction;
+    }
+
     @Override
     public void setListeners(@Nullable Collection<CacheListener> listeners) {
         _listenerInvoker.setListeners(listeners);
@@ -120,7 +232,10 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         final CacheEntry<K, V> entry;
         synchronized (_lock) {
             if (_last != null) {
+                updateListBeforeRemove(_last);
+                descheduleExpiration(_last);
                 entry = _entries.remove(_last.getKey());
+                _totalWeight -= _last.getWeight();
                 setLast(_last.getPrevious());
             } else {
                 entry = null;
@@ -136,35 +251,107 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
     }
 
     /**
-     * Remove entries that are out of their maxLifetime.
+     * Removes the {@link #removeLast() last element} and records its weight as evicted.
      */
-    @SuppressWarnings("UnnecessaryUnboxing")
-    public void cleanUpLifetimeExpired() {
-        final long currentTime = currentTimeMillis();
-        // Test whether there could be an element that has to be removed
-        if (_nearstExpiringTime > 0 && _nearstExpiringTime <= currentTime) {
-            // Go through all elements and remove elements that are outdated
-            final List<K> keysToRemove = new ArrayList<>();
-            synchronized (_lock) {
-                _nearstExpiringTime = 0;
-                for (final CacheEntry<K, V> cacheEntry : _entries.values()) {
-                    final Long expire = cacheEntry.getExpire();
-                    if (expire != null) {
-                        final long unboxedExpire = expire.longValue();
-                        if (unboxedExpire <= currentTime) {
-                            keysToRemove.add(cacheEntry.getKey());
-                        } else if (_nearstExpiringTime == 0 || unboxedExpire < _nearstExpiringTime) {
-                            _nearstExpiringTime = unboxedExpire;
-                        }
-                    }
+    protected void evictLast() {
+        synchronized (_lock) {
+            final CacheMetrics metrics = _metrics;
+            final long started = metrics != null ? nanoTime() : 0;
+            final long oldTotalWeight = _totalWeight;
+            _evicting = true;
+            try {
+                removeLast();
+            } finally {
+                _evicting = false;
+            }
+            _evictedWeight += oldTotalWeight - _totalWeight;
+            if (metrics != null) {
+                metrics.recordEviction(nanoTime() - started);
+            }
+        }
+    }
+
+    protected void evictWhileOverweight() {
+        synchronized (_lock) {
+            final Long maximumWeight = _maximumWeight;
+            if (maximumWeight != null && _totalWeight > maximumWeight) {
+                cleanUpLifetimeExpired(true);
+                while (_totalWeight > maximumWeight && !_entries.isEmpty()) {
+                    evictLast();
                 }
-                for (K key : keysToRemove) {
-                    removeInternal(key);
+            }
+        }
+    }
+
+    @Nonnegative
+    protected long weigh(@Nullable K key, @Nullable Value<V> value) {
+        final Weigher<? super K, ? super V> weigher = _weigher;
+        final long result;
+        if (weigher == null) {
+            result = 1;
+        } else if (value instanceof Fixed) {
+            result = weigher.weigh(key, value.get());
+        } else {
+            // The value will be weighed after it was produced...
+            result = 0;
+        }
+        if (result < 0) {
+            throw new IllegalStateException(weigher + " returned a negative weight for " + key + ".");
+        }
+        return result;
+    }
+
+    /**
+     * Is called after the value of the given entry was produced to apply the real weight of it.
+     */
+    protected void updateWeightAfterProduce(@Nonnull CacheEntry<K, V> entry, @Nullable V value) {
+        final Weigher<? super K, ? super V> weigher = _weigher;
+        if (weigher != null) {
+            final K key = entry.getKey();
+            final long weight = weigher.weigh(key, value);
+            if (weight < 0) {
+                throw new IllegalStateException(weigher + " returned a negative weight for " + key + ".");
+            }
+            synchronized (_lock) {
+                // noinspection ObjectEquality
+                if (_entries.get(key) == entry) {
+                    _totalWeight += weight - entry.getWeight();
+                    entry.setWeight(weight);
+                    evictWhileOverweight();
                 }
             }
         }
     }
 
+    /**
+     * Remove entries that are out of their maxLifetime.
+     */
+    public void cleanUpLifetimeExpired() {
+        cleanUpLifetimeExpired(true);
+    }
+
+    /**
+     * Remove entries that are out of their maxLifetime. The entries are ordered by their expire time in a {@link TimerWheel} so only the
+     * expired entries have to be visited.
+     *
+     * @param precise if <code>false</code> entries that expired within the last second could remain in the cache.
+     * @see TimerWheel#advance(long, boolean)
+     */
+    protected void cleanUpLifetimeExpired(boolean precise) {
+        final List<CacheEntry<K, V>> expired;
+        synchronized (_lock) {
+            final TimerWheel<K, V> timerWheel = _timerWheel;
+            expired = timerWheel != null ? timerWheel.advance(currentTimeMillis(), precise) : Collections.<CacheEntry<K, V>>emptyList();
+            for (CacheEntry<K, V> entry : expired) {
+                internalRemove(entry.getKey());
+                _numberOfExpirations.increment();
+            }
+        }
+        for (CacheEntry<K, V> entry : expired) {
+            handleRemove(entry);
+        }
+    }
+
     @Override
     public void clear() {
         if (_listenerInvoker.beforeClear(this)) {
@@ -174,6 +361,12 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
                 _entries = new HashMap<>();
                 _first = null;
                 _last = null;
+                if (_timerWheel != null) {
+                    _timerWheel.clear();
+                }
+                _tombstones.clear();
+                _totalWeight = 0;
+                updateListAfterClear();
                 resetStatistics();
             }
             for (CacheEntry<K, V> entry : oldEntries.values()) {
@@ -195,18 +388,25 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         checkKey(key);
         final V value;
         if (_listenerInvoker.beforeGet(this, key)) {
+            final CacheMetrics metrics = _metrics;
+            final long started = metrics != null ? nanoTime() : 0;
             CacheEntry<K, V> cacheEntry;
             CacheEntry<K, V> outdatedCacheEntry = null;
+            _numberOfRequests.increment();
+            recordRequestOf(key);
             synchronized (_lock) {
-                _numberOfRequests++;
+                if (metrics != null) {
+                    metrics.recordLockWait(nanoTime() - started);
+                }
                 cacheEntry = _entries.get(key);
                 if (cacheEntry != null) {
                     if (isOutDated(cacheEntry)) {
                         // An outdated entry, remove it ...
                         outdatedCacheEntry = internalRemove(key);
+                        _numberOfExpirations.increment();
                         cacheEntry = null;
                     } else {
-                        _numberOfHits++;
+                        _numberOfHits.increment();
                         cacheEntry.hit();
                         updateListAfterHit(cacheEntry);
                     }
@@ -217,6 +417,9 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
             }
             final Value<V> valueHolder = cacheEntry == null ? null : cacheEntry.getValue();
             value = valueHolder != null ? valueHolder.get() : null;
+            if (metrics != null) {
+                metrics.recordGet(cacheEntry != null, nanoTime() - started);
+            }
             _listenerInvoker.afterGet(this, key, valueHolder);
         } else {
             value = null;
@@ -236,31 +439,74 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         if (_listenerInvoker.beforeGet(this, key)) {
             CacheEntry<K, V> cacheEntry;
             CacheEntry<K, V> outdatedCacheEntry = null;
+            CacheEntry<K, V> toRefresh = null;
+            boolean created = false;
+            boolean negativeHit = false;
+            final CacheMetrics metrics = _metrics;
+            final long started = metrics != null ? nanoTime() : 0;
+            _numberOfRequests.increment();
+            recordRequestOf(key);
             synchronized (_lock) {
-                _numberOfRequests++;
+                if (metrics != null) {
+                    metrics.recordLockWait(nanoTime() - started);
+                }
                 cacheEntry = _entries.get(key);
                 if (cacheEntry != null) {
                     if (isOutDated(cacheEntry)) {
                         // An outdated entry, remove it ...
                         outdatedCacheEntry = internalRemove(key);
+                        _numberOfExpirations.increment();
                         cacheEntry = null;
                     } else {
-                        _numberOfHits++;
+                        _numberOfHits.increment();
                         cacheEntry.hit();
                         updateListAfterHit(cacheEntry);
+                        if (cacheValueProducer != null && isRefreshRequired(cacheEntry)) {
+                            // The entry is old enough, so produce a new value in the background but deliver the current one ...
+                            cacheEntry.setRefreshing(true);
+                            toRefresh = cacheEntry;
+                        }
                     }
                 }
-                if (cacheEntry == null && cacheValueProducer != null) {
-                    cacheEntry = new CacheEntry<>(key, getTargetExpireAfterBasedOn(expireAfter), cacheValueProducer, _producingType);
+                if (cacheEntry == null && cacheValueProducer != null && isNegativeHit(key)) {
+                    // The producer returned null for this key a short time ago, so do not ask it again ...
+                    negativeHit = true;
+                }
+                if (cacheEntry == null && cacheValueProducer != null && !negativeHit) {
+                    final Long targetExpireAfter = getTargetExpireAfterBasedOn(expireAfter);
+                    cacheEntry = newCacheEntry(key, targetExpireAfter, cacheValueProducer, _producingType);
+                    final Value<V> staleValue = outdatedCacheEntry != null ? producedValueOf(outdatedCacheEntry) : null;
+                    final Duration maximumWaitForProduction = _maximumWaitForProduction;
+                    if (staleValue != null && maximumWaitForProduction != null) {
+                        cacheEntry.setValue(targetExpireAfter, new Lazy<>(key, cacheValueProducer, _producingType, staleValue, maximumWaitForProduction.toMilliSeconds()));
+                    }
                     internalPut(cacheEntry);
+                    created = true;
                 }
             }
             if (outdatedCacheEntry != null) {
                 handleRemove(outdatedCacheEntry);
             }
             final Value<V> valueHolder = cacheEntry != null ? cacheEntry.getValue() : null;
+            if (toRefresh != null) {
+                scheduleRefresh(toRefresh, cacheValueProducer, getTargetExpireAfterBasedOn(expireAfter));
+            }
+            final long loadStarted = metrics != null && created ? nanoTime() : 0;
             value = valueHolder != null ? valueHolder.get() : null;
+            if (metrics != null) {
+                final long finished = nanoTime();
+                if (created) {
+                    metrics.recordLoad(finished - loadStarted);
+                }
+                metrics.recordGet(!created && cacheEntry != null, finished - started);
+            }
             checkValueAfterProducing(value);
+            if (created) {
+                updateWeightAfterProduce(cacheEntry, value);
+                if (value == null) {
+                    rememberAsNegative(cacheEntry);
+                }
+            }
             _listenerInvoker.afterGet(this, key, valueHolder);
         } else {
             value = null;
@@ -268,6 +514,258 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         return value;
     }
 
+    @Nullable
+    protected Value<V> producedValueOf(@Nonnull CacheEntry<K, V> entry) {
+        final Value<V> value = entry.getValue();
+        final Value<V> result;
+        if (value instanceof Lazy) {
+            final Lazy<?, V> lazy = (Lazy<?, V>) value;
+            result = lazy.isProduced() ? new Fixed<>(lazy.getWithoutProducing()) : null;
+        } else {
+            result = value;
+        }
+        return result;
+    }
+
+    protected boolean isRefreshRequired(@Nonnull CacheEntry<K, V> entry) {
+        final Duration refreshAfter = _refreshAfter;
+        final boolean result;
+        if (refreshAfter != null && !entry.isRefreshing() && entry.getCreated() + refreshAfter.toMilliSeconds() <= currentTimeMillis()) {
+            // A value which is still in production could not be refreshed ...
+            result = producedValueOf(entry) != null;
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    protected void scheduleRefresh(@Nonnull final CacheEntry<K, V> entry, @Nonnull final ValueProducer<K, V> producer, @Nullable final Long expireAfter) {
+        try {
+            _refreshExecutor.execute(new Runnable() { @Override public void run() {
+                refresh(entry, producer, expireAfter);
+            }});
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Could not schedule the refresh of " + entry.getKey() + " in " + this + ". The current value will be delivered until the next try.", e);
+            synchronized (_lock) {
+                entry.setRefreshing(false);
+            }
+        }
+    }
+
+    /**
+     * Produces a new value for the given entry and replaces the current value of it if the entry is still part of this cache. If the
+     * producing fails the current value remains until it expires.
+     */
+    protected void refresh(@Nonnull CacheEntry<K, V> entry, @Nonnull ValueProducer<K, V> producer, @Nullable Long expireAfter) {
+        final K key = entry.getKey();
+        final StopWatch stopWatch = new StopWatch();
+        V value = null;
+        boolean success = false;
+        try {
+            value = producer.produce(key);
+            checkValueAfterProducing(value);
+            if (producer instanceof PostProducing) {
+                // noinspection unchecked
+                ((PostProducing<K, V>) producer).postProducing(key, value);
+            }
+            success = true;
+        } catch (Exception e) {
+            LOG.warn("Could not refresh the value of " + key + " in " + this + ". The current value will be delivered until the next try.", e);
+        } finally {
+            synchronized (_lock) {
+                _refreshDuration += stopWatch.getCurrentDuration().toMilliSeconds();
+                entry.setRefreshing(false);
+                if (success) {
+                    _numberOfRefreshes++;
+                    // noinspection ObjectEquality
+                    if (_entries.get(key) == entry) {
+                        entry.setValue(expireAfter, value);
+                        rescheduleExpiration(entry);
+                        final long weight = weigh(key, entry.getValue());
+                        _totalWeight += weight - entry.getWeight();
+                        entry.setWeight(weight);
+                        evictWhileOverweight();
+                    }
+                } else {
+                    _numberOfFailedRefreshes++;
+                }
+            }
+        }
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys) {
+        return getAll(keys, null, null);
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final List<K> toGet = new ArrayList<>();
+        for (K key : keys) {
+            checkKey(key);
+            if (_listenerInvoker.beforeGet(this, key)) {
+                toGet.add(key);
+            }
+        }
+        final BulkProduction<K, V> production = producer != null ? new BulkProduction<>(producer) : null;
+        final Map<K, CacheEntry<K, V>> entries;
+        try {
+            entries = lookupAll(toGet, production, getTargetExpireAfterBasedOn(expireAfter));
+        } finally {
+            if (production != null) {
+                production.seal();
+            }
+        }
+        final Map<K, V> result = resolveAll(entries, production);
+        for (K key : toGet) {
+            final CacheEntry<K, V> entry = entries.get(key);
+            _listenerInvoker.afterGet(this, key, entry != null ? entry.getValue() : null);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up all entries of the given keys while holding the lock only once. If a production is given an entry for every missing key is
+     * created and will be produced by the production. The production has to be {@link BulkProduction#seal() sealed} afterwards.
+     *
+     * @see #resolveAll(Map, BulkProduction)
+     */
+    @Nonnull
+    Map<K, CacheEntry<K, V>> lookupAll(@Nonnull Iterable<K> keys, @Nullable BulkProduction<K, V> production, @Nullable Long expireAfter) {
+        final Map<K, CacheEntry<K, V>> result = new LinkedHashMap<>();
+        final List<CacheEntry<K, V>> outdatedCacheEntries = new ArrayList<>();
+        synchronized (_lock) {
+            for (K key : keys) {
+                if (!result.containsKey(key)) {
+                    _numberOfRequests.increment();
+                    recordRequestOf(key);
+                    CacheEntry<K, V> cacheEntry = _entries.get(key);
+                    if (cacheEntry != null) {
+                        if (isOutDated(cacheEntry)) {
+                            // An outdated entry, remove it ...
+                            outdatedCacheEntries.add(internalRemove(key));
+                            _numberOfExpirations.increment();
+                            cacheEntry = null;
+                        } else {
+                            _numberOfHits.increment();
+                            cacheEntry.hit();
+                            updateListAfterHit(cacheEntry);
+                        }
+                    }
+                    if (cacheEntry == null && production != null && !isNegativeHit(key)) {
+                        production.add(key);
+                        cacheEntry = newCacheEntry(key, expireAfter, production, _producingType);
+                        internalPut(cacheEntry);
+                    }
+                    if (cacheEntry != null) {
+                        result.put(key, cacheEntry);
+                    }
+                }
+            }
+        }
+        for (CacheEntry<K, V> outdatedCacheEntry : outdatedCacheEntries) {
+            handleRemove(outdatedCacheEntry);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the values of the given entries. This could trigger the given production.
+     */
+    @Nonnull
+    Map<K, V> resolveAll(@Nonnull Map<K, CacheEntry<K, V>> entries, @Nullable BulkProduction<K, V> production) {
+        final Map<K, V> result = new LinkedHashMap<>();
+        for (Entry<K, CacheEntry<K, V>> keyAndEntry : entries.entrySet()) {
+            final K key = keyAndEntry.getKey();
+            final CacheEntry<K, V> cacheEntry = keyAndEntry.getValue();
+            final Value<V> valueHolder = cacheEntry.getValue();
+            final V value = valueHolder != null ? valueHolder.get() : null;
+            checkValueAfterProducing(value);
+            if (production != null && production.contains(key)) {
+                updateWeightAfterProduce(cacheEntry, value);
+                if (value == null) {
+                    rememberAsNegative(cacheEntry);
+                }
+            }
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values) {
+        putAll(values, null);
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        final Long targetExpireAfter = getTargetExpireAfterBasedOn(expireAfter);
+        final Map<K, Fixed<V>> toPut = new LinkedHashMap<>();
+        for (Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+            final K key = keyAndValue.getKey();
+            final V value = keyAndValue.getValue();
+            checkKey(key);
+            checkValue(value);
+            final Fixed<V> fixed = new Fixed<>(value);
+            if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
+                toPut.put(key, fixed);
+            }
+        }
+        synchronized (_lock) {
+            for (Entry<K, Fixed<V>> keyAndValue : toPut.entrySet()) {
+                internalPut(newCacheEntry(keyAndValue.getKey(), targetExpireAfter, keyAndValue.getValue().get()));
+            }
+        }
+        for (Entry<K, Fixed<V>> keyAndValue : toPut.entrySet()) {
+            _listenerInvoker.afterPut(this, keyAndValue.getKey(), keyAndValue.getValue(), expireAfter);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<CacheSnapshotEntry<K, V>> snapshot(@Nonnegative int maximumNumberOfEntries) {
+        final List<CacheSnapshotEntry<K, V>> result = new ArrayList<>();
+        synchronized (_lock) {
+            final long now = currentTimeMillis();
+            CacheEntry<K, V> current = _first;
+            while (current != null && result.size() < maximumNumberOfEntries) {
+                final Value<V> value = producedValueOf(current);
+                final Long expire = current.getExpire();
+                if (value != null && (expire == null || expire > now)) {
+                    result.add(new CacheSnapshotEntry<>(current.getKey(), value.get(), expire != null ? expire - now : null, current.getHits()));
+                }
+                current = current.getNext();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The entries are put from the last to the first one, so the implementations have to handle {@link #updateListAfterPut(CacheEntry)}
+     * for entries that already have hits.
+     */
+    @Override
+    public void restore(@Nonnull List<CacheSnapshotEntry<K, V>> entries) {
+        synchronized (_lock) {
+            final ListIterator<CacheSnapshotEntry<K, V>> i = entries.listIterator(entries.size());
+            while (i.hasPrevious()) {
+                final CacheSnapshotEntry<K, V> entry = i.previous();
+                final K key = entry.getKey();
+                checkKey(key);
+                checkValue(entry.getValue());
+                if (!_entries.containsKey(key)) {
+                    final CacheEntry<K, V> newEntry = newCacheEntry(key, entry.getExpireAfter(), entry.getValue());
+                    newEntry.setHits(entry.getHits());
+                    internalPut(newEntry);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean contains(K key) {
         checkKey(key);
@@ -282,6 +780,18 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
      */
     protected abstract void updateListAfterPut(CacheEntry<K, V> newEntry);
 
+    /**
+     * Is called before the given entry is unlinked from the list. Could be overwritten if the caching strategy holds additional
+     * references to entries of the list.
+     */
+    protected void updateListBeforeRemove(@Nonnull CacheEntry<K, V> entry) {}
+
+    /**
+     * Is called by the {@link #clear} method after the list was dropped. Could be overwritten if the caching strategy holds
+     * additional references to entries of the list.
+     */
+    protected void updateListAfterClear() {}
+
     @Override
     public void put(@Nullable K key, @Nullable V value) {
         put(key, value, null);
@@ -294,12 +804,31 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         final Fixed<V> fixed = new Fixed<>(value);
         if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
             final Long targetExpireAfter = getTargetExpireAfterBasedOn(expireAfter);
-            final CacheEntry<K, V> newEntry = new CacheEntry<>(key, targetExpireAfter, value);
+            final CacheEntry<K, V> newEntry = newCacheEntry(key, targetExpireAfter, value);
             internalPut(newEntry);
             _listenerInvoker.afterPut(this, key, fixed, expireAfter);
         }
     }
 
+    /**
+     * Creates the entry for a value that was put into this cache. Could be overwritten if the caching strategy needs to store additional
+     * information in every entry.
+     */
+    @Nonnull
+    protected CacheEntry<K, V> newCacheEntry(@Nullable K key, @Nullable Long expireAfter, @Nullable V value) {
+        return new CacheEntry<>(key, expireAfter, value);
+    }
+
+    /**
+     * Creates the entry for a value that will be produced by the given producer.
+     *
+     * @see #newCacheEntry(Object, Long, Object)
+     */
+    @Nonnull
+    protected CacheEntry<K, V> newCacheEntry(@Nullable K key, @Nullable Long expireAfter, @Nonnull ValueProducer<K, V> producer, @Nonnull ProducingType producingType) {
+        return new CacheEntry<>(key, expireAfter, producer, producingType);
+    }
+
     @SuppressWarnings("UnnecessaryBoxing")
     @Nullable
     protected Long getTargetExpireAfterBasedOn(@Nullable Duration expireAfter) {
@@ -341,7 +870,13 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
     }
 
     protected void handleRemove(@Nullable CacheEntry<K, V> cacheEntry) {
-        _numberOfDrops++;
+        _numberOfDrops.increment();
+        if (_evicting && cacheEntry != null) {
+            final Value<V> value = producedValueOf(cacheEntry);
+            if (value != null) {
+                _listenerInvoker.afterEvict(this, cacheEntry.getKey(), new Evicted<>(value.get(), cacheEntry.getExpire()));
+            }
+        }
     }
 
     protected void setFirst(@Nullable CacheEntry<K, V> cacheEntry) {
@@ -388,26 +923,34 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         if (capacity != null && capacity > Integer.valueOf(Integer.MAX_VALUE).longValue()) {
             throw new IllegalArgumentException("The capacity does not reach " + Integer.MAX_VALUE + ".");
         }
-        final List<CacheEntry<K, V>> toCleanUp;
         synchronized (_lock) {
             _capacity = capacity != null ? capacity.intValue() : null;
-            final Map<K, CacheEntry<K, V>> old = _entries;
-            toCleanUp = new ArrayList<>();
-            _entries = _capacity != null ? new HashMap<K, CacheEntry<K, V>>(_capacity, 1f) : new HashMap<K, CacheEntry<K, V>>();
-            int i = 0;
-            for (Entry<K, CacheEntry<K, V>> entry : old.entrySet()) {
-                if (i < capacity) {
-                    _entries.put(entry.getKey(), entry.getValue());
-                } else {
-                    toCleanUp.add(entry.getValue());
-                }
-                i++;
+            evictWhileOverCapacity();
+        }
+        if (_capacityAdvisorEnabled) {
+            final CapacityAdvisor advisor = _capacityAdvisor;
+            if (capacity == null) {
+                setCapacityAdvisor(null);
+            } else if (advisor != null) {
+                advisor.resize(capacity);
+            } else {
+                setCapacityAdvisor(new CapacityAdvisor(capacity));
             }
         }
-        for (CacheEntry<K, V> entry : toCleanUp) {
-            try {
-                handleRemove(entry);
-            } catch (ValueProducingFailedException ignored) {
+    }
+
+    /**
+     * Evicts entries by the caching strategy until the cache does not hold more entries than its capacity - like it
+     * is done on put.
+     */
+    protected void evictWhileOverCapacity() {
+        synchronized (_lock) {
+            final Integer capacity = _capacity;
+            if (capacity != null && _entries.size() > capacity) {
+                cleanUpLifetimeExpired(true);
+                while (_entries.size() > capacity && _last != null) {
+                    evictLast();
+                }
             }
         }
     }
@@ -421,17 +964,47 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
 
     @Override
     public Long getNumberOfHits() {
-        return _numberOfHits;
+        return _numberOfHits.get();
     }
 
     @Override
     public Long getNumberOfRequests() {
-        return _numberOfRequests;
+        return _numberOfRequests.get();
     }
 
     @Override
     public Long getNumberOfDrops() {
-        return _numberOfDrops;
+        return _numberOfDrops.get();
+    }
+
+    @Override
+    public Long getNumberOfExpirations() {
+        return _numberOfExpirations.get();
+    }
+
+    @Override
+    public Long getTotalWeight() {
+        return _totalWeight;
+    }
+
+    @Override
+    public Long getEvictedWeight() {
+        return _evictedWeight;
+    }
+
+    @Override
+    public Long getNumberOfRefreshes() {
+        return _numberOfRefreshes;
+    }
+
+    @Override
+    public Long getNumberOfFailedRefreshes() {
+        return _numberOfFailedRefreshes;
+    }
+
+    @Override
+    public Duration getRefreshDuration() {
+        return new Duration(_refreshDuration);
     }
 
     @Override
@@ -439,6 +1012,172 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         return new Date(_createdTimestamp);
     }
 
+    @Override
+    public boolean isMetricsEnabled() {
+        return _metrics != null;
+    }
+
+    @Override
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        if (metricsEnabled != isMetricsEnabled()) {
+            setMetrics(metricsEnabled ? new CacheMetrics() : null);
+        }
+    }
+
+    @Override
+    @Nullable
+    public CacheMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Allows to share one metrics instance between several caches, like the segments of a {@link ConcurrentCacheSupport}.
+     */
+    protected void setMetrics(@Nullable CacheMetrics metrics) {
+        _metrics = metrics;
+    }
+
+    @Override
+    public void setNegativeMaximumLifetime(@Nullable Duration maximumLifetime) {
+        synchronized (_lock) {
+            _negativeMaximumLifetime = maximumLifetime;
+            if (maximumLifetime == null) {
+                _tombstones.clear();
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getNegativeMaximumLifetime() {
+        return _negativeMaximumLifetime;
+    }
+
+    @Override
+    public void setNegativeCapacity(@Nullable Long capacity) {
+        if (capacity != null && (capacity < 0 || capacity > Integer.valueOf(Integer.MAX_VALUE).longValue())) {
+            throw new IllegalArgumentException("The negative capacity have to be a positive number which does not reach " + Integer.MAX_VALUE + ".");
+        }
+        synchronized (_lock) {
+            _tombstones.setCapacity(capacity != null ? capacity.intValue() : null);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getNegativeCapacity() {
+        synchronized (_lock) {
+            final Integer capacity = _tombstones.getCapacity();
+            return capacity != null ? capacity.longValue() : null;
+        }
+    }
+
+    @Override
+    public Long getNegativeSize() {
+        synchronized (_lock) {
+            return (long) _tombstones.size();
+        }
+    }
+
+    @Override
+    public Long getNumberOfNegativeHits() {
+        return _numberOfNegativeHits.get();
+    }
+
+    /**
+     * Has to be called while holding the lock.
+     */
+    protected boolean isNegativeHit(@Nullable K key) {
+        final boolean result = _negativeMaximumLifetime != null && _tombstones.contains(key, currentTimeMillis());
+        if (result) {
+            _numberOfNegativeHits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the given entry by a tombstone if it is still part of this cache and the negative caching is enabled.
+     */
+    protected void rememberAsNegative(@Nonnull CacheEntry<K, V> entry) {
+        final Duration maximumLifetime = _negativeMaximumLifetime;
+        if (maximumLifetime != null) {
+            final K key = entry.getKey();
+            synchronized (_lock) {
+                // noinspection ObjectEquality
+                if (_entries.get(key) == entry) {
+                    internalRemove(key);
+                    final long now = currentTimeMillis();
+                    _tombstones.add(key, now + maximumLifetime.toMilliSeconds(), now);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isCapacityAdvisorEnabled() {
+        return _capacityAdvisorEnabled;
+    }
+
+    @Override
+    public void setCapacityAdvisorEnabled(boolean capacityAdvisorEnabled) {
+        if (capacityAdvisorEnabled != _capacityAdvisorEnabled) {
+            _capacityAdvisorEnabled = capacityAdvisorEnabled;
+            final Integer capacity = _capacity;
+            setCapacityAdvisor(capacityAdvisorEnabled && capacity != null ? new CapacityAdvisor(capacity) : null);
+        }
+    }
+
+    @Override
+    @Nullable
+    public CapacityAdvice getCapacityAdvice() {
+        final CapacityAdvisor advisor = _capacityAdvisor;
+        return advisor != null ? new CapacityAdvice(advisor.getCapacity(), size(), advisor.getNumberOfSampledRequests(), advisor.getEstimatedHitRatios(), estimateRetainedHeap()) : null;
+    }
+
+    /**
+     * Allows to share one advisor between several caches, like the segments of a {@link ConcurrentCacheSupport}.
+     */
+    protected void setCapacityAdvisor(@Nullable CapacityAdvisor capacityAdvisor) {
+        _capacityAdvisor = capacityAdvisor;
+    }
+
+    protected void recordRequestOf(@Nullable K key) {
+        final CapacityAdvisor advisor = _capacityAdvisor;
+        if (advisor != null) {
+            advisor.record(key);
+        }
+    }
+
+    /**
+     * Walks only over a sample of the entries and extrapolates it to the whole cache. Values which are still produced
+     * are not counted.
+     */
+    @Nonnegative
+    protected long estimateRetainedHeap() {
+        final HeapSizeEstimator estimator = HeapSizeEstimator.INSTANCE;
+        final List<Object[]> sampled = new ArrayList<>();
+        final int size;
+        synchronized (_lock) {
+            size = _entries.size();
+            final Iterator<CacheEntry<K, V>> i = _entries.values().iterator();
+            while (i.hasNext() && sampled.size() < NUMBER_OF_ENTRIES_TO_ESTIMATE_HEAP_OF) {
+                final CacheEntry<K, V> entry = i.next();
+                final Value<V> value = producedValueOf(entry);
+                sampled.add(new Object[]{entry.getKey(), value != null ? value.get() : null});
+            }
+        }
+        long result = 0;
+        if (!sampled.isEmpty()) {
+            long sampledSize = 0;
+            for (Object[] keyAndValue : sampled) {
+                sampledSize += estimator.estimateDeepSizeOf(keyAndValue);
+            }
+            final long perEntryOverhead = estimator.estimateShallowSizeOf(CacheEntry.class) + estimator.estimateShallowSizeOf(Fixed.class) + HASH_MAP_OVERHEAD_PER_ENTRY;
+            result = (sampledSize / sampled.size() + perEntryOverhead) * size;
+        }
+        return result;
+    }
+
     protected CacheEntry<K, V> getFirst() {
         synchronized (_lock) {
             return _first;
@@ -474,6 +1213,7 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
     private CacheEntry<K, V> internalRemove(K key) {
         final CacheEntry<K, V> entry;
         synchronized (_lock) {
+            _tombstones.remove(key);
             if (_entries.isEmpty()) {
                 _first = null;
                 _last = null;
@@ -481,6 +1221,9 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
             } else {
                 entry = _entries.remove(key);
                 if (entry != null) {
+                    descheduleExpiration(entry);
+                    _totalWeight -= entry.getWeight();
+                    updateListBeforeRemove(entry);
                     // Remove the entry from the LinkedList
                     // noinspection ObjectEquality
                     if (entry == _first) {
@@ -502,51 +1245,140 @@ public abstract class InMemoryBasedCacheSupport<K, V> extends CacheSupport<K, V>
         return entry;
     }
 
+    /**
+     * Creates the {@link TimerWheel} with the first entry which expires, so caches without lifetimes do not pay for it.
+     */
+    protected void scheduleExpiration(@Nonnull CacheEntry<K, V> entry) {
+        synchronized (_lock) {
+            if (entry.getExpire() != null) {
+                if (_timerWheel == null) {
+                    _timerWheel = new TimerWheel<>(currentTimeMillis());
+                }
+                _timerWheel.schedule(entry);
+            }
+        }
+    }
+
+    protected void descheduleExpiration(@Nonnull CacheEntry<K, V> entry) {
+        synchronized (_lock) {
+            if (_timerWheel != null) {
+                _timerWheel.deschedule(entry);
+            }
+        }
+    }
+
+    protected void rescheduleExpiration(@Nonnull CacheEntry<K, V> entry) {
+        synchronized (_lock) {
+            descheduleExpiration(entry);
+            scheduleExpiration(entry);
+        }
+    }
+
     private void internalPut(CacheEntry<K, V> newEntry) {
         synchronized (_lock) {
+            // remove outdated cache entries ...
+            cleanUpLifetimeExpired(false);
+            final K key = newEntry.getKey();
+            _tombstones.remove(key);
+            final long weight = weigh(key, newEntry.getValue());
+            newEntry.setWeight(weight);
             final Integer maxSize = _capacity;
             if (maxSize != null && size() >= maxSize) {
-                // max size reached, remove outdated cache entries ...
-                cleanUpLifetimeExpired();
+                // max size reached, remove also the entries that are outdated since the last second ...
+                cleanUpLifetimeExpired(true);
                 if (size() >= maxSize) {
                     // still to many cache entries, remove last entry (depends on the implementation) ...
-                    removeLast();
+                    evictLast();
                 }
             }
-            final K key = newEntry.getKey();
-            final Long expire = newEntry.getExpire();
-            if (_nearstExpiringTime > 0 && expire != null && expire <= _nearstExpiringTime) {
-                _nearstExpiringTime = expire;
-            }
-            final CacheEntry<K, V> oldEntry = _entries.put(key, newEntry);
-            if (oldEntry != null) {
-                // This should not happen very often, but we need to ensure,
-                // that there aren't two entries with the same key in the list,
-                // so we put oldEntry back into the map ...
-                _entries.put(key, oldEntry);
-                // ... replace its value ...
-                handleRemove(oldEntry);
-                oldEntry.setValue(newEntry.getExpire(), newEntry.getValue());
-                // ... and simulate a hit ...
-                _numberOfHits++;
-                oldEntry.hit();
-                updateListAfterHit(oldEntry);
+            final Long maximumWeight = _maximumWeight;
+            final boolean exists = _entries.containsKey(key);
+            if (maximumWeight != null && weight > maximumWeight && !exists) {
+                // the new entry is heavier than the whole cache, so we could not hold it ...
+                _numberOfDrops.increment();
             } else {
-                updateListAfterPut(newEntry);
+                if (maximumWeight != null && _totalWeight + weight > maximumWeight && !exists) {
+                    // max weight reached, remove entries until the new one fits ...
+                    cleanUpLifetimeExpired(true);
+                    while (_totalWeight + weight > maximumWeight && !_entries.isEmpty()) {
+                        evictLast();
+                    }
+                }
+                final CacheEntry<K, V> oldEntry = _entries.put(key, newEntry);
+                if (oldEntry != null) {
+                    // This should not happen very often, but we need to ensure,
+                    // that there aren't two entries with the same key in the list,
+                    // so we put oldEntry back into the map ...
+                    _entries.put(key, oldEntry);
+                    // ... replace its value ...
+                    handleRemove(oldEntry);
+                    final Long expire = newEntry.getExpire();
+                    oldEntry.setValue(expire != null ? expire - newEntry.getCreated() : null, newEntry.getValue());
+                    _totalWeight += weight - oldEntry.getWeight();
+                    oldEntry.setWeight(weight);
+                    rescheduleExpiration(oldEntry);
+                    // ... and simulate a hit ...
+                    _numberOfHits.increment();
+                    oldEntry.hit();
+                    updateListAfterHit(oldEntry);
+                } else {
+                    _totalWeight += weight;
+                    updateListAfterPut(newEntry);
+                    scheduleExpiration(newEntry);
+                }
             }
+            // a replaced or produced value could be heavier than before ...
+            evictWhileOverweight();
         }
     }
 
     @Override
     public void resetStatistics() {
         if (_listenerInvoker.beforeResetStatistics(this)) {
-            _numberOfDrops = 0;
-            _numberOfHits = 0;
-            _numberOfRequests = 0;
+            _numberOfDrops.reset();
+            _numberOfExpirations.reset();
+            _numberOfHits.reset();
+            _numberOfRequests.reset();
+            _numberOfNegativeHits.reset();
+            _evictedWeight = 0;
+            _numberOfRefreshes = 0;
+            _numberOfFailedRefreshes = 0;
+            _refreshDuration = 0;
+            final CacheMetrics metrics = _metrics;
+            if (metrics != null) {
+                metrics.reset();
+            }
             _listenerInvoker.afterResetStatistics(this);
         }
     }
 
+    /**
+     * Adds the statistics of the given cache to the ones of this cache, e.g. if this cache replaces the given one.
+     */
+    void addStatisticsOf(@Nonnull InMemoryBasedCacheSupport<?, ?> other) {
+        _numberOfDrops.add(other._numberOfDrops.get());
+        _numberOfExpirations.add(other._numberOfExpirations.get());
+        _numberOfHits.add(other._numberOfHits.get());
+        _numberOfRequests.add(other._numberOfRequests.get());
+        _numberOfNegativeHits.add(other._numberOfNegativeHits.get());
+        final long evictedWeight;
+        final long numberOfRefreshes;
+        final long numberOfFailedRefreshes;
+        final long refreshDuration;
+        synchronized (other._lock) {
+            evictedWeight = other._evictedWeight;
+            numberOfRefreshes = other._numberOfRefreshes;
+            numberOfFailedRefreshes = other._numberOfFailedRefreshes;
+            refreshDuration = other._refreshDuration;
+        }
+        synchronized (_lock) {
+            _evictedWeight += evictedWeight;
+            _numberOfRefreshes += numberOfRefreshes;
+            _numberOfFailedRefreshes += numberOfFailedRefreshes;
+            _refreshDuration += refreshDuration;
+        }
+    }
+
     @Override
     public CloseableIterator<K> iterator() {
         final Set<K> keys;
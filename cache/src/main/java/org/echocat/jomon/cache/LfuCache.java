@@ -12,65 +12,215 @@
  * *** END LICENSE BLOCK *****
  ****************************************************************************************/
 
+
 package org.echocat.jomon.cache;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * <p>A Cache based on the Least Frequently Used algorithm. If the cache is full then the element that has been accessed the fewest times will be removed.</p>
+ *
+ * <p>The linked list is always sorted by the number of hits (the most frequently used element first). Every run of elements with the same number of
+ * hits is a frequency bucket and the first element of every bucket is remembered. So a hit moves an element to the end of the next bucket and the
+ * eviction removes the last element - both in constant time. Inside the same bucket the element that was put or promoted at last is removed
+ * first.</p>
+ *
+ * <p>If an {@link #setAgingInterval(Long) aging interval} is set, the number of hits of all elements will be halved every time this number of hits
+ * was recorded. This prevents elements which were hot a long time ago from staying forever in the cache.</p>
+ *
+ * <p>The number of hits of an element is counted up to {@link #MAXIMUM_FREQUENCY}, so the first elements of the buckets could be held in an array
+ * which is indexed by the number of hits.</p>
  */
 @ThreadSafe
 public class LfuCache<K, V> extends InMemoryBasedCacheSupport<K, V> {
 
+    public static final int MAXIMUM_FREQUENCY = 255;
+
+    @GuardedBy("_lock")
+    private final CacheEntry<K, V>[] _frequencyToFirst = newBuckets();
+    @GuardedBy("_lock")
+    private int _numberOfBuckets;
+
+    private volatile Long _agingInterval;
+    @GuardedBy("_lock")
+    private long _hitsSinceLastAging;
+
     public LfuCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
         super(keyType, valueType);
     }
 
+    @Nullable
+    public Long getAgingInterval() {
+        return _agingInterval;
+    }
+
     /**
-     * Adds the new cache entry after <code>this&#46;_last</code>.
+     * @param agingInterval number of hits after that the number of hits of every element is halved. <code>null</code> disables the aging.
+     */
+    public void setAgingInterval(@Nullable Long agingInterval) {
+        if (agingInterval != null && agingInterval <= 0) {
+            throw new IllegalArgumentException("The agingInterval have to be greater than 0.");
+        }
+        _agingInterval = agingInterval;
+    }
+
+    /**
+     * Adds the new cache entry after <code>this&#46;_last</code>. A {@link #restore(List) restored} entry with hits is added before
+     * <code>this&#46;_first</code> if it is at least as hot as the first one, otherwise its hits are dropped.
      */
     @Override
     protected void updateListAfterPut(CacheEntry<K, V> newEntry) {
+        final int hits = Math.min(newEntry.getHits(), MAXIMUM_FREQUENCY);
+        if (hits > 0 && (_first == null || _first.getHits() <= hits)) {
+            newEntry.setHits(hits);
+            newEntry.setNext(_first);
+            if (_first != null) {
+                _first.setPrevious(newEntry);
+            }
+            setFirst(newEntry);
+            setFirstOfBucket(hits, newEntry);
+        } else {
+            newEntry.setHits(0);
+            addAfterLast(newEntry);
+        }
+    }
+
+    private void addAfterLast(@Nonnull CacheEntry<K, V> newEntry) {
         newEntry.setPrevious(_last);
         if (_last != null) {
             _last.setNext(newEntry);
         }
         setLast(newEntry);
+        final int frequency = newEntry.getHits();
+        if (_frequencyToFirst[frequency] == null) {
+            setFirstOfBucket(frequency, newEntry);
+        }
     }
 
-
     /**
-     * Resort the linked list. If this CacheEntry has more hits than the previous one move it up.
+     * Moves the entry to the end of the bucket of its new number of hits. An entry which already reached {@link #MAXIMUM_FREQUENCY} keeps its
+     * position.
      */
     @Override
     protected void updateListAfterHit(CacheEntry<K, V> entry) {
-        if (entry != null && !entry.equals(_first)) {
-            if (entry.getHits() > entry.getPrevious().getHits()) {
-
-                // Swap the positions
-                final CacheEntry<K, V> beforePrevious = entry.getPrevious().getPrevious();
-                final CacheEntry<K, V> previous = entry.getPrevious();
-                final CacheEntry<K, V> next = entry.getNext();
-
-                if (beforePrevious != null) {
-                    beforePrevious.setNext(entry);
-                } else {
-                    _first = entry;
+        if (entry != null) {
+            final int frequency = entry.getHits();
+            if (frequency > MAXIMUM_FREQUENCY) {
+                entry.setHits(MAXIMUM_FREQUENCY);
+            } else {
+                final CacheEntry<K, V> firstOfOldBucket = _frequencyToFirst[frequency - 1];
+                if (firstOfOldBucket != null) {
+                    // noinspection ObjectEquality
+                    if (firstOfOldBucket == entry) {
+                        replaceFirstOfBucket(entry, frequency - 1);
+                    } else {
+                        moveBefore(entry, firstOfOldBucket);
+                    }
+                }
+                if (_frequencyToFirst[frequency] == null) {
+                    setFirstOfBucket(frequency, entry);
                 }
-                entry.setPrevious(beforePrevious);
+            }
+            final Long agingInterval = _agingInterval;
+            if (agingInterval != null && ++_hitsSinceLastAging >= agingInterval) {
+                age();
+            }
+        }
+    }
 
-                previous.setPrevious(entry);
-                previous.setNext(next);
+    @Override
+    protected void updateListBeforeRemove(@Nonnull CacheEntry<K, V> entry) {
+        final int frequency = entry.getHits();
+        // noinspection ObjectEquality
+        if (_frequencyToFirst[frequency] == entry) {
+            replaceFirstOfBucket(entry, frequency);
+        }
+    }
 
-                entry.setNext(previous);
+    @Override
+    protected void updateListAfterClear() {
+        clearBuckets();
+        _hitsSinceLastAging = 0;
+    }
 
-                if (next == null) {
-                    setLast(previous);
-                } else {
-                    next.setPrevious(previous);
+    /**
+     * Halves the number of hits of all elements. The order of the list is not affected by this, only the buckets have to be rebuilt.
+     */
+    protected void age() {
+        synchronized (_lock) {
+            clearBuckets();
+            CacheEntry<K, V> current = _first;
+            while (current != null) {
+                final int frequency = current.getHits() >>> 1;
+                current.setHits(frequency);
+                if (_frequencyToFirst[frequency] == null) {
+                    setFirstOfBucket(frequency, current);
                 }
+                current = current.getNext();
+            }
+            _hitsSinceLastAging = 0;
+        }
+    }
+
+    @Nonnegative
+    protected int getNumberOfBuckets() {
+        synchronized (_lock) {
+            return _numberOfBuckets;
+        }
+    }
+
+    private void replaceFirstOfBucket(@Nonnull CacheEntry<K, V> entry, int frequency) {
+        final CacheEntry<K, V> next = entry.getNext();
+        setFirstOfBucket(frequency, next != null && next.getHits() == frequency ? next : null);
+    }
+
+    private void setFirstOfBucket(int frequency, @Nullable CacheEntry<K, V> entry) {
+        if (_frequencyToFirst[frequency] == null) {
+            if (entry != null) {
+                _numberOfBuckets++;
             }
+        } else if (entry == null) {
+            _numberOfBuckets--;
+        }
+        _frequencyToFirst[frequency] = entry;
+    }
+
+    private void clearBuckets() {
+        Arrays.fill(_frequencyToFirst, null);
+        _numberOfBuckets = 0;
+    }
+
+    @Nonnull
+    private static <K, V> CacheEntry<K, V>[] newBuckets() {
+        // noinspection unchecked
+        return (CacheEntry<K, V>[]) new CacheEntry<?, ?>[MAXIMUM_FREQUENCY + 1];
+    }
+
+    private void moveBefore(@Nonnull CacheEntry<K, V> entry, @Nonnull CacheEntry<K, V> target) {
+        // Unlink the entry. It could not be the first one because it is located after the target...
+        final CacheEntry<K, V> previous = entry.getPrevious();
+        final CacheEntry<K, V> next = entry.getNext();
+        if (next == null) {
+            setLast(previous);
+        } else {
+            previous.setNext(next);
+            next.setPrevious(previous);
+        }
+        // ... and link it again before the target.
+        final CacheEntry<K, V> beforeTarget = target.getPrevious();
+        entry.setPrevious(beforeTarget);
+        entry.setNext(target);
+        target.setPrevious(entry);
+        if (beforeTarget != null) {
+            beforeTarget.setNext(entry);
+        } else {
+            _first = entry;
         }
     }
 }
@@ -0,0 +1,844 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.Value.Fixed;
+import org.echocat.jomon.cache.Value.Lazy;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ProducingType;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+
+import static java.lang.System.currentTimeMillis;
+import static org.echocat.jomon.runtime.CollectionUtils.asCloseableIterator;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>A cache for <code>long</code> keys which stores its elements in arrays of primitives instead of a map of {@link CacheEntry entries}. The
+ * keys are held in an open addressing hash index and the order of the elements is linked by indexes in <code>int</code> arrays. So the
+ * cache itself does not create any objects per element and {@link #get(long)}, {@link #put(long, Object)} and {@link #contains(long)} do
+ * not box their keys, as long as there are no {@link #setListeners(Collection) listeners}. The methods of {@link Cache} are supported
+ * for <code>Long</code> keys, too.</p>
+ *
+ * <p>Elements are removed as defined by the {@link EvictionPolicy} if the {@link #setCapacity(Long) capacity} is reached. In case of
+ * {@link EvictionPolicy#lfu} the number of hits of an element is counted up to {@link #MAXIMUM_FREQUENCY}.</p>
+ *
+ * <p>Expired elements are removed if they are accessed and by a sweep which visits {@link #SLOTS_PER_SWEEP} slots on every put. The
+ * sweep only runs if an element could be expired. {@link #size()} and {@link #iterator()} {@link #cleanUpExpired() remove all expired
+ * elements} before, so they never see dead elements.</p>
+ */
+@ThreadSafe
+public class LongKeyCache<V> extends CacheSupport<Long, V> implements DetailedStatisticsEnabledCache<Long, V>, LimitedCache<Long, V>, ClearableCache<Long, V>, ListenerEnabledCache<Long, V>, IdentifiedCache<Long, V>, ProducingTypeEnabledCache<Long, V>, KeysEnabledCache<Long, V> {
+
+    public static final int MAXIMUM_FREQUENCY = 255;
+    public static final int SLOTS_PER_SWEEP = 4;
+
+    private static final int NONE = -1;
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+    private static final int INITIAL_NUMBER_OF_SLOTS = 16;
+    private static final long NEVER = 0;
+    private static final Object MISSING = new Object();
+
+    protected final Object _lock = new Object();
+    protected final CacheListenerInvoker _listenerInvoker = new CacheListenerInvoker();
+    protected final long _createdTimestamp;
+
+    private final EvictionPolicy _evictionPolicy;
+
+    private volatile String _id;
+    private volatile Duration _defaultExpireAfter;
+    private volatile ProducingType _producingType = ProducingType.DEFAULT;
+
+    @GuardedBy("_lock")
+    private final Map<Long, Lazy<Long, V>> _inProduction = new HashMap<>();
+    @GuardedBy("_lock")
+    private final int[] _frequencyToFirst = new int[MAXIMUM_FREQUENCY + 1];
+    @GuardedBy("_lock")
+    private int _capacity = UNLIMITED;
+    // Never later than the expire time of the element which expires first.
+    @GuardedBy("_lock")
+    private long _earliestExpireAt;
+    @GuardedBy("_lock")
+    private int _sweepPosition;
+
+    // The elements are stored in slots. Every slot is an index of the following arrays...
+    @GuardedBy("_lock")
+    private long[] _keys;
+    @GuardedBy("_lock")
+    private Object[] _values;
+    @GuardedBy("_lock")
+    private long[] _expireAt;
+    @GuardedBy("_lock")
+    private int[] _hits;
+    @GuardedBy("_lock")
+    private int[] _previous;
+    @GuardedBy("_lock")
+    private int[] _next;
+    @GuardedBy("_lock")
+    private int _firstFreeSlot;
+    @GuardedBy("_lock")
+    private int _first;
+    @GuardedBy("_lock")
+    private int _last;
+    @GuardedBy("_lock")
+    private int _size;
+    // The slot of the null key. It is not part of the index.
+    @GuardedBy("_lock")
+    private int _nullKeySlot;
+    // Open addressing hash index of (slot + 1). 0 marks an empty position.
+    @GuardedBy("_lock")
+    private int[] _table;
+
+    private volatile long _numberOfRequests;
+    private volatile long _numberOfHits;
+    private volatile long _numberOfDrops;
+    private volatile long _numberOfExpirations;
+    private volatile long _evictedWeight;
+
+    public LongKeyCache(@Nonnull Class<? extends V> valueType, @Nonnull EvictionPolicy evictionPolicy) {
+        super(Long.class, valueType);
+        _evictionPolicy = evictionPolicy;
+        _createdTimestamp = currentTimeMillis();
+        initSlots();
+    }
+
+    public LongKeyCache(@Nonnull Class<? extends V> valueType) {
+        this(valueType, EvictionPolicy.lru);
+    }
+
+    @Nonnull
+    public EvictionPolicy getEvictionPolicy() {
+        return _evictionPolicy;
+    }
+
+    @Override
+    public String getId() {
+        return _id;
+    }
+
+    @Override
+    public void setId(String id) {
+        _id = id;
+    }
+
+    @Override
+    public void setListeners(@Nullable Collection<CacheListener> listeners) {
+        _listenerInvoker.setListeners(listeners);
+    }
+
+    @Override
+    public Collection<CacheListener> getListeners() {
+        return _listenerInvoker.getListeners();
+    }
+
+    @Override
+    @Nonnull
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    @Override
+    public void setProducingType(@Nonnull ProducingType producingType) {
+        if (producingType == null) {
+            throw new NullPointerException();
+        }
+        _producingType = producingType;
+    }
+
+    @Override
+    public void setCapacity(@Nullable Long capacity) {
+        if (capacity != null && (capacity < 0 || capacity >= UNLIMITED)) {
+            throw new IllegalArgumentException("The capacity have to be between 0 and " + (UNLIMITED - 1) + ".");
+        }
+        synchronized (_lock) {
+            _capacity = capacity != null ? capacity.intValue() : UNLIMITED;
+            while (_size > _capacity) {
+                evictSlot(_last);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getCapacity() {
+        synchronized (_lock) {
+            return _capacity != UNLIMITED ? (long) _capacity : null;
+        }
+    }
+
+    @Override
+    public void setMaximumLifetime(@Nullable Duration maxLifetime) {
+        if (_listenerInvoker.beforeSetMaximumLifetime(this, maxLifetime)) {
+            _defaultExpireAfter = maxLifetime;
+            _listenerInvoker.afterSetMaximumLifetime(this, maxLifetime);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getMaximumLifetime() {
+        return _defaultExpireAfter;
+    }
+
+    public void put(long key, @Nullable V value) {
+        put(key, value, null);
+    }
+
+    public void put(long key, @Nullable V value, @Nullable Duration expireAfter) {
+        if (_listenerInvoker.hasListeners()) {
+            put(Long.valueOf(key), value, expireAfter);
+        } else {
+            checkValue(value);
+            internalPut(false, key, value, expireAfter);
+        }
+    }
+
+    @Override
+    public void put(@Nullable Long key, @Nullable V value) {
+        put(key, value, null);
+    }
+
+    @Override
+    public void put(@Nullable Long key, @Nullable V value, @Nullable Duration expireAfter) {
+        checkKey(key);
+        checkValue(value);
+        final Fixed<V> fixed = new Fixed<>(value);
+        if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
+            internalPut(key == null, key != null ? key : 0, value, expireAfter);
+            _listenerInvoker.afterPut(this, key, fixed, expireAfter);
+        }
+    }
+
+    @Nullable
+    public V get(long key) {
+        final V result;
+        if (_listenerInvoker.hasListeners()) {
+            result = get(Long.valueOf(key));
+        } else {
+            final Object value = internalGet(false, key);
+            result = value != MISSING ? this.<V>cast(value) : null;
+        }
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable Long key) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            final Object plain = internalGet(key == null, key != null ? key : 0);
+            final Value<V> valueHolder = plain != MISSING ? new Fixed<>(this.<V>cast(plain)) : null;
+            value = valueHolder != null ? valueHolder.get() : null;
+            _listenerInvoker.afterGet(this, key, valueHolder);
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Nullable
+    public V get(long key, @Nullable ValueProducer<Long, V> cacheValueProducer) {
+        return get(key, cacheValueProducer, null);
+    }
+
+    /**
+     * Boxes the key only if the value has to be produced.
+     */
+    @Nullable
+    public V get(long key, @Nullable ValueProducer<Long, V> cacheValueProducer, @Nullable Duration expireAfter) {
+        final V result;
+        if (_listenerInvoker.hasListeners()) {
+            result = get(Long.valueOf(key), cacheValueProducer, expireAfter);
+        } else {
+            final Object value = internalGet(false, key);
+            if (value != MISSING) {
+                result = this.<V>cast(value);
+            } else if (cacheValueProducer != null) {
+                result = produce(key, cacheValueProducer, expireAfter).get();
+                checkValueAfterProducing(result);
+            } else {
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable Long key, @Nullable ValueProducer<Long, V> cacheValueProducer) {
+        return get(key, cacheValueProducer, null);
+    }
+
+    /**
+     * The value is produced in the thread of the caller. Other threads that request the same key in the meantime use the same production as
+     * defined by the {@link #setProducingType(ProducingType) producing type}.
+     */
+    @Override
+    @Nullable
+    public V get(@Nullable Long key, @Nullable ValueProducer<Long, V> cacheValueProducer, @Nullable Duration expireAfter) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            final Object plain = internalGet(key == null, key != null ? key : 0);
+            Value<V> valueHolder = plain != MISSING ? new Fixed<>(this.<V>cast(plain)) : null;
+            if (valueHolder == null && cacheValueProducer != null) {
+                valueHolder = produce(key, cacheValueProducer, expireAfter);
+            }
+            value = valueHolder != null ? valueHolder.get() : null;
+            checkValueAfterProducing(value);
+            _listenerInvoker.afterGet(this, key, valueHolder);
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Nullable
+    public Value<V> remove(long key) {
+        return remove(Long.valueOf(key));
+    }
+
+    @Override
+    @Nullable
+    public Value<V> remove(@Nullable Long key) {
+        checkKey(key);
+        final Value<V> result;
+        if (_listenerInvoker.beforeRemove(this, key)) {
+            final Object value;
+            synchronized (_lock) {
+                final int slot = find(key == null, key != null ? key : 0);
+                if (slot != NONE) {
+                    value = _values[slot];
+                    removeSlot(slot);
+                } else {
+                    value = MISSING;
+                }
+            }
+            result = value != MISSING ? new Fixed<>(this.<V>cast(value)) : null;
+            _listenerInvoker.afterRemove(this, key, result);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    public boolean contains(long key) {
+        return internalContains(false, key);
+    }
+
+    @Override
+    public boolean contains(@Nullable Long key) {
+        checkKey(key);
+        return internalContains(key == null, key != null ? key : 0);
+    }
+
+    @Override
+    public void clear() {
+        if (_listenerInvoker.beforeClear(this)) {
+            synchronized (_lock) {
+                initSlots();
+                resetStatistics();
+            }
+            _listenerInvoker.afterClear(this);
+        }
+    }
+
+    @Override
+    public Long size() {
+        synchronized (_lock) {
+            removeAllExpired(currentTimeMillis());
+            return (long) _size;
+        }
+    }
+
+    /**
+     * Removes all expired elements. Only the elements have to be visited if at least one of them could be expired.
+     */
+    public void cleanUpExpired() {
+        synchronized (_lock) {
+            removeAllExpired(currentTimeMillis());
+        }
+    }
+
+    @Override
+    public Long getNumberOfRequests() {
+        return _numberOfRequests;
+    }
+
+    @Override
+    public Long getNumberOfHits() {
+        return _numberOfHits;
+    }
+
+    @Override
+    public Long getNumberOfDrops() {
+        return _numberOfDrops;
+    }
+
+    @Override
+    public Long getNumberOfExpirations() {
+        return _numberOfExpirations;
+    }
+
+    /**
+     * @return the number of elements because every element has the weight of <code>1</code>.
+     */
+    @Override
+    public Long getTotalWeight() {
+        return size();
+    }
+
+    @Override
+    public Long getEvictedWeight() {
+        return _evictedWeight;
+    }
+
+    @Override
+    public Date getCreated() {
+        return new Date(_createdTimestamp);
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (_listenerInvoker.beforeResetStatistics(this)) {
+            _numberOfRequests = 0;
+            _numberOfHits = 0;
+            _numberOfDrops = 0;
+            _numberOfExpirations = 0;
+            _evictedWeight = 0;
+            _listenerInvoker.afterResetStatistics(this);
+        }
+    }
+
+    @Override
+    public CloseableIterator<Long> iterator() {
+        final List<Long> result;
+        synchronized (_lock) {
+            removeAllExpired(currentTimeMillis());
+            result = new ArrayList<>(_size);
+            for (int slot = _first; slot != NONE; slot = _next[slot]) {
+                result.add(slot != _nullKeySlot ? _keys[slot] : null);
+            }
+        }
+        return asCloseableIterator(result.iterator());
+    }
+
+    /**
+     * @return the value or {@link #MISSING} if there is no valid element for the given key.
+     */
+    @Nullable
+    protected Object internalGet(boolean nullKey, long key) {
+        synchronized (_lock) {
+            _numberOfRequests++;
+            final int slot = find(nullKey, key);
+            final Object result;
+            if (slot == NONE) {
+                result = MISSING;
+            } else if (isOutDated(slot, currentTimeMillis())) {
+                removeExpired(slot);
+                result = MISSING;
+            } else {
+                _numberOfHits++;
+                updateOrderAfterHit(slot);
+                result = _values[slot];
+            }
+            return result;
+        }
+    }
+
+    protected boolean internalContains(boolean nullKey, long key) {
+        synchronized (_lock) {
+            final int slot = find(nullKey, key);
+            final boolean result;
+            if (slot == NONE) {
+                result = false;
+            } else if (isOutDated(slot, currentTimeMillis())) {
+                removeExpired(slot);
+                result = false;
+            } else {
+                result = true;
+            }
+            return result;
+        }
+    }
+
+    @Nonnull
+    protected Value<V> produce(@Nullable Long key, @Nonnull ValueProducer<Long, V> producer, @Nullable Duration expireAfter) {
+        final Lazy<Long, V> lazy;
+        synchronized (_lock) {
+            final Lazy<Long, V> existing = _inProduction.get(key);
+            if (existing != null) {
+                lazy = existing;
+            } else {
+                lazy = new Lazy<>(key, producer, _producingType);
+                _inProduction.put(key, lazy);
+            }
+        }
+        boolean produced = false;
+        try {
+            final V value = lazy.get();
+            produced = true;
+            checkValueAfterProducing(value);
+            if (removeFromProduction(key, lazy)) {
+                internalPut(key == null, key != null ? key : 0, value, expireAfter);
+            }
+        } finally {
+            if (!produced) {
+                removeFromProduction(key, lazy);
+            }
+        }
+        return lazy;
+    }
+
+    private boolean removeFromProduction(@Nullable Long key, @Nonnull Lazy<Long, V> lazy) {
+        synchronized (_lock) {
+            // noinspection ObjectEquality
+            final boolean result = _inProduction.get(key) == lazy;
+            if (result) {
+                _inProduction.remove(key);
+            }
+            return result;
+        }
+    }
+
+    protected void internalPut(boolean nullKey, long key, @Nullable V value, @Nullable Duration expireAfter) {
+        final Duration targetExpireAfter = expireAfter != null ? expireAfter : _defaultExpireAfter;
+        final long now = currentTimeMillis();
+        final long expireAt = targetExpireAfter != null ? now + targetExpireAfter.toMilliSeconds() : NEVER;
+        synchronized (_lock) {
+            sweepExpired(now);
+            if (expireAt != NEVER && expireAt < _earliestExpireAt) {
+                _earliestExpireAt = expireAt;
+            }
+            final int existing = find(nullKey, key);
+            if (existing != NONE) {
+                _values[existing] = value;
+                _expireAt[existing] = expireAt;
+                if (_evictionPolicy == EvictionPolicy.lru && existing != _first) {
+                    unlink(existing);
+                    linkBefore(existing, _first);
+                }
+            } else if (_capacity > 0) {
+                if (_size >= _capacity) {
+                    removeAllExpired(now);
+                }
+                while (_size >= _capacity) {
+                    evictSlot(_last);
+                }
+                final int slot = takeSlot();
+                _keys[slot] = key;
+                _values[slot] = value;
+                _expireAt[slot] = expireAt;
+                _hits[slot] = 0;
+                if (nullKey) {
+                    _nullKeySlot = slot;
+                } else {
+                    addToIndex(slot);
+                }
+                updateOrderAfterPut(slot);
+                _size++;
+            } else {
+                _numberOfDrops++;
+            }
+        }
+    }
+
+    @GuardedBy("_lock")
+    protected void updateOrderAfterPut(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lfu) {
+            linkBefore(slot, NONE);
+            if (_frequencyToFirst[0] == NONE) {
+                _frequencyToFirst[0] = slot;
+            }
+        } else {
+            linkBefore(slot, _first);
+        }
+    }
+
+    @GuardedBy("_lock")
+    protected void updateOrderAfterHit(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lru) {
+            if (slot != _first) {
+                unlink(slot);
+                linkBefore(slot, _first);
+            }
+        } else if (_evictionPolicy == EvictionPolicy.lfu) {
+            if (_hits[slot] < MAXIMUM_FREQUENCY) {
+                final int frequency = ++_hits[slot];
+                final int firstOfOldBucket = _frequencyToFirst[frequency - 1];
+                if (firstOfOldBucket != NONE) {
+                    if (firstOfOldBucket == slot) {
+                        replaceFirstOfBucket(slot, frequency - 1);
+                    } else {
+                        unlink(slot);
+                        linkBefore(slot, firstOfOldBucket);
+                    }
+                }
+                if (_frequencyToFirst[frequency] == NONE) {
+                    _frequencyToFirst[frequency] = slot;
+                }
+            }
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void replaceFirstOfBucket(int slot, int frequency) {
+        final int next = _next[slot];
+        _frequencyToFirst[frequency] = next != NONE && _hits[next] == frequency ? next : NONE;
+    }
+
+    @GuardedBy("_lock")
+    private void evictSlot(int slot) {
+        _evictedWeight++;
+        removeSlot(slot);
+    }
+
+    @GuardedBy("_lock")
+    private void removeExpired(int slot) {
+        removeSlot(slot);
+        _numberOfExpirations++;
+    }
+
+    /**
+     * Visits the next {@link #SLOTS_PER_SWEEP} slots and removes the expired elements of them.
+     */
+    @GuardedBy("_lock")
+    private void sweepExpired(long now) {
+        if (_earliestExpireAt <= now) {
+            for (int i = 0; i < SLOTS_PER_SWEEP; i++) {
+                if (_sweepPosition >= _keys.length) {
+                    _sweepPosition = 0;
+                }
+                if (isOutDated(_sweepPosition, now)) {
+                    removeExpired(_sweepPosition);
+                }
+                _sweepPosition++;
+            }
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void removeAllExpired(long now) {
+        if (_earliestExpireAt <= now) {
+            long earliestExpireAt = Long.MAX_VALUE;
+            int slot = _first;
+            while (slot != NONE) {
+                final int next = _next[slot];
+                if (isOutDated(slot, now)) {
+                    removeExpired(slot);
+                } else if (_expireAt[slot] != NEVER && _expireAt[slot] < earliestExpireAt) {
+                    earliestExpireAt = _expireAt[slot];
+                }
+                slot = next;
+            }
+            _earliestExpireAt = earliestExpireAt;
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void removeSlot(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lfu && _frequencyToFirst[_hits[slot]] == slot) {
+            replaceFirstOfBucket(slot, _hits[slot]);
+        }
+        unlink(slot);
+        if (slot == _nullKeySlot) {
+            _nullKeySlot = NONE;
+        } else {
+            removeFromIndex(slot);
+        }
+        _values[slot] = null;
+        _expireAt[slot] = NEVER;
+        _next[slot] = _firstFreeSlot;
+        _firstFreeSlot = slot;
+        _size--;
+        _numberOfDrops++;
+    }
+
+    @GuardedBy("_lock")
+    private boolean isOutDated(int slot, long now) {
+        final long expireAt = _expireAt[slot];
+        return expireAt != NEVER && expireAt <= now;
+    }
+
+    @GuardedBy("_lock")
+    private int find(boolean nullKey, long key) {
+        int result = NONE;
+        if (nullKey) {
+            result = _nullKeySlot;
+        } else {
+            final int mask = _table.length - 1;
+            for (int index = hashOf(key) & mask; result == NONE && _table[index] != 0; index = (index + 1) & mask) {
+                final int slot = _table[index] - 1;
+                if (_keys[slot] == key) {
+                    result = slot;
+                }
+            }
+        }
+        return result;
+    }
+
+    @GuardedBy("_lock")
+    private void addToIndex(int slot) {
+        if ((_size + 1) * 2 > _table.length) {
+            final int[] oldTable = _table;
+            _table = new int[oldTable.length * 2];
+            for (int entry : oldTable) {
+                if (entry != 0) {
+                    putIntoTable(entry - 1);
+                }
+            }
+        }
+        putIntoTable(slot);
+    }
+
+    @GuardedBy("_lock")
+    private void putIntoTable(int slot) {
+        final int mask = _table.length - 1;
+        int index = hashOf(_keys[slot]) & mask;
+        while (_table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        _table[index] = slot + 1;
+    }
+
+    /**
+     * Removes the slot from the index and shifts the following entries back, so no tombstones are required.
+     */
+    @GuardedBy("_lock")
+    private void removeFromIndex(int slot) {
+        final int mask = _table.length - 1;
+        int index = hashOf(_keys[slot]) & mask;
+        while (_table[index] != slot + 1) {
+            index = (index + 1) & mask;
+        }
+        _table[index] = 0;
+        int next = (index + 1) & mask;
+        while (_table[next] != 0) {
+            final int home = hashOf(_keys[_table[next] - 1]) & mask;
+            final boolean canBeMoved = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+            if (canBeMoved) {
+                _table[index] = _table[next];
+                _table[next] = 0;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    @GuardedBy("_lock")
+    private int takeSlot() {
+        if (_firstFreeSlot == NONE) {
+            final int oldLength = _keys.length;
+            final int newLength = oldLength * 2;
+            _keys = Arrays.copyOf(_keys, newLength);
+            _values = Arrays.copyOf(_values, newLength);
+            _expireAt = Arrays.copyOf(_expireAt, newLength);
+            _hits = Arrays.copyOf(_hits, newLength);
+            _previous = Arrays.copyOf(_previous, newLength);
+            _next = Arrays.copyOf(_next, newLength);
+            chainFreeSlots(oldLength, newLength);
+        }
+        final int result = _firstFreeSlot;
+        _firstFreeSlot = _next[result];
+        return result;
+    }
+
+    @GuardedBy("_lock")
+    private void linkBefore(int slot, int successor) {
+        final int previous = successor != NONE ? _previous[successor] : _last;
+        _previous[slot] = previous;
+        _next[slot] = successor;
+        if (previous != NONE) {
+            _next[previous] = slot;
+        } else {
+            _first = slot;
+        }
+        if (successor != NONE) {
+            _previous[successor] = slot;
+        } else {
+            _last = slot;
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void unlink(int slot) {
+        final int previous = _previous[slot];
+        final int next = _next[slot];
+        if (previous != NONE) {
+            _next[previous] = next;
+        } else {
+            _first = next;
+        }
+        if (next != NONE) {
+            _previous[next] = previous;
+        } else {
+            _last = previous;
+        }
+        _previous[slot] = NONE;
+        _next[slot] = NONE;
+    }
+
+    @GuardedBy("_lock")
+    private void initSlots() {
+        _keys = new long[INITIAL_NUMBER_OF_SLOTS];
+        _values = new Object[INITIAL_NUMBER_OF_SLOTS];
+        _expireAt = new long[INITIAL_NUMBER_OF_SLOTS];
+        _hits = new int[INITIAL_NUMBER_OF_SLOTS];
+        _previous = new int[INITIAL_NUMBER_OF_SLOTS];
+        _next = new int[INITIAL_NUMBER_OF_SLOTS];
+        _table = new int[INITIAL_NUMBER_OF_SLOTS * 2];
+        _first = NONE;
+        _last = NONE;
+        _size = 0;
+        _nullKeySlot = NONE;
+        _firstFreeSlot = NONE;
+        _earliestExpireAt = Long.MAX_VALUE;
+        _sweepPosition = 0;
+        Arrays.fill(_frequencyToFirst, NONE);
+        chainFreeSlots(0, INITIAL_NUMBER_OF_SLOTS);
+    }
+
+    @GuardedBy("_lock")
+    private void chainFreeSlots(int from, int to) {
+        for (int slot = to - 1; slot >= from; slot--) {
+            _previous[slot] = NONE;
+            _next[slot] = _firstFreeSlot;
+            _firstFreeSlot = slot;
+        }
+    }
+
+    @Nullable
+    private <T> T cast(@Nullable Object value) {
+        // noinspection unchecked
+        return (T) value;
+    }
+
+    private static int hashOf(long key) {
+        // Spread the bits because the lower bits are used for the index...
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        final int result = (int) (hash ^ (hash >>> 32));
+        return result ^ (result >>> 16);
+    }
+
+}
@@ -0,0 +1,36 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cache which could record {@link CacheMetrics latencies and windowed ratios} in addition to its
+ * {@link StatisticsEnabledCache statistics}. Recording costs some calls of {@link System#nanoTime()} per operation so it
+ * is disabled by default.
+ */
+public interface MetricsEnabledCache<K, V> extends Cache<K, V> {
+
+    public boolean isMetricsEnabled();
+
+    public void setMetricsEnabled(boolean metricsEnabled);
+
+    /**
+     * @return <code>null</code> if the metrics are not {@link #isMetricsEnabled() enabled}.
+     */
+    @Nullable
+    public CacheMetrics getMetrics();
+
+}
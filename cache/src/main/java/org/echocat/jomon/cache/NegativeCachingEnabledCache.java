@@ -0,0 +1,67 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+
+/**
+ * <p>A cache which remembers for which keys a {@link ValueProducer producer} returned <code>null</code>. Further
+ * {@link #get(Object, ValueProducer) requests} of such a key return <code>null</code> without calling the producer
+ * again until the {@link #setNegativeMaximumLifetime(Duration) negative maximum lifetime} is reached.</p>
+ *
+ * <p>These negative entries (tombstones) are held apart from the regular elements, so they have their own
+ * {@link #setNegativeCapacity(Long) capacity} and could never evict a real value. A {@link #put(Object, Object) put}
+ * or {@link #remove(Object) remove} of a key also removes its tombstone.</p>
+ */
+public interface NegativeCachingEnabledCache<K, V> extends Cache<K, V> {
+
+    public static final long DEFAULT_NEGATIVE_CAPACITY = 1000;
+
+    /**
+     * @param maximumLifetime how long the <code>null</code> result of a producer is remembered. This should be less
+     *                        than the {@link LimitedCache#getMaximumLifetime() maximum lifetime}. <code>null</code>
+     *                        disables the negative caching.
+     */
+    public void setNegativeMaximumLifetime(@Nullable Duration maximumLifetime);
+
+    @Nullable
+    public Duration getNegativeMaximumLifetime();
+
+    /**
+     * @param capacity the maximum number of remembered keys. <code>null</code> means no limit. Default is {@link #DEFAULT_NEGATIVE_CAPACITY}.
+     */
+    public void setNegativeCapacity(@Nullable Long capacity);
+
+    @Nullable
+    public Long getNegativeCapacity();
+
+    /**
+     * @return the number of remembered keys.
+     */
+    @Nonnegative
+    public Long getNegativeSize();
+
+    /**
+     * @return the number of requests which were answered by a remembered key. These are not part of the
+     * {@link StatisticsEnabledCache#getNumberOfHits() hits}.
+     */
+    @Nonnegative
+    public Long getNumberOfNegativeHits();
+
+}
@@ -0,0 +1,124 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * <p>A cache which reproduces values in the background before they expire (refresh ahead).</p>
+ *
+ * <p>If an element that was requested with {@link #get(Object, ValueProducer, Duration) a producer} is older than the
+ * {@link #setRefreshAfter(Duration) refresh time} the current (stale) value is returned while the value is reproduced by the
+ * {@link #setRefreshExecutor(Executor) refresh executor}. Only an expired element forces the caller to wait for the producer.</p>
+ */
+public interface RefreshEnabledCache<K, V> extends Cache<K, V> {
+
+    /**
+     * @param refreshAfter the age of an element after that it is reproduced in the background. <code>null</code> disables the refresh.
+     *                     This should be less than the {@link LimitedCache#getMaximumLifetime() maximum lifetime}.
+     */
+    public void setRefreshAfter(@Nullable Duration refreshAfter);
+
+    @Nullable
+    public Duration getRefreshAfter();
+
+    /**
+     * @param executor <code>null</code> means {@link DefaultRefreshExecutor#INSTANCE}.
+     */
+    public void setRefreshExecutor(@Nullable Executor executor);
+
+    @Nonnull
+    public Executor getRefreshExecutor();
+
+    /**
+     * @return the number of successful refreshes.
+     */
+    @Nullable
+    @Nonnegative
+    public Long getNumberOfRefreshes();
+
+    @Nullable
+    @Nonnegative
+    public Long getNumberOfFailedRefreshes();
+
+    /**
+     * @return the sum of the time the producers needed for all (successful and failed) refreshes.
+     */
+    @Nullable
+    public Duration getRefreshDuration();
+
+    /**
+     * Executes the refreshes in a bounded pool of daemon threads with a bounded queue. If all threads are busy and the
+     * queue is full a {@link RejectedExecutionException} is thrown, the caches drop such a refresh and deliver the stale
+     * value until the next try.
+     */
+    @ThreadSafe
+    public static class DefaultRefreshExecutor implements Executor {
+
+        public static final int DEFAULT_MAXIMUM_NUMBER_OF_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+        public static final DefaultRefreshExecutor INSTANCE = new DefaultRefreshExecutor(DEFAULT_MAXIMUM_NUMBER_OF_THREADS, DEFAULT_QUEUE_CAPACITY);
+
+        private final ThreadPoolExecutor _pool;
+        private final int _queueCapacity;
+
+        /**
+         * Threads are only started if required and stop after one minute without work.
+         */
+        public DefaultRefreshExecutor(@Nonnegative int maximumNumberOfThreads, @Nonnegative int queueCapacity) {
+            _pool = new ThreadPoolExecutor(maximumNumberOfThreads, maximumNumberOfThreads, 1, MINUTES, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("CacheRefresher-%d").build(), new AbortPolicy());
+            _pool.allowCoreThreadTimeOut(true);
+            _queueCapacity = queueCapacity;
+        }
+
+        @Override
+        public void execute(@Nonnull Runnable command) throws RejectedExecutionException {
+            _pool.execute(command);
+        }
+
+        @Nonnegative
+        public int getMaximumNumberOfThreads() {
+            return _pool.getMaximumPoolSize();
+        }
+
+        @Nonnegative
+        public int getQueueCapacity() {
+            return _queueCapacity;
+        }
+
+        @Override
+        public String toString() {
+            return "DefaultRefreshExecutor";
+        }
+    }
+
+}
@@ -0,0 +1,381 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.Value.Fixed;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.PostProducing;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.echocat.jomon.runtime.util.ValueProducingFailedException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * <p>A cache for the lifetime of one request. It is not thread safe because a request is handled by one thread at a
+ * time, so no locks are required. The elements are held in an open addressing hash table with linear probing which is
+ * {@link #clear() cleared} and reused by the next request instead of being reallocated.</p>
+ *
+ * <p>If a {@link #setCapacity(Long) capacity} is set and a new element does not fit anymore another element is evicted.
+ * Which one is not defined - there is no ordering which could be used for it without additional costs per access. A
+ * {@link #setMaximumLifetime(Duration) maximum lifetime} is used for every element which is put without an explicit
+ * lifetime.</p>
+ *
+ * @see RequestScopedCaches
+ */
+@NotThreadSafe
+public class RequestScopedCache<K, V> extends CacheSupport<K, V> implements BulkEnabledCache<K, V>, ClearableCache<K, V>, LimitedCache<K, V> {
+
+    protected static final int INITIAL_TABLE_LENGTH = 16;
+    /**
+     * Bigger tables are not retained after {@link #clear()} to keep the memory of pooled caches small.
+     */
+    protected static final int MAXIMUM_RETAINED_TABLE_LENGTH = 1024;
+
+    private static final Object NULL_KEY = new Object();
+
+    private Object[] _keys;
+    private Object[] _values;
+    private long[] _expires;
+    private int _size;
+    private Long _capacity;
+    private Duration _maximumLifetime;
+
+    public RequestScopedCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        super(keyType, valueType);
+        allocate(INITIAL_TABLE_LENGTH);
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value) {
+        put(key, value, null);
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
+        checkKey(key);
+        checkValue(value);
+        internalPut(key, value, expireAfter);
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key) {
+        checkKey(key);
+        final int index = indexOfValid(key);
+        // noinspection unchecked
+        return index >= 0 ? (V) _values[index] : null;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer) {
+        return get(key, cacheValueProducer, null);
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer, @Nullable Duration expireAfter) {
+        checkKey(key);
+        final int index = indexOfValid(key);
+        final V result;
+        if (index >= 0) {
+            // noinspection unchecked
+            result = (V) _values[index];
+        } else if (cacheValueProducer != null) {
+            result = produce(key, cacheValueProducer);
+            internalPut(key, result, expireAfter);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys) {
+        return getAll(keys, null, null);
+    }
+
+    /**
+     * Keys which are not contained in the result of the producer are cached as <code>null</code> like by the
+     * {@link InMemoryBasedCacheSupport in memory caches}.
+     */
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final Map<K, V> result = new LinkedHashMap<>();
+        final Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            checkKey(key);
+            final int index = indexOfValid(key);
+            if (index >= 0) {
+                // noinspection unchecked
+                final V value = (V) _values[index];
+                if (value != null) {
+                    result.put(key, value);
+                }
+            } else {
+                missing.add(key);
+            }
+        }
+        if (producer != null && !missing.isEmpty()) {
+            final Map<K, V> produced = CacheUtils.produce(producer, missing);
+            for (K key : missing) {
+                final V value = produced.get(key);
+                checkValueAfterProducing(value);
+                internalPut(key, value, expireAfter);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values) {
+        putAll(values, null);
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        for (Map.Entry<? extends K, ? extends V> keyAndValue : values.entrySet()) {
+            put(keyAndValue.getKey(), keyAndValue.getValue(), expireAfter);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Value<V> remove(@Nullable K key) {
+        checkKey(key);
+        final int index = indexOfValid(key);
+        final Value<V> result;
+        if (index >= 0) {
+            // noinspection unchecked
+            result = new Fixed<>((V) _values[index]);
+            removeAt(index);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(@Nullable K key) {
+        checkKey(key);
+        return indexOfValid(key) >= 0;
+    }
+
+    /**
+     * Removes all elements but keeps the table for the next usage if it is not too big.
+     */
+    @Override
+    public void clear() {
+        if (_keys.length > MAXIMUM_RETAINED_TABLE_LENGTH) {
+            allocate(INITIAL_TABLE_LENGTH);
+        } else if (_size > 0) {
+            Arrays.fill(_keys, null);
+            Arrays.fill(_values, null);
+            Arrays.fill(_expires, 0);
+        }
+        _size = 0;
+    }
+
+    @Nonnegative
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public void setCapacity(@Nullable Long capacity) {
+        _capacity = capacity;
+        if (capacity != null) {
+            int index = 0;
+            while (_size > Math.max(capacity, 0)) {
+                if (_keys[index] != null) {
+                    removeAt(index);
+                } else {
+                    index++;
+                }
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getCapacity() {
+        return _capacity;
+    }
+
+    @Override
+    public void setMaximumLifetime(@Nullable Duration maximumLifetime) {
+        _maximumLifetime = maximumLifetime;
+    }
+
+    @Override
+    @Nullable
+    public Duration getMaximumLifetime() {
+        return _maximumLifetime;
+    }
+
+    @Nullable
+    protected V produce(@Nullable K key, @Nonnull ValueProducer<K, V> producer) {
+        final V result;
+        try {
+            result = producer.produce(key);
+            if (producer instanceof PostProducing) {
+                // noinspection unchecked
+                ((PostProducing<K, V>) producer).postProducing(key, result);
+            }
+        } catch (Exception e) {
+            throw new ValueProducingFailedException(key, e);
+        }
+        checkValueAfterProducing(result);
+        return result;
+    }
+
+    protected void internalPut(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
+        final Object maskedKey = key != null ? key : NULL_KEY;
+        int index = indexOf(maskedKey);
+        if (_keys[index] == null && _capacity != null && _size >= _capacity) {
+            if (_size == 0) {
+                return;
+            }
+            evictNear(index);
+            index = indexOf(maskedKey);
+        }
+        if (_keys[index] == null) {
+            _keys[index] = maskedKey;
+            _size++;
+        }
+        final Duration targetExpireAfter = expireAfter != null ? expireAfter : _maximumLifetime;
+        _values[index] = value;
+        _expires[index] = targetExpireAfter != null ? currentTimeMillis() + targetExpireAfter.toMilliSeconds() : 0;
+        if (_size * 2 > _keys.length) {
+            resize(_keys.length * 2);
+        }
+    }
+
+    /**
+     * @return the index of the given key or of the free slot where it has to be put.
+     */
+    protected int indexOf(@Nonnull Object maskedKey) {
+        final int mask = _keys.length - 1;
+        int index = initialIndexOf(maskedKey, mask);
+        while (_keys[index] != null && !_keys[index].equals(maskedKey)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Evicts the first element after the given index. The table is never full, so this is cheap.
+     */
+    protected void evictNear(@Nonnegative int index) {
+        final int mask = _keys.length - 1;
+        int current = (index + 1) & mask;
+        while (_keys[current] == null) {
+            current = (current + 1) & mask;
+        }
+        removeAt(current);
+    }
+
+    /**
+     * @return the index of the given key or <code>-1</code> if it is not contained or expired. An expired element is removed.
+     */
+    protected int indexOfValid(@Nullable K key) {
+        final int index = indexOf(key != null ? key : NULL_KEY);
+        final int result;
+        if (_keys[index] == null) {
+            result = -1;
+        } else if (_expires[index] != 0 && _expires[index] <= currentTimeMillis()) {
+            removeAt(index);
+            result = -1;
+        } else {
+            result = index;
+        }
+        return result;
+    }
+
+    /**
+     * Removes the element at the given index and moves the following elements of the same probe sequence back, so no
+     * tombstones are required.
+     */
+    protected void removeAt(@Nonnegative int index) {
+        final int mask = _keys.length - 1;
+        int hole = index;
+        int current = (index + 1) & mask;
+        while (_keys[current] != null) {
+            final int initial = initialIndexOf(_keys[current], mask);
+            // The element could fill the hole if the hole lies between its initial and its current index ...
+            if (((current - initial) & mask) >= ((current - hole) & mask)) {
+                _keys[hole] = _keys[current];
+                _values[hole] = _values[current];
+                _expires[hole] = _expires[current];
+                hole = current;
+            }
+            current = (current + 1) & mask;
+        }
+        _keys[hole] = null;
+        _values[hole] = null;
+        _expires[hole] = 0;
+        _size--;
+    }
+
+    protected void resize(@Nonnegative int tableLength) {
+        final Object[] oldKeys = _keys;
+        final Object[] oldValues = _values;
+        final long[] oldExpires = _expires;
+        allocate(tableLength);
+        final int mask = tableLength - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = initialIndexOf(oldKeys[i], mask);
+                while (_keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                _keys[index] = oldKeys[i];
+                _values[index] = oldValues[i];
+                _expires[index] = oldExpires[i];
+            }
+        }
+    }
+
+    private void allocate(@Nonnegative int tableLength) {
+        _keys = new Object[tableLength];
+        _values = new Object[tableLength];
+        _expires = new long[tableLength];
+    }
+
+    protected static int initialIndexOf(@Nonnull Object maskedKey, int mask) {
+        int hash = maskedKey.hashCode();
+        // Spread the bits because a lot of hashCode() implementations only differ in the lower bits...
+        hash *= 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size: " + _size + "}";
+    }
+
+}
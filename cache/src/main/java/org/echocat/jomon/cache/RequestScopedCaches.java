@@ -0,0 +1,85 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>Holds all {@link RequestScopedCache request scoped caches} of one request, so only one request attribute is
+ * required for them. Every {@link ServletRequestBasedCache} owns a slot in here. Slots are recycled, so every cache is
+ * stored together with its owner and is only returned to this owner.</p>
+ *
+ * <p>Instances are {@link #acquire() taken} from and {@link #release() returned} to a pool, so the caches and their
+ * tables are reused by the following requests.</p>
+ *
+ * @see RequestScopedCachesReleaser
+ */
+@NotThreadSafe
+public class RequestScopedCaches {
+
+    public static final int DEFAULT_POOL_SIZE = 256;
+
+    private static final BlockingQueue<RequestScopedCaches> POOL = new ArrayBlockingQueue<>(DEFAULT_POOL_SIZE);
+
+    @Nonnull
+    public static RequestScopedCaches acquire() {
+        final RequestScopedCaches pooled = POOL.poll();
+        return pooled != null ? pooled : new RequestScopedCaches();
+    }
+
+    private RequestScopedCache<?, ?>[] _caches = new RequestScopedCache[8];
+    private Object[] _owners = new Object[8];
+
+    /**
+     * @return the cache of the given slot if it was {@link #set(int, Object, RequestScopedCache) set} by the same owner.
+     */
+    @Nullable
+    public RequestScopedCache<?, ?> get(@Nonnegative int slot, @Nonnull Object owner) {
+        return slot < _caches.length && _owners[slot] == owner ? _caches[slot] : null;
+    }
+
+    public void set(@Nonnegative int slot, @Nonnull Object owner, @Nullable RequestScopedCache<?, ?> cache) {
+        if (slot >= _caches.length) {
+            final int length = Math.max(slot + 1, _caches.length * 2);
+            _caches = Arrays.copyOf(_caches, length);
+            _owners = Arrays.copyOf(_owners, length);
+        }
+        _caches[slot] = cache;
+        _owners[slot] = owner;
+    }
+
+    public void clear() {
+        for (RequestScopedCache<?, ?> cache : _caches) {
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Clears all caches and returns this instance to the pool. It must not be used after this call.
+     */
+    public void release() {
+        clear();
+        POOL.offer(this);
+    }
+
+}
@@ -0,0 +1,46 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
+
+import static org.echocat.jomon.cache.ServletRequestBasedCache.POOLED_CACHES_ATTRIBUTE_NAME;
+
+/**
+ * Returns the {@link RequestScopedCaches} of a request to the pool when the request is finished. Has to be registered
+ * in the <code>web.xml</code> if {@link ServletRequestBasedCache#setPooled(boolean) pooled} caches are used. Without it
+ * the caches are not reused but collected by the garbage collector.
+ */
+public class RequestScopedCachesReleaser implements ServletRequestListener {
+
+    @Override
+    public void requestInitialized(ServletRequestEvent event) {}
+
+    @Override
+    public void requestDestroyed(ServletRequestEvent event) {
+        release(event.getServletRequest());
+    }
+
+    public static void release(ServletRequest request) {
+        final Object caches = request.getAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+        if (caches instanceof RequestScopedCaches) {
+            request.removeAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+            ((RequestScopedCaches) caches).release();
+        }
+    }
+
+}
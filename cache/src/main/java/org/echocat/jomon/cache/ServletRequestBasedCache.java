@@ -17,23 +17,42 @@ package org.echocat.jomon.cache;
 import org.echocat.jomon.cache.Value.Lazy;
 import org.echocat.jomon.cache.management.CacheCreator;
 import org.echocat.jomon.cache.management.CacheDefinition;
+import org.echocat.jomon.cache.management.LimitedCacheDefinition;
 import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.runtime.util.ProducingType;
 import org.echocat.jomon.runtime.util.ValueProducer;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.ServletRequest;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
 
-public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implements IdentifiedCache<K, V> {
+public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implements IdentifiedCache<K, V>, BulkEnabledCache<K, V>, AutoCloseable {
 
+    public static final String POOLED_CACHES_ATTRIBUTE_NAME = RequestScopedCaches.class.getName();
+
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+    private static final Queue<Integer> FREE_SLOTS = new ConcurrentLinkedQueue<>();
+    private static final ReferenceQueue<ServletRequestBasedCache<?, ?>> COLLECTED = new ReferenceQueue<>();
+    private static final Set<Slot> SLOTS = Collections.newSetFromMap(new ConcurrentHashMap<Slot, Boolean>());
+
+    private final Slot _slot = Slot.acquireFor(this);
     private final CacheCreator _cacheCreator;
     private final Resolver _resolver;
     private final CacheDefinition<? extends K, ? extends V, ?> _delegateDefinition;
 
     private String _id;
+    private boolean _pooled;
 
     public ServletRequestBasedCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnull CacheCreator cacheCreator, @Nonnull Resolver resolver, @Nullable CacheDefinition<? extends K, ? extends V, ?> delegateDefinition) {
         super(keyType, valueType);
@@ -83,6 +102,52 @@ public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implement
         return cache != null ? cache.get(key, cacheValueProducer) : new Lazy<>(key, cacheValueProducer, ProducingType.blocking).get();
     }
 
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys) {
+        final Cache<K, V> cache = findRequestBasedCache();
+        return cache != null ? CacheUtils.getAll(cache, keys) : Collections.<K, V>emptyMap();
+    }
+
+    @Override
+    @Nonnull
+    public Map<K, V> getAll(@Nonnull Iterable<K> keys, @Nullable BulkValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final Cache<K, V> cache = findRequestBasedCache();
+        final Map<K, V> result;
+        if (cache != null) {
+            result = CacheUtils.getAll(cache, keys, producer, expireAfter);
+        } else if (producer != null) {
+            final Set<K> uniqueKeys = new LinkedHashSet<>();
+            for (K key : keys) {
+                uniqueKeys.add(key);
+            }
+            final Map<K, V> produced = CacheUtils.produce(producer, uniqueKeys);
+            result = new LinkedHashMap<>();
+            for (K key : uniqueKeys) {
+                final V value = produced.get(key);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+        } else {
+            result = Collections.emptyMap();
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values) {
+        putAll(values, null);
+    }
+
+    @Override
+    public void putAll(@Nonnull Map<? extends K, ? extends V> values, @Nullable Duration expireAfter) {
+        final Cache<K, V> cache = findRequestBasedCache();
+        if (cache != null) {
+            CacheUtils.putAll(cache, values, expireAfter);
+        }
+    }
+
     @Override
     @Nullable
     public Value<V> remove(@Nullable K key) {
@@ -111,6 +176,50 @@ public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implement
 
     @Nullable
     protected Cache<K, V> findCacheAt(ServletRequest request) {
+        return _pooled ? findPooledCacheAt(request) : findCreatedCacheAt(request);
+    }
+
+    @Nonnull
+    protected Cache<K, V> findPooledCacheAt(@Nonnull ServletRequest request) {
+        final Object plainCaches = request.getAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+        final RequestScopedCaches caches;
+        if (plainCaches == null) {
+            caches = RequestScopedCaches.acquire();
+            request.setAttribute(POOLED_CACHES_ATTRIBUTE_NAME, caches);
+        } else if (plainCaches instanceof RequestScopedCaches) {
+            caches = (RequestScopedCaches) plainCaches;
+        } else {
+            throw new IllegalStateException("The request attribute " + POOLED_CACHES_ATTRIBUTE_NAME + " contains no request scoped caches: " + plainCaches);
+        }
+        if (_slot.isReleased()) {
+            throw new IllegalStateException(this + " is already closed.");
+        }
+        // noinspection unchecked
+        RequestScopedCache<K, V> result = (RequestScopedCache<K, V>) caches.get(_slot.getIndex(), _slot);
+        if (result == null) {
+            result = createPooledCache();
+            caches.set(_slot.getIndex(), _slot, result);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a pooled cache which respects the capacity and the maximum lifetime of the
+     * {@link #getDelegateDefinition() delegate definition}.
+     */
+    @Nonnull
+    protected RequestScopedCache<K, V> createPooledCache() {
+        final RequestScopedCache<K, V> result = new RequestScopedCache<>(getKeyType(), getValueType());
+        if (_delegateDefinition instanceof LimitedCacheDefinition) {
+            final LimitedCacheDefinition<?, ?, ?> definition = (LimitedCacheDefinition<?, ?, ?>) _delegateDefinition;
+            result.setCapacity(definition.getCapacity());
+            result.setMaximumLifetime(definition.getMaximumLifetime());
+        }
+        return result;
+    }
+
+    @Nullable
+    protected Cache<K, V> findCreatedCacheAt(@Nonnull ServletRequest request) {
         final String requestCacheAttributeName = getRequestCacheAttributeName();
         final Object plainCache = request.getAttribute(requestCacheAttributeName);
         final Cache<K, V> result;
@@ -160,6 +269,20 @@ public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implement
         _id = id;
     }
 
+    public boolean isPooled() {
+        return _pooled;
+    }
+
+    /**
+     * If enabled the elements are held in {@link RequestScopedCache pooled caches} which are shared by all
+     * {@link ServletRequestBasedCache}s in one request attribute instead of a cache created by the
+     * {@link #getDelegateDefinition() delegate definition} for every request. A {@link RequestScopedCachesReleaser} has to
+     * be registered to return the caches to the pool.
+     */
+    public void setPooled(boolean pooled) {
+        _pooled = pooled;
+    }
+
     @Nonnull
     public CacheCreator getCacheCreator() {
         return _cacheCreator;
@@ -175,6 +298,15 @@ public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implement
         return _delegateDefinition;
     }
 
+    /**
+     * Returns the slot of this cache in the {@link RequestScopedCaches pooled caches}, so it could be used by another
+     * cache. This happens also if this cache is garbage collected.
+     */
+    @Override
+    public void close() {
+        _slot.release();
+    }
+
     public interface Resolver {
 
         @Nullable
@@ -182,4 +314,49 @@ public class ServletRequestBasedCache<K, V> extends CacheSupport<K, V> implement
 
     }
 
+    protected static final class Slot extends WeakReference<ServletRequestBasedCache<?, ?>> {
+
+        @Nonnull
+        protected static Slot acquireFor(@Nonnull ServletRequestBasedCache<?, ?> cache) {
+            releaseCollected();
+            final Integer free = FREE_SLOTS.poll();
+            final Slot result = new Slot(cache, free != null ? free : NEXT_SLOT.getAndIncrement());
+            SLOTS.add(result);
+            return result;
+        }
+
+        protected static void releaseCollected() {
+            Reference<?> reference = COLLECTED.poll();
+            while (reference != null) {
+                ((Slot) reference).release();
+                reference = COLLECTED.poll();
+            }
+        }
+
+        private final int _index;
+        private final AtomicBoolean _released = new AtomicBoolean();
+
+        private Slot(@Nonnull ServletRequestBasedCache<?, ?> cache, @Nonnegative int index) {
+            super(cache, COLLECTED);
+            _index = index;
+        }
+
+        @Nonnegative
+        public int getIndex() {
+            return _index;
+        }
+
+        public boolean isReleased() {
+            return _released.get();
+        }
+
+        public void release() {
+            if (_released.compareAndSet(false, true)) {
+                SLOTS.remove(this);
+                FREE_SLOTS.add(_index);
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,40 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * A cache which could export its hottest elements and import them again, for example to warm up a new instance of an application.
+ */
+public interface SnapshotEnabledCache<K, V> extends Cache<K, V> {
+
+    /**
+     * @return at most <code>maximumNumberOfEntries</code> elements in the reversed order of the eviction, so the element that would be
+     *          removed at last is the first one. Expired elements and values which are not produced yet are not included.
+     */
+    @Nonnull
+    public List<CacheSnapshotEntry<K, V>> snapshot(@Nonnegative int maximumNumberOfEntries);
+
+    /**
+     * Puts the given entries in the order of a {@link #snapshot(int) snapshot} into this cache so the order of the eviction is preserved
+     * as good as possible. Keys that already exist in this cache are not touched and the listeners of this cache are not called.
+     */
+    public void restore(@Nonnull List<CacheSnapshotEntry<K, V>> entries);
+
+}
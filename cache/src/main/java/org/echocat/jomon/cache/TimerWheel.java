@@ -0,0 +1,205 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>A hierarchical timer wheel which orders {@link CacheEntry entries} by their {@link CacheEntry#getExpire() expire time}. Every level of the
+ * wheel consists of buckets which cover a fixed period of time (about one second, one minute, one hour, one day and six days). An entry is put
+ * into the bucket of the finest level that covers its expire time.</p>
+ *
+ * <p>If the wheel is {@link #advance(long) advanced} only the buckets whose period has passed are visited. Entries of these buckets are either
+ * expired or moved into a bucket of a finer level. So scheduling, descheduling and expiring an entry costs amortized constant time and it is not
+ * required to visit all entries to find the expired ones.</p>
+ */
+@NotThreadSafe
+public class TimerWheel<K, V> {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final int[] SHIFTS = {10, 16, 22, 27, 29};
+    private static final long[] SPANS = {1L << 10, 1L << 16, 1L << 22, 1L << 27, 1L << 29};
+
+    private final CacheEntry<K, V>[][] _wheel;
+
+    private long _currentTime;
+
+    public TimerWheel(@Nonnegative long currentTime) {
+        _currentTime = currentTime;
+        // noinspection unchecked
+        _wheel = new CacheEntry[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            // noinspection unchecked
+            _wheel[i] = new CacheEntry[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                _wheel[i][j] = newSentinel();
+            }
+        }
+    }
+
+    /**
+     * Adds the given entry to the wheel if it has an expire time.
+     */
+    public void schedule(@Nonnull CacheEntry<K, V> entry) {
+        final Long expire = entry.getExpire();
+        if (expire != null) {
+            link(findBucketFor(expire), entry);
+        }
+    }
+
+    /**
+     * Removes the given entry from the wheel if it is scheduled.
+     */
+    public void deschedule(@Nonnull CacheEntry<K, V> entry) {
+        final CacheEntry<K, V> previous = entry.getPreviousInTimerWheel();
+        if (previous != null) {
+            final CacheEntry<K, V> next = entry.getNextInTimerWheel();
+            previous.setNextInTimerWheel(next);
+            next.setPreviousInTimerWheel(previous);
+            entry.setPreviousInTimerWheel(null);
+            entry.setNextInTimerWheel(null);
+        }
+    }
+
+    /**
+     * Has to be called if the expire time of a scheduled entry was changed.
+     */
+    public void reschedule(@Nonnull CacheEntry<K, V> entry) {
+        deschedule(entry);
+        schedule(entry);
+    }
+
+    /**
+     * Advances the wheel to the given time.
+     *
+     * @return all entries that are expired until the given time. Entries which expired in the current bucket of the finest level could be
+     *          returned by later calls. These entries are already removed from this wheel.
+     */
+    @Nonnull
+    public List<CacheEntry<K, V>> advance(@Nonnegative long currentTime) {
+        return advance(currentTime, false);
+    }
+
+    /**
+     * Advances the wheel to the given time.
+     *
+     * @param precise if <code>true</code> also the current bucket of the finest level is visited so all entries that are expired until the given
+     *                time are returned.
+     * @return all entries that are expired until the given time. These entries are already removed from this wheel.
+     */
+    @Nonnull
+    public List<CacheEntry<K, V>> advance(@Nonnegative long currentTime, boolean precise) {
+        final long previousTime = _currentTime;
+        final List<CacheEntry<K, V>> expired = new ArrayList<>();
+        boolean currentBucketVisited = false;
+        if (currentTime > previousTime) {
+            _currentTime = currentTime;
+            for (int i = 0; i < SHIFTS.length; i++) {
+                final long previousTicks = previousTime >>> SHIFTS[i];
+                final long currentTicks = currentTime >>> SHIFTS[i];
+                if (currentTicks <= previousTicks) {
+                    break;
+                }
+                expire(i, previousTicks, currentTicks - previousTicks, expired);
+                currentBucketVisited = true;
+            }
+        }
+        if (precise && !currentBucketVisited) {
+            expire(0, _currentTime >>> SHIFTS[0], 0, expired);
+        }
+        return expired;
+    }
+
+    public void clear() {
+        for (CacheEntry<K, V>[] buckets : _wheel) {
+            for (CacheEntry<K, V> sentinel : buckets) {
+                CacheEntry<K, V> current = sentinel.getNextInTimerWheel();
+                // noinspection ObjectEquality
+                while (current != sentinel) {
+                    final CacheEntry<K, V> next = current.getNextInTimerWheel();
+                    current.setPreviousInTimerWheel(null);
+                    current.setNextInTimerWheel(null);
+                    current = next;
+                }
+                sentinel.setPreviousInTimerWheel(sentinel);
+                sentinel.setNextInTimerWheel(sentinel);
+            }
+        }
+    }
+
+    protected void expire(@Nonnegative int level, long previousTicks, long delta, @Nonnull List<CacheEntry<K, V>> expired) {
+        final CacheEntry<K, V>[] buckets = _wheel[level];
+        final int mask = buckets.length - 1;
+        final int steps = (int) Math.min(delta + 1, buckets.length);
+        final int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            final CacheEntry<K, V> sentinel = buckets[i & mask];
+            CacheEntry<K, V> current = sentinel.getNextInTimerWheel();
+            sentinel.setPreviousInTimerWheel(sentinel);
+            sentinel.setNextInTimerWheel(sentinel);
+            // noinspection ObjectEquality
+            while (current != sentinel) {
+                final CacheEntry<K, V> next = current.getNextInTimerWheel();
+                current.setPreviousInTimerWheel(null);
+                current.setNextInTimerWheel(null);
+                final Long expire = current.getExpire();
+                if (expire != null && expire <= _currentTime) {
+                    expired.add(current);
+                } else {
+                    schedule(current);
+                }
+                current = next;
+            }
+        }
+    }
+
+    @Nonnull
+    protected CacheEntry<K, V> findBucketFor(long expire) {
+        // Already expired entries are put in the current bucket to be expired by the next advance...
+        final long time = Math.max(expire, _currentTime);
+        final long duration = time - _currentTime;
+        CacheEntry<K, V> result = null;
+        for (int i = 0; result == null && i < SHIFTS.length - 1; i++) {
+            if (duration < SPANS[i + 1]) {
+                final long ticks = time >>> SHIFTS[i];
+                result = _wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+        return result != null ? result : _wheel[SHIFTS.length - 1][0];
+    }
+
+    private void link(@Nonnull CacheEntry<K, V> sentinel, @Nonnull CacheEntry<K, V> entry) {
+        final CacheEntry<K, V> last = sentinel.getPreviousInTimerWheel();
+        entry.setPreviousInTimerWheel(last);
+        entry.setNextInTimerWheel(sentinel);
+        last.setNextInTimerWheel(entry);
+        sentinel.setPreviousInTimerWheel(entry);
+    }
+
+    @Nonnull
+    private CacheEntry<K, V> newSentinel() {
+        final CacheEntry<K, V> sentinel = new CacheEntry<>(null, null, (V) null);
+        sentinel.setPreviousInTimerWheel(sentinel);
+        sentinel.setNextInTimerWheel(sentinel);
+        return sentinel;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Remembers keys for which a producer returned <code>null</code> until they expire. The keys are held in the order they
+ * were added, so the oldest ones are removed first if the {@link #setCapacity(Integer) capacity} is reached. The map
+ * of the keys is only created with the first added key, because most caches never remember one.
+ *
+ * @see NegativeCachingEnabledCache
+ */
+@NotThreadSafe
+public class Tombstones<K> {
+
+    private LinkedHashMap<K, Long> _keyToExpiresAt;
+
+    private Integer _capacity;
+
+    /**
+     * @return <code>true</code> if the given key is remembered and not expired.
+     */
+    public boolean contains(@Nullable K key, long now) {
+        final Long expiresAt = _keyToExpiresAt != null ? _keyToExpiresAt.get(key) : null;
+        final boolean result;
+        if (expiresAt == null) {
+            result = false;
+        } else if (expiresAt <= now) {
+            _keyToExpiresAt.remove(key);
+            result = false;
+        } else {
+            result = true;
+        }
+        return result;
+    }
+
+    public void add(@Nullable K key, long expiresAt, long now) {
+        if (_keyToExpiresAt == null) {
+            _keyToExpiresAt = new LinkedHashMap<>();
+        }
+        _keyToExpiresAt.remove(key);
+        _keyToExpiresAt.put(key, expiresAt);
+        final Iterator<Entry<K, Long>> i = _keyToExpiresAt.entrySet().iterator();
+        while (i.hasNext()) {
+            final Entry<K, Long> oldest = i.next();
+            if (oldest.getValue() <= now || (_capacity != null && _keyToExpiresAt.size() > _capacity)) {
+                i.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    public boolean remove(@Nullable K key) {
+        return _keyToExpiresAt != null && _keyToExpiresAt.remove(key) != null;
+    }
+
+    public void clear() {
+        _keyToExpiresAt = null;
+    }
+
+    @Nonnegative
+    public int size() {
+        return _keyToExpiresAt != null ? _keyToExpiresAt.size() : 0;
+    }
+
+    /**
+     * @param capacity <code>null</code> means no limit.
+     */
+    public void setCapacity(@Nullable Integer capacity) {
+        _capacity = capacity;
+        if (capacity != null && _keyToExpiresAt != null) {
+            final Iterator<K> i = _keyToExpiresAt.keySet().iterator();
+            while (i.hasNext() && _keyToExpiresAt.size() > capacity) {
+                i.next();
+                i.remove();
+            }
+        }
+    }
+
+    @Nullable
+    public Integer getCapacity() {
+        return _capacity;
+    }
+
+}
@@ -18,9 +18,9 @@ import org.echocat.jomon.runtime.util.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.System.currentTimeMillis;
 import static org.echocat.jomon.cache.Value.Lazy.ValueState.*;
 import static org.echocat.jomon.runtime.util.ProducingType.blocking;
 import static org.echocat.jomon.runtime.util.ProducingType.nonBlocking;
@@ -77,21 +77,62 @@ public interface Value<V> {
         }
     }
 
+    /**
+     * A value which was evicted by a cache. It still knows when it would have expired there, so it could be moved to
+     * another cache without extending its lifetime.
+     */
+    @ThreadSafe
+    public static class Evicted<V> extends Fixed<V> {
+
+        private final Long _expireAt;
+
+        public Evicted(@Nullable V value, @Nullable Long expireAt) {
+            super(value);
+            _expireAt = expireAt;
+        }
+
+        /**
+         * @return the time in milliseconds when this value expires or <code>null</code> if it never expires.
+         */
+        @Nullable
+        public Long getExpireAt() {
+            return _expireAt;
+        }
+    }
+
+    /**
+     * A value which is produced on the first access. In case of {@link ProducingType#blocking} the value is produced only once and all
+     * other threads wait for it. The waiting is coordinated per instance (and therefore per key) so productions of different keys never
+     * block each other, even if they share the same producer.
+     */
     @ThreadSafe
     public static class Lazy<K, V> implements Value<V> {
 
         private final K _key;
         private final ValueProducer<K, V> _producer;
         private final ProducingType _producingType;
+        private final Value<V> _staleValue;
+        private final Long _maximumWaitTime;
+        private final Object _lock = new Object();
 
         private volatile V _value;
         private volatile Exception _producingException;
         private volatile ValueState _valueState = notProducedYet;
 
         public Lazy(@Nullable K key, @Nullable ValueProducer<K, V> producer, @Nonnull ProducingType producingType) {
+            this(key, producer, producingType, null, null);
+        }
+
+        /**
+         * @param staleValue      is returned to threads that waited longer than <code>maximumWaitTime</code> for the production of another thread.
+         * @param maximumWaitTime in milliseconds. Only used in combination with a <code>staleValue</code>.
+         */
+        public Lazy(@Nullable K key, @Nullable ValueProducer<K, V> producer, @Nonnull ProducingType producingType, @Nullable Value<V> staleValue, @Nullable Long maximumWaitTime) {
             _key = key;
             _producer = producer;
             _producingType = producingType;
+            _staleValue = staleValue;
+            _maximumWaitTime = maximumWaitTime;
         }
 
         @Override
@@ -100,14 +141,20 @@ public interface Value<V> {
             if (_valueState == produced) {
                 result = _value;
             } else {
+                boolean timedOut = false;
                 if (_producingType == blocking) {
-                    synchronized (_producer) {
-                        if (_valueState == notProducedYet) {
-                            callProducer();
-                        } else {
-                            waitWhileProducerIsActive();
+                    final boolean produce;
+                    synchronized (_lock) {
+                        produce = _valueState == notProducedYet;
+                        if (produce) {
+                            _valueState = producing;
                         }
                     }
+                    if (produce) {
+                        callProducer();
+                    } else {
+                        timedOut = !waitWhileProducerIsActive();
+                    }
                 } else if (_producingType == nonBlocking) {
                     callProducer();
                 } else {
@@ -117,6 +164,8 @@ public interface Value<V> {
                     result = _value;
                 } else if (_valueState == producingFailed) {
                     throw new ValueProducingFailedException(_key, _producingException);
+                } else if (timedOut) {
+                    result = _staleValue.get();
                 } else {
                     throw new IllegalStateException("Unexpected _valueState: " + _valueState);
                 }
@@ -129,7 +178,10 @@ public interface Value<V> {
             return _value;
         }
 
-        @GuardedBy("_producer")
+        public boolean isProduced() {
+            return _valueState == produced;
+        }
+
         private void callProducer() {
             _valueState = producing;
             try {
@@ -146,7 +198,9 @@ public interface Value<V> {
                 } finally {
                     try {
                         if (_producingType == blocking) {
-                            _producer.notifyAll();
+                            synchronized (_lock) {
+                                _lock.notifyAll();
+                            }
                         }
                     } finally {
                         if (_valueState == produced && _producer instanceof PostProducing) {
@@ -164,19 +218,32 @@ public interface Value<V> {
             }
         }
 
-        @GuardedBy("_producer")
-        private void waitWhileProducerIsActive() {
+        /**
+         * @return <code>false</code> if the waiting was aborted because the maximum wait time was reached and a stale value is available.
+         */
+        private boolean waitWhileProducerIsActive() {
             if (_producingType != blocking) {
                 throw new IllegalStateException("This method could only be used if producingType is " + blocking + ".");
             }
-            while (_valueState == producing) {
-                try {
-                    _producer.wait(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new GotInterruptedException("Got interrupted while waiting for production of cache value for key " + _key + ".", e);
+            final Long maximumWaitTime = _maximumWaitTime;
+            final long waitUntil = _staleValue != null && maximumWaitTime != null ? currentTimeMillis() + maximumWaitTime : Long.MAX_VALUE;
+            boolean result = true;
+            synchronized (_lock) {
+                while (result && _valueState == producing) {
+                    final long remaining = waitUntil - currentTimeMillis();
+                    if (remaining > 0) {
+                        try {
+                            _lock.wait(Math.min(remaining, 1000));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new GotInterruptedException("Got interrupted while waiting for production of cache value for key " + _key + ".", e);
+                        }
+                    } else {
+                        result = false;
+                    }
                 }
             }
+            return result;
         }
 
         static enum ValueState {
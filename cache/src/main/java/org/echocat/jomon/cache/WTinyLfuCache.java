@@ -0,0 +1,330 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.ProducingType;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>A Cache based on the W-TinyLFU algorithm. New elements are put into a small LRU <i>window</i>. Elements which fall out of the window have
+ * to compete with the next victim of the <i>main</i> region: only if a {@link FrequencySketch frequency sketch} estimates that the candidate was
+ * requested more often than the victim, the candidate is admitted and the victim removed. So a scan over a lot of elements which are requested
+ * only once does not flush the frequently used elements out of the cache.</p>
+ *
+ * <p>The main region is a segmented LRU: Elements enter the <i>probation</i> segment and are promoted into the <i>protected</i> segment on their
+ * next hit. If the protected segment is full its least recently used element is demoted back to probation.</p>
+ *
+ * <p>All regions are stored in one linked list in the order window, protected and probation. The frequencies are recorded on every put and
+ * hit of this cache.</p>
+ */
+@ThreadSafe
+public class WTinyLfuCache<K, V> extends InMemoryBasedCacheSupport<K, V> {
+
+    public static final int DEFAULT_WINDOW_PERCENTAGE = 1;
+    public static final int DEFAULT_PROTECTED_PERCENTAGE = 80;
+
+    protected static final int WINDOW = 0;
+    protected static final int PROTECTED = 1;
+    protected static final int PROBATION = 2;
+
+    private static final long DEFAULT_SKETCH_SIZE = 16;
+
+    @GuardedBy("_lock")
+    private final FrequencySketch _sketch = new FrequencySketch(DEFAULT_SKETCH_SIZE);
+    @GuardedBy("_lock")
+    private final Entry<K, V>[] _heads;
+    @GuardedBy("_lock")
+    private final int[] _sizes = new int[3];
+
+    private volatile int _windowPercentage = DEFAULT_WINDOW_PERCENTAGE;
+    private volatile int _protectedPercentage = DEFAULT_PROTECTED_PERCENTAGE;
+
+    @GuardedBy("_lock")
+    private int _windowCapacity = Integer.MAX_VALUE;
+    @GuardedBy("_lock")
+    private int _protectedCapacity = Integer.MAX_VALUE;
+
+    public WTinyLfuCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        super(keyType, valueType);
+        // noinspection unchecked
+        _heads = new Entry[3];
+    }
+
+    @Nonnegative
+    public int getWindowPercentage() {
+        return _windowPercentage;
+    }
+
+    /**
+     * @param windowPercentage percentage of the capacity which is used by the window. The window contains at least one element.
+     */
+    public void setWindowPercentage(@Nonnegative int windowPercentage) {
+        if (windowPercentage < 0 || windowPercentage > 100) {
+            throw new IllegalArgumentException("The windowPercentage have to be between 0 and 100.");
+        }
+        _windowPercentage = windowPercentage;
+        updateRegionCapacities();
+    }
+
+    @Nonnegative
+    public int getProtectedPercentage() {
+        return _protectedPercentage;
+    }
+
+    /**
+     * @param protectedPercentage percentage of the main region which is used by the protected segment.
+     */
+    public void setProtectedPercentage(@Nonnegative int protectedPercentage) {
+        if (protectedPercentage < 0 || protectedPercentage > 100) {
+            throw new IllegalArgumentException("The protectedPercentage have to be between 0 and 100.");
+        }
+        _protectedPercentage = protectedPercentage;
+        updateRegionCapacities();
+    }
+
+    @Override
+    public void setCapacity(@Nullable Long capacity) {
+        super.setCapacity(capacity);
+        synchronized (_lock) {
+            _sketch.ensureCapacity(capacity != null ? capacity : DEFAULT_SKETCH_SIZE);
+        }
+        updateRegionCapacities();
+    }
+
+    @Override
+    @Nonnull
+    protected CacheEntry<K, V> newCacheEntry(@Nullable K key, @Nullable Long expireAfter, @Nullable V value) {
+        return new Entry<>(key, expireAfter, value);
+    }
+
+    @Override
+    @Nonnull
+    protected CacheEntry<K, V> newCacheEntry(@Nullable K key, @Nullable Long expireAfter, @Nonnull ValueProducer<K, V> producer, @Nonnull ProducingType producingType) {
+        return new Entry<>(key, expireAfter, producer, producingType);
+    }
+
+    /**
+     * Adds the new cache entry at the beginning of the window. If the window is full its last entry is moved into probation.
+     */
+    @Override
+    protected void updateListAfterPut(CacheEntry<K, V> newEntry) {
+        _sketch.increment(newEntry.getKey());
+        addFirst((Entry<K, V>) newEntry, WINDOW);
+        if (_sizes[WINDOW] > _windowCapacity) {
+            moveToFirst(lastOf(WINDOW), PROBATION);
+        }
+    }
+
+    /**
+     * Moves the entry to the beginning of its region. An entry of probation is promoted into the protected segment.
+     */
+    @Override
+    protected void updateListAfterHit(CacheEntry<K, V> entry) {
+        if (entry != null) {
+            final Entry<K, V> target = (Entry<K, V>) entry;
+            _sketch.increment(target.getKey());
+            if (target._region == WINDOW) {
+                moveToFirst(target, WINDOW);
+            } else {
+                moveToFirst(target, PROTECTED);
+                if (_sizes[PROTECTED] > _protectedCapacity) {
+                    moveToFirst(lastOf(PROTECTED), PROBATION);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void updateListBeforeRemove(@Nonnull CacheEntry<K, V> entry) {
+        leaveRegion((Entry<K, V>) entry);
+    }
+
+    @Override
+    protected void updateListAfterClear() {
+        for (int i = 0; i < _heads.length; i++) {
+            _heads[i] = null;
+            _sizes[i] = 0;
+        }
+        _sketch.clear();
+    }
+
+    /**
+     * Removes either the last entry of the window or the next victim of the main region - the one with the lower estimated frequency. If the
+     * entry of the window wins it is moved into probation.
+     */
+    @Override
+    protected void removeLast() {
+        synchronized (_lock) {
+            final Entry<K, V> candidate = lastOf(WINDOW);
+            final Entry<K, V> victim = lastOf(_sizes[PROBATION] > 0 ? PROBATION : PROTECTED);
+            final Entry<K, V> toRemove;
+            if (candidate != null && victim != null) {
+                if (_sketch.frequency(candidate.getKey()) > _sketch.frequency(victim.getKey())) {
+                    moveToFirst(candidate, PROBATION);
+                    toRemove = victim;
+                } else {
+                    toRemove = candidate;
+                }
+            } else {
+                toRemove = candidate != null ? candidate : victim;
+            }
+            if (toRemove != null) {
+                removeInternal(toRemove.getKey());
+            }
+        }
+    }
+
+    @Nonnegative
+    protected int getSizeOf(int region) {
+        synchronized (_lock) {
+            return _sizes[region];
+        }
+    }
+
+    @Nonnegative
+    protected int getRegionOf(@Nonnull CacheEntry<K, V> entry) {
+        return ((Entry<K, V>) entry)._region;
+    }
+
+    /**
+     * Recalculates the capacities of the regions. If a region holds more entries than its new capacity its least
+     * recently used ones are moved into probation.
+     */
+    protected void updateRegionCapacities() {
+        synchronized (_lock) {
+            final Integer capacity = _capacity;
+            if (capacity != null) {
+                _windowCapacity = Math.max((int) ((long) capacity * _windowPercentage / 100), 1);
+                final int mainCapacity = Math.max(capacity - _windowCapacity, 0);
+                _protectedCapacity = (int) ((long) mainCapacity * _protectedPercentage / 100);
+            } else {
+                _windowCapacity = Integer.MAX_VALUE;
+                _protectedCapacity = Integer.MAX_VALUE;
+            }
+            while (_sizes[WINDOW] > _windowCapacity) {
+                moveToFirst(lastOf(WINDOW), PROBATION);
+            }
+            while (_sizes[PROTECTED] > _protectedCapacity) {
+                moveToFirst(lastOf(PROTECTED), PROBATION);
+            }
+        }
+    }
+
+    @Nullable
+    private Entry<K, V> firstFrom(int region) {
+        Entry<K, V> result = null;
+        for (int i = region; result == null && i < _heads.length; i++) {
+            result = _heads[i];
+        }
+        return result;
+    }
+
+    @Nullable
+    private Entry<K, V> lastOf(int region) {
+        final Entry<K, V> result;
+        if (_sizes[region] > 0) {
+            final Entry<K, V> firstOfNextRegion = firstFrom(region + 1);
+            result = (Entry<K, V>) (firstOfNextRegion != null ? firstOfNextRegion.getPrevious() : _last);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    private void moveToFirst(@Nonnull Entry<K, V> entry, int region) {
+        // noinspection ObjectEquality
+        if (entry._region != region || _heads[region] != entry) {
+            leaveRegion(entry);
+            unlink(entry);
+            addFirst(entry, region);
+        }
+    }
+
+    private void addFirst(@Nonnull Entry<K, V> entry, int region) {
+        final CacheEntry<K, V> successor = firstFrom(region);
+        if (successor == null) {
+            entry.setPrevious(_last);
+            entry.setNext(null);
+            if (_last != null) {
+                _last.setNext(entry);
+            } else {
+                _first = entry;
+            }
+            _last = entry;
+        } else {
+            final CacheEntry<K, V> previous = successor.getPrevious();
+            entry.setPrevious(previous);
+            entry.setNext(successor);
+            successor.setPrevious(entry);
+            if (previous != null) {
+                previous.setNext(entry);
+            } else {
+                _first = entry;
+            }
+        }
+        _heads[region] = entry;
+        _sizes[region]++;
+        entry._region = region;
+    }
+
+    private void leaveRegion(@Nonnull Entry<K, V> entry) {
+        final int region = entry._region;
+        // noinspection ObjectEquality
+        if (_heads[region] == entry) {
+            _heads[region] = _sizes[region] > 1 ? (Entry<K, V>) entry.getNext() : null;
+        }
+        _sizes[region]--;
+    }
+
+    private void unlink(@Nonnull Entry<K, V> entry) {
+        final CacheEntry<K, V> previous = entry.getPrevious();
+        final CacheEntry<K, V> next = entry.getNext();
+        if (previous != null) {
+            previous.setNext(next);
+        } else {
+            _first = next;
+        }
+        if (next != null) {
+            next.setPrevious(previous);
+        } else {
+            _last = previous;
+        }
+        entry.setPrevious(null);
+        entry.setNext(null);
+    }
+
+    protected static class Entry<K, V> extends CacheEntry<K, V> {
+
+        private int _region;
+
+        protected Entry(@Nullable K key, @Nullable Long expireAfter, @Nullable V value) {
+            super(key, expireAfter, value);
+        }
+
+        protected Entry(@Nullable K key, @Nullable Long expireAfter, @Nullable ValueProducer<K, V> producer, @Nonnull ProducingType producingType) {
+            super(key, expireAfter, producer, producingType);
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Calculates the weight of an element of a {@link WeightEnabledCache}. The weight of an element is calculated once when the element is put into
+ * the cache (or its value was produced) and has to be stable.
+ */
+public interface Weigher<K, V> {
+
+    @Nonnegative
+    public long weigh(@Nullable K key, @Nullable V value);
+
+    /**
+     * Every element has the weight <code>1</code>. This is the default if no weigher is configured.
+     */
+    @ThreadSafe
+    public static class Singleton implements Weigher<Object, Object> {
+
+        public static final Singleton INSTANCE = new Singleton();
+
+        @Override
+        public long weigh(@Nullable Object key, @Nullable Object value) {
+            return 1;
+        }
+    }
+
+    /**
+     * Weighs byte arrays by their length.
+     */
+    @ThreadSafe
+    public static class ByteArrayWeigher implements Weigher<Object, byte[]> {
+
+        public static final ByteArrayWeigher INSTANCE = new ByteArrayWeigher();
+
+        @Override
+        public long weigh(@Nullable Object key, @Nullable byte[] value) {
+            return value != null ? value.length : 0;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.ByteCount;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+
+/**
+ * A cache which could be limited by the total weight of its elements instead (or in addition) of the number of elements. If the
+ * {@link #setMaximumWeight(Long) maximum weight} is reached elements are removed until the total weight fits again. With a
+ * {@link Weigher.ByteArrayWeigher weigher that returns bytes} the maximum weight could be expressed as {@link ByteCount}.
+ */
+public interface WeightEnabledCache<K, V> extends LimitedCache<K, V> {
+
+    /**
+     * @param weigher <code>null</code> means that every element has the weight <code>1</code>.
+     */
+    public void setWeigher(@Nullable Weigher<? super K, ? super V> weigher);
+
+    @Nullable
+    public Weigher<? super K, ? super V> getWeigher();
+
+    public void setMaximumWeight(@Nullable Long maximumWeight);
+
+    @Nullable
+    public Long getMaximumWeight();
+
+    /**
+     * @return the weight of the element with the given key or <code>null</code> if there is no such element.
+     */
+    @Nullable
+    @Nonnegative
+    public Long getWeightOf(@Nullable K key);
+
+}
@@ -0,0 +1,399 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.CacheSnapshotEntry;
+import org.echocat.jomon.cache.SnapshotEnabledCache;
+import org.echocat.jomon.cache.offheap.OffHeapCache;
+import org.echocat.jomon.cache.offheap.Serializer;
+import org.echocat.jomon.runtime.util.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.Files.move;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>Writes the hottest elements of all {@link SnapshotEnabledCache snapshot enabled caches} of a {@link CacheRepository} into a file and
+ * restores them from it, for example to warm up the caches after a deploy:</p>
+ * <pre>
+ * final CacheSnapshotter snapshotter = new CacheSnapshotter(new File("/var/cache/myApp/caches.snapshot"));
+ * repository.setListeners(Collections.&lt;CacheListener&gt;singletonList(snapshotter));
+ * snapshotter.load(repository);
+ * ... on shutdown ...
+ * snapshotter.save(repository);
+ * </pre>
+ *
+ * <p>The keys and values are converted into bytes by a {@link #setSerializers(Map) serializer registered for their type} or by
+ * {@link OffHeapCache#serializerFor(Class) the default serializer}. Elements that could not be serialized are skipped.</p>
+ *
+ * <p>The file is memory mapped while it is {@link #load(CacheRepository) loaded} and the caches are restored in parallel. Caches that do not
+ * exist yet are restored as soon as they are created, if this snapshotter is registered as a {@link CreationCacheListener} at the
+ * repository. The remaining lifetime of the elements is reduced by the time that passed since the snapshot was written.</p>
+ *
+ * <h1>Format</h1>
+ * <pre>
+ * file    := MAGIC(int) VERSION(byte) created(long) numberOfSections(int) section*
+ * section := cacheId(string) keyType(string) valueType(string) numberOfEntries(int) lengthOfEntries(int) entry*
+ * entry   := key(bytes) value(bytes) expireAfter(long, -1 = never) hits(int)
+ * string  := length(short) utf8
+ * bytes   := length(int, -1 = null) byte*
+ * </pre>
+ */
+@ThreadSafe
+public class CacheSnapshotter implements CreationCacheListener {
+
+    public static final int MAGIC = 0x4A435348;
+    public static final byte VERSION = 1;
+    public static final int DEFAULT_MAXIMUM_NUMBER_OF_ENTRIES_PER_CACHE = 10000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheSnapshotter.class);
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int NULL_LENGTH = -1;
+    private static final long NEVER = -1;
+
+    private final File _file;
+    private final ConcurrentMap<String, Section> _pendingSections = new ConcurrentHashMap<>();
+
+    private volatile Map<Class<?>, Serializer<?>> _serializers = Collections.emptyMap();
+    private volatile int _maximumNumberOfEntriesPerCache = DEFAULT_MAXIMUM_NUMBER_OF_ENTRIES_PER_CACHE;
+    private volatile int _numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    public CacheSnapshotter(@Nonnull File file) {
+        _file = file;
+    }
+
+    @Nonnull
+    public File getFile() {
+        return _file;
+    }
+
+    @Nonnull
+    public Map<Class<?>, Serializer<?>> getSerializers() {
+        return _serializers;
+    }
+
+    /**
+     * @param serializers to use for keys and values of the given types. All other types are handled by {@link OffHeapCache#serializerFor(Class)}.
+     */
+    public void setSerializers(@Nullable Map<Class<?>, Serializer<?>> serializers) {
+        _serializers = serializers != null ? new HashMap<>(serializers) : Collections.<Class<?>, Serializer<?>>emptyMap();
+    }
+
+    @Nonnegative
+    public int getMaximumNumberOfEntriesPerCache() {
+        return _maximumNumberOfEntriesPerCache;
+    }
+
+    public void setMaximumNumberOfEntriesPerCache(@Nonnegative int maximumNumberOfEntriesPerCache) {
+        _maximumNumberOfEntriesPerCache = maximumNumberOfEntriesPerCache;
+    }
+
+    @Nonnegative
+    public int getNumberOfThreads() {
+        return _numberOfThreads;
+    }
+
+    /**
+     * @param numberOfThreads that restore the caches while {@link #load(CacheRepository) loading}.
+     */
+    public void setNumberOfThreads(@Nonnegative int numberOfThreads) {
+        if (numberOfThreads <= 0) {
+            throw new IllegalArgumentException("The numberOfThreads have to be greater than 0.");
+        }
+        _numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * @return the number of written elements.
+     */
+    @Nonnegative
+    public long save(@Nonnull Iterable<Entry<String, Cache<?, ?>>> caches) throws IOException {
+        final File directory = _file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory + ".");
+        }
+        final File temporaryFile = new File(_file.getPath() + ".tmp");
+        long result = 0;
+        try {
+            final List<byte[]> sections = new ArrayList<>();
+            for (Entry<String, Cache<?, ?>> idAndCache : caches) {
+                final Cache<?, ?> cache = idAndCache.getValue();
+                if (cache instanceof SnapshotEnabledCache) {
+                    final ByteArrayOutputStream section = new ByteArrayOutputStream();
+                    result += writeSection(idAndCache.getKey(), (SnapshotEnabledCache<?, ?>) cache, new DataOutputStream(section));
+                    sections.add(section.toByteArray());
+                }
+            }
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(currentTimeMillis());
+                out.writeInt(sections.size());
+                for (byte[] section : sections) {
+                    out.write(section);
+                }
+            }
+            move(temporaryFile.toPath(), _file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+        }
+        return result;
+    }
+
+    /**
+     * Restores all caches of the given repository from the {@link #getFile() file}. Sections of caches that do not exist yet are kept until
+     * the cache is created. If the file does not exist nothing happens.
+     *
+     * @return the number of restored elements.
+     */
+    @Nonnegative
+    public long load(@Nonnull CacheRepository repository) throws IOException, InterruptedException {
+        _pendingSections.clear();
+        long result = 0;
+        if (_file.isFile()) {
+            final List<Section> sections = readSections();
+            final List<Callable<Integer>> restores = new ArrayList<>();
+            for (final Section section : sections) {
+                final Cache<?, ?> cache = repository.find(section._cacheId);
+                if (cache != null) {
+                    restores.add(new Callable<Integer>() { @Override public Integer call() throws Exception {
+                        return restore(section, cache);
+                    }});
+                } else {
+                    _pendingSections.put(section._cacheId, section);
+                }
+            }
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.max(Math.min(_numberOfThreads, restores.size()), 1));
+            try {
+                for (Future<Integer> restored : executor.invokeAll(restores)) {
+                    try {
+                        result += restored.get();
+                    } catch (ExecutionException e) {
+                        LOG.warn("Could not restore a cache from " + _file + ".", e.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean beforeCreate(@Nonnull String id, @Nonnull CacheDefinition<?, ?, ?> definition) {
+        return true;
+    }
+
+    @Override
+    public void afterCreate(@Nonnull String id, @Nonnull CacheDefinition<?, ?, ?> definition, @Nonnull Cache<?, ?> cache) {
+        final Section section = _pendingSections.remove(id);
+        if (section != null) {
+            try {
+                restore(section, cache);
+            } catch (Exception e) {
+                LOG.warn("Could not restore cache '" + id + "' from " + _file + ".", e);
+            }
+        }
+    }
+
+    @Nonnegative
+    protected <K, V> int writeSection(@Nonnull String cacheId, @Nonnull SnapshotEnabledCache<K, V> cache, @Nonnull DataOutputStream out) throws IOException {
+        final Serializer<K> keySerializer = serializerFor(cache.getKeyType());
+        final Serializer<V> valueSerializer = serializerFor(cache.getValueType());
+        final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        final DataOutputStream entriesOut = new DataOutputStream(entries);
+        int numberOfEntries = 0;
+        for (CacheSnapshotEntry<K, V> entry : cache.snapshot(_maximumNumberOfEntriesPerCache)) {
+            byte[] key = null;
+            byte[] value = null;
+            boolean serialized;
+            try {
+                key = serialize(keySerializer, entry.getKey());
+                value = serialize(valueSerializer, entry.getValue());
+                serialized = true;
+            } catch (Exception e) {
+                LOG.debug("Could not serialize " + entry + " of cache '" + cacheId + "'. It will not be part of the snapshot.", e);
+                serialized = false;
+            }
+            if (serialized) {
+                writeBytes(key, entriesOut);
+                writeBytes(value, entriesOut);
+                final Long expireAfter = entry.getExpireAfter();
+                entriesOut.writeLong(expireAfter != null ? expireAfter : NEVER);
+                entriesOut.writeInt(entry.getHits());
+                numberOfEntries++;
+            }
+        }
+        writeString(cacheId, out);
+        writeString(cache.getKeyType().getName(), out);
+        writeString(cache.getValueType().getName(), out);
+        out.writeInt(numberOfEntries);
+        out.writeInt(entries.size());
+        entries.writeTo(out);
+        return numberOfEntries;
+    }
+
+    @Nonnull
+    protected List<Section> readSections() throws IOException {
+        final ByteBuffer buffer;
+        try (final FileChannel channel = new RandomAccessFile(_file, "r").getChannel()) {
+            buffer = channel.map(READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 17 || buffer.getInt() != MAGIC) {
+            throw new IOException(_file + " is not a cache snapshot.");
+        }
+        final byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException(_file + " has the unsupported version " + version + ".");
+        }
+        final long created = buffer.getLong();
+        final int numberOfSections = buffer.getInt();
+        final List<Section> result = new ArrayList<>(numberOfSections);
+        for (int i = 0; i < numberOfSections; i++) {
+            final String cacheId = readString(buffer);
+            final String keyType = readString(buffer);
+            final String valueType = readString(buffer);
+            final int numberOfEntries = buffer.getInt();
+            final int lengthOfEntries = buffer.getInt();
+            final ByteBuffer entries = buffer.slice();
+            entries.limit(lengthOfEntries);
+            buffer.position(buffer.position() + lengthOfEntries);
+            result.add(new Section(cacheId, keyType, valueType, created, numberOfEntries, entries));
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected <K, V> int restore(@Nonnull Section section, @Nonnull Cache<K, V> cache) throws Exception {
+        final int result;
+        if (!(cache instanceof SnapshotEnabledCache)) {
+            LOG.info("Cache '" + section._cacheId + "' does not support snapshots and will not be restored.");
+            result = 0;
+        } else if (!cache.getKeyType().getName().equals(section._keyType) || !cache.getValueType().getName().equals(section._valueType)) {
+            LOG.info("The types of cache '" + section._cacheId + "' changed since the snapshot was written. It will not be restored.");
+            result = 0;
+        } else {
+            final Serializer<K> keySerializer = serializerFor(cache.getKeyType());
+            final Serializer<V> valueSerializer = serializerFor(cache.getValueType());
+            final long elapsed = Math.max(currentTimeMillis() - section._created, 0);
+            final ByteBuffer buffer = section._entries.duplicate();
+            final List<CacheSnapshotEntry<K, V>> entries = new ArrayList<>(section._numberOfEntries);
+            for (int i = 0; i < section._numberOfEntries; i++) {
+                final byte[] key = readBytes(buffer);
+                final byte[] value = readBytes(buffer);
+                final long expireAfter = buffer.getLong();
+                final int hits = buffer.getInt();
+                if (expireAfter == NEVER || expireAfter > elapsed) {
+                    entries.add(new CacheSnapshotEntry<>(deserialize(keySerializer, key), deserialize(valueSerializer, value), expireAfter != NEVER ? expireAfter - elapsed : null, hits));
+                }
+            }
+            ((SnapshotEnabledCache<K, V>) cache).restore(entries);
+            result = entries.size();
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected <T> Serializer<T> serializerFor(@Nonnull Class<?> type) {
+        final Serializer<?> serializer = _serializers.get(type);
+        // noinspection unchecked
+        return serializer != null ? (Serializer<T>) serializer : OffHeapCache.<T>serializerFor(type);
+    }
+
+    @Nullable
+    private static <T> byte[] serialize(@Nonnull Serializer<T> serializer, @Nullable T value) throws Exception {
+        return value != null ? serializer.serialize(value) : null;
+    }
+
+    @Nullable
+    private static <T> T deserialize(@Nonnull Serializer<T> serializer, @Nullable byte[] bytes) throws Exception {
+        return bytes != null ? serializer.deserialize(bytes) : null;
+    }
+
+    private static void writeBytes(@Nullable byte[] bytes, @Nonnull DataOutputStream out) throws IOException {
+        if (bytes != null) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            out.writeInt(NULL_LENGTH);
+        }
+    }
+
+    @Nullable
+    private static byte[] readBytes(@Nonnull ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final byte[] result;
+        if (length != NULL_LENGTH) {
+            result = new byte[length];
+            buffer.get(result);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    private static void writeString(@Nonnull String string, @Nonnull DataOutputStream out) throws IOException {
+        final byte[] bytes = string.getBytes(CHARSET);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nonnull
+    private static String readString(@Nonnull ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    protected static class Section {
+
+        private final String _cacheId;
+        private final String _keyType;
+        private final String _valueType;
+        private final long _created;
+        private final int _numberOfEntries;
+        private final ByteBuffer _entries;
+
+        protected Section(@Nonnull String cacheId, @Nonnull String keyType, @Nonnull String valueType, long created, @Nonnegative int numberOfEntries, @Nonnull ByteBuffer entries) {
+            _cacheId = cacheId;
+            _keyType = keyType;
+            _valueType = valueType;
+            _created = created;
+            _numberOfEntries = numberOfEntries;
+            _entries = entries;
+        }
+
+    }
+
+}
@@ -32,6 +32,10 @@ public class CombinedCacheCreator implements CacheCreator {
         new LruCacheCreator(),
         new LfuCacheCreator(),
         new FifoCacheCreator(),
+        new WTinyLfuCacheCreator(),
+        new ConcurrentCacheCreator(),
+        new OffHeapCacheCreator(),
+        new LongKeyCacheCreator(),
         new ServletRequestBasedCacheCreator()
     );
 
@@ -89,7 +93,12 @@ public class CombinedCacheCreator implements CacheCreator {
                 }
             }
         }
-        return new CombinedCache<>(by.getKeyType(), by.getValueType(), delegates);
+        final CombinedCache<K, V> cache = new CombinedCache<>(by.getKeyType(), by.getValueType(), delegates);
+        cache.setWriteBehindExecutor(by.getWriteBehindExecutor());
+        cache.setPromotion(by.isPromotion());
+        cache.setDemotion(by.isDemotion());
+        cache.setTierStatisticsEnabled(by.isTierStatisticsEnabled());
+        return cache;
     }
 
     @Nullable
@@ -21,6 +21,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static java.util.Arrays.asList;
 
@@ -54,6 +55,10 @@ public class CombinedCacheDefinition<K, V> extends CacheDefinition<K, V, Combine
     }
 
     private List<IdentifiersToDefinition<? extends K, ? extends V>> _delegates;
+    private Executor _writeBehindExecutor;
+    private boolean _promotion = true;
+    private boolean _demotion;
+    private boolean _tierStatisticsEnabled;
 
     public CombinedCacheDefinition(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
         // noinspection unchecked
@@ -82,6 +87,75 @@ public class CombinedCacheDefinition<K, V> extends CacheDefinition<K, V, Combine
         return thisInstance();
     }
 
+    @Nullable
+    public Executor getWriteBehindExecutor() {
+        return _writeBehindExecutor;
+    }
+
+    public void setWriteBehindExecutor(@Nullable Executor writeBehindExecutor) {
+        _writeBehindExecutor = writeBehindExecutor;
+    }
+
+    /**
+     * @see CombinedCache#setWriteBehindExecutor(Executor)
+     */
+    @Nonnull
+    public CombinedCacheDefinition<K, V> withWriteBehind(@Nullable Executor executor) {
+        setWriteBehindExecutor(executor);
+        return thisInstance();
+    }
+
+    public boolean isPromotion() {
+        return _promotion;
+    }
+
+    public void setPromotion(boolean promotion) {
+        _promotion = promotion;
+    }
+
+    /**
+     * @see CombinedCache#setPromotion(boolean)
+     */
+    @Nonnull
+    public CombinedCacheDefinition<K, V> withPromotion(boolean promotion) {
+        setPromotion(promotion);
+        return thisInstance();
+    }
+
+    public boolean isDemotion() {
+        return _demotion;
+    }
+
+    public void setDemotion(boolean demotion) {
+        _demotion = demotion;
+    }
+
+    /**
+     * @see CombinedCache#setDemotion(boolean)
+     */
+    @Nonnull
+    public CombinedCacheDefinition<K, V> withDemotion(boolean demotion) {
+        setDemotion(demotion);
+        return thisInstance();
+    }
+
+    public boolean isTierStatisticsEnabled() {
+        return _tierStatisticsEnabled;
+    }
+
+    public void setTierStatisticsEnabled(boolean tierStatisticsEnabled) {
+        _tierStatisticsEnabled = tierStatisticsEnabled;
+    }
+
+    /**
+     * @see CombinedCache#getTierStatistics()
+     */
+    @Nonnull
+    public CombinedCacheDefinition<K, V> withTierStatistics(boolean enabled) {
+        setTierStatisticsEnabled(enabled);
+        return thisInstance();
+    }
+
     public abstract static class IdentifiersToDefinition<K, V> {
 
         private final CacheDefinition<K, V, ?> _definition;
@@ -0,0 +1,84 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.*;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.echocat.jomon.cache.ConcurrentCacheSupport.DEFAULT_CONCURRENCY_LEVEL;
+
+public class ConcurrentCacheCreator extends DefaultCacheCreatorSupport {
+
+    private int _defaultConcurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+    @Nonnegative
+    public int getDefaultConcurrencyLevel() {
+        return _defaultConcurrencyLevel;
+    }
+
+    public void setDefaultConcurrencyLevel(@Nonnegative int defaultConcurrencyLevel) {
+        _defaultConcurrencyLevel = defaultConcurrencyLevel;
+    }
+
+    @Override
+    public boolean canHandleType(@Nonnull Class<? extends Cache<?, ?>> type) throws Exception {
+        return ConcurrentCacheSupport.class.isAssignableFrom(type);
+    }
+
+    @Nonnull
+    @Override
+    public <K, V> Cache<K, V> create(@Nullable CacheProvider cacheProvider, @Nonnull CacheCreator master, @Nonnull CacheDefinition<K, V, ?> by) throws Exception {
+        final Cache<K, V> result = super.create(cacheProvider, master, by);
+        if (result instanceof ProducingTypeEnabledCache && by instanceof ConcurrentCacheDefinition) {
+            final ProducingType producingType = ((ConcurrentCacheDefinition) by).getProducingType();
+            if (producingType != null) {
+                ((ProducingTypeEnabledCache) result).setProducingType(producingType);
+            } else if (getDefaultProducingType() != null) {
+                ((ProducingTypeEnabledCache) result).setProducingType(getDefaultProducingType());
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    protected <K, V> LimitedCache<K, V> newInstance(@Nonnull CacheDefinition<K, V, ?> by) throws Exception {
+        final Class<? extends Cache<?, ?>> type = by.getRequiredType();
+        final int concurrencyLevel = getConcurrencyLevelFor(by);
+        final LimitedCache<K, V> result;
+        if (ConcurrentLruCache.class.isAssignableFrom(type)) {
+            result = new ConcurrentLruCache<>(by.getKeyType(), by.getValueType(), concurrencyLevel);
+        } else if (ConcurrentLfuCache.class.isAssignableFrom(type)) {
+            result = new ConcurrentLfuCache<>(by.getKeyType(), by.getValueType(), concurrencyLevel);
+        } else if (ConcurrentFifoCache.class.isAssignableFrom(type)) {
+            result = new ConcurrentFifoCache<>(by.getKeyType(), by.getValueType(), concurrencyLevel);
+        } else {
+            throw new IllegalArgumentException("Could not handle " + by + ".");
+        }
+        return result;
+    }
+
+    @Nonnegative
+    protected int getConcurrencyLevelFor(@Nonnull CacheDefinition<?, ?, ?> by) {
+        final Integer concurrencyLevel = by instanceof ConcurrentCacheDefinition ? ((ConcurrentCacheDefinition<?, ?>) by).getConcurrencyLevel() : null;
+        return concurrencyLevel != null ? concurrencyLevel : _defaultConcurrencyLevel;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.*;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class ConcurrentCacheDefinition<K, V> extends LimitedCacheDefinition<K, V, ConcurrentCacheDefinition<K, V>> {
+
+    private ProducingType _producingType;
+    private Integer _concurrencyLevel;
+
+    @Nonnull
+    public static <K, V> ConcurrentCacheDefinition<K, V> concurrentCache(@Nonnull Class<? extends ConcurrentCacheSupport<?, ?>> type, @Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        return new ConcurrentCacheDefinition<>(type, keyType, valueType);
+    }
+
+    @Nonnull
+    public static <K, V> ConcurrentCacheDefinition<K, V> concurrentLruCache(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return concurrentCache((Class<? extends ConcurrentCacheSupport<?, ?>>)(Object)ConcurrentLruCache.class, keyType, valueType);
+    }
+
+    @Nonnull
+    public static <K, V> ConcurrentCacheDefinition<K, V> concurrentLfuCache(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return concurrentCache((Class<? extends ConcurrentCacheSupport<?, ?>>)(Object)ConcurrentLfuCache.class, keyType, valueType);
+    }
+
+    @Nonnull
+    public static <K, V> ConcurrentCacheDefinition<K, V> concurrentFifoCache(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return concurrentCache((Class<? extends ConcurrentCacheSupport<?, ?>>)(Object)ConcurrentFifoCache.class, keyType, valueType);
+    }
+
+    public ConcurrentCacheDefinition(@Nonnull Class<? extends Cache<?, ?>> requiredType, @Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        super(requiredType, keyType, valueType);
+    }
+
+    @Nullable
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    public void setProducingType(@Nullable ProducingType producingType) {
+        _producingType = producingType;
+    }
+
+    @Nonnull
+    public ConcurrentCacheDefinition<K, V> withProducingType(@Nonnull ProducingType producingType) {
+        if (_producingType != null) {
+            throw new IllegalStateException("ProducingType already set.");
+        }
+        _producingType = producingType;
+        return thisInstance();
+    }
+
+    @Nullable
+    public Integer getConcurrencyLevel() {
+        return _concurrencyLevel;
+    }
+
+    public void setConcurrencyLevel(@Nullable Integer concurrencyLevel) {
+        _concurrencyLevel = concurrencyLevel;
+    }
+
+    @Nonnull
+    public ConcurrentCacheDefinition<K, V> withConcurrencyLevel(@Nonnegative int concurrencyLevel) {
+        setConcurrencyLevel(concurrencyLevel);
+        return thisInstance();
+    }
+}
@@ -47,6 +47,12 @@ public class DefaultCacheDefinition<K, V> extends LimitedCacheDefinition<K, V, D
         return cache((Class<? extends LimitedCache<?, ?>>)(Object)FifoCache.class, keyType, valueType);
     }
 
+    @Nonnull
+    public static <K, V> DefaultCacheDefinition<K, V> wTinyLfuCache(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return cache((Class<? extends LimitedCache<?, ?>>)(Object)WTinyLfuCache.class, keyType, valueType);
+    }
+
     public DefaultCacheDefinition(@Nonnull Class<? extends Cache<?, ?>> requiredType, @Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
         super(requiredType, keyType, valueType);
     }
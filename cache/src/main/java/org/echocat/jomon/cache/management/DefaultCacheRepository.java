@@ -18,10 +18,16 @@ import org.echocat.jomon.cache.*;
 import org.echocat.jomon.runtime.iterators.ConvertingIterator;
 import org.echocat.jomon.runtime.util.Entry;
 import org.echocat.jomon.runtime.util.Entry.Impl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 import static org.echocat.jomon.cache.CacheUtils.assertValidCacheId;
@@ -29,13 +35,22 @@ import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
 
 public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
 
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultCacheRepository.class);
+
+    public static final String DEFAULT_JMX_DOMAIN = Cache.class.getPackage().getName();
+
     private final Map<String, Cache<?, ?>> _idToCache = new HashMap<>();
+    private final Set<String> _idsPublishedOverJmx = new HashSet<>();
 
     private final CacheCreator _cacheCreator;
 
     private CacheDefinition<?, ?, ?> _defaultDefinition;
     private Map<String, CacheDefinition<?, ?, ?>> _overwrittenCacheDefinitions;
     private Collection<CacheListener> _listeners;
+    private boolean _jmxEnabled;
+    private MBeanServer _mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private String _jmxDomain = DEFAULT_JMX_DOMAIN;
+    private boolean _capacityAdvisorEnabled;
 
     public DefaultCacheRepository(@Nonnull CacheCreator cacheCreator) {
         _cacheCreator = cacheCreator;
@@ -68,6 +83,70 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
         _listeners = listeners;
     }
 
+    public boolean isJmxEnabled() {
+        return _jmxEnabled;
+    }
+
+    /**
+     * If enabled every cache created from now on is published as {@link MBeanCacheWrapper MBean} and records its
+     * {@link MetricsEnabledCache metrics}.
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        _jmxEnabled = jmxEnabled;
+    }
+
+    @Nonnull
+    public MBeanServer getMBeanServer() {
+        return _mBeanServer;
+    }
+
+    public void setMBeanServer(@Nonnull MBeanServer mBeanServer) {
+        _mBeanServer = mBeanServer;
+    }
+
+    @Nonnull
+    public String getJmxDomain() {
+        return _jmxDomain;
+    }
+
+    /**
+     * Should be changed if more than one repository publishes its caches in the same {@link #getMBeanServer() MBean server}.
+     */
+    public void setJmxDomain(@Nonnull String jmxDomain) {
+        _jmxDomain = jmxDomain;
+    }
+
+    public boolean isCapacityAdvisorEnabled() {
+        return _capacityAdvisorEnabled;
+    }
+
+    /**
+     * If enabled every cache created from now on tracks which hit ratio it would have with other capacities.
+     *
+     * @see #getCapacityAdvices()
+     */
+    public void setCapacityAdvisorEnabled(boolean capacityAdvisorEnabled) {
+        _capacityAdvisorEnabled = capacityAdvisorEnabled;
+    }
+
+    /**
+     * @return the {@link CapacityAdvice advices} of all caches with an enabled {@link CapacityAdvisorEnabledCache advisor} by their ids.
+     */
+    @Nonnull
+    public Map<String, CapacityAdvice> getCapacityAdvices() {
+        final Map<String, CapacityAdvice> result = new TreeMap<>();
+        synchronized (_idToCache) {
+            for (Map.Entry<String, Cache<?, ?>> idAndCache : _idToCache.entrySet()) {
+                final Cache<?, ?> cache = idAndCache.getValue();
+                final CapacityAdvice advice = cache instanceof CapacityAdvisorEnabledCache ? ((CapacityAdvisorEnabledCache<?, ?>) cache).getCapacityAdvice() : null;
+                if (advice != null) {
+                    result.put(idAndCache.getKey(), advice);
+                }
+            }
+        }
+        return result;
+    }
+
     @Nonnull
     @Override
     public <K, V> Cache<K, V> provide(@Nonnull Class<?> forType, @Nullable CacheDefinition<K, V, ?> defaultDefinition) throws IllegalCacheDefinitionException {
@@ -137,6 +216,7 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
                     } else {
                         _idToCache.remove(id);
                     }
+                    unregisterMBeanFor(id);
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Could not remove cache '" + id + "'.", e);
@@ -175,6 +255,7 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
                     } else {
                         i.remove();
                     }
+                    unregisterMBeanFor(id);
                 } catch (Exception e) {
                     throw new RuntimeException("Could not remove cache '" + id + "'.", e);
                 }
@@ -215,7 +296,13 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
                 if (cache instanceof ListenerEnabledCache) {
                     ((ListenerEnabledCache<K, V>)cache).setListeners(_listeners);
                 }
+                if (_capacityAdvisorEnabled && cache instanceof CapacityAdvisorEnabledCache) {
+                    ((CapacityAdvisorEnabledCache<K, V>) cache).setCapacityAdvisorEnabled(true);
+                }
                 afterCreate(id, definition, cache);
+                if (_jmxEnabled) {
+                    registerMBeanFor(id, cache);
+                }
             } else {
                 // noinspection ThrowCaughtLocally
                 throw new IllegalCacheDefinitionException("Could not provide a cache by " + definition + ".");
@@ -228,6 +315,33 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
         }
     }
 
+    protected void registerMBeanFor(@Nonnull String id, @Nonnull Cache<?, ?> cache) {
+        if (cache instanceof MetricsEnabledCache) {
+            ((MetricsEnabledCache<?, ?>) cache).setMetricsEnabled(true);
+        }
+        try {
+            _mBeanServer.registerMBean(new MBeanCacheWrapper(id, cache), createObjectNameFor(id));
+            _idsPublishedOverJmx.add(id);
+        } catch (Exception e) {
+            LOG.warn("Could not register cache '" + id + "' in JMX. This cache will be available but is not visible over JMX.", e);
+        }
+    }
+
+    protected void unregisterMBeanFor(@Nonnull String id) {
+        if (_idsPublishedOverJmx.remove(id)) {
+            try {
+                _mBeanServer.unregisterMBean(createObjectNameFor(id));
+            } catch (Exception e) {
+                LOG.warn("Could not unregister cache '" + id + "' in JMX. This cache will be destroyed but is still visible over JMX.", e);
+            }
+        }
+    }
+
+    @Nonnull
+    protected ObjectName createObjectNameFor(@Nonnull String id) throws MalformedObjectNameException {
+        return new ObjectName(_jmxDomain + ":type=" + Cache.class.getSimpleName() + ",name=" + ObjectName.quote(id));
+    }
+
     protected <K, V> boolean beforeCreate(@Nonnull String id, @Nonnull CacheDefinition<K, V, ?> definition) throws Exception {
         final Iterable<CacheListener> listeners = _listeners;
         boolean result = true;
@@ -260,7 +374,7 @@ public class DefaultCacheRepository implements CacheRepository, AutoCloseable {
         boolean result = true;
         if (listeners != null) {
             for (CacheListener listener : listeners) {
-                if (listener instanceof CreationCacheListener) {
+                if (listener instanceof DestroyCacheListener) {
                     if (!((DestroyCacheListener)listener).beforeDestroy(id, cache)) {
                         result = false;
                         break;
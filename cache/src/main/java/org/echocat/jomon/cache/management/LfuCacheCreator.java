@@ -19,9 +19,24 @@ import org.echocat.jomon.cache.LfuCache;
 import org.echocat.jomon.cache.LimitedCache;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public class LfuCacheCreator extends DefaultCacheCreatorSupport {
 
+    private Long _agingInterval;
+
+    @Nullable
+    public Long getAgingInterval() {
+        return _agingInterval;
+    }
+
+    /**
+     * @see LfuCache#setAgingInterval(Long)
+     */
+    public void setAgingInterval(@Nullable Long agingInterval) {
+        _agingInterval = agingInterval;
+    }
+
     @Override
     public boolean canHandleType(@Nonnull Class<? extends Cache<?, ?>> type) throws Exception {
         return LfuCache.class.isAssignableFrom(type);
@@ -30,7 +45,9 @@ public class LfuCacheCreator extends DefaultCacheCreatorSupport {
     @Nonnull
     @Override
     protected <K, V> LimitedCache<K, V> newInstance(@Nonnull CacheDefinition<K, V, ?> by) throws Exception {
-        return new LfuCache<>(by.getKeyType(), by.getValueType());
+        final LfuCache<K, V> result = new LfuCache<>(by.getKeyType(), by.getValueType());
+        result.setAgingInterval(_agingInterval);
+        return result;
     }
 
 }
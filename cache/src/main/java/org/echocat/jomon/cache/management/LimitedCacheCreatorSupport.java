@@ -16,6 +16,9 @@ package org.echocat.jomon.cache.management;
 
 import org.echocat.jomon.cache.Cache;
 import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.NegativeCachingEnabledCache;
+import org.echocat.jomon.cache.RefreshEnabledCache;
+import org.echocat.jomon.cache.WeightEnabledCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,6 +34,29 @@ public abstract class LimitedCacheCreatorSupport extends CacheCreatorSupport {
             final LimitedCacheDefinition<K, V, ?> limitedDefinition = (LimitedCacheDefinition<K, V, ?>) by;
             result.setCapacity(limitedDefinition.getCapacity());
             result.setMaximumLifetime(limitedDefinition.getMaximumLifetime());
+            if (result instanceof WeightEnabledCache) {
+                final WeightEnabledCache<K, V> weightEnabled = (WeightEnabledCache<K, V>) result;
+                weightEnabled.setWeigher(limitedDefinition.getWeigher());
+                weightEnabled.setMaximumWeight(limitedDefinition.getMaximumWeight());
+            } else if (limitedDefinition.getWeigher() != null || limitedDefinition.getMaximumWeight() != null) {
+                throw new IllegalArgumentException(result + " does not support weighing of elements but " + by + " requires it.");
+            }
+            if (result instanceof RefreshEnabledCache) {
+                final RefreshEnabledCache<K, V> refreshEnabled = (RefreshEnabledCache<K, V>) result;
+                refreshEnabled.setRefreshAfter(limitedDefinition.getRefreshAfter());
+                refreshEnabled.setRefreshExecutor(limitedDefinition.getRefreshExecutor());
+            } else if (limitedDefinition.getRefreshAfter() != null) {
+                throw new IllegalArgumentException(result + " does not support refreshing of elements but " + by + " requires it.");
+            }
+            if (result instanceof NegativeCachingEnabledCache) {
+                final NegativeCachingEnabledCache<K, V> negativeCachingEnabled = (NegativeCachingEnabledCache<K, V>) result;
+                negativeCachingEnabled.setNegativeMaximumLifetime(limitedDefinition.getNegativeMaximumLifetime());
+                if (limitedDefinition.getNegativeCapacity() != null) {
+                    negativeCachingEnabled.setNegativeCapacity(limitedDefinition.getNegativeCapacity());
+                }
+            } else if (limitedDefinition.getNegativeMaximumLifetime() != null) {
+                throw new IllegalArgumentException(result + " does not support negative caching but " + by + " requires it.");
+            }
         }
         return result;
     }
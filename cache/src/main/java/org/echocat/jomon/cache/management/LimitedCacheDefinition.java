@@ -15,16 +15,25 @@
 package org.echocat.jomon.cache.management;
 
 import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.Weigher;
+import org.echocat.jomon.runtime.util.ByteCount;
 import org.echocat.jomon.runtime.util.Duration;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
 
 public abstract class LimitedCacheDefinition<K, V, T extends LimitedCacheDefinition<K, V, T>> extends CacheDefinition<K, V, T> {
 
     private Long _capacity;
     private Duration _maximumLifetime;
+    private Weigher<? super K, ? super V> _weigher;
+    private Long _maximumWeight;
+    private Duration _refreshAfter;
+    private Executor _refreshExecutor;
+    private Duration _negativeMaximumLifetime;
+    private Long _negativeCapacity;
 
     public LimitedCacheDefinition(@Nonnull Class<? extends Cache<?, ?>> requiredType, @Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
         super(requiredType, keyType, valueType);
@@ -52,6 +61,84 @@ public abstract class LimitedCacheDefinition<K, V, T extends LimitedCacheDefinit
         return withMaximumLifetime(new Duration(maximumLifetime));
     }
 
+    @Nonnull
+    public T withWeigher(@Nonnull Weigher<? super K, ? super V> weigher) {
+        setWeigher(weigher);
+        return thisInstance();
+    }
+
+    @Nonnull
+    public T withMaximumWeight(@Nonnegative long maximumWeight) {
+        setMaximumWeight(maximumWeight);
+        return thisInstance();
+    }
+
+    /**
+     * Should be combined with a {@link Weigher} that weighs the elements in bytes.
+     */
+    @Nonnull
+    public T withMaximumWeight(@Nonnull ByteCount maximumWeight) {
+        return withMaximumWeight(maximumWeight.toByteCount());
+    }
+
+    /**
+     * Should be combined with a {@link Weigher} that weighs the elements in bytes.
+     */
+    @Nonnull
+    public T withMaximumWeight(@Nonnull String maximumWeight) {
+        return withMaximumWeight(new ByteCount(maximumWeight));
+    }
+
+    /**
+     * @see org.echocat.jomon.cache.RefreshEnabledCache
+     */
+    @Nonnull
+    public T withRefreshAfter(@Nonnull Duration refreshAfter) {
+        setRefreshAfter(refreshAfter);
+        return thisInstance();
+    }
+
+    @Nonnull
+    public T withRefreshAfter(@Nonnull String refreshAfter) {
+        return withRefreshAfter(new Duration(refreshAfter));
+    }
+
+    @Nonnull
+    public T withRefreshAfter(@Nonnegative long refreshAfter) {
+        return withRefreshAfter(new Duration(refreshAfter));
+    }
+
+    @Nonnull
+    public T withRefreshExecutor(@Nonnull Executor refreshExecutor) {
+        setRefreshExecutor(refreshExecutor);
+        return thisInstance();
+    }
+
+    /**
+     * @see org.echocat.jomon.cache.NegativeCachingEnabledCache
+     */
+    @Nonnull
+    public T withNegativeMaximumLifetime(@Nonnull Duration negativeMaximumLifetime) {
+        setNegativeMaximumLifetime(negativeMaximumLifetime);
+        return thisInstance();
+    }
+
+    @Nonnull
+    public T withNegativeMaximumLifetime(@Nonnull String negativeMaximumLifetime) {
+        return withNegativeMaximumLifetime(new Duration(negativeMaximumLifetime));
+    }
+
+    @Nonnull
+    public T withNegativeMaximumLifetime(@Nonnegative long negativeMaximumLifetime) {
+        return withNegativeMaximumLifetime(new Duration(negativeMaximumLifetime));
+    }
+
+    @Nonnull
+    public T withNegativeCapacity(@Nonnegative long negativeCapacity) {
+        setNegativeCapacity(negativeCapacity);
+        return thisInstance();
+    }
+
     public void setCapacity(@Nullable Long capacity) {
         _capacity = capacity;
     }
@@ -60,6 +147,30 @@ public abstract class LimitedCacheDefinition<K, V, T extends LimitedCacheDefinit
         _maximumLifetime = maximumLifetime;
     }
 
+    public void setWeigher(@Nullable Weigher<? super K, ? super V> weigher) {
+        _weigher = weigher;
+    }
+
+    public void setMaximumWeight(@Nullable Long maximumWeight) {
+        _maximumWeight = maximumWeight;
+    }
+
+    public void setRefreshAfter(@Nullable Duration refreshAfter) {
+        _refreshAfter = refreshAfter;
+    }
+
+    public void setRefreshExecutor(@Nullable Executor refreshExecutor) {
+        _refreshExecutor = refreshExecutor;
+    }
+
+    public void setNegativeMaximumLifetime(@Nullable Duration negativeMaximumLifetime) {
+        _negativeMaximumLifetime = negativeMaximumLifetime;
+    }
+
+    public void setNegativeCapacity(@Nullable Long negativeCapacity) {
+        _negativeCapacity = negativeCapacity;
+    }
+
     @Nullable
     public Long getCapacity() {
         return _capacity;
@@ -70,4 +181,37 @@ public abstract class LimitedCacheDefinition<K, V, T extends LimitedCacheDefinit
         return _maximumLifetime;
     }
 
+    @Nullable
+    public Weigher<? super K, ? super V> getWeigher() {
+        return _weigher;
+    }
+
+    @Nullable
+    public Long getMaximumWeight() {
+        return _maximumWeight;
+    }
+
+    @Nullable
+    public Duration getRefreshAfter() {
+        return _refreshAfter;
+    }
+
+    @Nullable
+    public Executor getRefreshExecutor() {
+        return _refreshExecutor;
+    }
+
+    @Nullable
+    public Duration getNegativeMaximumLifetime() {
+        return _negativeMaximumLifetime;
+    }
+
+    /**
+     * @return <code>null</code> means the default of the cache.
+     */
+    @Nullable
+    public Long getNegativeCapacity() {
+        return _negativeCapacity;
+    }
+
 }
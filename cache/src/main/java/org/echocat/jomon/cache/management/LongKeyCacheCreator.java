@@ -0,0 +1,72 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.LongKeyCache;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class LongKeyCacheCreator extends LimitedCacheCreatorSupport {
+
+    private ProducingType _defaultProducingType;
+    private EvictionPolicy _defaultEvictionPolicy = EvictionPolicy.lru;
+
+    @Nullable
+    public ProducingType getDefaultProducingType() {
+        return _defaultProducingType;
+    }
+
+    public void setDefaultProducingType(@Nullable ProducingType defaultProducingType) {
+        _defaultProducingType = defaultProducingType;
+    }
+
+    @Nonnull
+    public EvictionPolicy getDefaultEvictionPolicy() {
+        return _defaultEvictionPolicy;
+    }
+
+    public void setDefaultEvictionPolicy(@Nonnull EvictionPolicy defaultEvictionPolicy) {
+        _defaultEvictionPolicy = defaultEvictionPolicy;
+    }
+
+    @Override
+    public boolean canHandleType(@Nonnull Class<? extends Cache<?, ?>> type) throws Exception {
+        return LongKeyCache.class.isAssignableFrom(type);
+    }
+
+    @Nonnull
+    @Override
+    protected <K, V> LimitedCache<K, V> newInstance(@Nonnull CacheDefinition<K, V, ?> by) throws Exception {
+        if (!Long.class.equals(by.getKeyType())) {
+            throw new IllegalArgumentException(LongKeyCache.class.getName() + " requires keys of type " + Long.class.getName() + " but " + by + " defines " + by.getKeyType().getName() + ".");
+        }
+        final LongKeyCacheDefinition<V> definition = by instanceof LongKeyCacheDefinition ? (LongKeyCacheDefinition<V>) by : null;
+        final EvictionPolicy evictionPolicy = definition != null && definition.getEvictionPolicy() != null ? definition.getEvictionPolicy() : _defaultEvictionPolicy;
+        final LongKeyCache<V> result = new LongKeyCache<>(by.getValueType(), evictionPolicy);
+        final ProducingType producingType = definition != null && definition.getProducingType() != null ? definition.getProducingType() : _defaultProducingType;
+        if (producingType != null) {
+            result.setProducingType(producingType);
+        }
+        // noinspection unchecked
+        return (LimitedCache<K, V>) result;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.LongKeyCache;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class LongKeyCacheDefinition<V> extends LimitedCacheDefinition<Long, V, LongKeyCacheDefinition<V>> {
+
+    private ProducingType _producingType;
+    private EvictionPolicy _evictionPolicy;
+
+    @Nonnull
+    public static <V> LongKeyCacheDefinition<V> longKeyCache(@Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return new LongKeyCacheDefinition<>((Class<? extends Cache<?, ?>>)(Object)LongKeyCache.class, valueType);
+    }
+
+    public LongKeyCacheDefinition(@Nonnull Class<? extends Cache<?, ?>> requiredType, @Nonnull Class<V> valueType) {
+        super(requiredType, Long.class, valueType);
+    }
+
+    @Nullable
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    public void setProducingType(@Nullable ProducingType producingType) {
+        _producingType = producingType;
+    }
+
+    @Nonnull
+    public LongKeyCacheDefinition<V> withProducingType(@Nonnull ProducingType producingType) {
+        if (_producingType != null) {
+            throw new IllegalStateException("ProducingType already set.");
+        }
+        _producingType = producingType;
+        return thisInstance();
+    }
+
+    @Nullable
+    public EvictionPolicy getEvictionPolicy() {
+        return _evictionPolicy;
+    }
+
+    public void setEvictionPolicy(@Nullable EvictionPolicy evictionPolicy) {
+        _evictionPolicy = evictionPolicy;
+    }
+
+    @Nonnull
+    public LongKeyCacheDefinition<V> withEvictionPolicy(@Nonnull EvictionPolicy evictionPolicy) {
+        setEvictionPolicy(evictionPolicy);
+        return thisInstance();
+    }
+}
@@ -0,0 +1,262 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.*;
+import org.echocat.jomon.runtime.math.LatencyHistogram;
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.*;
+import java.util.*;
+import java.util.Map.Entry;
+
+import static javax.management.MBeanOperationInfo.ACTION;
+
+/**
+ * Publishes the {@link StatisticsEnabledCache statistics}, {@link MetricsEnabledCache metrics} and
+ * {@link CapacityAdvisorEnabledCache capacity advices} of a cache over JMX.
+ * All durations are in nanoseconds.
+ */
+public class MBeanCacheWrapper implements DynamicMBean {
+
+    private static final String[] HISTOGRAMS = {"get", "load", "lockWait", "eviction"};
+    private static final Set<String> WRITABLE_ATTRIBUTES = new HashSet<>(Arrays.asList("metricsEnabled", "capacityAdvisorEnabled"));
+    private static final Map<String, Double> CAPACITY_FACTORS = new LinkedHashMap<>();
+
+    static {
+        CAPACITY_FACTORS.put("Quarter", 0.25);
+        CAPACITY_FACTORS.put("Half", 0.5);
+        CAPACITY_FACTORS.put("Current", 1d);
+        CAPACITY_FACTORS.put("Double", 2d);
+        CAPACITY_FACTORS.put("Quadruple", 4d);
+    }
+
+    private final String _id;
+    private final Cache<?, ?> _delegate;
+    private final Map<String, Class<?>> _attributeToType;
+
+    public MBeanCacheWrapper(@Nonnull String id, @Nonnull Cache<?, ?> delegate) {
+        _id = id;
+        _delegate = delegate;
+        _attributeToType = getAttributeToTypeFor(delegate);
+    }
+
+    @Nonnull
+    protected Map<String, Class<?>> getAttributeToTypeFor(@Nonnull Cache<?, ?> cache) {
+        final Map<String, Class<?>> result = new LinkedHashMap<>();
+        result.put("id", String.class);
+        result.put("type", String.class);
+        result.put("keyType", String.class);
+        result.put("valueType", String.class);
+        if (cache instanceof StatisticsEnabledCache) {
+            result.put("size", Long.class);
+            result.put("created", Date.class);
+            result.put("numberOfRequests", Long.class);
+            result.put("numberOfHits", Long.class);
+            result.put("numberOfDrops", Long.class);
+            result.put("hitRatio", Double.class);
+        }
+        if (cache instanceof DetailedStatisticsEnabledCache) {
+            result.put("numberOfExpirations", Long.class);
+        }
+        if (cache instanceof LimitedCache) {
+            result.put("capacity", Long.class);
+            result.put("maximumLifetime", String.class);
+        }
+        if (cache instanceof MetricsEnabledCache) {
+            result.put("metricsEnabled", Boolean.class);
+            result.put("windowedHitRatio", Double.class);
+            result.put("evictionsPerSecond", Double.class);
+            result.put("numberOfLoads", Long.class);
+            result.put("numberOfEvictions", Long.class);
+            for (String histogram : HISTOGRAMS) {
+                result.put(histogram + "DurationCount", Long.class);
+                result.put(histogram + "DurationMean", Long.class);
+                result.put(histogram + "Duration50thPercentile", Long.class);
+                result.put(histogram + "Duration99thPercentile", Long.class);
+                result.put(histogram + "Duration999thPercentile", Long.class);
+                result.put(histogram + "DurationMaximum", Long.class);
+            }
+        }
+        if (cache instanceof NegativeCachingEnabledCache) {
+            result.put("negativeSize", Long.class);
+            result.put("numberOfNegativeHits", Long.class);
+        }
+        if (cache instanceof CapacityAdvisorEnabledCache) {
+            result.put("capacityAdvisorEnabled", Boolean.class);
+            for (String factor : CAPACITY_FACTORS.keySet()) {
+                result.put("estimatedHitRatioAt" + factor + "Capacity", Double.class);
+            }
+            result.put("estimatedRetainedHeap", Long.class);
+        }
+        return result;
+    }
+
+    /**
+     * @return the current values of all attributes. Attributes of disabled metrics have <code>null</code> values.
+     */
+    @Nonnull
+    protected Map<String, Object> getValues() {
+        final Map<String, Object> result = new HashMap<>();
+        result.put("id", _id);
+        result.put("type", _delegate.getClass().getName());
+        result.put("keyType", _delegate.getKeyType().getName());
+        result.put("valueType", _delegate.getValueType().getName());
+        if (_delegate instanceof StatisticsEnabledCache) {
+            final StatisticsEnabledCache<?, ?> cache = (StatisticsEnabledCache<?, ?>) _delegate;
+            final Long requests = cache.getNumberOfRequests();
+            final Long hits = cache.getNumberOfHits();
+            result.put("size", cache.size());
+            result.put("created", cache.getCreated());
+            result.put("numberOfRequests", requests);
+            result.put("numberOfHits", hits);
+            result.put("numberOfDrops", cache.getNumberOfDrops());
+            result.put("hitRatio", requests != null && hits != null && requests > 0 ? (double) hits / (double) requests : null);
+        }
+        if (_delegate instanceof DetailedStatisticsEnabledCache) {
+            result.put("numberOfExpirations", ((DetailedStatisticsEnabledCache<?, ?>) _delegate).getNumberOfExpirations());
+        }
+        if (_delegate instanceof LimitedCache) {
+            final LimitedCache<?, ?> cache = (LimitedCache<?, ?>) _delegate;
+            final Duration maximumLifetime = cache.getMaximumLifetime();
+            result.put("capacity", cache.getCapacity());
+            result.put("maximumLifetime", maximumLifetime != null ? maximumLifetime.toPattern() : null);
+        }
+        if (_delegate instanceof MetricsEnabledCache) {
+            final CacheMetrics metrics = ((MetricsEnabledCache<?, ?>) _delegate).getMetrics();
+            result.put("metricsEnabled", metrics != null);
+            if (metrics != null) {
+                result.put("windowedHitRatio", metrics.getHits().getRatio());
+                result.put("evictionsPerSecond", metrics.getEvictions().getEventsPerSecond());
+                result.put("numberOfLoads", metrics.getNumberOfLoads());
+                result.put("numberOfEvictions", metrics.getNumberOfEvictions());
+                putValuesOf("get", metrics.getGetDurations(), result);
+                putValuesOf("load", metrics.getLoadDurations(), result);
+                putValuesOf("lockWait", metrics.getLockWaitDurations(), result);
+                putValuesOf("eviction", metrics.getEvictionDurations(), result);
+            }
+        }
+        if (_delegate instanceof NegativeCachingEnabledCache) {
+            final NegativeCachingEnabledCache<?, ?> cache = (NegativeCachingEnabledCache<?, ?>) _delegate;
+            result.put("negativeSize", cache.getNegativeSize());
+            result.put("numberOfNegativeHits", cache.getNumberOfNegativeHits());
+        }
+        if (_delegate instanceof CapacityAdvisorEnabledCache) {
+            final CapacityAdvisorEnabledCache<?, ?> cache = (CapacityAdvisorEnabledCache<?, ?>) _delegate;
+            result.put("capacityAdvisorEnabled", cache.isCapacityAdvisorEnabled());
+            final CapacityAdvice advice = cache.getCapacityAdvice();
+            if (advice != null) {
+                for (Entry<String, Double> nameAndFactor : CAPACITY_FACTORS.entrySet()) {
+                    result.put("estimatedHitRatioAt" + nameAndFactor.getKey() + "Capacity", advice.getEstimatedHitRatioAt(nameAndFactor.getValue()));
+                }
+                result.put("estimatedRetainedHeap", advice.getEstimatedRetainedHeap());
+            }
+        }
+        return result;
+    }
+
+    protected void putValuesOf(@Nonnull String name, @Nonnull LatencyHistogram histogram, @Nonnull Map<String, Object> to) {
+        to.put(name + "DurationCount", histogram.getCount());
+        to.put(name + "DurationMean", histogram.getMean());
+        to.put(name + "Duration50thPercentile", histogram.getValueAtPercentile(50));
+        to.put(name + "Duration99thPercentile", histogram.getValueAtPercentile(99));
+        to.put(name + "Duration999thPercentile", histogram.getValueAtPercentile(99.9));
+        to.put(name + "DurationMaximum", histogram.getMaximum());
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        if (!_attributeToType.containsKey(attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return getValues().get(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        if ("metricsEnabled".equals(attribute.getName()) && _delegate instanceof MetricsEnabledCache) {
+            if (attribute.getValue() instanceof Boolean) {
+                ((MetricsEnabledCache<?, ?>) _delegate).setMetricsEnabled((Boolean) attribute.getValue());
+            } else {
+                throw new InvalidAttributeValueException();
+            }
+        } else if ("capacityAdvisorEnabled".equals(attribute.getName()) && _delegate instanceof CapacityAdvisorEnabledCache) {
+            if (attribute.getValue() instanceof Boolean) {
+                ((CapacityAdvisorEnabledCache<?, ?>) _delegate).setCapacityAdvisorEnabled((Boolean) attribute.getValue());
+            } else {
+                throw new InvalidAttributeValueException();
+            }
+        } else if (_attributeToType.containsKey(attribute.getName())) {
+            throw new AttributeNotFoundException("The attribute '" + attribute.getName() + "' is read only.");
+        } else {
+            throw new AttributeNotFoundException(attribute.getName());
+        }
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        final Map<String, Object> values = getValues();
+        final AttributeList result = new AttributeList();
+        for (String attribute : attributes) {
+            if (_attributeToType.containsKey(attribute)) {
+                result.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        if ("resetStatistics".equals(actionName) && _delegate instanceof StatisticsEnabledCache) {
+            ((StatisticsEnabledCache<?, ?>) _delegate).resetStatistics();
+        } else if ("clear".equals(actionName) && _delegate instanceof ClearableCache) {
+            ((ClearableCache<?, ?>) _delegate).clear();
+        } else {
+            throw new UnsupportedOperationException("Unknown method '" + actionName + "'.");
+        }
+        return null;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Entry<String, Class<?>> attributeAndType : _attributeToType.entrySet()) {
+            final String name = attributeAndType.getKey();
+            final Class<?> type = attributeAndType.getValue();
+            attributes.add(new MBeanAttributeInfo(name, type.getName(), null, true, WRITABLE_ATTRIBUTES.contains(name), Boolean.class.equals(type)));
+        }
+        final List<MBeanOperationInfo> operations = new ArrayList<>();
+        if (_delegate instanceof StatisticsEnabledCache) {
+            operations.add(new MBeanOperationInfo("resetStatistics", null, new MBeanParameterInfo[]{}, "void", ACTION));
+        }
+        if (_delegate instanceof ClearableCache) {
+            operations.add(new MBeanOperationInfo("clear", null, new MBeanParameterInfo[]{}, "void", ACTION));
+        }
+        return new MBeanInfo(_delegate.getClass().getName(), null, attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, operations.toArray(new MBeanOperationInfo[operations.size()]), null);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + _id + "}";
+    }
+
+}
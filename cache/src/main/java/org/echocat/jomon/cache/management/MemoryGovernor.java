@@ -0,0 +1,432 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache.management;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.WeightEnabledCache;
+import org.echocat.jomon.runtime.util.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * <p>Shrinks the {@link LimitedCache limited caches} of a {@link DefaultCacheRepository} if the heap is under pressure
+ * and grows them back to their configured size if there is enough headroom again.</p>
+ *
+ * <p>After every garbage collection the occupancy of the {@link #setTenuredPools(Set) tenured pools} is taken from the
+ * notification of the collection, the young pools are ignored because they are always full before a collection. If it
+ * reaches the
+ * {@link #setPressureThreshold(double) pressure threshold} the capacity and maximum weight of every cache are reduced
+ * by the {@link #setShrinkStep(double) shrink step} divided by the {@link #setPriorities(Map) priority} of the cache.
+ * So caches with a higher priority lose less and the surplus entries of a shrunk cache are evicted by its caching
+ * strategy. If the occupancy falls below the {@link #setRelaxThreshold(double) relax threshold} all caches grow by the
+ * {@link #setGrowStep(double) grow step} until they reach their configured size.</p>
+ *
+ * <p>A cache which is resized by someone else is treated as newly configured with this size.</p>
+ */
+@ThreadSafe
+public class MemoryGovernor implements NotificationListener, MemoryGovernorMBean, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    /**
+     * The type of the notifications which are emitted by the {@link GarbageCollectorMXBean}s of HotSpot based JVMs.
+     */
+    public static final String GARBAGE_COLLECTION_NOTIFICATION = "com.sun.management.gc.notification";
+    public static final int DEFAULT_PRIORITY = 1;
+
+    private final DefaultCacheRepository _repository;
+    private final Map<String, Sizing> _idToSizing = new HashMap<>();
+    private final List<NotificationEmitter> _observedEmitters = new ArrayList<>();
+
+    private MemoryMXBean _memoryMXBean = ManagementFactory.getMemoryMXBean();
+    private volatile Set<String> _tenuredPools = tenuredPoolsOf(ManagementFactory.getMemoryPoolMXBeans());
+    private Map<String, Integer> _priorities = Collections.emptyMap();
+    private volatile double _pressureThreshold = 0.85;
+    private volatile double _relaxThreshold = 0.6;
+    private double _shrinkStep = 0.25;
+    private double _growStep = 0.1;
+    private double _minimumFactor = 0.1;
+
+    private volatile double _lastHeapOccupancy;
+    private volatile long _numberOfShrinks;
+    private volatile long _numberOfGrowths;
+    private ObjectName _publishedAs;
+
+    public MemoryGovernor(@Nonnull DefaultCacheRepository repository) {
+        _repository = repository;
+    }
+
+    @PostConstruct
+    public void init() {
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (garbageCollector instanceof NotificationEmitter) {
+                final NotificationEmitter emitter = (NotificationEmitter) garbageCollector;
+                emitter.addNotificationListener(this, null, null);
+                _observedEmitters.add(emitter);
+            }
+        }
+        if (_observedEmitters.isEmpty()) {
+            LOG.warn("This JVM does not emit notifications about garbage collections. The caches of " + _repository + " will not be resized.");
+        }
+        if (_repository.isJmxEnabled()) {
+            try {
+                final ObjectName objectName = new ObjectName(_repository.getJmxDomain() + ":type=" + MemoryGovernor.class.getSimpleName());
+                _repository.getMBeanServer().registerMBean(this, objectName);
+                _publishedAs = objectName;
+            } catch (Exception e) {
+                LOG.warn("Could not register the memory governor in JMX.", e);
+            }
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() throws Exception {
+        for (NotificationEmitter emitter : _observedEmitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignored) {}
+        }
+        _observedEmitters.clear();
+        if (_publishedAs != null) {
+            try {
+                _repository.getMBeanServer().unregisterMBean(_publishedAs);
+            } finally {
+                _publishedAs = null;
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            try {
+                adjustTo(getHeapOccupancyAfter(notification));
+            } catch (RuntimeException e) {
+                LOG.warn("Could not adjust the caches of " + _repository + " to the current heap occupancy.", e);
+            }
+        }
+    }
+
+    /**
+     * @return the used part of the tenured pools after the garbage collection of the given notification between 0 and
+     * 1. Only if the notification does not contain the usage of them the whole heap is read.
+     */
+    protected double getHeapOccupancyAfter(@Nonnull Notification notification) {
+        final Object userData = notification.getUserData();
+        Double result = null;
+        if (userData instanceof CompositeData) {
+            try {
+                final GcInfo gcInfo = GarbageCollectionNotificationInfo.from((CompositeData) userData).getGcInfo();
+                result = gcInfo != null ? getOccupancyOf(gcInfo.getMemoryUsageAfterGc()) : null;
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Could not read the garbage collection notification " + notification + ".", e);
+            }
+        }
+        return result != null ? result : getHeapOccupancy();
+    }
+
+    /**
+     * @return the used part of the tenured pools between 0 and 1 or <code>null</code> if none of them is contained.
+     */
+    @Nullable
+    protected Double getOccupancyOf(@Nonnull Map<String, MemoryUsage> poolToUsage) {
+        long used = 0;
+        long maximum = 0;
+        for (String pool : _tenuredPools) {
+            final MemoryUsage usage = poolToUsage.get(pool);
+            if (usage != null) {
+                used += usage.getUsed();
+                maximum += usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+            }
+        }
+        return maximum > 0 ? (double) used / maximum : null;
+    }
+
+    /**
+     * @return the used part of the heap between 0 and 1.
+     */
+    protected double getHeapOccupancy() {
+        final MemoryUsage usage = _memoryMXBean.getHeapMemoryUsage();
+        final long maximum = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+        return maximum > 0 ? (double) usage.getUsed() / maximum : 0;
+    }
+
+    /**
+     * Shrinks or grows the caches of the repository based on the given heap occupancy.
+     */
+    public synchronized void adjustTo(double heapOccupancy) {
+        _lastHeapOccupancy = heapOccupancy;
+        final boolean shrink = heapOccupancy >= _pressureThreshold;
+        final boolean grow = !shrink && heapOccupancy <= _relaxThreshold;
+        final Set<String> ids = new HashSet<>();
+        for (Entry<String, Cache<?, ?>> idAndCache : _repository) {
+            final String id = idAndCache.getKey();
+            ids.add(id);
+            final Sizing sizing = sizingOf(id, idAndCache.getValue());
+            if (sizing != null && (shrink || grow)) {
+                final double step = shrink ? -_shrinkStep / priorityOf(id) : _growStep;
+                // Rounded to prevent that the steps never reach exactly the configured size ...
+                final double factor = Math.min(1, Math.max(_minimumFactor, Math.round((sizing.getFactor() + step) * 1000000d) / 1000000d));
+                if (factor != sizing.getFactor()) {
+                    resize(id, idAndCache.getValue(), sizing, factor, heapOccupancy);
+                }
+            }
+        }
+        _idToSizing.keySet().retainAll(ids);
+    }
+
+    @Nullable
+    protected Sizing sizingOf(@Nonnull String id, @Nonnull Cache<?, ?> cache) {
+        final Long capacity = cache instanceof LimitedCache ? ((LimitedCache<?, ?>) cache).getCapacity() : null;
+        final Long maximumWeight = cache instanceof WeightEnabledCache ? ((WeightEnabledCache<?, ?>) cache).getMaximumWeight() : null;
+        Sizing result = _idToSizing.get(id);
+        if (result == null || !result.isAppliedTo(capacity, maximumWeight)) {
+            // Never seen or resized by someone else, so this is the size we have to return to ...
+            result = capacity != null || maximumWeight != null ? new Sizing(capacity, maximumWeight) : null;
+            if (result != null) {
+                _idToSizing.put(id, result);
+            } else {
+                _idToSizing.remove(id);
+            }
+        }
+        return result;
+    }
+
+    protected void resize(@Nonnull String id, @Nonnull Cache<?, ?> cache, @Nonnull Sizing sizing, double factor, double heapOccupancy) {
+        final Long oldCapacity = sizing.getAppliedCapacity();
+        sizing.setFactor(factor);
+        final Long newCapacity = sizing.getAppliedCapacity();
+        if (newCapacity != null) {
+            ((LimitedCache<?, ?>) cache).setCapacity(newCapacity);
+        }
+        final Long newMaximumWeight = sizing.getAppliedMaximumWeight();
+        if (newMaximumWeight != null) {
+            ((WeightEnabledCache<?, ?>) cache).setMaximumWeight(newMaximumWeight);
+        }
+        final boolean shrunk = factor < sizing.getPreviousFactor();
+        if (shrunk) {
+            _numberOfShrinks++;
+        } else {
+            _numberOfGrowths++;
+        }
+        LOG.info("Heap occupancy after garbage collection is " + Math.round(heapOccupancy * 100) + "%: " + (shrunk ? "Shrunk" : "Grew") + " cache '" + id
+            + "' to " + Math.round(factor * 100) + "% of its configured size (capacity: " + oldCapacity + " -> " + newCapacity + ", maximumWeight: " + newMaximumWeight + ").");
+    }
+
+    @Nonnegative
+    protected int priorityOf(@Nonnull String id) {
+        final Integer priority = _priorities.get(id);
+        return priority != null && priority > 0 ? priority : DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public double getLastHeapOccupancy() {
+        return _lastHeapOccupancy;
+    }
+
+    @Override
+    public long getNumberOfShrinks() {
+        return _numberOfShrinks;
+    }
+
+    @Override
+    public long getNumberOfGrowths() {
+        return _numberOfGrowths;
+    }
+
+    /**
+     * @return the current size of every governed cache in relation to its configured size by the id of the cache.
+     */
+    @Override
+    @Nonnull
+    public synchronized Map<String, Double> getCapacityFactors() {
+        final Map<String, Double> result = new TreeMap<>();
+        for (Map.Entry<String, Sizing> idAndSizing : _idToSizing.entrySet()) {
+            result.put(idAndSizing.getKey(), idAndSizing.getValue().getFactor());
+        }
+        return result;
+    }
+
+    @Override
+    public double getPressureThreshold() {
+        return _pressureThreshold;
+    }
+
+    @Override
+    public void setPressureThreshold(double pressureThreshold) {
+        _pressureThreshold = pressureThreshold;
+    }
+
+    @Override
+    public double getRelaxThreshold() {
+        return _relaxThreshold;
+    }
+
+    /**
+     * Should be clearly less than the {@link #setPressureThreshold(double) pressure threshold} to prevent that the caches oscillate.
+     */
+    @Override
+    public void setRelaxThreshold(double relaxThreshold) {
+        _relaxThreshold = relaxThreshold;
+    }
+
+    public synchronized double getShrinkStep() {
+        return _shrinkStep;
+    }
+
+    /**
+     * @param shrinkStep the part of its configured size a cache with the {@link #DEFAULT_PRIORITY default priority} loses under pressure.
+     */
+    public synchronized void setShrinkStep(double shrinkStep) {
+        _shrinkStep = shrinkStep;
+    }
+
+    public synchronized double getGrowStep() {
+        return _growStep;
+    }
+
+    public synchronized void setGrowStep(double growStep) {
+        _growStep = growStep;
+    }
+
+    public synchronized double getMinimumFactor() {
+        return _minimumFactor;
+    }
+
+    /**
+     * @param minimumFactor the part of its configured size every cache keeps.
+     */
+    public synchronized void setMinimumFactor(double minimumFactor) {
+        _minimumFactor = minimumFactor;
+    }
+
+    @Nonnull
+    public synchronized Map<String, Integer> getPriorities() {
+        return _priorities;
+    }
+
+    /**
+     * @param priorities the priorities by the ids of the caches. Caches without a priority have the {@link #DEFAULT_PRIORITY default priority}.
+     */
+    public synchronized void setPriorities(@Nullable Map<String, Integer> priorities) {
+        _priorities = priorities != null ? new HashMap<>(priorities) : Collections.<String, Integer>emptyMap();
+    }
+
+    @Nonnull
+    public MemoryMXBean getMemoryMXBean() {
+        return _memoryMXBean;
+    }
+
+    public void setMemoryMXBean(@Nonnull MemoryMXBean memoryMXBean) {
+        _memoryMXBean = memoryMXBean;
+    }
+
+    @Nonnull
+    public Set<String> getTenuredPools() {
+        return _tenuredPools;
+    }
+
+    /**
+     * @param tenuredPools the names of the {@link MemoryPoolMXBean memory pools} whose occupancy is checked. By default
+     *                     these are the heap pools which support a usage threshold, like <i>PS Old Gen</i> or
+     *                     <i>G1 Old Gen</i>.
+     */
+    public void setTenuredPools(@Nonnull Set<String> tenuredPools) {
+        _tenuredPools = new HashSet<>(tenuredPools);
+    }
+
+    /**
+     * @return the names of the heap pools which support a usage threshold. HotSpot supports it only for the tenured
+     * pools because the young pools are always full before a collection.
+     */
+    @Nonnull
+    protected static Set<String> tenuredPoolsOf(@Nonnull Iterable<MemoryPoolMXBean> pools) {
+        final Set<String> result = new HashSet<>();
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()) {
+                result.add(pool.getName());
+            }
+        }
+        return result;
+    }
+
+    protected static class Sizing {
+
+        private final Long _configuredCapacity;
+        private final Long _configuredMaximumWeight;
+        private double _factor = 1;
+        private double _previousFactor = 1;
+
+        public Sizing(@Nullable Long configuredCapacity, @Nullable Long configuredMaximumWeight) {
+            _configuredCapacity = configuredCapacity;
+            _configuredMaximumWeight = configuredMaximumWeight;
+        }
+
+        public double getFactor() {
+            return _factor;
+        }
+
+        public double getPreviousFactor() {
+            return _previousFactor;
+        }
+
+        public void setFactor(double factor) {
+            _previousFactor = _factor;
+            _factor = factor;
+        }
+
+        @Nullable
+        public Long getAppliedCapacity() {
+            return apply(_configuredCapacity);
+        }
+
+        @Nullable
+        public Long getAppliedMaximumWeight() {
+            return apply(_configuredMaximumWeight);
+        }
+
+        public boolean isAppliedTo(@Nullable Long capacity, @Nullable Long maximumWeight) {
+            return Objects.equals(getAppliedCapacity(), capacity) && Objects.equals(getAppliedMaximumWeight(), maximumWeight);
+        }
+
+        @Nullable
+        protected Long apply(@Nullable Long configured) {
+            final Long result;
+            if (configured == null || _factor >= 1) {
+                result = configured;
+            } else {
+                result = Math.max(1, Math.round(configured * _factor));
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache.management;
+
+import java.util.Map;
+
+public interface MemoryGovernorMBean {
+
+    public double getLastHeapOccupancy();
+
+    public long getNumberOfShrinks();
+
+    public long getNumberOfGrowths();
+
+    public Map<String, Double> getCapacityFactors();
+
+    public double getPressureThreshold();
+
+    public void setPressureThreshold(double pressureThreshold);
+
+    public double getRelaxThreshold();
+
+    public void setRelaxThreshold(double relaxThreshold);
+
+}
@@ -0,0 +1,101 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.cache.offheap.OffHeapCache;
+import org.echocat.jomon.cache.offheap.Serializer;
+import org.echocat.jomon.runtime.util.ByteCount;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.echocat.jomon.cache.offheap.BlockStorage.DEFAULT_BLOCK_SIZE;
+import static org.echocat.jomon.cache.offheap.OffHeapCache.DEFAULT_MAXIMUM_SIZE;
+
+public class OffHeapCacheCreator extends LimitedCacheCreatorSupport {
+
+    private ProducingType _defaultProducingType;
+    private ByteCount _defaultMaximumSize = DEFAULT_MAXIMUM_SIZE;
+    private EvictionPolicy _defaultEvictionPolicy = EvictionPolicy.lru;
+    private int _defaultBlockSize = DEFAULT_BLOCK_SIZE;
+
+    @Nullable
+    public ProducingType getDefaultProducingType() {
+        return _defaultProducingType;
+    }
+
+    public void setDefaultProducingType(@Nullable ProducingType defaultProducingType) {
+        _defaultProducingType = defaultProducingType;
+    }
+
+    @Nonnull
+    public ByteCount getDefaultMaximumSize() {
+        return _defaultMaximumSize;
+    }
+
+    public void setDefaultMaximumSize(@Nonnull ByteCount defaultMaximumSize) {
+        _defaultMaximumSize = defaultMaximumSize;
+    }
+
+    @Nonnull
+    public EvictionPolicy getDefaultEvictionPolicy() {
+        return _defaultEvictionPolicy;
+    }
+
+    public void setDefaultEvictionPolicy(@Nonnull EvictionPolicy defaultEvictionPolicy) {
+        _defaultEvictionPolicy = defaultEvictionPolicy;
+    }
+
+    @Nonnegative
+    public int getDefaultBlockSize() {
+        return _defaultBlockSize;
+    }
+
+    public void setDefaultBlockSize(@Nonnegative int defaultBlockSize) {
+        _defaultBlockSize = defaultBlockSize;
+    }
+
+    @Override
+    public boolean canHandleType(@Nonnull Class<? extends Cache<?, ?>> type) throws Exception {
+        return OffHeapCache.class.isAssignableFrom(type);
+    }
+
+    @Nonnull
+    @Override
+    protected <K, V> LimitedCache<K, V> newInstance(@Nonnull CacheDefinition<K, V, ?> by) throws Exception {
+        final OffHeapCacheDefinition<K, V> definition = by instanceof OffHeapCacheDefinition ? (OffHeapCacheDefinition<K, V>) by : null;
+        final EvictionPolicy evictionPolicy = definition != null && definition.getEvictionPolicy() != null ? definition.getEvictionPolicy() : _defaultEvictionPolicy;
+        final Serializer<K> keySerializer = definition != null && definition.getKeySerializer() != null ? definition.getKeySerializer() : OffHeapCache.<K>serializerFor(by.getKeyType());
+        final Serializer<V> valueSerializer = definition != null && definition.getValueSerializer() != null ? definition.getValueSerializer() : OffHeapCache.<V>serializerFor(by.getValueType());
+        final int blockSize = definition != null && definition.getBlockSize() != null ? definition.getBlockSize() : _defaultBlockSize;
+        final OffHeapCache<K, V> result = new OffHeapCache<>(by.getKeyType(), by.getValueType(), evictionPolicy, keySerializer, valueSerializer, blockSize);
+        final ByteCount maximumSize = definition != null && definition.getMaximumSize() != null ? definition.getMaximumSize() : _defaultMaximumSize;
+        if (!maximumSize.equals(result.getMaximumSize())) {
+            result.setMaximumSize(maximumSize);
+        }
+        final ProducingType producingType = definition != null && definition.getProducingType() != null ? definition.getProducingType() : _defaultProducingType;
+        if (producingType != null) {
+            result.setProducingType(producingType);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.cache.offheap.OffHeapCache;
+import org.echocat.jomon.cache.offheap.Serializer;
+import org.echocat.jomon.runtime.util.ByteCount;
+import org.echocat.jomon.runtime.util.ProducingType;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+public class OffHeapCacheDefinition<K, V> extends LimitedCacheDefinition<K, V, OffHeapCacheDefinition<K, V>> {
+
+    private ProducingType _producingType;
+    private ByteCount _maximumSize;
+    private EvictionPolicy _evictionPolicy;
+    private Serializer<K> _keySerializer;
+    private Serializer<V> _valueSerializer;
+    private Integer _blockSize;
+
+    @Nonnull
+    public static <K, V> OffHeapCacheDefinition<K, V> offHeapCache(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        // noinspection unchecked, RedundantCast
+        return new OffHeapCacheDefinition<>((Class<? extends Cache<?, ?>>)(Object)OffHeapCache.class, keyType, valueType);
+    }
+
+    public OffHeapCacheDefinition(@Nonnull Class<? extends Cache<?, ?>> requiredType, @Nonnull Class<K> keyType, @Nonnull Class<V> valueType) {
+        super(requiredType, keyType, valueType);
+    }
+
+    @Nullable
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    public void setProducingType(@Nullable ProducingType producingType) {
+        _producingType = producingType;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withProducingType(@Nonnull ProducingType producingType) {
+        if (_producingType != null) {
+            throw new IllegalStateException("ProducingType already set.");
+        }
+        _producingType = producingType;
+        return thisInstance();
+    }
+
+    @Nullable
+    public ByteCount getMaximumSize() {
+        return _maximumSize;
+    }
+
+    public void setMaximumSize(@Nullable ByteCount maximumSize) {
+        _maximumSize = maximumSize;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withMaximumSize(@Nonnull ByteCount maximumSize) {
+        setMaximumSize(maximumSize);
+        return thisInstance();
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withMaximumSize(@Nonnull String maximumSize) {
+        return withMaximumSize(new ByteCount(maximumSize));
+    }
+
+    @Nullable
+    public EvictionPolicy getEvictionPolicy() {
+        return _evictionPolicy;
+    }
+
+    public void setEvictionPolicy(@Nullable EvictionPolicy evictionPolicy) {
+        _evictionPolicy = evictionPolicy;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withEvictionPolicy(@Nonnull EvictionPolicy evictionPolicy) {
+        setEvictionPolicy(evictionPolicy);
+        return thisInstance();
+    }
+
+    @Nullable
+    public Serializer<K> getKeySerializer() {
+        return _keySerializer;
+    }
+
+    public void setKeySerializer(@Nullable Serializer<K> keySerializer) {
+        _keySerializer = keySerializer;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withKeySerializer(@Nonnull Serializer<K> keySerializer) {
+        setKeySerializer(keySerializer);
+        return thisInstance();
+    }
+
+    @Nullable
+    public Serializer<V> getValueSerializer() {
+        return _valueSerializer;
+    }
+
+    public void setValueSerializer(@Nullable Serializer<V> valueSerializer) {
+        _valueSerializer = valueSerializer;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withValueSerializer(@Nonnull Serializer<V> valueSerializer) {
+        setValueSerializer(valueSerializer);
+        return thisInstance();
+    }
+
+    @Nullable
+    public Integer getBlockSize() {
+        return _blockSize;
+    }
+
+    public void setBlockSize(@Nullable Integer blockSize) {
+        _blockSize = blockSize;
+    }
+
+    @Nonnull
+    public OffHeapCacheDefinition<K, V> withBlockSize(@Nonnegative int blockSize) {
+        setBlockSize(blockSize);
+        return thisInstance();
+    }
+}
@@ -35,7 +35,9 @@ public class ServletRequestBasedCacheCreator implements CacheCreator {
         }
         // noinspection unchecked
         final ServletRequestBasedCacheDefinition<K, V> definition = (ServletRequestBasedCacheDefinition<K, V>) by;
-        return new ServletRequestBasedCache<>(by.getKeyType(), by.getValueType(), master, definition.getResolver(), definition.getDelegate());
+        final ServletRequestBasedCache<K, V> result = new ServletRequestBasedCache<>(by.getKeyType(), by.getValueType(), master, definition.getResolver(), definition.getDelegate());
+        result.setPooled(definition.isPooled());
+        return result;
     }
 
 }
@@ -45,6 +45,7 @@ public class ServletRequestBasedCacheDefinition<K, V> extends CacheDefinition<K,
 
     private final Resolver _resolver;
     private final CacheDefinition<? extends K, ? extends V, ?> _delegate;
+    private boolean _pooled;
 
     public ServletRequestBasedCacheDefinition(@Nonnull Class<K> keyType, @Nonnull Class<V> valueType, @Nonnull Resolver resolver, @Nullable CacheDefinition<? extends K, ? extends V, ?> delegate) {
         // noinspection unchecked
@@ -53,6 +54,23 @@ public class ServletRequestBasedCacheDefinition<K, V> extends CacheDefinition<K,
         _delegate = delegate;
     }
 
+    /**
+     * @see ServletRequestBasedCache#setPooled(boolean)
+     */
+    @Nonnull
+    public ServletRequestBasedCacheDefinition<K, V> withPooling() {
+        setPooled(true);
+        return thisInstance();
+    }
+
+    public void setPooled(boolean pooled) {
+        _pooled = pooled;
+    }
+
+    public boolean isPooled() {
+        return _pooled;
+    }
+
     @Nonnull
     public Resolver getResolver() {
         return _resolver;
@@ -0,0 +1,71 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.WTinyLfuCache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+import static org.echocat.jomon.cache.WTinyLfuCache.DEFAULT_PROTECTED_PERCENTAGE;
+import static org.echocat.jomon.cache.WTinyLfuCache.DEFAULT_WINDOW_PERCENTAGE;
+
+public class WTinyLfuCacheCreator extends DefaultCacheCreatorSupport {
+
+    private int _windowPercentage = DEFAULT_WINDOW_PERCENTAGE;
+    private int _protectedPercentage = DEFAULT_PROTECTED_PERCENTAGE;
+
+    @Nonnegative
+    public int getWindowPercentage() {
+        return _windowPercentage;
+    }
+
+    /**
+     * @see WTinyLfuCache#setWindowPercentage(int)
+     */
+    public void setWindowPercentage(@Nonnegative int windowPercentage) {
+        _windowPercentage = windowPercentage;
+    }
+
+    @Nonnegative
+    public int getProtectedPercentage() {
+        return _protectedPercentage;
+    }
+
+    /**
+     * @see WTinyLfuCache#setProtectedPercentage(int)
+     */
+    public void setProtectedPercentage(@Nonnegative int protectedPercentage) {
+        _protectedPercentage = protectedPercentage;
+    }
+
+    @Override
+    public boolean canHandleType(@Nonnull Class<? extends Cache<?, ?>> type) throws Exception {
+        return WTinyLfuCache.class.isAssignableFrom(type);
+    }
+
+    @Nonnull
+    @Override
+    protected <K, V> LimitedCache<K, V> newInstance(@Nonnull CacheDefinition<K, V, ?> by) throws Exception {
+        final WTinyLfuCache<K, V> result = new WTinyLfuCache<>(by.getKeyType(), by.getValueType());
+        result.setWindowPercentage(_windowPercentage);
+        result.setProtectedPercentage(_protectedPercentage);
+        return result;
+    }
+
+}
@@ -0,0 +1,266 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.allocateDirect;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>Stores byte sequences outside of the java heap. The memory is allocated on demand in slabs of direct {@link ByteBuffer ByteBuffers} and every
+ * slab is split into blocks of the same size. A sequence occupies a chain of blocks; the first four bytes of every block contain the index of the
+ * next block of the chain. So every freed block could be reused by every other sequence and no compaction is required.</p>
+ *
+ * <p>Free blocks are chained in the same way and the head of this chain is the only state that is stored on the heap.</p>
+ */
+@NotThreadSafe
+public class BlockStorage {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128;
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int END = -1;
+
+    private final int _blockSize;
+    private final int _blocksPerSlab;
+    private final int _maximumNumberOfBlocks;
+    private final ByteBuffer[] _slabs;
+
+    private int _numberOfInitializedBlocks;
+    private int _firstFreeBlock = END;
+    private int _numberOfFreeBlocks;
+
+    public BlockStorage(@Nonnegative long maximumSize, @Nonnegative int blockSize, @Nonnegative int slabSize) {
+        if (blockSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("The blockSize have to be greater than " + HEADER_SIZE + ".");
+        }
+        if (slabSize < blockSize) {
+            throw new IllegalArgumentException("The slabSize have to be at least the blockSize.");
+        }
+        _blockSize = blockSize;
+        _blocksPerSlab = slabSize / blockSize;
+        final long numberOfSlabs = Math.max((maximumSize + slabSize - 1) / slabSize, 1);
+        if (numberOfSlabs * _blocksPerSlab > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The maximumSize of " + maximumSize + " bytes requires too many blocks of " + blockSize + " bytes.");
+        }
+        _slabs = new ByteBuffer[(int) numberOfSlabs];
+        _maximumNumberOfBlocks = (int) Math.min(numberOfSlabs * _blocksPerSlab, Math.max(maximumSize / blockSize, 1));
+    }
+
+    public BlockStorage(@Nonnegative long maximumSize) {
+        this(maximumSize, DEFAULT_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    @Nonnegative
+    public int getBlockSize() {
+        return _blockSize;
+    }
+
+    @Nonnegative
+    public int getMaximumNumberOfBlocks() {
+        return _maximumNumberOfBlocks;
+    }
+
+    @Nonnegative
+    public int getNumberOfAvailableBlocks() {
+        return _numberOfFreeBlocks + (_maximumNumberOfBlocks - _numberOfInitializedBlocks);
+    }
+
+    @Nonnegative
+    public int getNumberOfUsedBlocks() {
+        return _maximumNumberOfBlocks - getNumberOfAvailableBlocks();
+    }
+
+    /**
+     * @return the memory that is currently allocated from the operating system.
+     */
+    @Nonnegative
+    public long getAllocatedSize() {
+        long result = 0;
+        for (ByteBuffer slab : _slabs) {
+            if (slab != null) {
+                result += slab.capacity();
+            }
+        }
+        return result;
+    }
+
+    @Nonnegative
+    public int getNumberOfBlocksFor(@Nonnegative long length) {
+        final int payload = _blockSize - HEADER_SIZE;
+        return (int) Math.max((length + payload - 1) / payload, 1);
+    }
+
+    /**
+     * @return the first block of a chain which could hold the given number of bytes or <code>-1</code> if there are not enough available blocks.
+     */
+    public int allocate(@Nonnegative long length) {
+        final int numberOfBlocks = getNumberOfBlocksFor(length);
+        final int result;
+        if (numberOfBlocks <= getNumberOfAvailableBlocks()) {
+            int first = END;
+            int previous = END;
+            for (int i = 0; i < numberOfBlocks; i++) {
+                final int block = takeBlock();
+                if (previous == END) {
+                    first = block;
+                } else {
+                    setNextOf(previous, block);
+                }
+                previous = block;
+            }
+            setNextOf(previous, END);
+            result = first;
+        } else {
+            result = END;
+        }
+        return result;
+    }
+
+    /**
+     * Frees the whole chain that starts with the given block.
+     */
+    public void free(int firstBlock) {
+        int block = firstBlock;
+        while (block != END) {
+            final int next = nextOf(block);
+            setNextOf(block, _firstFreeBlock);
+            _firstFreeBlock = block;
+            _numberOfFreeBlocks++;
+            block = next;
+        }
+    }
+
+    /**
+     * Writes all given byte arrays one after another into the chain that starts with the given block.
+     */
+    public void write(int firstBlock, @Nonnull byte[]... parts) {
+        int block = firstBlock;
+        int positionInBlock = HEADER_SIZE;
+        for (byte[] part : parts) {
+            int offset = 0;
+            while (offset < part.length) {
+                if (positionInBlock >= _blockSize) {
+                    block = nextOf(block);
+                    positionInBlock = HEADER_SIZE;
+                }
+                final int length = Math.min(part.length - offset, _blockSize - positionInBlock);
+                final ByteBuffer slab = slabOf(block);
+                slab.position(offsetOf(block) + positionInBlock);
+                slab.put(part, offset, length);
+                offset += length;
+                positionInBlock += length;
+            }
+        }
+    }
+
+    /**
+     * Reads the given number of bytes starting at the given offset of the chain that starts with the given block.
+     */
+    @Nonnull
+    public byte[] read(int firstBlock, @Nonnegative long offset, @Nonnegative int length) {
+        final byte[] result = new byte[length];
+        final int payload = _blockSize - HEADER_SIZE;
+        int block = firstBlock;
+        for (long i = offset / payload; i > 0; i--) {
+            block = nextOf(block);
+        }
+        int positionInBlock = HEADER_SIZE + (int) (offset % payload);
+        int position = 0;
+        while (position < length) {
+            if (positionInBlock >= _blockSize) {
+                block = nextOf(block);
+                positionInBlock = HEADER_SIZE;
+            }
+            final int partLength = Math.min(length - position, _blockSize - positionInBlock);
+            final ByteBuffer slab = slabOf(block);
+            slab.position(offsetOf(block) + positionInBlock);
+            slab.get(result, position, partLength);
+            position += partLength;
+            positionInBlock += partLength;
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the chain that starts with the given block starts with the given bytes.
+     */
+    public boolean startsWith(int firstBlock, @Nonnull byte[] bytes) {
+        int block = firstBlock;
+        int positionInBlock = HEADER_SIZE;
+        boolean result = true;
+        for (int i = 0; result && i < bytes.length; i++) {
+            if (positionInBlock >= _blockSize) {
+                block = nextOf(block);
+                positionInBlock = HEADER_SIZE;
+            }
+            result = slabOf(block).get(offsetOf(block) + positionInBlock) == bytes[i];
+            positionInBlock++;
+        }
+        return result;
+    }
+
+    /**
+     * Frees all blocks and releases the allocated slabs.
+     */
+    public void clear() {
+        for (int i = 0; i < _slabs.length; i++) {
+            _slabs[i] = null;
+        }
+        _numberOfInitializedBlocks = 0;
+        _firstFreeBlock = END;
+        _numberOfFreeBlocks = 0;
+    }
+
+    private int takeBlock() {
+        final int result;
+        if (_firstFreeBlock != END) {
+            result = _firstFreeBlock;
+            _firstFreeBlock = nextOf(result);
+            _numberOfFreeBlocks--;
+        } else {
+            result = _numberOfInitializedBlocks++;
+            final int slab = result / _blocksPerSlab;
+            if (_slabs[slab] == null) {
+                _slabs[slab] = allocateDirect(Math.min(_blocksPerSlab, _maximumNumberOfBlocks - slab * _blocksPerSlab) * _blockSize);
+            }
+        }
+        return result;
+    }
+
+    private int nextOf(int block) {
+        return slabOf(block).getInt(offsetOf(block));
+    }
+
+    private void setNextOf(int block, int next) {
+        slabOf(block).putInt(offsetOf(block), next);
+    }
+
+    @Nonnull
+    private ByteBuffer slabOf(int block) {
+        return _slabs[block / _blocksPerSlab];
+    }
+
+    private int offsetOf(int block) {
+        return (block % _blocksPerSlab) * _blockSize;
+    }
+
+}
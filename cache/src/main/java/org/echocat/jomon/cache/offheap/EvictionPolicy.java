@@ -0,0 +1,31 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+public enum EvictionPolicy {
+    /**
+     * The element that hasn't been access for the biggest period of time will be removed.
+     */
+    lru,
+    /**
+     * The element that has been accessed the fewest times will be removed.
+     */
+    lfu,
+    /**
+     * The element that was put at first will be removed.
+     */
+    fifo
+}
@@ -0,0 +1,886 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+import org.echocat.jomon.cache.*;
+import org.echocat.jomon.cache.Value.Fixed;
+import org.echocat.jomon.cache.Value.Lazy;
+import org.echocat.jomon.cache.offheap.Serializer.ByteArraySerializer;
+import org.echocat.jomon.cache.offheap.Serializer.JavaSerializer;
+import org.echocat.jomon.cache.offheap.Serializer.StringSerializer;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+import org.echocat.jomon.runtime.util.ByteCount;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ProducingType;
+import org.echocat.jomon.runtime.util.ValueProducer;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+
+import static java.lang.System.currentTimeMillis;
+import static org.echocat.jomon.cache.offheap.BlockStorage.DEFAULT_BLOCK_SIZE;
+import static org.echocat.jomon.cache.offheap.BlockStorage.DEFAULT_SLAB_SIZE;
+import static org.echocat.jomon.runtime.CollectionUtils.asCloseableIterator;
+import static org.echocat.jomon.runtime.util.ByteUnit.MEGA_BYTE;
+
+/**
+ * <h1>Synopsis</h1>
+ * <p>A cache which stores its keys and values serialized outside of the java heap in a {@link BlockStorage}. So even millions of cached values do
+ * not produce any objects that have to be handled by the garbage collector. The heap only holds a hash index and the order of the elements in
+ * arrays of primitives.</p>
+ *
+ * <p>The cache is limited by the {@link #setMaximumSize(ByteCount) maximum size} of the off heap memory and optionally by a
+ * {@link #setCapacity(Long) capacity} of elements. If one of both is reached elements are removed as defined by the {@link EvictionPolicy}.
+ * Values which do not fit into the whole cache are not stored at all. In case of {@link EvictionPolicy#lfu} the number of hits of an element
+ * is counted up to {@link #MAXIMUM_FREQUENCY}.</p>
+ *
+ * <p>Every {@link #get(Object) get} deserializes a new copy of the value. Outdated elements are removed if they are requested or reach the end of
+ * the eviction order.</p>
+ */
+@ThreadSafe
+public class OffHeapCache<K, V> extends CacheSupport<K, V> implements DetailedStatisticsEnabledCache<K, V>, LimitedCache<K, V>, ClearableCache<K, V>, ListenerEnabledCache<K, V>, IdentifiedCache<K, V>, ProducingTypeEnabledCache<K, V>, KeysEnabledCache<K, V>, AutoCloseable {
+
+    public static final ByteCount DEFAULT_MAXIMUM_SIZE = new ByteCount(64, MEGA_BYTE);
+    public static final int MAXIMUM_FREQUENCY = 255;
+
+    private static final int NONE = -1;
+    private static final int NULL_LENGTH = -1;
+    private static final int INITIAL_NUMBER_OF_SLOTS = 16;
+    private static final long NEVER = 0;
+
+    protected final Object _lock = new Object();
+    protected final CacheListenerInvoker _listenerInvoker = new CacheListenerInvoker();
+    protected final long _createdTimestamp;
+
+    private final EvictionPolicy _evictionPolicy;
+    private final Serializer<K> _keySerializer;
+    private final Serializer<V> _valueSerializer;
+    private final int _blockSize;
+
+    private volatile String _id;
+    private volatile Duration _defaultExpireAfter;
+    private volatile ProducingType _producingType = ProducingType.DEFAULT;
+
+    @GuardedBy("_lock")
+    private final Map<K, Lazy<K, V>> _inProduction = new HashMap<>();
+    @GuardedBy("_lock")
+    private final int[] _frequencyToFirst = new int[MAXIMUM_FREQUENCY + 1];
+    @GuardedBy("_lock")
+    private BlockStorage _storage;
+    @GuardedBy("_lock")
+    private ByteCount _maximumSize;
+    @GuardedBy("_lock")
+    private Integer _capacity;
+
+    // The elements are stored in slots. Every slot is an index of the following arrays...
+    @GuardedBy("_lock")
+    private int[] _firstBlock;
+    @GuardedBy("_lock")
+    private int[] _hash;
+    @GuardedBy("_lock")
+    private int[] _keyLength;
+    @GuardedBy("_lock")
+    private int[] _valueLength;
+    @GuardedBy("_lock")
+    private int[] _hits;
+    @GuardedBy("_lock")
+    private long[] _expireAt;
+    @GuardedBy("_lock")
+    private int[] _previous;
+    @GuardedBy("_lock")
+    private int[] _next;
+    @GuardedBy("_lock")
+    private int _firstFreeSlot;
+    @GuardedBy("_lock")
+    private int _first;
+    @GuardedBy("_lock")
+    private int _last;
+    @GuardedBy("_lock")
+    private int _size;
+    // Open addressing hash index of (slot + 1). 0 marks an empty position.
+    @GuardedBy("_lock")
+    private int[] _table;
+
+    private volatile long _numberOfRequests;
+    private volatile long _numberOfHits;
+    private volatile long _numberOfDrops;
+    private volatile long _numberOfExpirations;
+    private volatile long _evictedWeight;
+
+    public OffHeapCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnull EvictionPolicy evictionPolicy, @Nonnull Serializer<K> keySerializer, @Nonnull Serializer<V> valueSerializer, @Nonnegative int blockSize) {
+        super(keyType, valueType);
+        _evictionPolicy = evictionPolicy;
+        _keySerializer = keySerializer;
+        _valueSerializer = valueSerializer;
+        _blockSize = blockSize;
+        _createdTimestamp = currentTimeMillis();
+        _maximumSize = DEFAULT_MAXIMUM_SIZE;
+        _storage = new BlockStorage(_maximumSize.toByteCount(), _blockSize, DEFAULT_SLAB_SIZE);
+        initSlots();
+    }
+
+    public OffHeapCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnull EvictionPolicy evictionPolicy, @Nonnull Serializer<K> keySerializer, @Nonnull Serializer<V> valueSerializer) {
+        this(keyType, valueType, evictionPolicy, keySerializer, valueSerializer, DEFAULT_BLOCK_SIZE);
+    }
+
+    public OffHeapCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType, @Nonnull EvictionPolicy evictionPolicy) {
+        this(keyType, valueType, evictionPolicy, OffHeapCache.<K>serializerFor(keyType), OffHeapCache.<V>serializerFor(valueType));
+    }
+
+    public OffHeapCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        this(keyType, valueType, EvictionPolicy.lru);
+    }
+
+    /**
+     * @return a serializer for byte arrays, strings or the {@link JavaSerializer java serialization} for all other types.
+     */
+    @Nonnull
+    public static <T> Serializer<T> serializerFor(@Nonnull Class<?> type) {
+        final Serializer<?> result;
+        if (byte[].class.equals(type)) {
+            result = ByteArraySerializer.INSTANCE;
+        } else if (String.class.equals(type)) {
+            result = StringSerializer.INSTANCE;
+        } else {
+            result = new JavaSerializer<>();
+        }
+        // noinspection unchecked
+        return (Serializer<T>) result;
+    }
+
+    @Nonnull
+    public EvictionPolicy getEvictionPolicy() {
+        return _evictionPolicy;
+    }
+
+    @Nonnull
+    public Serializer<K> getKeySerializer() {
+        return _keySerializer;
+    }
+
+    @Nonnull
+    public Serializer<V> getValueSerializer() {
+        return _valueSerializer;
+    }
+
+    @Override
+    public String getId() {
+        return _id;
+    }
+
+    @Override
+    public void setId(String id) {
+        _id = id;
+    }
+
+    @Override
+    public void setListeners(@Nullable Collection<CacheListener> listeners) {
+        _listenerInvoker.setListeners(listeners);
+    }
+
+    @Override
+    public Collection<CacheListener> getListeners() {
+        return _listenerInvoker.getListeners();
+    }
+
+    @Override
+    @Nonnull
+    public ProducingType getProducingType() {
+        return _producingType;
+    }
+
+    @Override
+    public void setProducingType(@Nonnull ProducingType producingType) {
+        if (producingType == null) {
+            throw new NullPointerException();
+        }
+        _producingType = producingType;
+    }
+
+    @Nonnull
+    public ByteCount getMaximumSize() {
+        synchronized (_lock) {
+            return _maximumSize;
+        }
+    }
+
+    /**
+     * Sets the maximum amount of off heap memory used by this cache. <b>Attention:</b> All elements of this cache will be removed.
+     */
+    public void setMaximumSize(@Nonnull ByteCount maximumSize) {
+        if (maximumSize == null) {
+            throw new NullPointerException();
+        }
+        synchronized (_lock) {
+            _maximumSize = maximumSize;
+            _storage = new BlockStorage(maximumSize.toByteCount(), _blockSize, (int) Math.min(DEFAULT_SLAB_SIZE, Math.max(maximumSize.toByteCount(), _blockSize)));
+            initSlots();
+        }
+    }
+
+    /**
+     * @return the amount of off heap memory that is used by the currently stored elements.
+     */
+    @Nonnull
+    public ByteCount getUsedSize() {
+        synchronized (_lock) {
+            return new ByteCount((long) _storage.getNumberOfUsedBlocks() * _storage.getBlockSize());
+        }
+    }
+
+    /**
+     * @return the amount of off heap memory that is currently allocated by this cache.
+     */
+    @Nonnull
+    public ByteCount getAllocatedSize() {
+        synchronized (_lock) {
+            return new ByteCount(_storage.getAllocatedSize());
+        }
+    }
+
+    @Override
+    public void setCapacity(@Nullable Long capacity) {
+        if (capacity != null && (capacity < 0 || capacity > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("The capacity have to be between 0 and " + Integer.MAX_VALUE + ".");
+        }
+        synchronized (_lock) {
+            _capacity = capacity != null ? capacity.intValue() : null;
+            while (_capacity != null && _size > _capacity) {
+                evictSlot(_last);
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public Long getCapacity() {
+        final Integer capacity = _capacity;
+        return capacity != null ? capacity.longValue() : null;
+    }
+
+    @Override
+    public void setMaximumLifetime(@Nullable Duration maxLifetime) {
+        if (_listenerInvoker.beforeSetMaximumLifetime(this, maxLifetime)) {
+            _defaultExpireAfter = maxLifetime;
+            _listenerInvoker.afterSetMaximumLifetime(this, maxLifetime);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Duration getMaximumLifetime() {
+        return _defaultExpireAfter;
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value) {
+        put(key, value, null);
+    }
+
+    @Override
+    public void put(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
+        checkKey(key);
+        checkValue(value);
+        final Fixed<V> fixed = new Fixed<>(value);
+        if (_listenerInvoker.beforePut(this, key, fixed, expireAfter)) {
+            internalPut(key, value, expireAfter);
+            _listenerInvoker.afterPut(this, key, fixed, expireAfter);
+        }
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            final Value<V> valueHolder = internalGet(key, serializeKey(key));
+            value = valueHolder != null ? valueHolder.get() : null;
+            _listenerInvoker.afterGet(this, key, valueHolder);
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer) {
+        return get(key, cacheValueProducer, null);
+    }
+
+    /**
+     * The value is produced in the thread of the caller. Other threads that request the same key in the meantime use the same production as
+     * defined by the {@link #setProducingType(ProducingType) producing type}.
+     */
+    @Override
+    @Nullable
+    public V get(@Nullable K key, @Nullable ValueProducer<K, V> cacheValueProducer, @Nullable Duration expireAfter) {
+        checkKey(key);
+        final V value;
+        if (_listenerInvoker.beforeGet(this, key)) {
+            final byte[] keyBytes = serializeKey(key);
+            Value<V> valueHolder = internalGet(key, keyBytes);
+            if (valueHolder == null && cacheValueProducer != null) {
+                valueHolder = produce(key, cacheValueProducer, expireAfter);
+            }
+            value = valueHolder != null ? valueHolder.get() : null;
+            checkValueAfterProducing(value);
+            _listenerInvoker.afterGet(this, key, valueHolder);
+        } else {
+            value = null;
+        }
+        return value;
+    }
+
+    @Override
+    @Nullable
+    public Value<V> remove(@Nullable K key) {
+        checkKey(key);
+        final Value<V> result;
+        if (_listenerInvoker.beforeRemove(this, key)) {
+            final byte[] keyBytes = serializeKey(key);
+            final byte[] valueBytes;
+            final boolean found;
+            synchronized (_lock) {
+                final int slot = find(hashOf(keyBytes), keyBytes);
+                found = slot != NONE;
+                valueBytes = found ? readValue(slot) : null;
+                if (found) {
+                    removeSlot(slot);
+                }
+            }
+            result = found ? new Fixed<>(deserializeValue(valueBytes)) : null;
+            _listenerInvoker.afterRemove(this, key, result);
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(@Nullable K key) {
+        checkKey(key);
+        final byte[] keyBytes = serializeKey(key);
+        synchronized (_lock) {
+            final int slot = find(hashOf(keyBytes), keyBytes);
+            final boolean result;
+            if (slot == NONE) {
+                result = false;
+            } else if (isOutDated(slot, currentTimeMillis())) {
+                removeExpired(slot);
+                result = false;
+            } else {
+                result = true;
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (_listenerInvoker.beforeClear(this)) {
+            synchronized (_lock) {
+                _storage.clear();
+                initSlots();
+                resetStatistics();
+            }
+            _listenerInvoker.afterClear(this);
+        }
+    }
+
+    @Override
+    public Long size() {
+        synchronized (_lock) {
+            return (long) _size;
+        }
+    }
+
+    @Override
+    public Long getNumberOfRequests() {
+        return _numberOfRequests;
+    }
+
+    @Override
+    public Long getNumberOfHits() {
+        return _numberOfHits;
+    }
+
+    @Override
+    public Long getNumberOfDrops() {
+        return _numberOfDrops;
+    }
+
+    @Override
+    public Long getNumberOfExpirations() {
+        return _numberOfExpirations;
+    }
+
+    /**
+     * @return the number of bytes of the off heap memory that is used by the elements of this cache.
+     * @see #getUsedSize()
+     */
+    @Override
+    public Long getTotalWeight() {
+        return getUsedSize().toByteCount();
+    }
+
+    /**
+     * @return the number of bytes of the off heap memory that was freed because elements were evicted.
+     */
+    @Override
+    public Long getEvictedWeight() {
+        return _evictedWeight;
+    }
+
+    @Override
+    public Date getCreated() {
+        return new Date(_createdTimestamp);
+    }
+
+    @Override
+    public void resetStatistics() {
+        if (_listenerInvoker.beforeResetStatistics(this)) {
+            _numberOfRequests = 0;
+            _numberOfHits = 0;
+            _numberOfDrops = 0;
+            _numberOfExpirations = 0;
+            _evictedWeight = 0;
+            _listenerInvoker.afterResetStatistics(this);
+        }
+    }
+
+    @Override
+    public CloseableIterator<K> iterator() {
+        final List<byte[]> keys = new ArrayList<>();
+        synchronized (_lock) {
+            for (int slot = _first; slot != NONE; slot = _next[slot]) {
+                keys.add(readKey(slot));
+            }
+        }
+        final List<K> result = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            result.add(deserializeKey(key));
+        }
+        return asCloseableIterator(result.iterator());
+    }
+
+    @Override
+    public void close() throws Exception {
+        clear();
+    }
+
+    @Nullable
+    protected Value<V> internalGet(@Nullable K key, @Nullable byte[] keyBytes) {
+        final byte[] valueBytes;
+        final boolean found;
+        synchronized (_lock) {
+            _numberOfRequests++;
+            final int slot = find(hashOf(keyBytes), keyBytes);
+            if (slot == NONE) {
+                found = false;
+                valueBytes = null;
+            } else if (isOutDated(slot, currentTimeMillis())) {
+                removeExpired(slot);
+                found = false;
+                valueBytes = null;
+            } else {
+                _numberOfHits++;
+                updateOrderAfterHit(slot);
+                found = true;
+                valueBytes = readValue(slot);
+            }
+        }
+        return found ? new Fixed<>(deserializeValue(valueBytes)) : null;
+    }
+
+    @Nonnull
+    protected Value<V> produce(@Nullable K key, @Nonnull ValueProducer<K, V> producer, @Nullable Duration expireAfter) {
+        final Lazy<K, V> lazy;
+        synchronized (_lock) {
+            final Lazy<K, V> existing = _inProduction.get(key);
+            if (existing != null) {
+                lazy = existing;
+            } else {
+                lazy = new Lazy<>(key, producer, _producingType);
+                _inProduction.put(key, lazy);
+            }
+        }
+        boolean produced = false;
+        try {
+            final V value = lazy.get();
+            produced = true;
+            checkValueAfterProducing(value);
+            if (removeFromProduction(key, lazy)) {
+                internalPut(key, value, expireAfter);
+            }
+        } finally {
+            if (!produced) {
+                removeFromProduction(key, lazy);
+            }
+        }
+        return lazy;
+    }
+
+    private boolean removeFromProduction(@Nullable K key, @Nonnull Lazy<K, V> lazy) {
+        synchronized (_lock) {
+            // noinspection ObjectEquality
+            final boolean result = _inProduction.get(key) == lazy;
+            if (result) {
+                _inProduction.remove(key);
+            }
+            return result;
+        }
+    }
+
+    protected void internalPut(@Nullable K key, @Nullable V value, @Nullable Duration expireAfter) {
+        final byte[] keyBytes = serializeKey(key);
+        final byte[] valueBytes = serializeValue(value);
+        final Duration targetExpireAfter = expireAfter != null ? expireAfter : _defaultExpireAfter;
+        final long expireAt = targetExpireAfter != null ? currentTimeMillis() + targetExpireAfter.toMilliSeconds() : NEVER;
+        final int hash = hashOf(keyBytes);
+        final long length = lengthOf(keyBytes) + lengthOf(valueBytes);
+        synchronized (_lock) {
+            final int existing = find(hash, keyBytes);
+            if (existing != NONE) {
+                removeSlot(existing);
+            }
+            if (_storage.getNumberOfBlocksFor(length) <= _storage.getMaximumNumberOfBlocks() && (_capacity == null || _capacity > 0)) {
+                int firstBlock = _storage.allocate(length);
+                while (firstBlock == NONE || (_capacity != null && _size >= _capacity)) {
+                    evictSlot(_last);
+                    if (firstBlock == NONE) {
+                        firstBlock = _storage.allocate(length);
+                    }
+                }
+                if (keyBytes != null && valueBytes != null) {
+                    _storage.write(firstBlock, keyBytes, valueBytes);
+                } else if (keyBytes != null) {
+                    _storage.write(firstBlock, keyBytes);
+                } else if (valueBytes != null) {
+                    _storage.write(firstBlock, valueBytes);
+                }
+                final int slot = takeSlot();
+                _firstBlock[slot] = firstBlock;
+                _hash[slot] = hash;
+                _keyLength[slot] = keyBytes != null ? keyBytes.length : NULL_LENGTH;
+                _valueLength[slot] = valueBytes != null ? valueBytes.length : NULL_LENGTH;
+                _expireAt[slot] = expireAt;
+                _hits[slot] = 0;
+                addToIndex(slot);
+                updateOrderAfterPut(slot);
+                _size++;
+            } else {
+                // The value does not fit into this cache...
+                _numberOfDrops++;
+            }
+        }
+    }
+
+    @GuardedBy("_lock")
+    protected void updateOrderAfterPut(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lfu) {
+            linkBefore(slot, NONE);
+            if (_frequencyToFirst[0] == NONE) {
+                _frequencyToFirst[0] = slot;
+            }
+        } else {
+            linkBefore(slot, _first);
+        }
+    }
+
+    @GuardedBy("_lock")
+    protected void updateOrderAfterHit(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lru) {
+            if (slot != _first) {
+                unlink(slot);
+                linkBefore(slot, _first);
+            }
+        } else if (_evictionPolicy == EvictionPolicy.lfu) {
+            if (_hits[slot] < MAXIMUM_FREQUENCY) {
+                final int frequency = ++_hits[slot];
+                final int firstOfOldBucket = _frequencyToFirst[frequency - 1];
+                if (firstOfOldBucket != NONE) {
+                    if (firstOfOldBucket == slot) {
+                        replaceFirstOfBucket(slot, frequency - 1);
+                    } else {
+                        unlink(slot);
+                        linkBefore(slot, firstOfOldBucket);
+                    }
+                }
+                if (_frequencyToFirst[frequency] == NONE) {
+                    _frequencyToFirst[frequency] = slot;
+                }
+            }
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void replaceFirstOfBucket(int slot, int frequency) {
+        final int next = _next[slot];
+        _frequencyToFirst[frequency] = next != NONE && _hits[next] == frequency ? next : NONE;
+    }
+
+    @GuardedBy("_lock")
+    private void evictSlot(int slot) {
+        final long length = lengthOf(_keyLength[slot]) + lengthOf(_valueLength[slot]);
+        _evictedWeight += (long) _storage.getNumberOfBlocksFor(length) * _storage.getBlockSize();
+        removeSlot(slot);
+    }
+
+    @GuardedBy("_lock")
+    private void removeExpired(int slot) {
+        removeSlot(slot);
+        _numberOfExpirations++;
+    }
+
+    @GuardedBy("_lock")
+    private void removeSlot(int slot) {
+        if (_evictionPolicy == EvictionPolicy.lfu && _frequencyToFirst[_hits[slot]] == slot) {
+            replaceFirstOfBucket(slot, _hits[slot]);
+        }
+        unlink(slot);
+        removeFromIndex(slot);
+        _storage.free(_firstBlock[slot]);
+        _next[slot] = _firstFreeSlot;
+        _firstFreeSlot = slot;
+        _size--;
+        _numberOfDrops++;
+    }
+
+    @GuardedBy("_lock")
+    private boolean isOutDated(int slot, long now) {
+        final long expireAt = _expireAt[slot];
+        return expireAt != NEVER && expireAt <= now;
+    }
+
+    @GuardedBy("_lock")
+    private int find(int hash, @Nullable byte[] keyBytes) {
+        final int mask = _table.length - 1;
+        final int keyLength = keyBytes != null ? keyBytes.length : NULL_LENGTH;
+        int result = NONE;
+        for (int index = hash & mask; result == NONE && _table[index] != 0; index = (index + 1) & mask) {
+            final int slot = _table[index] - 1;
+            if (_hash[slot] == hash && _keyLength[slot] == keyLength && (keyBytes == null || _storage.startsWith(_firstBlock[slot], keyBytes))) {
+                result = slot;
+            }
+        }
+        return result;
+    }
+
+    @GuardedBy("_lock")
+    private void addToIndex(int slot) {
+        if ((_size + 1) * 2 > _table.length) {
+            final int[] oldTable = _table;
+            _table = new int[oldTable.length * 2];
+            for (int entry : oldTable) {
+                if (entry != 0) {
+                    putIntoTable(entry - 1);
+                }
+            }
+        }
+        putIntoTable(slot);
+    }
+
+    @GuardedBy("_lock")
+    private void putIntoTable(int slot) {
+        final int mask = _table.length - 1;
+        int index = _hash[slot] & mask;
+        while (_table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        _table[index] = slot + 1;
+    }
+
+    /**
+     * Removes the slot from the index and shifts the following entries back, so no tombstones are required.
+     */
+    @GuardedBy("_lock")
+    private void removeFromIndex(int slot) {
+        final int mask = _table.length - 1;
+        int index = _hash[slot] & mask;
+        while (_table[index] != slot + 1) {
+            index = (index + 1) & mask;
+        }
+        _table[index] = 0;
+        int next = (index + 1) & mask;
+        while (_table[next] != 0) {
+            final int home = _hash[_table[next] - 1] & mask;
+            final boolean canBeMoved = index <= next ? (home <= index || home > next) : (home <= index && home > next);
+            if (canBeMoved) {
+                _table[index] = _table[next];
+                _table[next] = 0;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    @GuardedBy("_lock")
+    private int takeSlot() {
+        if (_firstFreeSlot == NONE) {
+            final int oldLength = _firstBlock.length;
+            final int newLength = oldLength * 2;
+            _firstBlock = Arrays.copyOf(_firstBlock, newLength);
+            _hash = Arrays.copyOf(_hash, newLength);
+            _keyLength = Arrays.copyOf(_keyLength, newLength);
+            _valueLength = Arrays.copyOf(_valueLength, newLength);
+            _hits = Arrays.copyOf(_hits, newLength);
+            _expireAt = Arrays.copyOf(_expireAt, newLength);
+            _previous = Arrays.copyOf(_previous, newLength);
+            _next = Arrays.copyOf(_next, newLength);
+            chainFreeSlots(oldLength, newLength);
+        }
+        final int result = _firstFreeSlot;
+        _firstFreeSlot = _next[result];
+        return result;
+    }
+
+    @GuardedBy("_lock")
+    private void linkBefore(int slot, int successor) {
+        final int previous = successor != NONE ? _previous[successor] : _last;
+        _previous[slot] = previous;
+        _next[slot] = successor;
+        if (previous != NONE) {
+            _next[previous] = slot;
+        } else {
+            _first = slot;
+        }
+        if (successor != NONE) {
+            _previous[successor] = slot;
+        } else {
+            _last = slot;
+        }
+    }
+
+    @GuardedBy("_lock")
+    private void unlink(int slot) {
+        final int previous = _previous[slot];
+        final int next = _next[slot];
+        if (previous != NONE) {
+            _next[previous] = next;
+        } else {
+            _first = next;
+        }
+        if (next != NONE) {
+            _previous[next] = previous;
+        } else {
+            _last = previous;
+        }
+        _previous[slot] = NONE;
+        _next[slot] = NONE;
+    }
+
+    @GuardedBy("_lock")
+    private void initSlots() {
+        _firstBlock = new int[INITIAL_NUMBER_OF_SLOTS];
+        _hash = new int[INITIAL_NUMBER_OF_SLOTS];
+        _keyLength = new int[INITIAL_NUMBER_OF_SLOTS];
+        _valueLength = new int[INITIAL_NUMBER_OF_SLOTS];
+        _hits = new int[INITIAL_NUMBER_OF_SLOTS];
+        _expireAt = new long[INITIAL_NUMBER_OF_SLOTS];
+        _previous = new int[INITIAL_NUMBER_OF_SLOTS];
+        _next = new int[INITIAL_NUMBER_OF_SLOTS];
+        _table = new int[INITIAL_NUMBER_OF_SLOTS * 2];
+        _first = NONE;
+        _last = NONE;
+        _size = 0;
+        _firstFreeSlot = NONE;
+        Arrays.fill(_frequencyToFirst, NONE);
+        chainFreeSlots(0, INITIAL_NUMBER_OF_SLOTS);
+    }
+
+    @GuardedBy("_lock")
+    private void chainFreeSlots(int from, int to) {
+        for (int slot = to - 1; slot >= from; slot--) {
+            _previous[slot] = NONE;
+            _next[slot] = _firstFreeSlot;
+            _firstFreeSlot = slot;
+        }
+    }
+
+    @GuardedBy("_lock")
+    @Nullable
+    private byte[] readKey(int slot) {
+        final int keyLength = _keyLength[slot];
+        return keyLength != NULL_LENGTH ? _storage.read(_firstBlock[slot], 0, keyLength) : null;
+    }
+
+    @GuardedBy("_lock")
+    @Nullable
+    private byte[] readValue(int slot) {
+        final int valueLength = _valueLength[slot];
+        return valueLength != NULL_LENGTH ? _storage.read(_firstBlock[slot], lengthOf(_keyLength[slot]), valueLength) : null;
+    }
+
+    @Nullable
+    protected byte[] serializeKey(@Nullable K key) {
+        try {
+            return key != null ? _keySerializer.serialize(key) : null;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not serialize key '" + key + "'.", e);
+        }
+    }
+
+    @Nullable
+    protected byte[] serializeValue(@Nullable V value) {
+        try {
+            return value != null ? _valueSerializer.serialize(value) : null;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not serialize value '" + value + "'.", e);
+        }
+    }
+
+    @Nullable
+    protected K deserializeKey(@Nullable byte[] bytes) {
+        try {
+            return bytes != null ? _keySerializer.deserialize(bytes) : null;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not deserialize a key of " + this + ".", e);
+        }
+    }
+
+    @Nullable
+    protected V deserializeValue(@Nullable byte[] bytes) {
+        try {
+            return bytes != null ? _valueSerializer.deserialize(bytes) : null;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not deserialize a value of " + this + ".", e);
+        }
+    }
+
+    private static int hashOf(@Nullable byte[] bytes) {
+        int result = Arrays.hashCode(bytes);
+        // Spread the bits because the lower bits are used for the index...
+        result *= 0x9E3779B9;
+        return result ^ (result >>> 16);
+    }
+
+    @Nonnegative
+    private static int lengthOf(@Nullable byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    @Nonnegative
+    private static int lengthOf(int length) {
+        return length != NULL_LENGTH ? length : 0;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.nio.charset.Charset;
+
+/**
+ * Converts keys and values of an {@link OffHeapCache} into bytes and back. <code>null</code> is handled by the cache itself and is never passed to
+ * a serializer.
+ */
+public interface Serializer<T> {
+
+    @Nonnull
+    public byte[] serialize(@Nonnull T value) throws Exception;
+
+    @Nonnull
+    public T deserialize(@Nonnull byte[] bytes) throws Exception;
+
+    @ThreadSafe
+    public static class ByteArraySerializer implements Serializer<byte[]> {
+
+        public static final ByteArraySerializer INSTANCE = new ByteArraySerializer();
+
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull byte[] value) throws Exception {
+            return value;
+        }
+
+        @Nonnull
+        @Override
+        public byte[] deserialize(@Nonnull byte[] bytes) throws Exception {
+            return bytes;
+        }
+    }
+
+    @ThreadSafe
+    public static class StringSerializer implements Serializer<String> {
+
+        public static final StringSerializer INSTANCE = new StringSerializer();
+
+        private static final Charset CHARSET = Charset.forName("UTF-8");
+
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull String value) throws Exception {
+            return value.getBytes(CHARSET);
+        }
+
+        @Nonnull
+        @Override
+        public String deserialize(@Nonnull byte[] bytes) throws Exception {
+            return new String(bytes, CHARSET);
+        }
+    }
+
+    /**
+     * Uses the java serialization. It works for every {@link Serializable} type but is slow and produces a lot of bytes.
+     */
+    @ThreadSafe
+    public static class JavaSerializer<T> implements Serializer<T> {
+
+        @Nonnull
+        @Override
+        public byte[] serialize(@Nonnull T value) throws Exception {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+            return baos.toByteArray();
+        }
+
+        @Nonnull
+        @Override
+        public T deserialize(@Nonnull byte[] bytes) throws Exception {
+            try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                // noinspection unchecked
+                return (T) ois.readObject();
+            }
+        }
+    }
+
+}
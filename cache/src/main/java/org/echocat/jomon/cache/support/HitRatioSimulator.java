@@ -0,0 +1,196 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.support;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.management.CacheCreator;
+import org.echocat.jomon.cache.management.CacheDefinition;
+import org.echocat.jomon.cache.management.CombinedCacheCreator;
+import org.echocat.jomon.runtime.io.UncheckedIOException;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Replays a recorded trace of keys against caches created by {@link CacheDefinition definitions} and measures the resulting hit ratio. Every key of
+ * the trace is requested from the cache and put into it if it was not present. So different cache types and capacities could be compared with
+ * the access pattern of a real application before they are used.
+ */
+public class HitRatioSimulator {
+
+    private final CacheCreator _creator;
+
+    public HitRatioSimulator(@Nonnull CacheCreator creator) {
+        _creator = creator;
+    }
+
+    public HitRatioSimulator() {
+        this(new CombinedCacheCreator());
+    }
+
+    @Nonnull
+    public <K> Result simulate(@Nonnull CacheDefinition<K, Object, ?> definition, @Nonnull Iterable<? extends K> trace) throws Exception {
+        return simulate(definition, trace.iterator());
+    }
+
+    /**
+     * @param trace will be closed after the simulation if it is {@link AutoCloseable}.
+     */
+    @Nonnull
+    public <K> Result simulate(@Nonnull CacheDefinition<K, Object, ?> definition, @Nonnull Iterator<? extends K> trace) throws Exception {
+        final Cache<K, Object> cache = _creator.create(null, _creator, definition);
+        try {
+            return simulate(cache, trace);
+        } finally {
+            if (cache instanceof AutoCloseable) {
+                closeQuietly((AutoCloseable) cache);
+            }
+        }
+    }
+
+    /**
+     * @param trace will be closed after the simulation if it is {@link AutoCloseable}.
+     */
+    @Nonnull
+    public <K> Result simulate(@Nonnull Cache<K, Object> cache, @Nonnull Iterator<? extends K> trace) {
+        long numberOfRequests = 0;
+        long numberOfHits = 0;
+        try {
+            while (trace.hasNext()) {
+                final K key = trace.next();
+                numberOfRequests++;
+                if (cache.get(key) != null) {
+                    numberOfHits++;
+                } else {
+                    cache.put(key, Boolean.TRUE);
+                }
+            }
+        } finally {
+            if (trace instanceof AutoCloseable) {
+                closeQuietly((AutoCloseable) trace);
+            }
+        }
+        return new Result(numberOfRequests, numberOfHits);
+    }
+
+    /**
+     * @return every non empty line of the given file as one key.
+     */
+    @Nonnull
+    public static CloseableIterator<String> traceOf(@Nonnull File file) throws IOException {
+        return traceOf(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    /**
+     * @return every non empty line of the given reader as one key. The reader will be closed with the returned iterator.
+     */
+    @Nonnull
+    public static CloseableIterator<String> traceOf(@Nonnull Reader reader) {
+        return new LineIterator(reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+    }
+
+    public static class Result {
+
+        private final long _numberOfRequests;
+        private final long _numberOfHits;
+
+        public Result(@Nonnegative long numberOfRequests, @Nonnegative long numberOfHits) {
+            _numberOfRequests = numberOfRequests;
+            _numberOfHits = numberOfHits;
+        }
+
+        @Nonnegative
+        public long getNumberOfRequests() {
+            return _numberOfRequests;
+        }
+
+        @Nonnegative
+        public long getNumberOfHits() {
+            return _numberOfHits;
+        }
+
+        @Nonnegative
+        public double getHitRatio() {
+            return _numberOfRequests > 0 ? (double) _numberOfHits / _numberOfRequests : 0d;
+        }
+
+        @Override
+        public String toString() {
+            return "hits: " + _numberOfHits + "/" + _numberOfRequests + " (" + String.format("%.2f", getHitRatio() * 100) + "%)";
+        }
+    }
+
+    protected static class LineIterator implements CloseableIterator<String> {
+
+        private final BufferedReader _reader;
+
+        private String _next;
+        private boolean _nextLoaded;
+
+        public LineIterator(@Nonnull BufferedReader reader) {
+            _reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!_nextLoaded) {
+                _next = readNextKey();
+                _nextLoaded = true;
+            }
+            return _next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            _nextLoaded = false;
+            return _next;
+        }
+
+        @Nullable
+        protected String readNextKey() {
+            try {
+                String line;
+                do {
+                    line = _reader.readLine();
+                } while (line != null && line.trim().isEmpty());
+                return line != null ? line.trim() : null;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the next key of the trace.", e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(_reader);
+        }
+    }
+
+}
@@ -10,8 +10,10 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
+import static org.echocat.jomon.cache.CacheUtils.getAll;
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
 
 public abstract class OptimizedByCacheIterator<K, T extends IdEnabled<K>> implements CloseableIterator<T> {
@@ -37,8 +39,9 @@ public abstract class OptimizedByCacheIterator<K, T extends IdEnabled<K>> implem
         if (_fromCache == null) {
             final List<T> fromCache = new ArrayList<>();
             final List<K> idsNotInCache = new ArrayList<>();
+            final Map<K, T> cachedById = getAll(_cache, _ids);
             for (K id : _ids) {
-                final T cached = _cache.get(id);
+                final T cached = cachedById.get(id);
                 if (cached != null) {
                     fromCache.add(cached);
                 } else {
@@ -0,0 +1,161 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+import static org.junit.Assert.fail;
+
+public class AsyncCacheUnitTest {
+
+    @Test
+    public void testSameKeyIsProducedOnlyOnce() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        final AsyncCache<String, String> asyncCache = new AsyncCache<>(cache, sameThreadExecutor());
+        final RecordingProducer producer = new RecordingProducer();
+
+        final ListenableFuture<String> first = asyncCache.get("a", producer);
+        final ListenableFuture<String> second = asyncCache.get("a", producer);
+        assertThat(second, isSameAs(first));
+        assertThat(first.isDone(), is(false));
+        assertThat(producer.getNumberOfProductions(), is(1));
+        assertThat(asyncCache.getNumberOfProductionsInProgress(), is(1));
+
+        producer.complete("a", "A");
+        assertThat(first.get(), is("A"));
+        assertThat(cache.get("a"), is("A"));
+        assertThat(asyncCache.getNumberOfProductionsInProgress(), is(0));
+
+        final ListenableFuture<String> third = asyncCache.get("a", producer);
+        assertThat(third.isDone(), is(true));
+        assertThat(third.get(), is("A"));
+        assertThat(producer.getNumberOfProductions(), is(1));
+    }
+
+    @Test
+    public void testProductionWhichFinishedBeforeTheRegistrationIsNotRepeated() throws Exception {
+        final LruCache<String, String> cache = new LruCache<String, String>(String.class, String.class) {
+            private boolean _first = true;
+
+            @Override
+            public String get(@Nullable String key) {
+                final String result = super.get(key);
+                if (_first) {
+                    // Another production stores its value directly after this look into the cache ...
+                    _first = false;
+                    put(key, "A");
+                }
+                return result;
+            }
+        };
+        final AsyncCache<String, String> asyncCache = new AsyncCache<>(cache, sameThreadExecutor());
+        final RecordingProducer producer = new RecordingProducer();
+
+        final ListenableFuture<String> future = asyncCache.get("a", producer);
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is("A"));
+        assertThat(producer.getNumberOfProductions(), is(0));
+        assertThat(asyncCache.getNumberOfProductionsInProgress(), is(0));
+    }
+
+    @Test
+    public void testDifferentKeysDoNotWaitForEachOther() throws Exception {
+        final AsyncCache<String, String> asyncCache = new AsyncCache<>(new LruCache<>(String.class, String.class), sameThreadExecutor());
+        final RecordingProducer producer = new RecordingProducer();
+
+        final ListenableFuture<String> a = asyncCache.get("a", producer);
+        final ListenableFuture<String> b = asyncCache.get("b", producer);
+        producer.complete("b", "B");
+        assertThat(b.get(), is("B"));
+        assertThat(a.isDone(), is(false));
+        producer.complete("a", "A");
+        assertThat(a.get(), is("A"));
+    }
+
+    @Test
+    public void testFailedProductionIsRetried() throws Exception {
+        final AsyncCache<String, String> asyncCache = new AsyncCache<>(new LruCache<>(String.class, String.class), sameThreadExecutor());
+        final RecordingProducer producer = new RecordingProducer();
+
+        final ListenableFuture<String> failing = asyncCache.get("a", producer);
+        producer.fail("a", new IllegalStateException("Backend not available."));
+        try {
+            failing.get();
+            fail("Expected exception missing.");
+        } catch (ExecutionException expected) {
+            assertThat(expected.getCause(), isInstanceOf(IllegalStateException.class));
+        }
+        assertThat(asyncCache.getNumberOfProductionsInProgress(), is(0));
+
+        final ListenableFuture<String> retry = asyncCache.get("a", producer);
+        assertThat(producer.getNumberOfProductions(), is(2));
+        producer.complete("a", "A");
+        assertThat(retry.get(), is("A"));
+    }
+
+    @Test
+    public void testBlockingProducerIsExecutedByExecutor() throws Exception {
+        final AtomicInteger numberOfProductions = new AtomicInteger();
+        final AsyncCache<String, String> asyncCache = new AsyncCache<>(new LruCache<>(String.class, String.class), sameThreadExecutor());
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(@Nullable String key) throws Exception {
+            numberOfProductions.incrementAndGet();
+            return key + "1";
+        }};
+        assertThat(asyncCache.get("a", producer).get(), is("a1"));
+        assertThat(asyncCache.get("a", producer).get(), is("a1"));
+        assertThat(asyncCache.get("a").get(), is("a1"));
+        assertThat(numberOfProductions.get(), is(1));
+    }
+
+    protected static class RecordingProducer implements AsyncValueProducer<String, String> {
+
+        private final Map<String, SettableFuture<String>> _productions = new HashMap<>();
+        private int _numberOfProductions;
+
+        @Override
+        public ListenableFuture<String> produce(@Nullable String key) throws Exception {
+            final SettableFuture<String> result = SettableFuture.create();
+            _productions.put(key, result);
+            _numberOfProductions++;
+            return result;
+        }
+
+        public void complete(String key, String value) {
+            _productions.remove(key).set(value);
+        }
+
+        public void fail(String key, Throwable cause) {
+            _productions.remove(key).setException(cause);
+        }
+
+        public int getNumberOfProductions() {
+            return _numberOfProductions;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.CacheEventDispatcher.OverflowPolicy;
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class CacheEventDispatcherUnitTest {
+
+    @Test
+    public void testAfterEventsAreDeliveredByDispatcher() throws Exception {
+        try (final CacheEventDispatcher dispatcher = new CacheEventDispatcher(16)) {
+            final RecordingListener listener = new RecordingListener(dispatcher);
+            final LruCache<String, Integer> cache = cacheWith(listener);
+            cache.put("a", 1);
+            cache.get("a");
+            cache.remove("a");
+            assertThat(listener.isVetoed(), is(false));
+            assertThat(dispatcher.awaitDelivery(5, SECONDS), is(true));
+
+            assertThat(listener.getTypes(), is(list(CacheEvent.Type.afterPut, CacheEvent.Type.afterGet, CacheEvent.Type.afterRemove)));
+            assertThat(listener.getThreads().contains(Thread.currentThread()), is(false));
+            assertThat(dispatcher.getNumberOfDeliveredEvents(), is(3L));
+            assertThat(dispatcher.getQueueDepth(), is(0L));
+        }
+    }
+
+    @Test
+    public void testBeforeEventsStaySynchronous() throws Exception {
+        try (final CacheEventDispatcher dispatcher = new CacheEventDispatcher(16)) {
+            final RecordingListener listener = new RecordingListener(dispatcher);
+            listener.setVeto(true);
+            final LruCache<String, Integer> cache = cacheWith(listener);
+            cache.put("a", 1);
+            assertThat(listener.isVetoed(), is(true));
+            assertThat(cache.contains("a"), is(false));
+        }
+    }
+
+    @Test
+    public void testNotAcceptedEventsAreNotQueued() throws Exception {
+        try (final CacheEventDispatcher dispatcher = new CacheEventDispatcher(16)) {
+            final RecordingListener listener = new RecordingListener(dispatcher);
+            listener.setAcceptedType(CacheEvent.Type.afterRemove);
+            final LruCache<String, Integer> cache = cacheWith(listener);
+            cache.put("a", 1);
+            cache.remove("a");
+            assertThat(dispatcher.awaitDelivery(5, SECONDS), is(true));
+            assertThat(listener.getTypes(), is(list(CacheEvent.Type.afterRemove)));
+            assertThat(dispatcher.getNumberOfQueuedEvents(), is(1L));
+        }
+    }
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        try (final CacheEventDispatcher dispatcher = new CacheEventDispatcher(2)) {
+            final RecordingListener listener = new RecordingListener(dispatcher);
+            final CountDownLatch blocker = new CountDownLatch(1);
+            listener.setBlocker(blocker);
+            final LruCache<String, Integer> cache = cacheWith(listener);
+            cache.put("a", 1);
+            listener.awaitBlocked();
+            cache.put("b", 2);
+            cache.put("c", 3);
+
+            dispatcher.setOverflowPolicy(OverflowPolicy.dropNewest);
+            cache.put("d", 4);
+            assertThat(dispatcher.getNumberOfDroppedEvents(), is(1L));
+            assertThat(dispatcher.getQueueDepth(), is(2L));
+
+            dispatcher.setOverflowPolicy(OverflowPolicy.callerRuns);
+            cache.put("e", 5);
+            assertThat(dispatcher.getNumberOfCallerRunsEvents(), is(1L));
+            assertThat(listener.getThreads().contains(Thread.currentThread()), is(true));
+
+            dispatcher.setOverflowPolicy(OverflowPolicy.dropOldest);
+            cache.put("f", 6);
+            assertThat(dispatcher.getNumberOfDroppedEvents(), is(2L));
+
+            blocker.countDown();
+            assertThat(dispatcher.awaitDelivery(5, SECONDS), is(true));
+            assertThat(listener.getKeys(), is(CacheEventDispatcherUnitTest.<Object>list("a", "e", "c", "f")));
+        }
+    }
+
+    @Test
+    public void testCloseDeliversRemainingEvents() throws Exception {
+        final CacheEventDispatcher dispatcher = new CacheEventDispatcher(1024);
+        final RecordingListener listener = new RecordingListener(dispatcher);
+        final LruCache<String, Integer> cache = cacheWith(listener);
+        for (int i = 0; i < 500; i++) {
+            cache.put("key" + i, i);
+        }
+        dispatcher.close();
+        assertThat(listener.getKeys().size(), is(500));
+        cache.put("afterClose", 1);
+        assertThat(listener.getKeys().size(), is(501));
+    }
+
+    @Nonnull
+    protected LruCache<String, Integer> cacheWith(@Nonnull CacheListener listener) {
+        final LruCache<String, Integer> cache = new LruCache<>(String.class, Integer.class);
+        cache.setListeners(Collections.singletonList(listener));
+        return cache;
+    }
+
+    @SafeVarargs
+    @Nonnull
+    protected static <T> List<T> list(@Nonnull T... elements) {
+        final List<T> result = new ArrayList<>();
+        Collections.addAll(result, elements);
+        return result;
+    }
+
+    protected static class RecordingListener implements AsynchronousCacheListener, PutCacheListener, GetCacheListener, RemoveCacheListener {
+
+        private final CacheEventDispatcher _dispatcher;
+        private final List<CacheEvent.Type> _types = new CopyOnWriteArrayList<>();
+        private final List<Object> _keys = new CopyOnWriteArrayList<>();
+        private final List<Thread> _threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch _blocked = new CountDownLatch(1);
+        private volatile CountDownLatch _blocker;
+        private volatile CacheEvent.Type _acceptedType;
+        private volatile boolean _veto;
+        private volatile boolean _vetoed;
+
+        public RecordingListener(@Nonnull CacheEventDispatcher dispatcher) {
+            _dispatcher = dispatcher;
+        }
+
+        @Nullable
+        @Override
+        public CacheEventDispatcher getEventDispatcher() {
+            return _dispatcher;
+        }
+
+        @Override
+        public boolean accept(@Nonnull CacheEvent event) {
+            return _acceptedType == null || _acceptedType == event.getType();
+        }
+
+        @Override
+        public void afterEvents(@Nonnull List<CacheEvent> events) {
+            _threads.add(Thread.currentThread());
+            for (CacheEvent event : events) {
+                _types.add(event.getType());
+                _keys.add(event.getKey());
+            }
+            final CountDownLatch blocker = _blocker;
+            if (blocker != null && _blocked.getCount() > 0) {
+                _blocked.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean beforePut(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration expireAfter) {
+            _vetoed = _veto;
+            return !_veto;
+        }
+
+        @Override public void afterPut(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value, @Nullable Duration expireAfter) { throw new UnsupportedOperationException(); }
+        @Override public boolean beforeGet(@Nonnull Cache<?, ?> cache, @Nullable Object key) { return true; }
+        @Override public void afterGet(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> value) { throw new UnsupportedOperationException(); }
+        @Override public boolean beforeRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key) { return true; }
+        @Override public void afterRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> oldValue) { throw new UnsupportedOperationException(); }
+
+        public void setBlocker(@Nullable CountDownLatch blocker) {
+            _blocker = blocker;
+        }
+
+        public void awaitBlocked() throws InterruptedException {
+            _blocked.await(5, SECONDS);
+        }
+
+        public void setAcceptedType(@Nullable CacheEvent.Type acceptedType) {
+            _acceptedType = acceptedType;
+        }
+
+        public void setVeto(boolean veto) {
+            _veto = veto;
+        }
+
+        public boolean isVetoed() {
+            return _vetoed;
+        }
+
+        @Nonnull
+        public List<CacheEvent.Type> getTypes() {
+            return _types;
+        }
+
+        @Nonnull
+        public List<Object> getKeys() {
+            return _keys;
+        }
+
+        @Nonnull
+        public List<Thread> getThreads() {
+            return _threads;
+        }
+    }
+
+}
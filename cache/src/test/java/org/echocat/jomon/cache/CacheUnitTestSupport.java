@@ -189,6 +189,21 @@ public abstract class CacheUnitTestSupport<T extends LimitedCache<Object, Object
         assertTrue(cache.contains(o2));
     }
 
+    @Test
+    public void testShrinkingEvictsDownToTheNewCapacity() throws Exception {
+        final T cache = getInstance(Integer.MAX_VALUE, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        cache.setCapacity(20L);
+        assertThat(cache.size(), isLessThanOrEqualTo(20L));
+        for (int i = 100; i < 400; i++) {
+            cache.put(i, i);
+        }
+        assertThat(cache.size(), isLessThanOrEqualTo(20L));
+        assertTrue(cache.contains(399));
+    }
+
     @Test
     public void testShouldNotGrowLargerThanMaxSize() throws Exception {
         final long maxCacheSize = 1000;
@@ -0,0 +1,203 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.CapacityAdvisor.GhostList;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class CapacityAdvisorUnitTest {
+
+    @Test
+    public void testCyclicScanIsOnlyHitWithEnoughCapacity() throws Exception {
+        final CapacityAdvisor advisor = new CapacityAdvisor(100, 1, CapacityAdvisor.DEFAULT_FACTORS);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 200; key++) {
+                advisor.record(key);
+            }
+        }
+        assertThat(advisor.getNumberOfSampledRequests(), is(2000L));
+        assertThat(advisor.getEstimatedHitRatios().get(0.25), is(0d));
+        assertThat(advisor.getEstimatedHitRatios().get(1d), is(0d));
+        assertThat(advisor.getEstimatedHitRatios().get(2d), is(0.9d));
+        assertThat(advisor.getEstimatedHitRatios().get(4d), is(0.9d));
+    }
+
+    @Test
+    public void testSamplingOnlyRecordsAPartOfTheKeys() throws Exception {
+        final CapacityAdvisor advisor = new CapacityAdvisor(100000);
+        for (int key = 0; key < 100000; key++) {
+            advisor.record(key);
+        }
+        assertThat(advisor.getNumberOfSampledRequests() > 500L, is(true));
+        assertThat(advisor.getNumberOfSampledRequests() < 2000L, is(true));
+    }
+
+    @Test
+    public void testSamplingRateFollowsTheCapacity() throws Exception {
+        final CapacityAdvisor advisor = new CapacityAdvisor(1000);
+        assertThat(advisor.getSamplingRate(), is(1d));
+        for (int key = 0; key < 1000; key++) {
+            advisor.record(key);
+        }
+        advisor.resize(100000);
+        assertThat(advisor.getSamplingRate(), is(0.01024d));
+        for (int key = 0; key < 1000; key++) {
+            advisor.record(key);
+        }
+        // Only the hashes which are still sampled are kept, so every sampled request of the second round is a hit ...
+        final long numberOfSampledInSecondRound = advisor.getNumberOfSampledRequests() - 1000;
+        assertThat(numberOfSampledInSecondRound, isGreaterThan(0L));
+        assertThat(numberOfSampledInSecondRound, isLessThan(50L));
+        assertThat(advisor.getEstimatedHitRatios().get(1d), is((double) numberOfSampledInSecondRound / advisor.getNumberOfSampledRequests()));
+
+        final CapacityAdvisor fixed = new CapacityAdvisor(1000, 1, CapacityAdvisor.DEFAULT_FACTORS);
+        fixed.resize(100000);
+        assertThat(fixed.getSamplingRate(), is(1d));
+    }
+
+    @Test
+    public void testGhostListAgainstLinkedHashMap() throws Exception {
+        final Random random = new Random(666);
+        final GhostList ghostList = new GhostList(50);
+        final Map<Integer, Boolean> expected = new LinkedHashMap<>(16, 0.75f, true);
+        int capacity = 50;
+        long expectedHits = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (i % 10000 == 0) {
+                capacity = 1 + random.nextInt(100);
+                ghostList.setCapacity(capacity);
+                removeEldest(expected, capacity);
+            }
+            final int hash = random.nextInt(200) * 0x10000;
+            ghostList.access(hash);
+            if (expected.put(hash, Boolean.TRUE) != null) {
+                expectedHits++;
+            }
+            removeEldest(expected, capacity);
+            assertThat(ghostList.size(), is(expected.size()));
+        }
+        assertThat(ghostList.getNumberOfHits(), is(expectedHits));
+        for (int hash = 0; hash < 200; hash++) {
+            assertThat(ghostList.contains(hash * 0x10000), is(expected.containsKey(hash * 0x10000)));
+        }
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final CapacityAdvisor advisor = new CapacityAdvisor(100, 1, CapacityAdvisor.DEFAULT_FACTORS);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() { @Override public void run() {
+                for (int key = 0; key < 100000; key++) {
+                    advisor.record(key % 50);
+                }
+            }};
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(advisor.getNumberOfSampledRequests(), isGreaterThan(0L));
+        assertThat(advisor.getNumberOfSampledRequests(), isLessThanOrEqualTo(400000L));
+        assertThat(advisor.getEstimatedHitRatios().get(1d), isGreaterThan(0.99d));
+    }
+
+    @Test
+    public void testAdviceOfCache() throws Exception {
+        final LruCache<Integer, String> cache = new LruCache<>(Integer.class, String.class);
+        assertThat(cache.getCapacityAdvice(), isNull());
+        cache.setCapacityAdvisorEnabled(true);
+        assertThat(cache.getCapacityAdvice(), isNull());
+        cache.setCapacity(10L);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 15; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, "value" + key);
+                }
+            }
+        }
+        final CapacityAdvice advice = cache.getCapacityAdvice();
+        assertThat(advice.getCapacity(), is(10L));
+        assertThat(advice.getNumberOfSampledRequests(), is(75L));
+        assertThat(advice.getEstimatedHitRatioAt(1), is(0d));
+        assertThat(advice.getEstimatedHitRatioAt(2), is(0.8d));
+        assertThat(advice.getEstimatedRetainedHeap(), isGreaterThan(10L * 64L));
+    }
+
+    @Test
+    public void testResizeKeepsTheHistory() throws Exception {
+        final LruCache<Integer, String> cache = new LruCache<>(Integer.class, String.class);
+        cache.setCapacityAdvisorEnabled(true);
+        cache.setCapacity(20L);
+        for (int round = 0; round < 2; round++) {
+            for (int key = 0; key < 15; key++) {
+                cache.get(key);
+            }
+        }
+        cache.setCapacity(10L);
+        final CapacityAdvice advice = cache.getCapacityAdvice();
+        assertThat(advice.getCapacity(), is(10L));
+        assertThat(advice.getNumberOfSampledRequests(), is(30L));
+        // The ghost list of the current capacity holds only the 10 most recent keys now, so the next cyclic round misses all keys ...
+        for (int key = 0; key < 15; key++) {
+            cache.get(key);
+        }
+        assertThat(cache.getCapacityAdvice().getEstimatedHitRatioAt(1), is(15d / 45d));
+    }
+
+    @Test
+    public void testAdviceOfConcurrentCache() throws Exception {
+        final ConcurrentLruCache<Integer, String> cache = new ConcurrentLruCache<>(Integer.class, String.class);
+        cache.setCapacity(64L);
+        cache.setCapacityAdvisorEnabled(true);
+        for (int key = 0; key < 64; key++) {
+            cache.put(key, "value" + key);
+            cache.get(key);
+            cache.get(key);
+        }
+        final CapacityAdvice advice = cache.getCapacityAdvice();
+        assertThat(advice.getCapacity(), is(64L));
+        assertThat(advice.getNumberOfSampledRequests(), is(128L));
+        assertThat(advice.getEstimatedHitRatioAt(1), is(0.5d));
+        assertThat(advice.getEstimatedRetainedHeap(), isGreaterThan(64L * 64L));
+    }
+
+    @Test
+    public void testHeapSizeEstimator() throws Exception {
+        final HeapSizeEstimator estimator = HeapSizeEstimator.INSTANCE;
+        assertThat(estimator.estimateDeepSizeOf(new byte[100]), is(120L));
+        assertThat(estimator.estimateDeepSizeOf(1L), is(24L));
+        final Object shared = new long[10];
+        assertThat(estimator.estimateDeepSizeOf(shared, shared), is(96L));
+        assertThat(estimator.estimateDeepSizeOf((Object) null), is(0L));
+    }
+
+    protected static void removeEldest(Map<Integer, Boolean> map, int capacity) {
+        final Iterator<Integer> i = map.keySet().iterator();
+        while (map.size() > capacity) {
+            i.next();
+            i.remove();
+        }
+    }
+
+}
@@ -14,12 +14,16 @@
 
 package org.echocat.jomon.cache;
 
+import org.echocat.jomon.runtime.util.Duration;
 import org.junit.Test;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.Executor;
 
 import static org.echocat.jomon.testing.Assert.assertThat;
-import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.*;
 
 public class CombinedCacheUnitTest {
 
@@ -44,6 +48,150 @@ public class CombinedCacheUnitTest {
 
     }
 
+    @Test
+    public void testGetAll() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final LruCache<String, Integer> cacheB = cacheWithCapacity(4);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        cacheB.put("foo1", 1);
+        final List<Collection<String>> requestedKeys = new ArrayList<>();
+        final Map<String, Number> values = cache.getAll(Arrays.asList("foo1", "foo2"), new BulkValueProducer<String, Number>() { @Override public Map<String, Number> produce(@Nonnull Collection<String> keys) throws Exception {
+            requestedKeys.add(new ArrayList<>(keys));
+            return Collections.<String, Number>singletonMap("foo2", 2);
+        }}, null);
+        assertThat(new ArrayList<>(values.keySet()), is(Arrays.asList("foo1", "foo2")));
+        assertThat(requestedKeys, is(Collections.<Collection<String>>singletonList(Arrays.asList("foo2"))));
+        assertThat(cacheA.get("foo1"), is(1)); // Because it was restored from cacheB
+        assertThat(cacheA.get("foo2"), is(2));
+        assertThat(cacheB.get("foo2"), is(2));
+
+        final Map<String, Number> toPut = new HashMap<>();
+        toPut.put("foo3", 3);
+        cache.putAll(toPut);
+        assertThat(cacheA.get("foo3"), is(3));
+        assertThat(cacheB.get("foo3"), is(3));
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final LruCache<String, Integer> cacheB = cacheWithCapacity(4);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        final List<Runnable> tasks = new ArrayList<>();
+        cache.setWriteBehindExecutor(new Executor() { @Override public void execute(@Nonnull Runnable command) {
+            tasks.add(command);
+        }});
+
+        cache.put("foo1", 1);
+        cache.put("foo1", 11);
+        cache.put("foo2", 2);
+        assertThat(cacheA.get("foo1"), is(11));
+        assertThat(cacheB.contains("foo1"), is(false));
+        assertThat(tasks.size(), is(2));
+
+        tasks.get(0).run();
+        assertThat(cacheB.get("foo1"), is(11));
+        assertThat(cacheB.contains("foo2"), is(false));
+
+        cache.flush();
+        assertThat(cacheB.get("foo2"), is(2));
+        tasks.get(1).run();
+        assertThat(cacheB.get("foo2"), is(2));
+    }
+
+    @Test
+    public void testPromotion() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final LruCache<String, Integer> cacheB = cacheWithCapacity(4);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        cacheB.put("foo1", 1);
+
+        cache.setPromotion(false);
+        assertThat(cache.get("foo1"), is((Number) 1));
+        assertThat(cacheA.contains("foo1"), is(false));
+
+        cache.setPromotion(true);
+        assertThat(cache.get("foo1"), is((Number) 1));
+        assertThat(cacheA.contains("foo1"), is(true));
+    }
+
+    @Test
+    public void testDemotion() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final LruCache<String, Integer> cacheB = cacheWithCapacity(4);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        cache.setDemotion(true);
+
+        cache.put("foo1", 1);
+        cache.put("foo2", 2);
+        assertThat(cacheB.size(), is(0L));
+
+        cache.put("foo3", 3);
+        assertThat(cacheA.contains("foo1"), is(false));
+        assertThat(cacheB.get("foo1"), is(1));
+        assertThat(cache.get("foo1"), is((Number) 1));
+        assertThat(cacheA.contains("foo1"), is(true));
+        assertThat(cacheB.get("foo2"), is(2));
+    }
+
+    @Test
+    public void testDemotionKeepsTheRemainingLifetime() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(1);
+        final RecordingCache cacheB = new RecordingCache(cacheA);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        cache.setDemotion(true);
+
+        cache.put("foo1", 1, new Duration("1h"));
+        cache.put("foo2", 2);
+        cache.put("foo3", 3);
+        assertThat(cacheB.get("foo1"), is(1));
+        assertThat(cacheB.get("foo2"), is(2));
+        assertThat(cacheB.getExpireAfters().get(0), isLessThanOrEqualTo(new Duration("1h")));
+        assertThat(cacheB.getExpireAfters().get(0), isGreaterThan(new Duration("59m")));
+        assertThat(cacheB.getExpireAfters().get(1), isNull());
+        assertThat(cacheB.getPutsWhileFirstTierIsLocked(), is(0));
+    }
+
+    @Test
+    public void testRemoveWhileWriteBehindIsExecuted() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final RecordingCache cacheB = new RecordingCache(cacheA);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        final List<Runnable> tasks = new ArrayList<>();
+        cache.setWriteBehindExecutor(new Executor() { @Override public void execute(@Nonnull Runnable command) {
+            tasks.add(command);
+        }});
+
+        cache.put("foo1", 1);
+        cacheB.setBeforePut(new Runnable() { @Override public void run() {
+            cacheB.setBeforePut(null);
+            cache.remove("foo1");
+        }});
+        tasks.get(0).run();
+        assertThat(cacheB.contains("foo1"), is(false));
+        assertThat(cache.contains("foo1"), is(false));
+    }
+
+    @Test
+    public void testTierStatistics() throws Exception {
+        final LruCache<String, Integer> cacheA = cacheWithCapacity(2);
+        final LruCache<String, Integer> cacheB = cacheWithCapacity(4);
+        final CombinedCache<String, Number> cache = new CombinedCache<>(String.class, Number.class, cacheA, cacheB);
+        cache.setTierStatisticsEnabled(true);
+        cacheB.put("foo1", 1);
+
+        cache.get("foo1");
+        cache.get("foo1");
+        cache.get("foo2");
+
+        final List<CombinedCache.TierStatistics> statistics = cache.getTierStatistics();
+        assertThat(statistics.get(0).getNumberOfRequests(), is(3L));
+        assertThat(statistics.get(0).getHitRatio(), is(1d / 3d));
+        assertThat(statistics.get(1).getNumberOfRequests(), is(2L));
+        assertThat(statistics.get(1).getHitRatio(), is(0.5d));
+        assertThat(statistics.get(1).getAverageLatencyInNanos() != null, is(true));
+    }
+
     private void assertThatFirstValuesArePresent(@Nonnull LruCache<String, Integer> cacheA, @Nonnull LruCache<String, Integer> cacheB, @Nonnull CombinedCache<String, Number> cache) {
         assertThat((Integer) cache.get("foo1"), is(1));
         assertThat(cache.contains("foo1"), is(true));
@@ -116,4 +264,43 @@ public class CombinedCacheUnitTest {
         a.setCapacity(capacity);
         return a;
     }
+
+    protected static class RecordingCache extends LruCache<String, Integer> {
+
+        private final LruCache<String, Integer> _firstTier;
+        private final List<Duration> _expireAfters = new ArrayList<>();
+        private int _putsWhileFirstTierIsLocked;
+        private Runnable _beforePut;
+
+        public RecordingCache(@Nonnull LruCache<String, Integer> firstTier) {
+            super(String.class, Integer.class);
+            _firstTier = firstTier;
+        }
+
+        @Override
+        public void put(@Nullable String key, @Nullable Integer value, @Nullable Duration expireAfter) {
+            final Runnable beforePut = _beforePut;
+            if (beforePut != null) {
+                beforePut.run();
+            }
+            _expireAfters.add(expireAfter);
+            if (Thread.holdsLock(_firstTier._lock)) {
+                _putsWhileFirstTierIsLocked++;
+            }
+            super.put(key, value, expireAfter);
+        }
+
+        public void setBeforePut(@Nullable Runnable beforePut) {
+            _beforePut = beforePut;
+        }
+
+        @Nonnull
+        public List<Duration> getExpireAfters() {
+            return _expireAfters;
+        }
+
+        public int getPutsWhileFirstTierIsLocked() {
+            return _putsWhileFirstTierIsLocked;
+        }
+    }
 }
@@ -0,0 +1,37 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnull;
+
+public class ConcurrentLruCacheStressTest extends CacheStressTestSupport<ConcurrentLruCache<Integer, String>> {
+
+    @Override
+    protected ConcurrentLruCache<Integer, String> getInstance() {
+        return new ConcurrentLruCache<>(Integer.class, String.class);
+    }
+
+    /**
+     * The capacity is enforced per segment and the keys are not spread perfectly even, so we need some headroom to prevent evictions.
+     */
+    @Nonnull
+    @Override
+    protected ConcurrentLruCache<Integer, String> getInstance(Duration maxLifeTime, long maxEntries) {
+        return super.getInstance(maxLifeTime, maxEntries * 2);
+    }
+}
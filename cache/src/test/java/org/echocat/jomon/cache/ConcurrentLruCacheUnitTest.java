@@ -0,0 +1,318 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isNotNull;
+import static org.echocat.jomon.testing.BaseMatchers.isSameAs;
+
+public class ConcurrentLruCacheUnitTest extends CacheUnitTestSupport<ConcurrentLruCache<Object, Object>> {
+
+    @Override
+    protected ConcurrentLruCache<Object, Object> getInstance() {
+        return new ConcurrentLruCache<>(Object.class, Object.class, 4);
+    }
+
+    @Test
+    public void testNumberOfSegmentsFollowsCapacity() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance();
+        assertThat(cache.getNumberOfSegments(), is(4));
+        cache.setCapacity(3L);
+        assertThat(cache.getNumberOfSegments(), is(2));
+        cache.setCapacity(1L);
+        assertThat(cache.getNumberOfSegments(), is(1));
+        cache.setCapacity(100L);
+        assertThat(cache.getNumberOfSegments(), is(4));
+        cache.setCapacity(null);
+        assertThat(cache.getNumberOfSegments(), is(4));
+    }
+
+    @Test
+    public void testChangingTheNumberOfSegmentsKeepsTheEntries() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance(100000, 100);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        cache.setCapacity(2L);
+        assertThat(cache.getNumberOfSegments(), is(2));
+        assertThat(cache.size(), is(2L));
+        cache.setCapacity(100L);
+        assertThat(cache.getNumberOfSegments(), is(4));
+        assertThat(cache.size(), is(2L));
+        for (InMemoryBasedCacheSupport<Object, Object> segment : cache._segments) {
+            for (Object key : segment.getEntries().keySet()) {
+                assertThat(cache.segmentFor(key), isSameAs(segment));
+                assertThat(cache.get(key), is(key));
+            }
+        }
+    }
+
+    @Test
+    public void testChangingTheNumberOfSegmentsKeepsTheStatistics() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance(100000, 100);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            cache.get(i);
+        }
+        cache.setCapacity(2L);
+        assertThat(cache.getNumberOfSegments(), is(2));
+        assertThat(cache.getNumberOfRequests(), is(20L));
+        assertThat(cache.getNumberOfHits(), is(10L));
+        assertThat(cache.getNumberOfDrops(), is(8L));
+    }
+
+    @Test
+    public void testWritesWhileChangingTheNumberOfSegmentsAreNotLost() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = new ConcurrentLruCache<>(Object.class, Object.class, 512);
+        cache.setCapacity(512L);
+        // Every key gets its own segment, so nothing is evicted.
+        final List<Object> keys = new ArrayList<>();
+        final Set<Integer> usedSegments = new HashSet<>();
+        for (int candidate = 0; keys.size() < 10; candidate++) {
+            if (usedSegments.add(cache.indexFor(candidate, 256))) {
+                keys.add(candidate);
+            }
+        }
+        final AtomicBoolean resizing = new AtomicBoolean(true);
+        final AtomicInteger lostWrites = new AtomicInteger();
+        final Thread writer = new Thread() { @Override public void run() {
+            for (int round = 0; resizing.get(); round++) {
+                for (Object key : keys) {
+                    cache.put(key, round);
+                    if (!((Object) round).equals(cache.get(key))) {
+                        lostWrites.incrementAndGet();
+                    }
+                }
+            }
+        }};
+        writer.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                cache.setCapacity(256L);
+                cache.setCapacity(512L);
+            }
+        } finally {
+            resizing.set(false);
+        }
+        writer.join();
+        assertThat(lostWrites.get(), is(0));
+        assertThat(cache.size(), is(10L));
+    }
+
+    @Test
+    public void testCapacityIsDistributedExactly() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance(1000, 10);
+        long capacityOfSegments = 0;
+        for (InMemoryBasedCacheSupport<Object, Object> segment : cache._segments) {
+            capacityOfSegments += segment.getCapacity();
+        }
+        assertThat(capacityOfSegments, is(10L));
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, i);
+        }
+        assertThat(cache.size(), is(10L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsRemovedInSegment() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance(1000, 1);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertThat(cache.contains("a"), is(false));
+        assertThat(cache.get("b"), is((Object) 2));
+
+        cache.setCapacity(2L);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        final InMemoryBasedCacheSupport<Object, Object> segment = cache.segmentFor("a");
+        final Object other = findOtherKeyOf(cache, segment, "a");
+        cache.put(other, 3);
+        if (cache.segmentFor("b") == segment) {
+            assertThat(cache.contains("a"), is(false));
+        } else {
+            assertThat(cache.contains("a"), is(true));
+        }
+        assertThat(cache.get(other), is((Object) 3));
+    }
+
+    @Test
+    public void testStatisticsAreSummedUp() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance(1000, 100);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 20; i++) {
+            cache.get(i);
+        }
+        assertThat(cache.getNumberOfRequests(), is(20L));
+        assertThat(cache.getNumberOfHits(), is(10L));
+        cache.resetStatistics();
+        assertThat(cache.getNumberOfRequests(), is(0L));
+        assertThat(cache.getNumberOfHits(), is(0L));
+    }
+
+    private static Object findOtherKeyOf(ConcurrentLruCache<Object, Object> cache, InMemoryBasedCacheSupport<Object, Object> segment, Object notThisKey) {
+        Object result = null;
+        for (int i = 0; result == null; i++) {
+            final String candidate = "other" + i;
+            if (!candidate.equals(notThisKey) && cache.segmentFor(candidate) == segment) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testGetAllProducesAllMissingValuesAtOnce() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance();
+        for (int i = 0; i < 5; i++) {
+            cache.put(i, "cached" + i);
+        }
+        final List<Collection<Object>> requestedKeys = new ArrayList<>();
+        final BulkValueProducer<Object, Object> producer = new BulkValueProducer<Object, Object>() { @Override public Map<Object, Object> produce(@Nonnull Collection<Object> keys) throws Exception {
+            requestedKeys.add(new ArrayList<>(keys));
+            final Map<Object, Object> result = new HashMap<>();
+            for (Object key : keys) {
+                result.put(key, "produced" + key);
+            }
+            return result;
+        }};
+        final List<Object> keys = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            keys.add(i);
+        }
+        final Map<Object, Object> values = cache.getAll(keys, producer, null);
+        assertThat(new ArrayList<>(values.keySet()), is(keys));
+        assertThat(values.get(9), is((Object) "produced9"));
+        assertThat(values.get(4), is((Object) "cached4"));
+        assertThat(requestedKeys.size(), is(1));
+        assertThat(new HashSet<>(requestedKeys.get(0)), is((Set<Object>) new HashSet<Object>(Arrays.<Object>asList(5, 6, 7, 8, 9))));
+
+        assertThat(cache.getAll(keys, producer, null), is(values));
+        assertThat(requestedKeys.size(), is(1));
+        assertThat(cache.getNumberOfRequests(), is(20L));
+        assertThat(cache.getNumberOfHits(), is(15L));
+    }
+
+    @Test
+    public void testGetAllAndGetProduceTheSameKeyOnlyOnce() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance();
+        final CountDownLatch productionStarted = new CountDownLatch(1);
+        final CountDownLatch productionMayFinish = new CountDownLatch(1);
+        final BulkValueProducer<Object, Object> producer = new BulkValueProducer<Object, Object>() { @Override public Map<Object, Object> produce(@Nonnull Collection<Object> keys) throws Exception {
+            productionStarted.countDown();
+            productionMayFinish.await();
+            final Map<Object, Object> result = new HashMap<>();
+            for (Object key : keys) {
+                result.put(key, "bulk" + key);
+            }
+            return result;
+        }};
+        final AtomicReference<Map<Object, Object>> bulkResult = new AtomicReference<>();
+        final Thread bulk = new Thread() { @Override public void run() {
+            bulkResult.set(cache.getAll(Arrays.<Object>asList(1, 2, 3), producer, null));
+        }};
+        bulk.start();
+        productionStarted.await();
+        final AtomicInteger singleProductions = new AtomicInteger();
+        final AtomicReference<Object> singleResult = new AtomicReference<>();
+        final Thread single = new Thread() { @Override public void run() {
+            singleResult.set(cache.get(2, new ValueProducer<Object, Object>() { @Override public Object produce(Object key) throws Exception {
+                singleProductions.incrementAndGet();
+                return "single" + key;
+            }}));
+        }};
+        single.start();
+        productionMayFinish.countDown();
+        bulk.join();
+        single.join();
+        assertThat(singleResult.get(), is((Object) "bulk2"));
+        assertThat(singleProductions.get(), is(0));
+        assertThat(bulkResult.get().size(), is(3));
+    }
+
+    @Test
+    public void testGetOfPublishedEntryWaitsForAllSegmentsOfGetAll() throws Exception {
+        final AtomicReference<ConcurrentLruCache<Object, Object>> cacheReference = new AtomicReference<>();
+        final AtomicReference<Object> singleResult = new AtomicReference<>();
+        final AtomicReference<Thread> single = new AtomicReference<>();
+        final ConcurrentLruCache<Object, Object> cache = new ConcurrentLruCache<Object, Object>(Object.class, Object.class, 4) { @Nonnull @Override protected InMemoryBasedCacheSupport<Object, Object> newSegment() {
+            return new LruCache<Object, Object>(Object.class, Object.class) { @Nonnull @Override Map<Object, CacheEntry<Object, Object>> lookupAll(@Nonnull Iterable<Object> keys, @Nullable BulkProduction<Object, Object> production, @Nullable Long expireAfter) {
+                final Map<Object, CacheEntry<Object, Object>> result = super.lookupAll(keys, production, expireAfter);
+                if (production != null && single.get() == null) {
+                    // Request a just published entry while the following segments are not looked up yet.
+                    final Object key = result.keySet().iterator().next();
+                    final Thread thread = new Thread() { @Override public void run() {
+                        singleResult.set(cacheReference.get().get(key));
+                    }};
+                    single.set(thread);
+                    thread.start();
+                    try {
+                        thread.join(100);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return result;
+            }};
+        }};
+        cacheReference.set(cache);
+        final BulkValueProducer<Object, Object> producer = new BulkValueProducer<Object, Object>() { @Override public Map<Object, Object> produce(@Nonnull Collection<Object> keys) throws Exception {
+            final Map<Object, Object> result = new HashMap<>();
+            for (Object key : keys) {
+                result.put(key, "bulk" + key);
+            }
+            return result;
+        }};
+        final List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keys.add(i);
+        }
+        final Map<Object, Object> values = cache.getAll(keys, producer, null);
+        single.get().join();
+        assertThat(values.size(), is(20));
+        assertThat(singleResult.get(), isNotNull());
+        assertThat(values.values().contains(singleResult.get()), is(true));
+    }
+
+    @Test
+    public void testPutAll() throws Exception {
+        final ConcurrentLruCache<Object, Object> cache = getInstance();
+        final Map<Object, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            values.put(i, "value" + i);
+        }
+        cache.putAll(values);
+        assertThat(cache.size(), is(20L));
+        assertThat(cache.getAll(values.keySet()), is(values));
+        assertThat(cache.getAll(Arrays.<Object>asList(100, 1)), is((Map<Object, Object>) Collections.<Object, Object>singletonMap(1, "value1")));
+    }
+
+}
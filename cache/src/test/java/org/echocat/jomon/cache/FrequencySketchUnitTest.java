@@ -0,0 +1,70 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.junit.Test;
+
+import static org.echocat.jomon.cache.FrequencySketch.MAXIMUM_FREQUENCY;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThanOrEqualTo;
+
+public class FrequencySketchUnitTest {
+
+    @Test
+    public void testIncrement() throws Exception {
+        final FrequencySketch sketch = new FrequencySketch(1000);
+        assertThat(sketch.frequency("a"), is(0));
+        sketch.increment("a");
+        sketch.increment("a");
+        sketch.increment("b");
+        assertThat(sketch.frequency("a"), is(2));
+        assertThat(sketch.frequency("b"), is(1));
+        assertThat(sketch.frequency(null), is(0));
+        sketch.increment(null);
+        assertThat(sketch.frequency(null), is(1));
+    }
+
+    @Test
+    public void testFrequencyIsLimited() throws Exception {
+        final FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+        assertThat(sketch.frequency("a"), is(MAXIMUM_FREQUENCY));
+    }
+
+    @Test
+    public void testCountersAreHalvedAfterSampleSize() throws Exception {
+        final FrequencySketch sketch = new FrequencySketch(10);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("a");
+        }
+        for (int i = 0; i < 92; i++) {
+            sketch.increment(i);
+        }
+        assertThat(sketch.frequency("a"), isLessThanOrEqualTo(5));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final FrequencySketch sketch = new FrequencySketch(10);
+        sketch.increment("a");
+        sketch.clear();
+        assertThat(sketch.frequency("a"), is(0));
+    }
+
+}
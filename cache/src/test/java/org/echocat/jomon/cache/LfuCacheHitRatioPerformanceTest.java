@@ -0,0 +1,79 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.isGreaterThan;
+
+public class LfuCacheHitRatioPerformanceTest {
+
+    private static final int NUMBER_OF_ITEMS = 100000;
+    private static final int NUMBER_OF_REQUESTS = 1000000;
+
+    @Test
+    public void testHitRatioOnZipfianTrace() throws Exception {
+        final double bucketBased = hitRatioOf(new LfuCache<Long, Long>(Long.class, Long.class), 1000, true);
+        final double swapping = hitRatioOf(new SwappingLfuCache<Long, Long>(Long.class, Long.class), 1000, true);
+        assertThat(bucketBased, isGreaterThan(swapping));
+    }
+
+    @Test
+    public void testHitRatioOnShiftingZipfianTrace() throws Exception {
+        final LfuCache<Long, Long> aging = new LfuCache<>(Long.class, Long.class);
+        aging.setAgingInterval(10000L);
+        final double withAging = hitRatioOfShiftingTrace(aging, 1000);
+        final double withoutAging = hitRatioOfShiftingTrace(new LfuCache<Long, Long>(Long.class, Long.class), 1000);
+        assertThat(withAging, isGreaterThan(withoutAging));
+    }
+
+    protected double hitRatioOf(@Nonnull InMemoryBasedCacheSupport<Long, Long> cache, @Nonnegative long capacity, boolean scrambled) {
+        cache.setCapacity(capacity);
+        final ZipfianGenerator generator = new ZipfianGenerator(NUMBER_OF_ITEMS, scrambled, new Random(666));
+        for (int i = 0; i < NUMBER_OF_REQUESTS; i++) {
+            request(cache, generator.next());
+        }
+        return (double) cache.getNumberOfHits() / cache.getNumberOfRequests();
+    }
+
+    /**
+     * The popularity of the items changes completely after half of the requests.
+     */
+    protected double hitRatioOfShiftingTrace(@Nonnull InMemoryBasedCacheSupport<Long, Long> cache, @Nonnegative long capacity) {
+        cache.setCapacity(capacity);
+        final ZipfianGenerator generator = new ZipfianGenerator(NUMBER_OF_ITEMS, true, new Random(666));
+        for (int i = 0; i < NUMBER_OF_REQUESTS / 2; i++) {
+            request(cache, generator.next());
+        }
+        cache.resetStatistics();
+        for (int i = 0; i < NUMBER_OF_REQUESTS / 2; i++) {
+            request(cache, generator.next() + NUMBER_OF_ITEMS);
+        }
+        return (double) cache.getNumberOfHits() / cache.getNumberOfRequests();
+    }
+
+    protected void request(@Nonnull Cache<Long, Long> cache, long key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key);
+        }
+    }
+
+}
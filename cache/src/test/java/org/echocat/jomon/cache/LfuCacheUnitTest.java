@@ -17,8 +17,14 @@ package org.echocat.jomon.cache;
 import org.junit.Test;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isGreaterThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -192,4 +198,100 @@ public class LfuCacheUnitTest extends CacheUnitTestSupport<LfuCache<Object, Obje
         assertNull(cache.get("c"));
     }
 
+    @Test
+    public void testListIsSortedByHits() throws Exception {
+        final LfuCache<Object, Object> cache = getInstance(100000, 50);
+        final Random random = new Random(666);
+        for (int i = 0; i < 10000; i++) {
+            final int key = random.nextInt(100);
+            final int operation = random.nextInt(10);
+            if (operation == 0) {
+                cache.remove(key);
+            } else if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+            if (i % 100 == 0) {
+                assertLinkedList(cache);
+                assertSortedByHits(cache);
+            }
+        }
+        assertLinkedList(cache);
+        assertSortedByHits(cache);
+    }
+
+    @Test
+    public void testLateHotKeyClimbsUp() throws Exception {
+        final LfuCache<Object, Object> cache = getInstance(100000, 3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        for (int i = 0; i < 3; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+        cache.put("d", 4);
+        assertThat(cache.contains("c"), is(false));
+        for (int i = 0; i < 5; i++) {
+            cache.get("d");
+        }
+        assertThat(cache.getFirst().getKey(), is((Object) "d"));
+        cache.put("e", 5);
+        cache.put("f", 6);
+        assertThat(cache.contains("d"), is(true));
+        assertThat(cache.contains("a"), is(true));
+        assertThat(cache.contains("f"), is(true));
+        assertLinkedList(cache);
+        assertSortedByHits(cache);
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        final LfuCache<Object, Object> cache = getInstance(100000, 10);
+        cache.setAgingInterval(8L);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        for (int i = 0; i < 7; i++) {
+            cache.get("a");
+        }
+        assertThat(cache.getFirst().getHits(), is(7));
+        cache.get("b");
+        assertThat(cache.getFirst().getHits(), is(3));
+        assertThat(cache.getLast().getHits(), is(0));
+        assertThat(cache.getNumberOfBuckets(), is(2));
+        assertLinkedList(cache);
+        assertSortedByHits(cache);
+    }
+
+    @Test
+    public void testHitsAreCountedUpToMaximumFrequency() throws Exception {
+        final LfuCache<Object, Object> cache = getInstance(100000, 10);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        for (int i = 0; i < LfuCache.MAXIMUM_FREQUENCY + 10; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+        assertThat(cache.getFirst().getHits(), is(LfuCache.MAXIMUM_FREQUENCY));
+        assertThat(cache.getLast().getHits(), is(LfuCache.MAXIMUM_FREQUENCY));
+        assertThat(cache.getNumberOfBuckets(), is(1));
+        cache.remove("a");
+        cache.put("c", 3);
+        assertThat(cache.getNumberOfBuckets(), is(2));
+        assertLinkedList(cache);
+        assertSortedByHits(cache);
+    }
+
+    protected static void assertSortedByHits(LfuCache<?, ?> cache) throws Exception {
+        final Set<Integer> frequencies = new HashSet<>();
+        CacheEntry<?, ?> current = cache.getFirst();
+        while (current != null) {
+            if (current.getPrevious() != null) {
+                assertThat(current.getPrevious().getHits(), isGreaterThanOrEqualTo(current.getHits()));
+            }
+            frequencies.add(current.getHits());
+            current = current.getNext();
+        }
+        assertThat(cache.getNumberOfBuckets(), is(frequencies.size()));
+    }
+
 }
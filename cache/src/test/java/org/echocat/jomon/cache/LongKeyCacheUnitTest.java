@@ -0,0 +1,236 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.management.CombinedCacheCreator;
+import org.echocat.jomon.cache.management.DefaultCacheRepository;
+import org.echocat.jomon.cache.offheap.EvictionPolicy;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.echocat.jomon.cache.management.LongKeyCacheDefinition.longKeyCache;
+import static org.echocat.jomon.runtime.CollectionUtils.asSet;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class LongKeyCacheUnitTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        cache.put(1, "a");
+        cache.put(2L, "b");
+        cache.put(null, "c");
+        cache.put(3, null);
+        assertThat(cache.size(), is(4L));
+        assertThat(cache.get(1), is("a"));
+        assertThat(cache.get(Long.valueOf(2)), is("b"));
+        assertThat(cache.get(null), is("c"));
+        assertThat(cache.get(3), is((String) null));
+        assertThat(cache.contains(3), is(true));
+        assertThat(cache.contains(4), is(false));
+        assertThat(cache.contains(null), is(true));
+        assertThat(cache.remove(1).get(), is("a"));
+        assertThat(cache.remove(1), is((Object) null));
+        assertThat(cache.remove(null).get(), is("c"));
+        assertThat(cache.get(null), is((String) null));
+        cache.put(2, "d");
+        assertThat(cache.get(2), is("d"));
+        assertThat(cache.size(), is(2L));
+        assertThat(cache.getNumberOfRequests(), is(6L));
+        assertThat(cache.getNumberOfHits(), is(5L));
+        cache.clear();
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.get(2), is((String) null));
+    }
+
+    @Test
+    public void testLru() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class, EvictionPolicy.lru);
+        cache.setCapacity(3L);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.get(1);
+        cache.put(4, "4");
+        assertThat(keysOf(cache), is(asSet(1L, 3L, 4L)));
+        assertThat(cache.getEvictedWeight(), is(1L));
+        cache.setCapacity(1L);
+        assertThat(keysOf(cache), is(asSet(4L)));
+    }
+
+    @Test
+    public void testLfu() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class, EvictionPolicy.lfu);
+        cache.setCapacity(3L);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.put(4, "4");
+        assertThat(keysOf(cache), is(asSet(1L, 2L, 4L)));
+        cache.get(4);
+        cache.get(4);
+        cache.put(5, "5");
+        assertThat(keysOf(cache), is(asSet(1L, 4L, 5L)));
+    }
+
+    @Test
+    public void testLfuWithSaturatedFrequencies() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class, EvictionPolicy.lfu);
+        cache.setCapacity(2L);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        for (int i = 0; i < LongKeyCache.MAXIMUM_FREQUENCY * 2; i++) {
+            cache.get(1);
+            cache.get(2);
+        }
+        cache.put(3, "3");
+        assertThat(cache.size(), is(2L));
+        assertThat(cache.contains(3), is(true));
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class, EvictionPolicy.fifo);
+        cache.setCapacity(2L);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.get(1);
+        cache.put(3, "3");
+        assertThat(keysOf(cache), is(asSet(2L, 3L)));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        cache.put(1, "1", new Duration(50));
+        cache.put(2, "2");
+        Thread.sleep(100);
+        assertThat(cache.get(1), is((String) null));
+        assertThat(cache.get(2), is("2"));
+        assertThat(cache.getNumberOfExpirations(), is(1L));
+    }
+
+    @Test
+    public void testExpiredElementsAreSwept() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "value" + i, new Duration(30));
+        }
+        Thread.sleep(50);
+        for (int i = 100; i < 200; i++) {
+            cache.put(i, "value" + i);
+        }
+        assertThat(cache.getNumberOfExpirations(), is(100L));
+        assertThat(cache.size(), is(100L));
+    }
+
+    @Test
+    public void testSizeDoesNotCountExpiredElements() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        cache.put(1, "1", new Duration(30));
+        cache.put(2, "2", new Duration("1h"));
+        cache.put(3, "3");
+        Thread.sleep(50);
+        assertThat(cache.size(), is(2L));
+        assertThat(keysOf(cache), is(asSet(2L, 3L)));
+        assertThat(cache.getNumberOfExpirations(), is(1L));
+    }
+
+    @Test
+    public void testProducer() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        final ValueProducer<Long, String> producer = new ValueProducer<Long, String>() { @Override public String produce(Long key) throws Exception {
+            return "value" + key;
+        }};
+        assertThat(cache.get(1, producer), is("value1"));
+        assertThat(cache.get(1), is("value1"));
+        assertThat(cache.get(Long.valueOf(2), producer), is("value2"));
+        assertThat(cache.get(2), is("value2"));
+        assertThat(cache.getNumberOfHits(), is(2L));
+    }
+
+    @Test
+    public void testPrimitiveAccessIsSeenByListeners() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        final List<Object> putKeys = new ArrayList<>();
+        cache.setListeners(Collections.<CacheListener>singletonList(new PutCacheListener() {
+            @Override
+            public boolean beforePut(Cache<?, ?> cache, Object key, Value<?> value, Duration expireAfter) {
+                return true;
+            }
+
+            @Override
+            public void afterPut(Cache<?, ?> cache, Object key, Value<?> value, Duration expireAfter) {
+                putKeys.add(key);
+            }
+        }));
+        cache.put(1, "1");
+        cache.put(null, "2");
+        assertThat(putKeys, is(Arrays.<Object>asList(1L, null)));
+    }
+
+    @Test
+    public void testRandomOperationsAgainstMap() throws Exception {
+        final LongKeyCache<String> cache = new LongKeyCache<>(String.class);
+        final Map<Long, String> reference = new HashMap<>();
+        final Random random = new Random(666);
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(5000) * 4096L;
+            final int operation = random.nextInt(3);
+            if (operation == 0) {
+                cache.remove(key);
+                reference.remove(key);
+            } else if (operation == 1) {
+                cache.put(key, Long.toString(key));
+                reference.put(key, Long.toString(key));
+            } else {
+                assertThat(cache.get(key), is(reference.get(key)));
+            }
+        }
+        assertThat(cache.size(), is((long) reference.size()));
+        assertThat(keysOf(cache), is(reference.keySet()));
+    }
+
+    @Test
+    public void testCreateByRepository() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final Cache<Long, String> cache = repository.provide("users", longKeyCache(String.class).withCapacity(1000).withEvictionPolicy(EvictionPolicy.fifo));
+            assertThat(cache, isInstanceOf(LongKeyCache.class));
+            final LongKeyCache<String> longKeyCache = (LongKeyCache<String>) cache;
+            assertThat(longKeyCache.getEvictionPolicy(), is(EvictionPolicy.fifo));
+            assertThat(longKeyCache.getCapacity(), is(1000L));
+        }
+    }
+
+    protected static Set<Long> keysOf(LongKeyCache<?> cache) {
+        final Set<Long> result = new HashSet<>();
+        try (final CloseableIterator<Long> i = cache.iterator()) {
+            while (i.hasNext()) {
+                result.add(i.next());
+            }
+        }
+        return result;
+    }
+
+}
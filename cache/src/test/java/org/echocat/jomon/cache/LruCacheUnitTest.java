@@ -14,13 +14,21 @@
 
 package org.echocat.jomon.cache;
 
+import org.echocat.jomon.cache.RefreshEnabledCache.DefaultRefreshExecutor;
+import org.echocat.jomon.cache.Weigher.ByteArrayWeigher;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
 import org.junit.Test;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 import static org.echocat.jomon.runtime.CollectionUtils.asSet;
 import static org.echocat.jomon.testing.BaseMatchers.is;
 import static org.junit.Assert.*;
@@ -234,4 +242,302 @@ public class LruCacheUnitTest extends CacheUnitTestSupport<LruCache<Object, Obje
         assertThat(handled, is(asSet(1, 2, 3, 4, 5)));
     }
 
+    @Test
+    public void testExpirations() throws Exception {
+        final LruCache<Object, Object> cache = getInstance(100000, 10);
+        cache.put("a", "1", new Duration(50));
+        cache.put("b", "2", new Duration(50));
+        cache.put("c", "3");
+        Thread.sleep(1200);
+        cache.put("d", "4");
+        assertEquals(2, (long) cache.size());
+        assertEquals(2, (long) cache.getNumberOfExpirations());
+        assertEquals(2, (long) cache.getNumberOfDrops());
+        cache.put("e", "5", new Duration(50));
+        Thread.sleep(100);
+        assertNull(cache.get("e"));
+        assertEquals(3, (long) cache.getNumberOfExpirations());
+        cache.remove("c");
+        assertEquals(3, (long) cache.getNumberOfExpirations());
+        assertEquals(4, (long) cache.getNumberOfDrops());
+        cache.resetStatistics();
+        assertEquals(0, (long) cache.getNumberOfExpirations());
+    }
+
+    @Test
+    public void testReplacedValueKeepsItsLifetime() throws Exception {
+        final LruCache<Object, Object> cache = getInstance(100000, 10);
+        cache.put("a", "1");
+        cache.put("a", "2", new Duration(50));
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testMaximumWeight() throws Exception {
+        final LruCache<String, byte[]> cache = new LruCache<>(String.class, byte[].class);
+        cache.setWeigher(ByteArrayWeigher.INSTANCE);
+        cache.setMaximumWeight(1000L);
+        cache.put("a", new byte[400]);
+        cache.put("b", new byte[400]);
+        assertEquals(800, (long) cache.getTotalWeight());
+        assertEquals(400, (long) cache.getWeightOf("a"));
+        assertNotNull(cache.get("a"));
+        // "b" is the least recently used one and has to make room for "c" ...
+        cache.put("c", new byte[300]);
+        assertEquals(2, (long) cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(700, (long) cache.getTotalWeight());
+        assertEquals(400, (long) cache.getEvictedWeight());
+        // a replaced value changes the weight ...
+        cache.put("c", new byte[600]);
+        assertEquals(1000, (long) cache.getTotalWeight());
+        // a value that is heavier than the whole cache could not be held ...
+        cache.put("d", new byte[1001]);
+        assertNull(cache.get("d"));
+        assertEquals(2, (long) cache.size());
+        assertEquals(1000, (long) cache.getTotalWeight());
+        assertEquals(400, (long) cache.getEvictedWeight());
+        cache.put("e", new byte[10]);
+        assertNull(cache.get("a"));
+        assertEquals(800, (long) cache.getEvictedWeight());
+        cache.remove("e");
+        assertEquals(600, (long) cache.getTotalWeight());
+        assertEquals(800, (long) cache.getEvictedWeight());
+        assertNull(cache.getWeightOf("e"));
+    }
+
+    @Test
+    public void testWeightOfProducedValue() throws Exception {
+        final LruCache<String, byte[]> cache = new LruCache<>(String.class, byte[].class);
+        cache.setWeigher(ByteArrayWeigher.INSTANCE);
+        cache.setMaximumWeight(1000L);
+        final ValueProducer<String, byte[]> producer = new ValueProducer<String, byte[]>() { @Override public byte[] produce(String key) throws Exception {
+            return new byte[Integer.parseInt(key)];
+        }};
+        cache.get("600", producer);
+        assertEquals(600, (long) cache.getWeightOf("600"));
+        cache.get("500", producer);
+        assertNull(cache.getWeightOf("600"));
+        assertEquals(500, (long) cache.getTotalWeight());
+        assertEquals(600, (long) cache.getEvictedWeight());
+    }
+
+    @Test
+    public void testWithoutWeigherEveryElementWeighsOne() throws Exception {
+        final LruCache<Object, Object> cache = getInstance(100000, 10);
+        cache.setMaximumWeight(5L);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(5, (long) cache.size());
+        assertEquals(5, (long) cache.getTotalWeight());
+        assertEquals(5, (long) cache.getEvictedWeight());
+    }
+
+    @Test
+    public void testShrinkingEvictsTheLeastRecentlyUsed() throws Exception {
+        final LruCache<Object, Object> cache = getInstance(100000, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        cache.get(0);
+        cache.setCapacity(5L);
+        assertEquals(5, (long) cache.size());
+        assertEquals(5, (long) cache.getTotalWeight());
+        assertEquals(5, (long) cache.getEvictedWeight());
+        assertLinkedList(cache);
+        assertEquals(asSet((Object) 0, 6, 7, 8, 9), new HashSet<>(cache.getEntries().keySet()));
+        // the evicted entries must not be evicted a second time ...
+        cache.setMaximumWeight(2L);
+        assertEquals(2, (long) cache.size());
+        assertEquals(2, (long) cache.getTotalWeight());
+        assertEquals(asSet((Object) 0, 9), new HashSet<>(cache.getEntries().keySet()));
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setMaximumLifetime(new Duration(100000));
+        cache.setRefreshAfter(new Duration(50));
+        cache.setRefreshExecutor(sameThreadExecutor());
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            return key + numberOfProduces.incrementAndGet();
+        }};
+        assertEquals("a1", cache.get("a", producer));
+        assertEquals("a1", cache.get("a", producer));
+        Thread.sleep(100);
+        // The stale value is delivered while the refresh takes place ...
+        assertEquals("a1", cache.get("a", producer));
+        assertEquals("a2", cache.get("a", producer));
+        assertEquals("a2", cache.get("a"));
+        assertEquals(2, numberOfProduces.get());
+        assertEquals(1, (long) cache.getNumberOfRefreshes());
+        assertEquals(0, (long) cache.getNumberOfFailedRefreshes());
+        // ... without a producer there is no refresh ...
+        Thread.sleep(100);
+        assertEquals("a2", cache.get("a"));
+        assertEquals(2, numberOfProduces.get());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsStaleValue() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setMaximumLifetime(new Duration(100000));
+        cache.setRefreshAfter(new Duration(50));
+        cache.setRefreshExecutor(sameThreadExecutor());
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            if (numberOfProduces.incrementAndGet() > 1) {
+                throw new IllegalStateException("Backend not available.");
+            }
+            return key;
+        }};
+        assertEquals("a", cache.get("a", producer));
+        Thread.sleep(100);
+        assertEquals("a", cache.get("a", producer));
+        assertEquals("a", cache.get("a", producer));
+        assertEquals(0, (long) cache.getNumberOfRefreshes());
+        assertEquals(2, (long) cache.getNumberOfFailedRefreshes());
+        cache.resetStatistics();
+        assertEquals(0, (long) cache.getNumberOfFailedRefreshes());
+        assertEquals(0, cache.getRefreshDuration().toMilliSeconds());
+    }
+
+    @Test
+    public void testRejectedRefreshKeepsStaleValue() throws Exception {
+        final DefaultRefreshExecutor executor = new DefaultRefreshExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocker = new Runnable() { @Override public void run() {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+        }};
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setMaximumLifetime(new Duration(100000));
+        cache.setRefreshAfter(new Duration(50));
+        cache.setRefreshExecutor(executor);
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            return key + numberOfProduces.incrementAndGet();
+        }};
+        assertEquals("a1", cache.get("a", producer));
+        Thread.sleep(100);
+        // The only thread is busy and the queue is full, so the refresh is dropped ...
+        executor.execute(blocker);
+        executor.execute(blocker);
+        try {
+            assertEquals("a1", cache.get("a", producer));
+            assertEquals(1, numberOfProduces.get());
+        } finally {
+            release.countDown();
+        }
+        // ... and tried again by the next request.
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (!"a2".equals(cache.get("a", producer)) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals("a2", cache.get("a"));
+    }
+
+    @Test
+    public void testWaitingForProductionFallsBackToExpiredValue() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setMaximumLifetime(new Duration(500));
+        cache.setMaximumWaitForProduction(new Duration(50));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            if (numberOfProduces.incrementAndGet() > 1) {
+                release.await();
+            }
+            return key + numberOfProduces.get();
+        }};
+        assertEquals("a1", cache.get("a", producer));
+        Thread.sleep(600);
+        final Thread producing = new Thread() { @Override public void run() {
+            cache.get("a", producer);
+        }};
+        producing.start();
+        while (numberOfProduces.get() < 2) {
+            Thread.sleep(1);
+        }
+        assertEquals("a1", cache.get("a", producer));
+        release.countDown();
+        producing.join();
+        assertEquals("a2", cache.get("a", producer));
+        assertEquals(2, numberOfProduces.get());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setCapacity(3L);
+        cache.setNegativeMaximumLifetime(new Duration(100));
+        cache.setNegativeCapacity(2L);
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            numberOfProduces.incrementAndGet();
+            return key.startsWith("missing") ? null : key;
+        }};
+        cache.put("a", "a");
+        cache.put("b", "b");
+        assertNull(cache.get("missing1", producer));
+        assertNull(cache.get("missing1", producer));
+        assertNull(cache.get("missing2", producer));
+        assertEquals(2, numberOfProduces.get());
+        assertEquals(1, (long) cache.getNumberOfNegativeHits());
+        assertEquals(0, (long) cache.getNumberOfHits());
+        // ... tombstones are held apart from the values ...
+        assertEquals(2, (long) cache.size());
+        assertEquals(2, (long) cache.getNegativeSize());
+        assertTrue(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+        // ... and limited by their own capacity ...
+        assertNull(cache.get("missing3", producer));
+        assertNull(cache.get("missing1", producer));
+        assertEquals(4, numberOfProduces.get());
+        assertEquals(2, (long) cache.getNegativeSize());
+        assertTrue(cache.contains("a"));
+        // ... a remove or put clears the tombstone ...
+        cache.remove("missing3");
+        assertNull(cache.get("missing3", producer));
+        assertEquals(5, numberOfProduces.get());
+        cache.put("missing1", "found");
+        assertEquals("found", cache.get("missing1", producer));
+        assertEquals(5, numberOfProduces.get());
+        assertEquals(1, (long) cache.getNegativeSize());
+        // ... and they expire ...
+        Thread.sleep(150);
+        assertNull(cache.get("missing3", producer));
+        assertEquals(6, numberOfProduces.get());
+    }
+
+    @Test
+    public void testNegativeCachingIsDisabledByDefault() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            numberOfProduces.incrementAndGet();
+            return null;
+        }};
+        assertNull(cache.getAll(asSet("a"), new BulkValueProducer<String, String>() { @Override public Map<String, String> produce(Collection<String> keys) throws Exception {
+            numberOfProduces.incrementAndGet();
+            return new HashMap<>();
+        }}, null).get("a"));
+        assertNull(cache.get("b", producer));
+        assertEquals(0, (long) cache.getNegativeSize());
+        cache.setNegativeMaximumLifetime(new Duration(100000));
+        cache.clear();
+        assertNull(cache.getAll(asSet("a"), new BulkValueProducer<String, String>() { @Override public Map<String, String> produce(Collection<String> keys) throws Exception {
+            numberOfProduces.incrementAndGet();
+            return new HashMap<>();
+        }}, null).get("a"));
+        assertEquals(1, (long) cache.getNegativeSize());
+        assertNull(cache.get("a", producer));
+        assertEquals(3, numberOfProduces.get());
+        assertEquals(1, (long) cache.getNumberOfNegativeHits());
+    }
+
 }
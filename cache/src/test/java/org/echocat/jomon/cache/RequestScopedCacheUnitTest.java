@@ -0,0 +1,143 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.echocat.jomon.runtime.util.Duration.sleep;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class RequestScopedCacheUnitTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final RequestScopedCache<Integer, String> cache = new RequestScopedCache<>(Integer.class, String.class);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value" + i);
+        }
+        cache.put(null, "null");
+        assertThat(cache.size(), is(1001));
+        for (int i = 0; i < 1000; i += 2) {
+            assertThat(cache.remove(i).get(), is("value" + i));
+        }
+        assertThat(cache.remove(0), isNull());
+        assertThat(cache.size(), is(501));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cache.get(i), is(i % 2 == 0 ? null : "value" + i));
+            assertThat(cache.contains(i), is(i % 2 != 0));
+        }
+        assertThat(cache.get(null), is("null"));
+        cache.put(1, "other");
+        assertThat(cache.get(1), is("other"));
+        assertThat(cache.size(), is(501));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final RequestScopedCache<String, String> cache = new RequestScopedCache<>(String.class, String.class);
+        cache.put("a", "1", new Duration("30ms"));
+        cache.put("b", "2");
+        assertThat(cache.get("a"), is("1"));
+        sleep("40ms");
+        assertThat(cache.get("a"), isNull());
+        assertThat(cache.contains("a"), is(false));
+        assertThat(cache.get("b"), is("2"));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        final RequestScopedCache<Integer, String> cache = new RequestScopedCache<>(Integer.class, String.class);
+        cache.setCapacity(10L);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "value" + i);
+            assertThat(cache.get(i), is("value" + i));
+            assertThat(cache.size(), isLessThanOrEqualTo(10));
+        }
+        cache.put(99, "other");
+        assertThat(cache.size(), is(10));
+        cache.setCapacity(3L);
+        assertThat(cache.size(), is(3));
+        cache.setCapacity(0L);
+        cache.put(1, "value1");
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testMaximumLifetime() throws Exception {
+        final RequestScopedCache<String, String> cache = new RequestScopedCache<>(String.class, String.class);
+        cache.setMaximumLifetime(new Duration("30ms"));
+        cache.put("a", "1");
+        cache.put("b", "2", new Duration("1h"));
+        sleep("40ms");
+        assertThat(cache.get("a"), isNull());
+        assertThat(cache.get("b"), is("2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetChecksTheKey() throws Exception {
+        // noinspection unchecked
+        final RequestScopedCache<Object, String> cache = (RequestScopedCache<Object, String>) (RequestScopedCache<?, ?>) new RequestScopedCache<>(Integer.class, String.class);
+        cache.get("a");
+    }
+
+    @Test
+    public void testProducing() throws Exception {
+        final RequestScopedCache<String, String> cache = new RequestScopedCache<>(String.class, String.class);
+        final AtomicInteger numberOfProduces = new AtomicInteger();
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            numberOfProduces.incrementAndGet();
+            return key + "1";
+        }};
+        assertThat(cache.get("a", producer), is("a1"));
+        assertThat(cache.get("a", producer), is("a1"));
+        assertThat(numberOfProduces.get(), is(1));
+        final Map<String, String> values = cache.getAll(Arrays.asList("a", "b", "c"), new BulkValueProducer<String, String>() { @Override public Map<String, String> produce(Collection<String> keys) throws Exception {
+            assertThat(keys.size(), is(2));
+            final Map<String, String> result = new HashMap<>();
+            result.put("b", "b2");
+            return result;
+        }}, null);
+        assertThat(values.get("a"), is("a1"));
+        assertThat(values.get("b"), is("b2"));
+        assertThat(values.containsKey("c"), is(false));
+        assertThat(cache.contains("c"), is(true));
+    }
+
+    @Test
+    public void testClearKeepsSmallTables() throws Exception {
+        final RequestScopedCache<Integer, Integer> cache = new RequestScopedCache<>(Integer.class, Integer.class);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get(1), isNull());
+        cache.put(1, 1);
+        assertThat(cache.get(1), is(1));
+        cache.clear();
+        assertThat(cache.contains(1), is(false));
+    }
+
+}
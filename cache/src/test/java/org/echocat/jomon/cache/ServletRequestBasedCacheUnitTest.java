@@ -18,13 +18,17 @@ import org.echocat.jomon.cache.ServletRequestBasedCache.Resolver;
 import org.echocat.jomon.cache.management.LruCacheCreator;
 import org.echocat.jomon.runtime.util.Duration;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import javax.annotation.Nonnull;
 import javax.servlet.ServletRequest;
 
+import static org.echocat.jomon.cache.ServletRequestBasedCache.POOLED_CACHES_ATTRIBUTE_NAME;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
 import static org.echocat.jomon.runtime.util.Duration.sleep;
 import static org.echocat.jomon.testing.Assert.assertThat;
 import static org.echocat.jomon.testing.BaseMatchers.*;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class ServletRequestBasedCacheUnitTest {
@@ -121,6 +125,86 @@ public class ServletRequestBasedCacheUnitTest {
         verify(request, times(1)).setAttribute(cache.getRequestCacheAttributeName(), delegate2);
     }
 
+    @Test
+    public void testPooledCaches() throws Exception {
+        final ServletRequest request = servletRequest();
+        final Resolver resolver = resolver();
+        final ServletRequestBasedCache<String, Integer> cache1 = servletRequestBasedCache(resolver);
+        final ServletRequestBasedCache<String, Integer> cache2 = servletRequestBasedCache(resolver);
+        cache1.setPooled(true);
+        cache2.setPooled(true);
+        doReturn(request).when(resolver).resolve(any(ServletRequestBasedCache.class));
+
+        final Cache<String, Integer> delegate1 = cache1.findRequestBasedCache();
+        assertThat(delegate1, isInstanceOf(RequestScopedCache.class));
+        final ArgumentCaptor<Object> caches = ArgumentCaptor.forClass(Object.class);
+        verify(request, times(1)).setAttribute(eq(POOLED_CACHES_ATTRIBUTE_NAME), caches.capture());
+        doReturn(caches.getValue()).when(request).getAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+
+        cache1.put("foo", 1);
+        cache2.put("foo", 2);
+        assertThat(cache1.get("foo"), is(1));
+        assertThat(cache2.get("foo"), is(2));
+        assertThat(cache2.findRequestBasedCache(), not(isSameAs(delegate1)));
+        verify(request, times(1)).setAttribute(eq(POOLED_CACHES_ATTRIBUTE_NAME), any());
+
+        RequestScopedCachesReleaser.release(request);
+        verify(request, times(1)).removeAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+        assertThat(delegate1.contains("foo"), is(false));
+    }
+
+    @Test
+    public void testPooledCachesRespectTheLimitsOfTheDelegateDefinition() throws Exception {
+        final ServletRequest request = servletRequest();
+        final Resolver resolver = resolver();
+        final ServletRequestBasedCache<String, Integer> cache = new ServletRequestBasedCache<>(String.class, Integer.class, master(), resolver, lruCache(String.class, Integer.class).withCapacity(2).withMaximumLifetime("30ms"));
+        cache.setPooled(true);
+        doReturn(request).when(resolver).resolve(cache);
+        doReturn(RequestScopedCaches.acquire()).when(request).getAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+
+        final RequestScopedCache<String, Integer> delegate = (RequestScopedCache<String, Integer>) cache.findRequestBasedCache();
+        assertThat(delegate.getCapacity(), is(2L));
+        assertThat(delegate.getMaximumLifetime(), is(new Duration("30ms")));
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        assertThat(delegate.size(), is(2));
+        assertThat(cache.get("c"), is(3));
+        sleep("40ms");
+        assertThat(cache.get("c"), is(null));
+    }
+
+    @Test
+    public void testSlotsOfClosedCachesAreReused() throws Exception {
+        final ServletRequest request = servletRequest();
+        final Resolver resolver = resolver();
+        final RequestScopedCaches caches = RequestScopedCaches.acquire();
+        doReturn(request).when(resolver).resolve(any(ServletRequestBasedCache.class));
+        doReturn(caches).when(request).getAttribute(POOLED_CACHES_ATTRIBUTE_NAME);
+
+        final ServletRequestBasedCache<String, Integer> cache1 = servletRequestBasedCache(resolver);
+        cache1.setPooled(true);
+        cache1.put("foo", 1);
+        cache1.close();
+        try {
+            cache1.get("foo");
+            fail("Expected exception missing.");
+        } catch (IllegalStateException expected) {}
+
+        final ServletRequestBasedCache<String, Integer> cache2 = servletRequestBasedCache(resolver);
+        cache2.setPooled(true);
+        assertThat(cache2.get("foo"), is(null));
+        cache2.put("foo", 2);
+        assertThat(cache2.get("foo"), is(2));
+        cache2.close();
+
+        final ServletRequestBasedCache<String, Integer> cache3 = servletRequestBasedCache(resolver);
+        cache3.setPooled(true);
+        assertThat(cache3.get("foo"), is(null));
+        cache3.close();
+    }
+
     @Nonnull
     protected ServletRequestBasedCache<String, Integer> servletRequestBasedCache(Resolver resolver) {
         return new ServletRequestBasedCache<>(String.class, Integer.class, master(), resolver);
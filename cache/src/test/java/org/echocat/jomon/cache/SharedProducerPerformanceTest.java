@@ -0,0 +1,70 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.echocat.jomon.runtime.util.ProducingType.blocking;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThan;
+
+/**
+ * Loads distinct keys from a lot of threads through one shared producer. Before the productions were coordinated per key all these
+ * productions were serialized by the monitor of the producer.
+ */
+public class SharedProducerPerformanceTest {
+
+    private static final int NUMBER_OF_THREADS = 64;
+    private static final int KEYS_PER_THREAD = 20;
+    private static final long PRODUCTION_TIME = 5;
+
+    @Test
+    public void testDistinctKeysAreProducedInParallel() throws Exception {
+        final LruCache<Integer, Integer> cache = new LruCache<>(Integer.class, Integer.class);
+        cache.setProducingType(blocking);
+        final ValueProducer<Integer, Integer> producer = new ValueProducer<Integer, Integer>() { @Override public Integer produce(@Nullable Integer key) throws Exception {
+            Thread.sleep(PRODUCTION_TIME);
+            return key;
+        }};
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            final int firstKey = i * KEYS_PER_THREAD;
+            threads.add(new Thread() { @Override public void run() {
+                for (int key = firstKey; key < firstKey + KEYS_PER_THREAD; key++) {
+                    cache.get(key, producer);
+                }
+            }});
+        }
+        final long startTime = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final long duration = (System.nanoTime() - startTime) / 1000000;
+        final long serializedDuration = NUMBER_OF_THREADS * KEYS_PER_THREAD * PRODUCTION_TIME;
+        assertThat(cache.size(), is((long) NUMBER_OF_THREADS * KEYS_PER_THREAD));
+        assertThat(duration, isLessThan(serializedDuration / 4));
+    }
+
+}
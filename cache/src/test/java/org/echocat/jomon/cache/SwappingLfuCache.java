@@ -0,0 +1,63 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The former implementation of {@link LfuCache} which swaps an element only with its predecessor on every hit. It is only used to compare the
+ * hit ratios.
+ */
+public class SwappingLfuCache<K, V> extends InMemoryBasedCacheSupport<K, V> {
+
+    public SwappingLfuCache(@Nonnull Class<? extends K> keyType, @Nonnull Class<? extends V> valueType) {
+        super(keyType, valueType);
+    }
+
+    @Override
+    protected void updateListAfterPut(CacheEntry<K, V> newEntry) {
+        newEntry.setPrevious(_last);
+        if (_last != null) {
+            _last.setNext(newEntry);
+        }
+        setLast(newEntry);
+    }
+
+    @Override
+    protected void updateListAfterHit(CacheEntry<K, V> entry) {
+        if (entry != null && !entry.equals(_first)) {
+            if (entry.getHits() > entry.getPrevious().getHits()) {
+                final CacheEntry<K, V> beforePrevious = entry.getPrevious().getPrevious();
+                final CacheEntry<K, V> previous = entry.getPrevious();
+                final CacheEntry<K, V> next = entry.getNext();
+                if (beforePrevious != null) {
+                    beforePrevious.setNext(entry);
+                } else {
+                    _first = entry;
+                }
+                entry.setPrevious(beforePrevious);
+                previous.setPrevious(entry);
+                previous.setNext(next);
+                entry.setNext(previous);
+                if (next == null) {
+                    setLast(previous);
+                } else {
+                    next.setPrevious(previous);
+                }
+            }
+        }
+    }
+}
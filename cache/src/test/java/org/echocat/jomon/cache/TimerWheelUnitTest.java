@@ -0,0 +1,124 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class TimerWheelUnitTest {
+
+    private static final long START = 1000000000L;
+
+    @Test
+    public void testAdvanceExpiresOnlyExpiredEntries() throws Exception {
+        final TimerWheel<String, String> wheel = new TimerWheel<>(START);
+        final CacheEntry<String, String> a = entry("a", START + 500);
+        final CacheEntry<String, String> b = entry("b", START + 5000);
+        final CacheEntry<String, String> c = entry("c", null);
+        wheel.schedule(a);
+        wheel.schedule(b);
+        wheel.schedule(c);
+        assertThat(keysOf(wheel.advance(START + 400)).isEmpty(), is(true));
+        assertThat(keysOf(wheel.advance(START + 2000)), is(keys("a")));
+        assertThat(keysOf(wheel.advance(START + 4000)).isEmpty(), is(true));
+        assertThat(keysOf(wheel.advance(START + 10000)), is(keys("b")));
+        assertThat(keysOf(wheel.advance(START + 100000000L)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testPreciseAdvance() throws Exception {
+        final TimerWheel<String, String> wheel = new TimerWheel<>(START);
+        wheel.schedule(entry("a", START + 100));
+        wheel.schedule(entry("b", START + 300));
+        assertThat(keysOf(wheel.advance(START + 200)).isEmpty(), is(true));
+        assertThat(keysOf(wheel.advance(START + 200, true)), is(keys("a")));
+        assertThat(keysOf(wheel.advance(START + 400, true)), is(keys("b")));
+    }
+
+    @Test
+    public void testDescheduledEntriesAreNotExpired() throws Exception {
+        final TimerWheel<String, String> wheel = new TimerWheel<>(START);
+        final CacheEntry<String, String> a = entry("a", START + 500);
+        final CacheEntry<String, String> b = entry("b", START + 500);
+        wheel.schedule(a);
+        wheel.schedule(b);
+        wheel.deschedule(a);
+        wheel.deschedule(a);
+        assertThat(keysOf(wheel.advance(START + 2000)), is(keys("b")));
+        wheel.schedule(a);
+        wheel.clear();
+        assertThat(keysOf(wheel.advance(START + 5000)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testAllLevels() throws Exception {
+        final TimerWheel<Long, String> wheel = new TimerWheel<>(System.currentTimeMillis());
+        final Random random = new Random(666);
+        final List<CacheEntry<Long, String>> entries = new ArrayList<>();
+        for (long i = 0; i < 10000; i++) {
+            final CacheEntry<Long, String> entry = new CacheEntry<>(i, (long) random.nextInt(Integer.MAX_VALUE), "value");
+            entries.add(entry);
+            wheel.schedule(entry);
+        }
+        final Set<Long> expired = new HashSet<>();
+        long currentTime = entries.get(0).getCreated();
+        final long end = currentTime + Integer.MAX_VALUE + 1000L;
+        while (currentTime < end) {
+            currentTime += random.nextInt(10000000);
+            for (CacheEntry<Long, String> entry : wheel.advance(currentTime)) {
+                assertThat(entry.getExpire(), isLessThanOrEqualTo(currentTime));
+                assertThat(expired.add(entry.getKey()), is(true));
+            }
+            for (CacheEntry<Long, String> entry : entries) {
+                if (entry.getExpire() <= currentTime - 1024) {
+                    assertThat(expired.contains(entry.getKey()), is(true));
+                }
+            }
+        }
+        assertThat(expired.size(), is(entries.size()));
+    }
+
+    protected static CacheEntry<String, String> entry(String key, Long expire) {
+        final CacheEntry<String, String> entry = new CacheEntry<>(key, null, key);
+        entry.setValue(expire != null ? expire - entry.getCreated() : null, key);
+        return entry;
+    }
+
+    protected static <K> Set<K> keysOf(List<CacheEntry<K, String>> entries) {
+        final Set<K> result = new HashSet<>();
+        for (CacheEntry<K, String> entry : entries) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    protected static Set<String> keys(String... keys) {
+        final Set<String> result = new HashSet<>();
+        for (String key : keys) {
+            result.add(key);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.Value.Fixed;
+import org.echocat.jomon.cache.Value.Lazy;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.echocat.jomon.runtime.util.ProducingType.blocking;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class ValueUnitTest {
+
+    @Test
+    public void testLazyOfDifferentKeysDoNotBlockEachOtherWithSharedProducer() throws Exception {
+        final CountDownLatch releaseA = new CountDownLatch(1);
+        final ValueProducer<String, String> producer = new ValueProducer<String, String>() { @Override public String produce(@Nullable String key) throws Exception {
+            if ("a".equals(key)) {
+                releaseA.await();
+            }
+            return key.toUpperCase();
+        }};
+        final Lazy<String, String> a = new Lazy<>("a", producer, blocking);
+        final Lazy<String, String> b = new Lazy<>("b", producer, blocking);
+        final Thread producingA = startGetOf(a, new AtomicReference<String>());
+        waitUntilProducing(producingA);
+
+        assertThat(b.get(), is("B"));
+        assertThat(a.isProduced(), is(false));
+        releaseA.countDown();
+        producingA.join();
+        assertThat(a.get(), is("A"));
+    }
+
+    @Test
+    public void testLazyIsProducedOnlyOnce() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger numberOfProductions = new AtomicInteger();
+        final Lazy<String, String> lazy = new Lazy<>("a", new ValueProducer<String, String>() { @Override public String produce(@Nullable String key) throws Exception {
+            numberOfProductions.incrementAndGet();
+            release.await();
+            return "A";
+        }}, blocking);
+        final AtomicReference<String> first = new AtomicReference<>();
+        final AtomicReference<String> second = new AtomicReference<>();
+        final Thread firstThread = startGetOf(lazy, first);
+        waitUntilProducing(firstThread);
+        final Thread secondThread = startGetOf(lazy, second);
+        release.countDown();
+        firstThread.join();
+        secondThread.join();
+        assertThat(first.get(), is("A"));
+        assertThat(second.get(), is("A"));
+        assertThat(numberOfProductions.get(), is(1));
+    }
+
+    @Test
+    public void testWaitingThreadGetsStaleValueAfterMaximumWaitTime() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Lazy<String, String> lazy = new Lazy<>("a", new ValueProducer<String, String>() { @Override public String produce(@Nullable String key) throws Exception {
+            release.await();
+            return "new";
+        }}, blocking, new Fixed<>("stale"), 50L);
+        final AtomicReference<String> produced = new AtomicReference<>();
+        final Thread producing = startGetOf(lazy, produced);
+        waitUntilProducing(producing);
+
+        assertThat(lazy.get(), is("stale"));
+        release.countDown();
+        producing.join();
+        assertThat(produced.get(), is("new"));
+        assertThat(lazy.get(), is("new"));
+    }
+
+    private static Thread startGetOf(final Lazy<String, String> lazy, final AtomicReference<String> result) {
+        final Thread thread = new Thread() { @Override public void run() {
+            result.set(lazy.get());
+        }};
+        thread.start();
+        return thread;
+    }
+
+    private static void waitUntilProducing(Thread thread) throws InterruptedException {
+        final long waitUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(1);
+        }
+    }
+
+}
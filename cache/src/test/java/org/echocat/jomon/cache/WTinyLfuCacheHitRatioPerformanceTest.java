@@ -0,0 +1,78 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.support.HitRatioSimulator;
+import org.echocat.jomon.cache.support.HitRatioSimulator.Result;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lfuCache;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.wTinyLfuCache;
+import static org.echocat.jomon.cache.support.HitRatioSimulator.traceOf;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.isGreaterThan;
+
+public class WTinyLfuCacheHitRatioPerformanceTest {
+
+    private static final int CAPACITY = 1000;
+    private static final int NUMBER_OF_ITEMS = 100000;
+    private static final int NUMBER_OF_REQUESTS = 1000000;
+    private static final int SCAN_LENGTH = 5000;
+
+    @Test
+    public void testHitRatioOnZipfianTraceWithScans() throws Exception {
+        final File trace = File.createTempFile("trace", ".txt");
+        try {
+            recordTrace(trace);
+            final HitRatioSimulator simulator = new HitRatioSimulator();
+            final Result lru = simulator.simulate(lruCache(String.class, Object.class).withCapacity(CAPACITY), traceOf(trace));
+            final Result lfu = simulator.simulate(lfuCache(String.class, Object.class).withCapacity(CAPACITY), traceOf(trace));
+            final Result wTinyLfu = simulator.simulate(wTinyLfuCache(String.class, Object.class).withCapacity(CAPACITY), traceOf(trace));
+            assertThat(wTinyLfu.getHitRatio(), isGreaterThan(lru.getHitRatio()));
+            assertThat(wTinyLfu.getHitRatio(), isGreaterThan(lfu.getHitRatio()));
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            trace.delete();
+        }
+    }
+
+    /**
+     * Records a Zipfian distributed trace which is interrupted every 100000 requests by a scan over keys which are never requested again.
+     */
+    protected void recordTrace(@Nonnull File file) throws Exception {
+        final ZipfianGenerator generator = new ZipfianGenerator(NUMBER_OF_ITEMS, true, new Random(666));
+        long nextScanKey = NUMBER_OF_ITEMS;
+        try (final PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            for (int i = 0; i < NUMBER_OF_REQUESTS; i++) {
+                if (i % 100000 == 0) {
+                    for (int j = 0; j < SCAN_LENGTH; j++) {
+                        writer.println(nextScanKey++);
+                    }
+                }
+                writer.println(generator.next());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import org.echocat.jomon.cache.management.CombinedCacheCreator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.echocat.jomon.cache.WTinyLfuCache.*;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.wTinyLfuCache;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class WTinyLfuCacheUnitTest extends CacheUnitTestSupport<WTinyLfuCache<Object, Object>> {
+
+    @Override
+    protected WTinyLfuCache<Object, Object> getInstance() {
+        return new WTinyLfuCache<>(Object.class, Object.class);
+    }
+
+    @Test
+    public void testScanDoesNotFlushHotElements() throws Exception {
+        final WTinyLfuCache<Object, Object> cache = getInstance(100000, 100);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 50; key++) {
+                request(cache, key);
+            }
+        }
+        int nextScanKey = 1000;
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 200; i++) {
+                request(cache, nextScanKey++);
+            }
+            for (int key = 0; key < 50; key++) {
+                assertThat(cache.get(key), is((Object) key));
+            }
+        }
+        assertThat(cache.size(), is(100L));
+        assertLinkedList(cache);
+        assertRegions(cache);
+    }
+
+    @Test
+    public void testNewElementIsAdmittedIfFrequentlyRequested() throws Exception {
+        final WTinyLfuCache<Object, Object> cache = getInstance(100000, 10);
+        for (int key = 0; key < 10; key++) {
+            request(cache, key);
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.put("hot", i);
+            cache.get("hot");
+            request(cache, 100 + i);
+        }
+        assertThat(cache.getEntries().containsKey("hot"), is(true));
+        assertThat(cache.size(), is(10L));
+        assertLinkedList(cache);
+        assertRegions(cache);
+    }
+
+    @Test
+    public void testRegionsStayConsistent() throws Exception {
+        final WTinyLfuCache<Object, Object> cache = getInstance(100000, 50);
+        cache.setWindowPercentage(10);
+        final Random random = new Random(666);
+        for (int i = 0; i < 20000; i++) {
+            final int key = random.nextInt(200);
+            if (random.nextInt(10) == 0) {
+                cache.remove(key);
+            } else {
+                request(cache, key);
+            }
+            if (i % 100 == 0) {
+                assertLinkedList(cache);
+                assertRegions(cache);
+            }
+        }
+        assertThat(cache.getSizeOf(WINDOW), isLessThanOrEqualTo(5));
+        assertThat(cache.getSizeOf(PROTECTED), isLessThanOrEqualTo(36));
+        cache.clear();
+        assertThat(cache.getSizeOf(WINDOW) + cache.getSizeOf(PROTECTED) + cache.getSizeOf(PROBATION), is(0));
+        assertLinkedList(cache);
+    }
+
+    @Test
+    public void testShrinkingKeepsRegionsConsistent() throws Exception {
+        final WTinyLfuCache<Object, Object> cache = getInstance(100000, 100);
+        for (int key = 0; key < 100; key++) {
+            request(cache, key);
+        }
+        for (int key = 0; key < 100; key++) {
+            request(cache, key);
+        }
+        assertThat(cache.getSizeOf(PROTECTED), is(79));
+        cache.setCapacity(20L);
+        assertThat(cache.size(), is(20L));
+        assertThat(cache.getSizeOf(WINDOW), isLessThanOrEqualTo(1));
+        assertThat(cache.getSizeOf(PROTECTED), isLessThanOrEqualTo(15));
+        assertLinkedList(cache);
+        assertRegions(cache);
+        for (int key = 100; key < 400; key++) {
+            request(cache, key);
+        }
+        assertThat(cache.size(), is(20L));
+        assertLinkedList(cache);
+        assertRegions(cache);
+    }
+
+    @Test
+    public void testCreateByDefinition() throws Exception {
+        final CombinedCacheCreator creator = new CombinedCacheCreator();
+        final Cache<String, Integer> cache = creator.create(null, creator, wTinyLfuCache(String.class, Integer.class).withCapacity(100));
+        assertThat(cache, isInstanceOf(WTinyLfuCache.class));
+        assertThat(((WTinyLfuCache<String, Integer>) cache).getCapacity(), is(100L));
+    }
+
+    protected static void request(WTinyLfuCache<Object, Object> cache, Object key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key);
+        }
+    }
+
+    protected static void assertRegions(WTinyLfuCache<Object, Object> cache) throws Exception {
+        final int[] sizes = new int[3];
+        int lastRegion = WINDOW;
+        CacheEntry<Object, Object> current = cache.getFirst();
+        while (current != null) {
+            final int region = cache.getRegionOf(current);
+            assertThat(region, isGreaterThanOrEqualTo(lastRegion));
+            sizes[region]++;
+            lastRegion = region;
+            current = current.getNext();
+        }
+        assertThat(sizes[WINDOW], is(cache.getSizeOf(WINDOW)));
+        assertThat(sizes[PROTECTED], is(cache.getSizeOf(PROTECTED)));
+        assertThat(sizes[PROBATION], is(cache.getSizeOf(PROBATION)));
+        assertThat((long) (sizes[WINDOW] + sizes[PROTECTED] + sizes[PROBATION]), is(cache.size()));
+    }
+
+}
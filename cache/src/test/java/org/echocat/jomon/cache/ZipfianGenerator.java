@@ -0,0 +1,104 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.Random;
+
+import static java.lang.Math.pow;
+
+/**
+ * Generates numbers between <code>0</code> and <code>numberOfItems - 1</code> which are distributed by Zipf's law. The implementation follows
+ * <i>Gray et al., Quickly Generating Billion-Record Synthetic Databases</i>. If scrambled the ranks are spread over the whole range so the most
+ * popular items are not the smallest numbers.
+ */
+public class ZipfianGenerator {
+
+    public static final double DEFAULT_SKEW = 0.99;
+
+    private final Random _random;
+    private final long _numberOfItems;
+    private final double _skew;
+    private final boolean _scrambled;
+
+    private final double _zetaN;
+    private final double _alpha;
+    private final double _eta;
+    private final double _secondThreshold;
+
+    public ZipfianGenerator(@Nonnegative long numberOfItems, double skew, boolean scrambled, @Nonnull Random random) {
+        if (numberOfItems <= 0) {
+            throw new IllegalArgumentException("The numberOfItems have to be greater than 0.");
+        }
+        _random = random;
+        _numberOfItems = numberOfItems;
+        _skew = skew;
+        _scrambled = scrambled;
+        _zetaN = zeta(numberOfItems, skew);
+        _alpha = 1d / (1d - skew);
+        _eta = (1d - pow(2d / numberOfItems, 1d - skew)) / (1d - zeta(2, skew) / _zetaN);
+        _secondThreshold = 1d + pow(0.5d, skew);
+    }
+
+    public ZipfianGenerator(@Nonnegative long numberOfItems, boolean scrambled, @Nonnull Random random) {
+        this(numberOfItems, DEFAULT_SKEW, scrambled, random);
+    }
+
+    @Nonnegative
+    public long next() {
+        final double u = _random.nextDouble();
+        final double uz = u * _zetaN;
+        final long rank;
+        if (uz < 1d) {
+            rank = 0;
+        } else if (uz < _secondThreshold) {
+            rank = 1;
+        } else {
+            rank = Math.min((long) (_numberOfItems * pow(_eta * u - _eta + 1d, _alpha)), _numberOfItems - 1);
+        }
+        return _scrambled ? scramble(rank) : rank;
+    }
+
+    @Nonnegative
+    public long getNumberOfItems() {
+        return _numberOfItems;
+    }
+
+    public double getSkew() {
+        return _skew;
+    }
+
+    @Nonnegative
+    protected long scramble(@Nonnegative long rank) {
+        // FNV-1a over the bytes of the rank
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xff;
+            hash *= 0x100000001B3L;
+        }
+        return (hash & Long.MAX_VALUE) % _numberOfItems;
+    }
+
+    private static double zeta(@Nonnegative long n, double skew) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1d / pow(i, skew);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.*;
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.echocat.jomon.cache.management.ConcurrentCacheDefinition.concurrentLruCache;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class CacheSnapshotterUnitTest {
+
+    @Rule
+    public final TemporaryFolder _temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final CacheSnapshotter snapshotter = new CacheSnapshotter(new File(_temporaryFolder.getRoot(), "caches.snapshot"));
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final Cache<String, Long> lru = repository.provide("lru", lruCache(String.class, Long.class).withCapacity(5));
+            final Cache<Integer, String> concurrent = repository.provide("concurrent", concurrentLruCache(Integer.class, String.class));
+            lru.put("a", 1L);
+            lru.put("b", 2L);
+            lru.put("c", null);
+            lru.put(null, 4L);
+            lru.put("expired", 5L, new Duration(1));
+            lru.get("b");
+            for (int i = 0; i < 100; i++) {
+                concurrent.put(i, "value" + i);
+            }
+            Thread.sleep(10);
+            assertThat(snapshotter.save(repository), is(104L));
+        }
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            repository.setListeners(Collections.<CacheListener>singletonList(snapshotter));
+            final LruCache<String, Long> lru = (LruCache<String, Long>) repository.<String, Long>provide("lru", lruCache(String.class, Long.class).withCapacity(3));
+            assertThat(snapshotter.load(repository), is(4L));
+            assertThat(lru.size(), is(3L));
+            lru.put("d", 6L);
+            assertThat(lru.contains("a"), is(false));
+            assertThat(lru.contains("c"), is(false));
+            assertThat(lru.contains("expired"), is(false));
+            assertThat(lru.get("b"), is(2L));
+            assertThat(lru.get(null), is(4L));
+            assertThat(lru.get("d"), is(6L));
+
+            final Cache<Integer, String> concurrent = repository.provide("concurrent", concurrentLruCache(Integer.class, String.class));
+            for (int i = 0; i < 100; i++) {
+                assertThat(concurrent.get(i), is("value" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadIgnoresCachesWithChangedTypes() throws Exception {
+        final CacheSnapshotter snapshotter = new CacheSnapshotter(new File(_temporaryFolder.getRoot(), "caches.snapshot"));
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            repository.provide("cache", lruCache(String.class, String.class)).put("a", "1");
+            snapshotter.save(repository);
+        }
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final Cache<String, Integer> cache = repository.provide("cache", lruCache(String.class, Integer.class));
+            assertThat(snapshotter.load(repository), is(0L));
+            assertThat(cache.contains("a"), is(false));
+        }
+    }
+
+    @Test
+    public void testLoadWithoutFile() throws Exception {
+        final CacheSnapshotter snapshotter = new CacheSnapshotter(new File(_temporaryFolder.getRoot(), "missing.snapshot"));
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            assertThat(snapshotter.load(repository), is(0L));
+        }
+    }
+
+    @Test
+    public void testRestorePreservesFrequencies() throws Exception {
+        final LfuCache<String, String> source = new LfuCache<>(String.class, String.class);
+        source.put("a", "1");
+        source.put("b", "2");
+        source.put("c", "3");
+        source.get("a");
+        source.get("a");
+        source.get("b");
+        final List<CacheSnapshotEntry<String, String>> snapshot = source.snapshot(10);
+        assertThat(snapshot.get(0).getKey(), is("a"));
+        assertThat(snapshot.get(0).getHits(), is(2));
+
+        final LfuCache<String, String> target = new LfuCache<>(String.class, String.class);
+        target.setCapacity(3L);
+        target.restore(snapshot);
+        target.put("d", "4");
+        assertThat(target.contains("a"), is(true));
+        assertThat(target.contains("b"), is(true));
+        assertThat(target.contains("c"), is(false));
+        assertThat(target.contains("d"), is(true));
+    }
+
+}
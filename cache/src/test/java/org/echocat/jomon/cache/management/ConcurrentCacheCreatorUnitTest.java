@@ -0,0 +1,80 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.ConcurrentLfuCache;
+import org.echocat.jomon.cache.ConcurrentLruCache;
+import org.echocat.jomon.cache.Weigher.ByteArrayWeigher;
+import org.echocat.jomon.runtime.util.Duration;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.echocat.jomon.cache.management.ConcurrentCacheDefinition.concurrentLfuCache;
+import static org.echocat.jomon.cache.management.ConcurrentCacheDefinition.concurrentLruCache;
+import static org.echocat.jomon.runtime.util.ProducingType.nonBlocking;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isInstanceOf;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThanOrEqualTo;
+
+public class ConcurrentCacheCreatorUnitTest {
+
+    @Test
+    public void testCreate() throws Exception {
+        final CombinedCacheCreator creator = new CombinedCacheCreator();
+
+        final ConcurrentLruCache<String, Integer> lru = (ConcurrentLruCache<String, Integer>) creator.create(null, creator, concurrentLruCache(String.class, Integer.class).withCapacity(100).withConcurrencyLevel(8).withProducingType(nonBlocking));
+        assertThat(lru, isInstanceOf(ConcurrentLruCache.class));
+        assertThat(lru.getCapacity(), is(100L));
+        assertThat(lru.getConcurrencyLevel(), is(8));
+        assertThat(lru.getNumberOfSegments(), is(8));
+        assertThat(lru.getProducingType(), is(nonBlocking));
+
+        final ConcurrentLfuCache<String, Integer> lfu = (ConcurrentLfuCache<String, Integer>) creator.create(null, creator, concurrentLfuCache(String.class, Integer.class).withCapacity(4));
+        assertThat(lfu, isInstanceOf(ConcurrentLfuCache.class));
+        assertThat(lfu.getCapacity(), is(4L));
+        assertThat(lfu.getNumberOfSegments(), is(4));
+    }
+
+    @Test
+    public void testCreateWeighed() throws Exception {
+        final CombinedCacheCreator creator = new CombinedCacheCreator();
+
+        final ConcurrentLruCache<String, byte[]> cache = (ConcurrentLruCache<String, byte[]>) creator.create(null, creator, concurrentLruCache(String.class, byte[].class).withConcurrencyLevel(4).withWeigher(ByteArrayWeigher.INSTANCE).withMaximumWeight("4k"));
+        assertThat(cache.getWeigher(), is((Object) ByteArrayWeigher.INSTANCE));
+        assertThat(cache.getMaximumWeight(), is(4096L));
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, new byte[100]);
+        }
+        assertThat(cache.getTotalWeight(), isLessThanOrEqualTo(4096L));
+        assertThat(cache.getTotalWeight(), is(cache.size() * 100));
+        assertThat(cache.getEvictedWeight(), is((100 - cache.size()) * 100));
+    }
+
+    @Test
+    public void testCreateWithRefresh() throws Exception {
+        final CombinedCacheCreator creator = new CombinedCacheCreator();
+        final Executor executor = sameThreadExecutor();
+
+        final ConcurrentLruCache<String, Integer> cache = (ConcurrentLruCache<String, Integer>) creator.create(null, creator, concurrentLruCache(String.class, Integer.class).withMaximumLifetime("1h").withRefreshAfter("10m").withRefreshExecutor(executor));
+        assertThat(cache.getRefreshAfter(), is(new Duration("10m")));
+        assertThat(cache.getRefreshExecutor(), is(executor));
+        assertThat(cache.getNumberOfRefreshes(), is(0L));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.MetricsEnabledCache;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static javax.management.MBeanServerFactory.newMBeanServer;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class MBeanCacheWrapperUnitTest {
+
+    @Test
+    public void testPublishedByRepository() throws Exception {
+        final MBeanServer server = newMBeanServer();
+        final ObjectName objectName;
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            repository.setMBeanServer(server);
+            repository.setJmxEnabled(true);
+            final Cache<String, String> cache = repository.provide("foo", lruCache(String.class, String.class).withCapacity(1));
+            objectName = repository.createObjectNameFor("foo");
+            assertThat(server.isRegistered(objectName), is(true));
+            assertThat(((MetricsEnabledCache<?, ?>) cache).isMetricsEnabled(), is(true));
+
+            cache.get("a", new ValueProducer<String, String>() { @Override public String produce(@Nullable String key) throws Exception {
+                return key + "1";
+            }});
+            cache.get("a");
+            cache.put("b", "2");
+
+            assertThat(server.getAttribute(objectName, "numberOfRequests"), is((Object) 2L));
+            assertThat(server.getAttribute(objectName, "numberOfHits"), is((Object) 1L));
+            assertThat(server.getAttribute(objectName, "windowedHitRatio"), is((Object) 0.5d));
+            assertThat(server.getAttribute(objectName, "getDurationCount"), is((Object) 2L));
+            assertThat(server.getAttribute(objectName, "loadDurationCount"), is((Object) 1L));
+            assertThat(server.getAttribute(objectName, "lockWaitDurationCount"), is((Object) 2L));
+            assertThat(server.getAttribute(objectName, "numberOfEvictions"), is((Object) 1L));
+            assertThat((Long) server.getAttribute(objectName, "getDuration99thPercentile"), isGreaterThan(0L));
+
+            server.invoke(objectName, "resetStatistics", new Object[0], new String[0]);
+            assertThat(server.getAttribute(objectName, "numberOfRequests"), is((Object) 0L));
+            assertThat(server.getAttribute(objectName, "getDurationCount"), is((Object) 0L));
+
+            server.setAttribute(objectName, new Attribute("metricsEnabled", false));
+            assertThat(((MetricsEnabledCache<?, ?>) cache).isMetricsEnabled(), is(false));
+            assertThat(server.getAttribute(objectName, "getDurationCount"), isNull());
+        }
+        assertThat(server.isRegistered(objectName), is(false));
+    }
+
+    @Test
+    public void testNotPublishedByDefault() throws Exception {
+        final MBeanServer server = newMBeanServer();
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            repository.setMBeanServer(server);
+            final Cache<String, String> cache = repository.provide("foo", lruCache(String.class, String.class));
+            assertThat(server.isRegistered(repository.createObjectNameFor("foo")), is(false));
+            assertThat(((MetricsEnabledCache<?, ?>) cache).isMetricsEnabled(), is(false));
+        }
+    }
+
+}
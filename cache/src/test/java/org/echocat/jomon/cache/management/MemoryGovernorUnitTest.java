@@ -0,0 +1,167 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.cache.management;
+
+import org.echocat.jomon.cache.InMemoryBasedCacheSupport;
+import org.echocat.jomon.cache.LimitedCache;
+import org.echocat.jomon.cache.LruCache;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.echocat.jomon.runtime.CollectionUtils.asSet;
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.*;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class MemoryGovernorUnitTest {
+
+    @Test
+    public void testShrinkAndGrow() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final LruCache<String, String> normal = (LruCache<String, String>) repository.<String, String>provide("normal", lruCache(String.class, String.class).withCapacity(1000));
+            final LruCache<String, String> important = (LruCache<String, String>) repository.<String, String>provide("important", lruCache(String.class, String.class).withCapacity(1000).withMaximumWeight(2000));
+            final LimitedCache<String, String> unlimited = (LimitedCache<String, String>) repository.<String, String>provide("unlimited", lruCache(String.class, String.class));
+            final MemoryGovernor governor = new MemoryGovernor(repository);
+            governor.setPriorities(singletonMap("important", 5));
+
+            governor.adjustTo(0.7);
+            assertThat(normal.getCapacity(), is(1000L));
+            assertThat(governor.getNumberOfShrinks(), is(0L));
+
+            governor.adjustTo(0.9);
+            governor.adjustTo(0.95);
+            assertThat(normal.getCapacity(), is(500L));
+            assertThat(important.getCapacity(), is(900L));
+            assertThat(important.getMaximumWeight(), is(1800L));
+            assertThat(unlimited.getCapacity(), isNull());
+            assertThat(governor.getNumberOfShrinks(), is(4L));
+            assertThat(governor.getCapacityFactors().get("normal"), is(0.5));
+            assertThat(governor.getLastHeapOccupancy(), is(0.95));
+
+            for (int i = 0; i < 10; i++) {
+                governor.adjustTo(0.5);
+            }
+            assertThat(normal.getCapacity(), is(1000L));
+            assertThat(important.getCapacity(), is(1000L));
+            assertThat(important.getMaximumWeight(), is(2000L));
+            assertThat(governor.getNumberOfGrowths(), is(6L));
+        }
+    }
+
+    @Test
+    public void testMinimumAndExternalResize() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final LruCache<String, String> cache = (LruCache<String, String>) repository.<String, String>provide("cache", lruCache(String.class, String.class).withCapacity(100));
+            final MemoryGovernor governor = new MemoryGovernor(repository);
+            governor.setMinimumFactor(0.2);
+            for (int i = 0; i < 10; i++) {
+                governor.adjustTo(0.99);
+            }
+            assertThat(cache.getCapacity(), is(20L));
+            cache.setCapacity(50L);
+            governor.adjustTo(0.99);
+            assertThat(cache.getCapacity(), is(38L));
+            for (int i = 0; i < 10; i++) {
+                governor.adjustTo(0.1);
+            }
+            assertThat(cache.getCapacity(), is(50L));
+        }
+    }
+
+    @Test
+    public void testShrinkEvictsFromPopulatedCaches() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final List<InMemoryBasedCacheSupport<Integer, Integer>> caches = asList(
+                (InMemoryBasedCacheSupport<Integer, Integer>) repository.<Integer, Integer>provide("lru", lruCache(Integer.class, Integer.class).withCapacity(100)),
+                (InMemoryBasedCacheSupport<Integer, Integer>) repository.<Integer, Integer>provide("lfu", lfuCache(Integer.class, Integer.class).withCapacity(100)),
+                (InMemoryBasedCacheSupport<Integer, Integer>) repository.<Integer, Integer>provide("fifo", fifoCache(Integer.class, Integer.class).withCapacity(100)),
+                (InMemoryBasedCacheSupport<Integer, Integer>) repository.<Integer, Integer>provide("wTinyLfu", wTinyLfuCache(Integer.class, Integer.class).withCapacity(100))
+            );
+            for (InMemoryBasedCacheSupport<Integer, Integer> cache : caches) {
+                for (int i = 0; i < 100; i++) {
+                    cache.put(i, i);
+                }
+            }
+            final MemoryGovernor governor = new MemoryGovernor(repository);
+            governor.adjustTo(0.99);
+            for (InMemoryBasedCacheSupport<Integer, Integer> cache : caches) {
+                assertThat(cache.getCapacity(), is(75L));
+                assertThat(cache.size(), isLessThanOrEqualTo(cache.getCapacity()));
+                for (int i = 100; i < 400; i++) {
+                    cache.put(i, i);
+                }
+                assertThat(cache.size(), isLessThanOrEqualTo(cache.getCapacity()));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyTenuredPoolsAreChecked() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final MemoryGovernor governor = new MemoryGovernor(repository);
+            governor.setTenuredPools(asSet("Old Gen"));
+            final Map<String, MemoryUsage> poolToUsage = new HashMap<>();
+            poolToUsage.put("Eden Space", new MemoryUsage(0, 95, 100, 100));
+            assertThat(governor.getOccupancyOf(poolToUsage), isNull());
+            poolToUsage.put("Old Gen", new MemoryUsage(0, 30, 80, 100));
+            assertThat(governor.getOccupancyOf(poolToUsage), is(0.3d));
+            poolToUsage.put("Old Gen", new MemoryUsage(0, 60, 80, -1));
+            assertThat(governor.getOccupancyOf(poolToUsage), is(0.75d));
+        }
+    }
+
+    @Test
+    public void testOccupancyIsTakenFromGarbageCollectionNotifications() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final MemoryMXBean memoryMXBean = mock(MemoryMXBean.class);
+            // The whole heap would be empty, so the occupancy has to be taken from the notifications ...
+            doReturn(new MemoryUsage(0, 0, 100, 100)).when(memoryMXBean).getHeapMemoryUsage();
+            try (final MemoryGovernor governor = new MemoryGovernor(repository)) {
+                assertThat(governor.getTenuredPools().isEmpty(), is(false));
+                governor.setMemoryMXBean(memoryMXBean);
+                governor.init();
+                System.gc();
+                final long timeout = System.currentTimeMillis() + 10000;
+                while (governor.getLastHeapOccupancy() == 0 && System.currentTimeMillis() < timeout) {
+                    Thread.sleep(10);
+                }
+                assertThat(governor.getLastHeapOccupancy(), isGreaterThan(0d));
+            }
+        }
+    }
+
+    @Test
+    public void testInitAndClose() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            repository.setJmxEnabled(true);
+            repository.setJmxDomain(MemoryGovernorUnitTest.class.getName());
+            try (final MemoryGovernor governor = new MemoryGovernor(repository)) {
+                governor.init();
+                assertThat(repository.getMBeanServer().getAttribute(new ObjectName(MemoryGovernorUnitTest.class.getName() + ":type=MemoryGovernor"), "NumberOfShrinks"), is((Object) 0L));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+import org.junit.Test;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class BlockStorageUnitTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final BlockStorage storage = new BlockStorage(1024, 16, 256);
+        assertThat(storage.getMaximumNumberOfBlocks(), is(64));
+        final byte[] key = "aKey".getBytes("UTF-8");
+        final byte[] value = "a value which is longer than one block".getBytes("UTF-8");
+        final int first = storage.allocate(key.length + value.length);
+        assertThat(storage.getNumberOfUsedBlocks(), is(4));
+        storage.write(first, key, value);
+        assertThat(storage.startsWith(first, key), is(true));
+        assertThat(storage.startsWith(first, "aKez".getBytes("UTF-8")), is(false));
+        assertThat(new String(storage.read(first, 0, key.length), "UTF-8"), is("aKey"));
+        assertThat(new String(storage.read(first, key.length, value.length), "UTF-8"), is("a value which is longer than one block"));
+        assertThat(storage.getAllocatedSize(), is(256L));
+    }
+
+    @Test
+    public void testAllocateAndFree() throws Exception {
+        final BlockStorage storage = new BlockStorage(160, 16, 64);
+        assertThat(storage.getMaximumNumberOfBlocks(), is(10));
+        final int first = storage.allocate(12 * 6);
+        assertThat(storage.allocate(12 * 5), is(-1));
+        final int second = storage.allocate(12 * 4);
+        assertThat(storage.getNumberOfAvailableBlocks(), is(0));
+        storage.free(first);
+        assertThat(storage.getNumberOfAvailableBlocks(), is(6));
+        final int third = storage.allocate(12 * 5);
+        storage.write(third, new byte[60]);
+        storage.write(second, "fourty-eight bytes of content which are stored..".getBytes("UTF-8"));
+        assertThat(new String(storage.read(second, 0, 48), "UTF-8"), is("fourty-eight bytes of content which are stored.."));
+        assertThat(storage.getNumberOfAvailableBlocks(), is(1));
+        assertThat(storage.getAllocatedSize(), is(160L));
+        storage.clear();
+        assertThat(storage.getNumberOfAvailableBlocks(), is(10));
+        assertThat(storage.getAllocatedSize(), is(0L));
+    }
+
+}
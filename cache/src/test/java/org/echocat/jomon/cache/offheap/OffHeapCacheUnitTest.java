@@ -0,0 +1,213 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.offheap;
+
+import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.management.CombinedCacheCreator;
+import org.echocat.jomon.cache.management.DefaultCacheRepository;
+import org.echocat.jomon.runtime.iterators.CloseableIterator;
+import org.echocat.jomon.runtime.util.ByteCount;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.echocat.jomon.cache.management.OffHeapCacheDefinition.offHeapCache;
+import static org.echocat.jomon.runtime.CollectionUtils.asSet;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+
+public class OffHeapCacheUnitTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final OffHeapCache<String, byte[]> cache = new OffHeapCache<>(String.class, byte[].class);
+        cache.put("a", new byte[]{1, 2, 3});
+        cache.put("b", new byte[300]);
+        cache.put(null, new byte[]{4});
+        cache.put("c", null);
+        assertThat(cache.size(), is(4L));
+        assertThat(cache.get("a"), is(new byte[]{1, 2, 3}));
+        assertThat(cache.get("b").length, is(300));
+        assertThat(cache.get(null), is(new byte[]{4}));
+        assertThat(cache.get("c"), is((byte[]) null));
+        assertThat(cache.contains("c"), is(true));
+        assertThat(cache.contains("d"), is(false));
+        assertThat(cache.remove("a").get(), is(new byte[]{1, 2, 3}));
+        assertThat(cache.remove("a"), is((Object) null));
+        assertThat(cache.get("a"), is((byte[]) null));
+        cache.put("b", new byte[]{5});
+        assertThat(cache.get("b"), is(new byte[]{5}));
+        assertThat(cache.size(), is(3L));
+        assertThat(cache.getNumberOfRequests(), is(6L));
+        assertThat(cache.getNumberOfHits(), is(5L));
+        assertThat(cache.getNumberOfDrops(), is(2L));
+        cache.clear();
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.getUsedSize(), is(new ByteCount(0)));
+    }
+
+    @Test
+    public void testEvictionByMaximumSize() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class);
+        cache.setMaximumSize(new ByteCount(128 * 10));
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertThat(cache.size(), is(10L));
+        assertThat(cache.get("key99"), is("value99"));
+        assertThat(cache.get("key89"), is((String) null));
+        assertThat(cache.getUsedSize(), is(new ByteCount(128 * 10)));
+        assertThat(cache.getTotalWeight(), is(128L * 10));
+        assertThat(cache.getEvictedWeight(), is(128L * 90));
+        cache.put("tooLarge", new String(new char[128 * 11]));
+        assertThat(cache.contains("tooLarge"), is(false));
+        assertThat(cache.size(), is(10L));
+    }
+
+    @Test
+    public void testEvictionByCapacity() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class, EvictionPolicy.lru);
+        cache.setCapacity(3L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+        assertThat(keysOf(cache), is(asSet("a", "c", "d")));
+        cache.setCapacity(1L);
+        assertThat(keysOf(cache), is(asSet("d")));
+    }
+
+    @Test
+    public void testLfu() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class, EvictionPolicy.lfu);
+        cache.setCapacity(3L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.put("d", "4");
+        assertThat(keysOf(cache), is(asSet("a", "b", "d")));
+        cache.get("d");
+        cache.get("d");
+        cache.put("e", "5");
+        assertThat(keysOf(cache), is(asSet("a", "d", "e")));
+    }
+
+    @Test
+    public void testLfuWithSaturatedFrequencies() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class, EvictionPolicy.lfu);
+        cache.setCapacity(2L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        for (int i = 0; i < OffHeapCache.MAXIMUM_FREQUENCY * 2; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+        cache.put("c", "3");
+        assertThat(cache.size(), is(2L));
+        assertThat(cache.contains("c"), is(true));
+    }
+
+    @Test
+    public void testFifo() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class, EvictionPolicy.fifo);
+        cache.setCapacity(2L);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertThat(keysOf(cache), is(asSet("b", "c")));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final OffHeapCache<String, String> cache = new OffHeapCache<>(String.class, String.class);
+        cache.put("a", "1", new Duration(50));
+        cache.put("b", "2");
+        Thread.sleep(100);
+        assertThat(cache.get("a"), is((String) null));
+        assertThat(cache.get("b"), is("2"));
+        assertThat(cache.getNumberOfExpirations(), is(1L));
+        assertThat(cache.getNumberOfDrops(), is(1L));
+    }
+
+    @Test
+    public void testProducer() throws Exception {
+        final OffHeapCache<Integer, String> cache = new OffHeapCache<>(Integer.class, String.class);
+        final ValueProducer<Integer, String> producer = new ValueProducer<Integer, String>() { @Override public String produce(Integer key) throws Exception {
+            return "value" + key;
+        }};
+        assertThat(cache.get(1, producer), is("value1"));
+        assertThat(cache.get(1), is("value1"));
+        assertThat(cache.getNumberOfHits(), is(1L));
+    }
+
+    @Test
+    public void testRandomOperationsAgainstIndex() throws Exception {
+        final OffHeapCache<Integer, String> cache = new OffHeapCache<>(Integer.class, String.class);
+        cache.setCapacity(500L);
+        final Random random = new Random(666);
+        for (int i = 0; i < 50000; i++) {
+            final int key = random.nextInt(2000);
+            final int operation = random.nextInt(3);
+            if (operation == 0) {
+                cache.remove(key);
+            } else if (operation == 1) {
+                cache.put(key, Integer.toString(key));
+            } else {
+                final String value = cache.get(key);
+                if (value != null) {
+                    assertThat(value, is(Integer.toString(key)));
+                }
+            }
+        }
+        assertThat(cache.size(), isLessThanOrEqualTo(500L));
+        assertThat((long) keysOf(cache).size(), is(cache.size()));
+        for (Integer key : keysOf(cache)) {
+            assertThat(cache.contains(key), is(true));
+        }
+    }
+
+    @Test
+    public void testCreateByRepository() throws Exception {
+        try (final DefaultCacheRepository repository = new DefaultCacheRepository(new CombinedCacheCreator())) {
+            final Cache<String, byte[]> cache = repository.provide("fragments", offHeapCache(String.class, byte[].class).withMaximumSize("2M").withEvictionPolicy(EvictionPolicy.lfu).withCapacity(1000));
+            assertThat(cache, isInstanceOf(OffHeapCache.class));
+            final OffHeapCache<String, byte[]> offHeapCache = (OffHeapCache<String, byte[]>) cache;
+            assertThat(offHeapCache.getMaximumSize(), is(new ByteCount("2M")));
+            assertThat(offHeapCache.getEvictionPolicy(), is(EvictionPolicy.lfu));
+            assertThat(offHeapCache.getCapacity(), is(1000L));
+        }
+    }
+
+    protected static <K> Set<K> keysOf(OffHeapCache<K, ?> cache) {
+        final Set<K> result = new HashSet<>();
+        try (final CloseableIterator<K> i = cache.iterator()) {
+            while (i.hasNext()) {
+                result.add(i.next());
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+
+package org.echocat.jomon.cache.support;
+
+import org.echocat.jomon.cache.support.HitRatioSimulator.Result;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.echocat.jomon.cache.management.DefaultCacheDefinition.lruCache;
+import static org.echocat.jomon.cache.support.HitRatioSimulator.traceOf;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class HitRatioSimulatorUnitTest {
+
+    @Test
+    public void testSimulate() throws Exception {
+        final HitRatioSimulator simulator = new HitRatioSimulator();
+        final Result result = simulator.simulate(lruCache(String.class, Object.class).withCapacity(2), traceOf(new StringReader("a\nb\na\n\nc\na\nb\n")));
+        assertThat(result.getNumberOfRequests(), is(6L));
+        assertThat(result.getNumberOfHits(), is(2L));
+        assertThat(result.getHitRatio(), is(2d / 6));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.benchmarks;
+
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.tcp.InboundTcpWorker;
+import org.echocat.jomon.net.cluster.channel.tcp.TcpNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.echocat.jomon.net.cluster.channel.ByteUtils.putInt;
+import static org.echocat.jomon.net.cluster.channel.ByteUtils.putLong;
+
+/**
+ * Reads frames of the TCP transport from memory. <code>pooled</code> is the receive path of {@link InboundTcpWorker},
+ * <code>allocating</code> reads every frame the way the worker did before the buffers were pooled. Compare the
+ * <code>gc.alloc.rate.norm</code> values of both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiveBenchmark {
+
+    @Param({"16", "256", "4096"})
+    private int _payloadSize;
+
+    private Worker _worker;
+    private InputStream _in;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] frame = new byte[5 + _payloadSize];
+        frame[0] = 1;
+        putInt(frame, 1, _payloadSize);
+        final UUID uuid = UUID.randomUUID();
+        final byte[] handshake = new byte[16];
+        putLong(handshake, 0, uuid.getMostSignificantBits());
+        putLong(handshake, 8, uuid.getLeastSignificantBits());
+        _in = new RepeatingInputStream(handshake, frame);
+        _worker = new Worker(new InMemorySocket(_in));
+    }
+
+    @Benchmark
+    public void pooled(Blackhole blackhole) throws IOException {
+        final ReceivedMessage<TcpNode> message = _worker.next();
+        try {
+            blackhole.consume(message.getData()[message.getOffset()]);
+        } finally {
+            message.release();
+        }
+    }
+
+    @Benchmark
+    public void allocating(Blackhole blackhole) throws IOException {
+        final byte[] command = new byte[1];
+        _in.read(command);
+        final byte[] lengthBytes = new byte[4];
+        _in.read(lengthBytes);
+        final byte[] data = new byte[_payloadSize];
+        int offset = 0;
+        while (offset < data.length) {
+            offset += _in.read(data, offset, data.length - offset);
+        }
+        final ReceivedMessage<TcpNode> message = new ReceivedMessage<TcpNode>(command[0], data, _worker.getNode());
+        blackhole.consume(message.getData()[message.getOffset()]);
+    }
+
+    protected static class Worker extends InboundTcpWorker {
+
+        private static final Reader READER = new Reader() {
+            @Override public void read(@Nonnull ReceivedMessage<TcpNode> message) {}
+            @Override public void onClose(@Nonnull InboundTcpWorker worker) {}
+        };
+
+        protected Worker(@Nonnull Socket socket) throws IOException {
+            super(READER, socket, UUID.randomUUID(), "benchmark", null);
+        }
+
+        @Nonnull
+        protected ReceivedMessage<TcpNode> next() throws IOException {
+            return readMessage(getNode().getInputStream());
+        }
+    }
+
+    protected static class InMemorySocket extends Socket {
+
+        private final InputStream _in;
+
+        protected InMemorySocket(@Nonnull InputStream in) {
+            _in = in;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return _in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() { @Override public void write(int b) {}};
+        }
+    }
+
+    /**
+     * Returns the handshake once and the frame after that endlessly.
+     */
+    protected static class RepeatingInputStream extends InputStream {
+
+        private final byte[] _frame;
+        private byte[] _current;
+        private int _position;
+
+        protected RepeatingInputStream(@Nonnull byte[] handshake, @Nonnull byte[] frame) {
+            _frame = frame;
+            _current = handshake;
+        }
+
+        @Override
+        public int read() {
+            final byte[] one = new byte[1];
+            read(one, 0, 1);
+            return one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) {
+            if (_position >= _current.length) {
+                _current = _frame;
+                _position = 0;
+            }
+            final int result = Math.min(len, _current.length - _position);
+            System.arraycopy(_current, _position, b, off, result);
+            _position += result;
+            return result;
+        }
+    }
+
+}
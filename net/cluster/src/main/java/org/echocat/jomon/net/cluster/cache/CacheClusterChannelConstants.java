@@ -21,5 +21,6 @@ public interface CacheClusterChannelConstants {
 
     public static final byte removeCommand = pingCommand + 1;
     public static final byte clearCommand = pingCommand + 2;
+    public static final byte removeBatchCommand = pingCommand + 3;
 
 }
@@ -0,0 +1,271 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.cache;
+
+import org.echocat.jomon.net.cluster.channel.Message;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeBatchCommand;
+
+/**
+ * Collects removed keys of possibly different caches and encodes them into one {@link Message}.
+ *
+ * <p>Format of the data (all numbers are unsigned varints, signed keys are zigzag encoded):</p>
+ * <pre>
+ * version(1 byte) numberOfCacheIds (cacheIdLength cacheIdBytes)* numberOfEntries (cacheIndex type keyBytes)*
+ * </pre>
+ * <p>Every cache id is only written once per message and referenced by its index by the entries. Unknown versions
+ * are rejected by {@link #parse(byte[], int, int)} so a newer node could not confuse an older one.</p>
+ */
+@NotThreadSafe
+public class RemoveBatch {
+
+    public static final byte VERSION = 1;
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected static final byte STRING = 0;
+    protected static final byte INTEGER = 1;
+    protected static final byte LONG = 2;
+    protected static final byte TRUE = 3;
+    protected static final byte FALSE = 4;
+
+    private final List<String> _cacheIds = new ArrayList<>();
+    private final List<Object> _keys = new ArrayList<>();
+
+    public static boolean isSupportedKey(@Nonnull Object key) {
+        return key instanceof String || key instanceof Integer || key instanceof Long || key instanceof Boolean;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given key is not {@link #isSupportedKey(Object) supported}.
+     */
+    public void add(@Nonnull String cacheId, @Nonnull Object key) throws IllegalArgumentException {
+        if (!isSupportedKey(key)) {
+            throw new IllegalArgumentException("Could not handle key of type " + key.getClass().getName() + ": " + key);
+        }
+        _cacheIds.add(cacheId);
+        _keys.add(key);
+    }
+
+    public void addAll(@Nonnull RemoveBatch other) {
+        _cacheIds.addAll(other._cacheIds);
+        _keys.addAll(other._keys);
+    }
+
+    @Nonnegative
+    public int size() {
+        return _keys.size();
+    }
+
+    public boolean isEmpty() {
+        return _keys.isEmpty();
+    }
+
+    public void clear() {
+        _cacheIds.clear();
+        _keys.clear();
+    }
+
+    @Nonnull
+    public Message toMessage() {
+        final Map<String, Integer> cacheIdToIndex = new LinkedHashMap<>();
+        for (String cacheId : _cacheIds) {
+            if (!cacheIdToIndex.containsKey(cacheId)) {
+                cacheIdToIndex.put(cacheId, cacheIdToIndex.size());
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(16 + (_keys.size() * 8));
+        out.write(VERSION);
+        writeVarint(cacheIdToIndex.size(), out);
+        for (String cacheId : cacheIdToIndex.keySet()) {
+            writeString(cacheId, out);
+        }
+        writeVarint(_keys.size(), out);
+        for (int i = 0; i < _keys.size(); i++) {
+            writeVarint(cacheIdToIndex.get(_cacheIds.get(i)), out);
+            writeKey(_keys.get(i), out);
+        }
+        return new Message(removeBatchCommand, out.toByteArray());
+    }
+
+    /**
+     * @return all keys grouped by the id of the cache they were removed from in the order they were added.
+     * @throws IllegalArgumentException if the data has an unknown version or is malformed.
+     */
+    @Nonnull
+    public static Map<String, List<Object>> parse(@Nonnull byte[] data, @Nonnegative int offset, @Nonnegative int length) throws IllegalArgumentException {
+        final Reader reader = new Reader(data, offset, length);
+        final byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + version + " of remove batch. Only version " + VERSION + " is supported.");
+        }
+        // Every cache id needs at least its length byte, so a count larger than the remaining bytes is malformed.
+        final int numberOfCacheIds = reader.readCount(1);
+        final String[] cacheIds = new String[numberOfCacheIds];
+        for (int i = 0; i < numberOfCacheIds; i++) {
+            cacheIds[i] = reader.readString();
+        }
+        final Map<String, List<Object>> result = new LinkedHashMap<>();
+        final int numberOfEntries = reader.readCount(2);
+        for (int i = 0; i < numberOfEntries; i++) {
+            final int cacheIndex = reader.readVarint();
+            if (cacheIndex >= numberOfCacheIds) {
+                throw new IllegalArgumentException("Illegal cache index " + cacheIndex + " of remove batch.");
+            }
+            final Object key = reader.readKey();
+            List<Object> keys = result.get(cacheIds[cacheIndex]);
+            if (keys == null) {
+                keys = new ArrayList<>();
+                result.put(cacheIds[cacheIndex], keys);
+            }
+            keys.add(key);
+        }
+        return result;
+    }
+
+    protected static void writeKey(@Nonnull Object key, @Nonnull ByteArrayOutputStream out) {
+        if (key instanceof String) {
+            out.write(STRING);
+            writeString((String) key, out);
+        } else if (key instanceof Integer) {
+            out.write(INTEGER);
+            writeVarint(zigzag((Integer) key), out);
+        } else if (key instanceof Long) {
+            out.write(LONG);
+            writeVarint(zigzag((Long) key), out);
+        } else if (key instanceof Boolean) {
+            out.write((Boolean) key ? TRUE : FALSE);
+        } else {
+            throw new IllegalArgumentException("Could not handle key of type " + key.getClass().getName() + ": " + key);
+        }
+    }
+
+    protected static void writeString(@Nonnull String value, @Nonnull ByteArrayOutputStream out) {
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarint(bytes.length, out);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    protected static void writeVarint(long value, @Nonnull ByteArrayOutputStream out) {
+        long current = value;
+        while ((current & ~0x7FL) != 0) {
+            out.write((int) ((current & 0x7F) | 0x80));
+            current >>>= 7;
+        }
+        out.write((int) current);
+    }
+
+    protected static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    protected static class Reader {
+
+        private final byte[] _data;
+        private final int _end;
+        private int _position;
+
+        protected Reader(@Nonnull byte[] data, @Nonnegative int offset, @Nonnegative int length) {
+            _data = data;
+            _position = offset;
+            _end = offset + length;
+        }
+
+        protected byte readByte() {
+            if (_position >= _end) {
+                throw new IllegalArgumentException("Unexpected end of remove batch.");
+            }
+            return _data[_position++];
+        }
+
+        protected long readVarLong() {
+            long result = 0;
+            int shift = 0;
+            byte current;
+            do {
+                if (shift > 63) {
+                    throw new IllegalArgumentException("Malformed varint in remove batch.");
+                }
+                current = readByte();
+                result |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return result;
+        }
+
+        protected int readVarint() {
+            final long result = readVarLong();
+            if (result < 0 || result > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Illegal length " + result + " in remove batch.");
+            }
+            return (int) result;
+        }
+
+        /**
+         * Reads a number of items and rejects it if the remaining data could not contain that many items.
+         */
+        @Nonnegative
+        protected int readCount(@Nonnegative int minimumBytesPerItem) {
+            final int result = readVarint();
+            if (result > (_end - _position) / minimumBytesPerItem) {
+                throw new IllegalArgumentException("Illegal number of items " + result + " in remove batch of " + (_end - _position) + " remaining bytes.");
+            }
+            return result;
+        }
+
+        @Nonnull
+        protected String readString() {
+            final int length = readVarint();
+            if (length > _end - _position) {
+                throw new IllegalArgumentException("Unexpected end of remove batch.");
+            }
+            final String result = new String(_data, _position, length, UTF_8);
+            _position += length;
+            return result;
+        }
+
+        @Nonnull
+        protected Object readKey() {
+            final byte type = readByte();
+            final Object result;
+            if (type == STRING) {
+                result = readString();
+            } else if (type == INTEGER) {
+                result = (int) unzigzag(readVarLong());
+            } else if (type == LONG) {
+                result = unzigzag(readVarLong());
+            } else if (type == TRUE) {
+                result = Boolean.TRUE;
+            } else if (type == FALSE) {
+                result = Boolean.FALSE;
+            } else {
+                throw new IllegalArgumentException("Unknown key type " + type + " in remove batch.");
+            }
+            return result;
+        }
+    }
+
+}
@@ -21,22 +21,47 @@ import org.echocat.jomon.net.cluster.channel.HandlerEnabledClusterChannel.Messag
 import org.echocat.jomon.net.cluster.channel.Message;
 import org.echocat.jomon.net.cluster.channel.Node;
 import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.runtime.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import static java.lang.Boolean.TRUE;
+import static java.lang.Thread.currentThread;
+import static java.util.Collections.emptyMap;
 import static org.echocat.jomon.cache.CacheUtils.assertValidCacheId;
+import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeBatchCommand;
 import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeCommand;
 
-public class RemoveOverClusterListener extends CacheListenerForClusterChannelSupport implements RemoveCacheListener {
+/**
+ * Sends every local remove to all other nodes of the cluster. If an {@link #setEventDispatcher(CacheEventDispatcher) event
+ * dispatcher} is set the messages are sent by the thread of the dispatcher instead of the thread which removes the element.
+ *
+ * <p>By default every key is sent in its own message of the {@link #LEGACY_PROTOCOL_VERSION legacy protocol}, which
+ * is understood by all nodes. After all nodes are upgraded switch the {@link #setProtocolVersion(byte) protocol version}
+ * to {@link RemoveBatch#VERSION}. Then all removes which are reported by one call are sent together as one
+ * {@link RemoveBatch binary message}. If a {@link #setBatchWindow(Duration) batch window} is set the removes are
+ * additionally collected for this time before they are sent. Received removes are applied grouped by cache. Messages of
+ * both protocols are always understood.</p>
+ */
+public class RemoveOverClusterListener extends CacheListenerForClusterChannelSupport implements RemoveCacheListener, AsynchronousCacheListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoveOverClusterListener.class);
 
     public static final String LOG_STACK_TRACE_PROPERTY_NAME = RemoveOverClusterListener.class.getName() + ".logStackTrace";
 
+    /**
+     * Every key is sent as text in its own message.
+     */
+    public static final byte LEGACY_PROTOCOL_VERSION = 0;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+
     private final MessageHandler _messageHandler = new MessageHandler() { @Override public void handle(@Nonnull HandlerEnabledClusterChannel<?, ?> clusterChannel, @Nonnull ReceivedMessage<?> message) {
         if (message.getCommand() == removeCommand) {
             final String removeMessage = message.getDataAsString(CHARSET);
@@ -46,13 +71,80 @@ public class RemoveOverClusterListener extends CacheListenerForClusterChannelSup
                 final String key = removeMessage.substring(fistIndex + 1);
                 remove(cacheId, key, message.getFrom());
             }
+        } else if (message.getCommand() == removeBatchCommand) {
+            for (Entry<String, List<Object>> cacheIdAndKeys : parse(message).entrySet()) {
+                remove(cacheIdAndKeys.getKey(), cacheIdAndKeys.getValue(), message.getFrom());
+            }
         }
     }};
 
+    private final RemoveBatch _pending = new RemoveBatch();
+
+    private volatile CacheEventDispatcher _eventDispatcher;
+    private volatile byte _protocolVersion = LEGACY_PROTOCOL_VERSION;
+    private volatile Duration _batchWindow;
+    private volatile int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private volatile Thread _flusher;
+    private volatile boolean _closed;
+
     public RemoveOverClusterListener(@Nonnull CacheRepository cacheRepository, @Nonnull HandlerEnabledClusterChannel<?, ?> clusterChannel) {
         super(cacheRepository, clusterChannel);
     }
 
+    @Nullable
+    @Override
+    public CacheEventDispatcher getEventDispatcher() {
+        return _eventDispatcher;
+    }
+
+    /**
+     * Has to be set before this listener is set on the caches.
+     */
+    public void setEventDispatcher(@Nullable CacheEventDispatcher eventDispatcher) {
+        _eventDispatcher = eventDispatcher;
+    }
+
+    public byte getProtocolVersion() {
+        return _protocolVersion;
+    }
+
+    /**
+     * Could be {@link #LEGACY_PROTOCOL_VERSION} or {@link RemoveBatch#VERSION}.
+     */
+    public void setProtocolVersion(byte protocolVersion) {
+        if (protocolVersion != LEGACY_PROTOCOL_VERSION && protocolVersion != RemoveBatch.VERSION) {
+            throw new IllegalArgumentException("Unsupported protocol version: " + protocolVersion);
+        }
+        _protocolVersion = protocolVersion;
+    }
+
+    @Nullable
+    public Duration getBatchWindow() {
+        return _batchWindow;
+    }
+
+    /**
+     * If set all removes are collected for this duration before they are sent together. If <code>null</code> (default)
+     * the removes are sent at the end of every {@link #afterRemove(Cache, Object, Value)} or
+     * {@link #afterEvents(List)} call. Ignored if the {@link #LEGACY_PROTOCOL_VERSION legacy protocol} is used.
+     */
+    public void setBatchWindow(@Nullable Duration batchWindow) {
+        _batchWindow = batchWindow;
+    }
+
+    @Nonnegative
+    public int getMaxBatchSize() {
+        return _maxBatchSize;
+    }
+
+    /**
+     * If this number of removes is collected they are sent immediately regardless of the {@link #getBatchWindow() batch window}.
+     */
+    public void setMaxBatchSize(@Nonnegative int maxBatchSize) {
+        _maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 1;
+    }
+
     @Nonnull
     @Override
     protected MessageHandler getMessageHandler() {
@@ -61,15 +153,28 @@ public class RemoveOverClusterListener extends CacheListenerForClusterChannelSup
 
     @Override
     public void afterRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nullable Value<?> oldValue) {
+        final RemoveBatch batch = new RemoveBatch();
+        handleRemove(cache, key, batch);
+        flush(batch);
+    }
+
+    protected void handleRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key, @Nonnull RemoveBatch batch) {
         // noinspection ObjectEquality
         if (cache instanceof IdentifiedCache && key != null && !isPossibleEndlessLoop()) {
-            if (key instanceof String || key instanceof Integer || key instanceof Long || key instanceof Boolean) {
+            if (RemoveBatch.isSupportedKey(key)) {
                 final String cacheId = ((IdentifiedCache) cache).getId();
                 assertValidCacheId(cacheId);
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Send remove for object: " + cacheId + "/" + key, createThrowableIfLogStackTraceIsNeeded());
                 }
-                send(new Message(removeCommand, cacheId + ";" + key, CHARSET));
+                if (_protocolVersion == LEGACY_PROTOCOL_VERSION) {
+                    send(new Message(removeCommand, cacheId + ";" + key, CHARSET));
+                } else {
+                    batch.add(cacheId, key);
+                    if (batch.size() >= _maxBatchSize) {
+                        flush(batch);
+                    }
+                }
                 record(Event.afterRemove);
             } else {
                 LOG.warn("Could only handle key of type string. Invalid key was: " + key, createThrowableIfLogStackTraceIsNeeded());
@@ -77,22 +182,110 @@ public class RemoveOverClusterListener extends CacheListenerForClusterChannelSup
         }
     }
 
+    @Override
+    public boolean accept(@Nonnull CacheEvent event) {
+        // The marker of a remove which was received from the cluster is bound to the current thread.
+        return event.getType() == CacheEvent.Type.afterRemove && !isPossibleEndlessLoop();
+    }
+
+    @Override
+    public void afterEvents(@Nonnull List<CacheEvent> events) {
+        final RemoveBatch batch = new RemoveBatch();
+        for (CacheEvent event : events) {
+            handleRemove(event.getCache(), event.getKey(), batch);
+        }
+        flush(batch);
+    }
+
+    /**
+     * Sends the given batch immediately or adds it to the pending removes if a {@link #getBatchWindow() batch window}
+     * is set. The given batch is empty afterwards.
+     */
+    protected void flush(@Nonnull RemoveBatch batch) {
+        if (!batch.isEmpty()) {
+            final Duration batchWindow = _batchWindow;
+            if (batchWindow != null && batchWindow.toMilliSeconds() > 0 && !_closed) {
+                final boolean full;
+                synchronized (_pending) {
+                    _pending.addAll(batch);
+                    full = _pending.size() >= _maxBatchSize;
+                    _pending.notifyAll();
+                }
+                if (full) {
+                    flushPending();
+                } else {
+                    startFlusherIfNeeded();
+                }
+            } else {
+                send(batch.toMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    protected void flushPending() {
+        final Message message;
+        synchronized (_pending) {
+            if (_pending.isEmpty()) {
+                message = null;
+            } else {
+                message = _pending.toMessage();
+                _pending.clear();
+            }
+        }
+        if (message != null) {
+            send(message);
+        }
+    }
+
+    protected void startFlusherIfNeeded() {
+        if (_flusher == null) {
+            synchronized (_pending) {
+                if (_flusher == null && !_closed) {
+                    final Thread flusher = new Thread(new Flusher(), getClass().getSimpleName() + ".Flusher");
+                    flusher.setDaemon(true);
+                    flusher.start();
+                    _flusher = flusher;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        final Thread flusher;
+        synchronized (_pending) {
+            _closed = true;
+            flusher = _flusher;
+            _pending.notifyAll();
+        }
+        try {
+            if (flusher != null) {
+                flusher.interrupt();
+                flusher.join();
+            }
+            flushPending();
+        } finally {
+            super.close();
+        }
+    }
+
+    @Nonnull
+    protected Map<String, List<Object>> parse(@Nonnull ReceivedMessage<?> message) {
+        Map<String, List<Object>> result;
+        try {
+            result = RemoveBatch.parse(message.getData(), message.getOffset(), message.getLength());
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Dropped remove batch received from " + message.getFrom() + ". " + e.getMessage());
+            result = emptyMap();
+        }
+        return result;
+    }
+
     protected void remove(@Nonnull String cacheId, @Nonnull String key, @Nonnull Node<?> from) {
         final Cache<Object, ?> cache = findCache(cacheId);
         if (cache != null) {
-            final Object realKey;
-            final Class<?> keyType = cache.getKeyType();
-            if (Integer.class.equals(keyType)) {
-                realKey = Integer.valueOf(key);
-            } else if (Long.class.equals(keyType)) {
-                realKey = Long.valueOf(key);
-            } else if (Boolean.class.equals(keyType)) {
-                realKey = TRUE.toString().equalsIgnoreCase(key);
-            } else if (String.class.equals(keyType)) {
-                realKey = key;
-            } else {
-                throw new IllegalArgumentException("Could not handle key '" + key + "' for cache " + cache + ".");
-            }
+            final Object realKey = toRealKey(cache, key);
             startHandleMessage();
             try {
                 if (LOG.isDebugEnabled()) {
@@ -105,9 +298,82 @@ public class RemoveOverClusterListener extends CacheListenerForClusterChannelSup
         }
     }
 
+    /**
+     * Removes all given keys from the cache with the given id. The cache is looked up only once.
+     */
+    protected void remove(@Nonnull String cacheId, @Nonnull List<Object> keys, @Nonnull Node<?> from) {
+        final Cache<Object, ?> cache = findCache(cacheId);
+        if (cache != null) {
+            final Class<?> keyType = cache.getKeyType();
+            startHandleMessage();
+            try {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Received remove for " + keys.size() + " objects: " + cacheId + "/" + keys + " - from: " + from);
+                }
+                for (Object key : keys) {
+                    cache.remove(keyType.isInstance(key) ? key : toRealKey(cache, key.toString()));
+                }
+            } finally {
+                finishHandleMessage();
+            }
+        }
+    }
+
+    @Nonnull
+    protected Object toRealKey(@Nonnull Cache<?, ?> cache, @Nonnull String key) {
+        final Object result;
+        final Class<?> keyType = cache.getKeyType();
+        if (Integer.class.equals(keyType)) {
+            result = Integer.valueOf(key);
+        } else if (Long.class.equals(keyType)) {
+            result = Long.valueOf(key);
+        } else if (Boolean.class.equals(keyType)) {
+            result = TRUE.toString().equalsIgnoreCase(key);
+        } else if (String.class.equals(keyType)) {
+            result = key;
+        } else {
+            throw new IllegalArgumentException("Could not handle key '" + key + "' for cache " + cache + ".");
+        }
+        return result;
+    }
+
     @Override
     public boolean beforeRemove(@Nonnull Cache<?, ?> cache, @Nullable Object key) { return true; }
 
+    protected class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!_closed) {
+                    synchronized (_pending) {
+                        while (_pending.isEmpty() && !_closed) {
+                            _pending.wait();
+                        }
+                    }
+                    final Duration batchWindow = _batchWindow;
+                    if (batchWindow != null && !_closed) {
+                        batchWindow.sleep();
+                    }
+                    flushPending();
+                }
+            } catch (InterruptedException ignored) {
+                currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.warn("Could not send pending removes. " + this + " will be stopped now.", e);
+            } finally {
+                synchronized (_pending) {
+                    _flusher = null;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return currentThread().getName();
+        }
+    }
+
     public static enum Event implements LocalTrackingEnabledCacheListener.Event {
         afterRemove
     }
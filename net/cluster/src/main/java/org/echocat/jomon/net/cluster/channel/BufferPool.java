@@ -0,0 +1,126 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Integer.numberOfLeadingZeros;
+
+/**
+ * Pool of {@link PooledBuffer buffers} with capacities of powers of two. Requests for more than
+ * {@link #getMaxPooledCapacity() the maximum pooled capacity} are served with new buffers which are never pooled.
+ */
+@ThreadSafe
+public class BufferPool {
+
+    public static final int MIN_CAPACITY = 256;
+    public static final int DEFAULT_MAX_POOLED_CAPACITY = 64 * 1024;
+    public static final int DEFAULT_MAX_BUFFERS_PER_CAPACITY = 32;
+
+    private static final int MIN_CAPACITY_SHIFT = 31 - numberOfLeadingZeros(MIN_CAPACITY);
+
+    private final Queue<PooledBuffer>[] _buffers;
+    private final AtomicInteger[] _sizes;
+    private final int _maxPooledCapacity;
+    private final int _maxBuffersPerCapacity;
+
+    private final AtomicLong _numberOfAllocations = new AtomicLong();
+
+    public BufferPool() {
+        this(DEFAULT_MAX_POOLED_CAPACITY, DEFAULT_MAX_BUFFERS_PER_CAPACITY);
+    }
+
+    public BufferPool(@Nonnegative int maxPooledCapacity, @Nonnegative int maxBuffersPerCapacity) {
+        _maxPooledCapacity = capacityFor(maxPooledCapacity);
+        _maxBuffersPerCapacity = maxBuffersPerCapacity;
+        final int numberOfCapacities = indexOf(_maxPooledCapacity) + 1;
+        // noinspection unchecked
+        _buffers = new Queue[numberOfCapacities];
+        _sizes = new AtomicInteger[numberOfCapacities];
+        for (int i = 0; i < numberOfCapacities; i++) {
+            _buffers[i] = new ConcurrentLinkedQueue<>();
+            _sizes[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return a buffer with at least the given capacity and a reference count of one.
+     */
+    @Nonnull
+    public PooledBuffer acquire(@Nonnegative int minimumCapacity) {
+        final PooledBuffer result;
+        if (minimumCapacity > _maxPooledCapacity) {
+            _numberOfAllocations.incrementAndGet();
+            result = new PooledBuffer(null, minimumCapacity);
+        } else {
+            final int capacity = capacityFor(minimumCapacity);
+            final int index = indexOf(capacity);
+            final PooledBuffer pooled = _buffers[index].poll();
+            if (pooled != null) {
+                _sizes[index].decrementAndGet();
+                result = pooled;
+            } else {
+                _numberOfAllocations.incrementAndGet();
+                result = new PooledBuffer(this, capacity);
+            }
+        }
+        result.acquired();
+        return result;
+    }
+
+    void recycle(@Nonnull PooledBuffer buffer) {
+        final int index = indexOf(buffer.getCapacity());
+        if (_sizes[index].incrementAndGet() <= _maxBuffersPerCapacity) {
+            _buffers[index].add(buffer);
+        } else {
+            _sizes[index].decrementAndGet();
+        }
+    }
+
+    @Nonnegative
+    public int getMaxPooledCapacity() {
+        return _maxPooledCapacity;
+    }
+
+    @Nonnegative
+    public int getMaxBuffersPerCapacity() {
+        return _maxBuffersPerCapacity;
+    }
+
+    /**
+     * @return number of buffers which were created because no pooled one was available.
+     */
+    @Nonnegative
+    public long getNumberOfAllocations() {
+        return _numberOfAllocations.get();
+    }
+
+    @Nonnegative
+    protected static int capacityFor(@Nonnegative int minimumCapacity) {
+        return minimumCapacity <= MIN_CAPACITY ? MIN_CAPACITY : Integer.highestOneBit(minimumCapacity - 1) << 1;
+    }
+
+    @Nonnegative
+    protected static int indexOf(@Nonnegative int capacity) {
+        return 31 - numberOfLeadingZeros(capacity) - MIN_CAPACITY_SHIFT;
+    }
+
+}
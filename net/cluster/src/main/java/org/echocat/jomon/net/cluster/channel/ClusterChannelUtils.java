@@ -57,10 +57,26 @@ public class ClusterChannelUtils {
 
     protected static void formatInbound(@Nonnull StringBuilder to, @Nonnull StatisticEnabledNode<?> of) {
         formatDetails("Inbound", to, of.getLastInboundMessage(), of.getNumberOfInboundMessages(), of.getNumberOfInboundMessagesPerSecond());
+        final Double averageDecompressionDuration = of.getAverageInboundDecompressionDurationInMicroseconds();
+        if (averageDecompressionDuration != null) {
+            to.append(", ").append(new DecimalFormat("#,##0.0", SYMBOLS).format(averageDecompressionDuration)).append(" us/decompress");
+        }
     }
 
     protected static void formatOutbound(@Nonnull StringBuilder to, @Nonnull StatisticEnabledNode<?> of) {
         formatDetails("Outbound", to, of.getLastOutboundMessage(), of.getNumberOfOutboundMessages(), of.getNumberOfOutboundMessagesPerSecond());
+        final Double averageBatchSize = of.getAverageOutboundBatchSize();
+        final Double averageFlushDuration = of.getAverageOutboundFlushDurationInMicroseconds();
+        if (averageBatchSize != null && averageFlushDuration != null) {
+            to.append(", ").append(new DecimalFormat("#,##0.00", SYMBOLS).format(averageBatchSize)).append(" m/batch");
+            to.append(", ").append(new DecimalFormat("#,##0.0", SYMBOLS).format(averageFlushDuration)).append(" us/flush");
+        }
+        final Double compressionRatio = of.getOutboundCompressionRatio();
+        final Double averageCompressionDuration = of.getAverageOutboundCompressionDurationInMicroseconds();
+        if (compressionRatio != null && averageCompressionDuration != null) {
+            to.append(", ").append(new DecimalFormat("#,##0.00", SYMBOLS).format(compressionRatio)).append(" compression ratio");
+            to.append(", ").append(new DecimalFormat("#,##0.0", SYMBOLS).format(averageCompressionDuration)).append(" us/compress");
+        }
     }
 
     protected static void formatDetails(@Nonnull String prefix, @Nonnull StringBuilder to, @Nullable Date lastMessage, @Nullable Long numberOfMessages, @Nullable Double numberOfMessagesPerSecond) {
@@ -16,8 +16,8 @@ package org.echocat.jomon.net.cluster.channel;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
 import static java.util.Arrays.copyOfRange;
 import static org.apache.commons.codec.binary.Hex.encodeHex;
@@ -73,6 +73,14 @@ public class Message {
         return _length;
     }
 
+    /**
+     * @return a read only view of the data of this message without copying it.
+     */
+    @Nonnull
+    public ByteBuffer getDataAsBuffer() {
+        return ByteBuffer.wrap(_data, _offset, _length).slice().asReadOnlyBuffer();
+    }
+
     @Nonnull
     public String getDataAsString(@Nonnull Charset charset) {
         return new String(_data, _offset, _length, charset);
@@ -88,9 +96,21 @@ public class Message {
         } else {
             final Message that = (Message) o;
             result = getCommand() == that.getCommand()
-                && Arrays.equals(getData(), that.getData())
-                && getOffset() == that.getOffset()
-                && getLength() == that.getLength();
+                && getLength() == that.getLength()
+                && isDataEqualTo(that);
+        }
+        return result;
+    }
+
+    private boolean isDataEqualTo(@Nonnull Message that) {
+        // Only the used range is compared. The data of received messages could be backed by larger pooled buffers.
+        final byte[] data = getData();
+        final byte[] thatData = that.getData();
+        final int offset = getOffset();
+        final int thatOffset = that.getOffset();
+        boolean result = true;
+        for (int i = 0; result && i < getLength(); i++) {
+            result = data[offset + i] == thatData[thatOffset + i];
         }
         return result;
     }
@@ -98,8 +118,11 @@ public class Message {
     @Override
     public int hashCode() {
         int result = (int) getCommand();
-        result = 31 * result + Arrays.hashCode(getData());
-        result = 31 * result + getOffset();
+        final byte[] data = getData();
+        final int end = getOffset() + getLength();
+        for (int i = getOffset(); i < end; i++) {
+            result = 31 * result + data[i];
+        }
         result = 31 * result + getLength();
         return result;
     }
@@ -0,0 +1,99 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted byte array which is returned to its {@link BufferPool pool} if the last reference is
+ * {@link #release() released}. The content must not be accessed after that.
+ */
+@ThreadSafe
+public class PooledBuffer {
+
+    private final BufferPool _pool;
+    private final byte[] _data;
+    private final AtomicInteger _references = new AtomicInteger();
+
+    PooledBuffer(@Nullable BufferPool pool, @Nonnegative int capacity) {
+        _pool = pool;
+        _data = new byte[capacity];
+    }
+
+    @Nonnull
+    public byte[] getData() {
+        return _data;
+    }
+
+    @Nonnegative
+    public int getCapacity() {
+        return _data.length;
+    }
+
+    /**
+     * @return a read only view of the first <code>length</code> bytes.
+     */
+    @Nonnull
+    public ByteBuffer asByteBuffer(@Nonnegative int length) {
+        return ByteBuffer.wrap(_data, 0, length).asReadOnlyBuffer();
+    }
+
+    @Nonnegative
+    public int getReferenceCount() {
+        return _references.get();
+    }
+
+    @Nonnull
+    public PooledBuffer retain() throws IllegalStateException {
+        int references;
+        do {
+            references = _references.get();
+            if (references <= 0) {
+                throw new IllegalStateException(this + " was already released.");
+            }
+        } while (!_references.compareAndSet(references, references + 1));
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if this was the last reference.
+     */
+    public boolean release() throws IllegalStateException {
+        final int references = _references.decrementAndGet();
+        if (references < 0) {
+            _references.incrementAndGet();
+            throw new IllegalStateException(this + " was already released.");
+        }
+        if (references == 0 && _pool != null) {
+            _pool.recycle(this);
+        }
+        return references == 0;
+    }
+
+    void acquired() {
+        _references.set(1);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledBuffer{capacity=" + _data.length + ", references=" + _references.get() + "}";
+    }
+
+}
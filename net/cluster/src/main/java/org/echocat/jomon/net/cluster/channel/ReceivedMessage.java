@@ -16,34 +16,93 @@ package org.echocat.jomon.net.cluster.channel;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.nio.charset.Charset;
 
+import static java.util.Arrays.copyOfRange;
+
+/**
+ * A message received from another node. If the message is backed by a {@link PooledBuffer pooled buffer} its data is
+ * only valid while it is handled. Handlers which keep the message or its data after they return have to use
+ * {@link #copy()} or {@link #retain()} and {@link #release()}.
+ */
 public class ReceivedMessage<N extends Node<?>> extends Message {
 
     private final N _from;
+    private final PooledBuffer _buffer;
 
     public ReceivedMessage(byte command, @Nonnull String data, @Nonnull Charset charset, @Nonnull N from) {
         super(command, data, charset);
         _from = from;
+        _buffer = null;
     }
 
     public ReceivedMessage(byte command, @Nonnull byte[] data, @Nonnull N from) {
         super(command, data);
         _from = from;
+        _buffer = null;
     }
 
     public ReceivedMessage(byte command, @Nonnull byte[] data, @Nonnegative int length, @Nonnull N from) {
         super(command, data, length);
         _from = from;
+        _buffer = null;
     }
 
     public ReceivedMessage(byte command, @Nonnull byte[] data, @Nonnegative int offset, @Nonnegative int length, @Nonnull N from) {
         super(command, data, offset, length);
         _from = from;
+        _buffer = null;
+    }
+
+    /**
+     * Creates a message backed by the given buffer. The reference of the caller is not taken over by this message.
+     */
+    public ReceivedMessage(byte command, @Nonnull PooledBuffer buffer, @Nonnegative int length, @Nonnull N from) {
+        super(command, buffer.getData(), length);
+        _from = from;
+        _buffer = buffer;
     }
 
     @Nonnull
     public N getFrom() {
         return _from;
     }
+
+    public boolean isPooled() {
+        return _buffer != null;
+    }
+
+    /**
+     * @return a message with its own copy of the data which could be kept as long as needed.
+     */
+    @Nonnull
+    public ReceivedMessage<N> copy() {
+        final int offset = getOffset();
+        return new ReceivedMessage<>(getCommand(), copyOfRange(getData(), offset, offset + getLength()), _from);
+    }
+
+    /**
+     * Keeps the data of this message valid until {@link #release()} is called.
+     */
+    @Nonnull
+    public ReceivedMessage<N> retain() {
+        final PooledBuffer buffer = _buffer;
+        if (buffer != null) {
+            buffer.retain();
+        }
+        return this;
+    }
+
+    public void release() {
+        final PooledBuffer buffer = _buffer;
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
+    @Nullable
+    protected PooledBuffer getBuffer() {
+        return _buffer;
+    }
 }
@@ -53,6 +53,41 @@ public interface StatisticEnabledNode<ID> extends Node<ID> {
     @Nullable
     public Date getLastOutboundMessage();
 
+    /**
+     * @return the number of writes which were used to send the outbound messages. Several queued messages could be
+     * coalesced into one write.
+     */
+    @Nonnegative
+    @Nullable
+    public Long getNumberOfOutboundBatches();
+
+    @Nonnegative
+    @Nullable
+    public Double getAverageOutboundBatchSize();
+
+    @Nonnegative
+    @Nullable
+    public Double getAverageOutboundFlushDurationInMicroseconds();
+
+    @Nonnegative
+    @Nullable
+    public Long getNumberOfCompressedOutboundMessages();
+
+    /**
+     * @return the size of the compressed outbound messages divided by their uncompressed size.
+     */
+    @Nonnegative
+    @Nullable
+    public Double getOutboundCompressionRatio();
+
+    @Nonnegative
+    @Nullable
+    public Double getAverageOutboundCompressionDurationInMicroseconds();
+
+    @Nonnegative
+    @Nullable
+    public Double getAverageInboundDecompressionDurationInMicroseconds();
+
     public abstract class Impl<ID> extends Node.Impl<ID> implements StatisticEnabledNode<ID> {
 
         private final OverPeriodCounter _numberOfInboundMessagesPerSecond = new OverPeriodCounter(new Duration("1m"), new Duration("1s"));
@@ -63,6 +98,18 @@ public interface StatisticEnabledNode<ID> extends Node<ID> {
         private volatile long _numberOfOutboundMessages;
         private volatile long _lastOutboundMessageInMillis;
 
+        private volatile long _numberOfOutboundBatches;
+        private volatile long _numberOfBatchedOutboundMessages;
+        private volatile long _outboundFlushDurationInNanos;
+
+        private volatile long _numberOfCompressedOutboundMessages;
+        private volatile long _uncompressedOutboundBytes;
+        private volatile long _compressedOutboundBytes;
+        private volatile long _outboundCompressionDurationInNanos;
+
+        private volatile long _numberOfDecompressedInboundMessages;
+        private volatile long _inboundDecompressionDurationInNanos;
+
         private volatile long _lastSeenInMillis;
 
         @Nonnegative
@@ -158,6 +205,87 @@ public interface StatisticEnabledNode<ID> extends Node<ID> {
             _lastOutboundMessageInMillis = currentTimeMillis();
         }
 
+        @Override
+        @Nonnegative
+        @Nullable
+        public Long getNumberOfOutboundBatches() {
+            return _numberOfOutboundBatches;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Double getAverageOutboundBatchSize() {
+            final long numberOfOutboundBatches = _numberOfOutboundBatches;
+            return numberOfOutboundBatches > 0 ? (double) _numberOfBatchedOutboundMessages / numberOfOutboundBatches : null;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Double getAverageOutboundFlushDurationInMicroseconds() {
+            final long numberOfOutboundBatches = _numberOfOutboundBatches;
+            return numberOfOutboundBatches > 0 ? (double) _outboundFlushDurationInNanos / numberOfOutboundBatches / 1000 : null;
+        }
+
+        /**
+         * Should be called by only one thread per node.
+         */
+        public void recordOutboundBatch(@Nonnegative int numberOfMessages, @Nonnegative long flushDurationInNanos) {
+            _numberOfBatchedOutboundMessages += numberOfMessages;
+            _outboundFlushDurationInNanos += flushDurationInNanos;
+            _numberOfOutboundBatches++;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Long getNumberOfCompressedOutboundMessages() {
+            return _numberOfCompressedOutboundMessages;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Double getOutboundCompressionRatio() {
+            final long uncompressedOutboundBytes = _uncompressedOutboundBytes;
+            return uncompressedOutboundBytes > 0 ? (double) _compressedOutboundBytes / uncompressedOutboundBytes : null;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Double getAverageOutboundCompressionDurationInMicroseconds() {
+            final long numberOfCompressedOutboundMessages = _numberOfCompressedOutboundMessages;
+            return numberOfCompressedOutboundMessages > 0 ? (double) _outboundCompressionDurationInNanos / numberOfCompressedOutboundMessages / 1000 : null;
+        }
+
+        @Override
+        @Nonnegative
+        @Nullable
+        public Double getAverageInboundDecompressionDurationInMicroseconds() {
+            final long numberOfDecompressedInboundMessages = _numberOfDecompressedInboundMessages;
+            return numberOfDecompressedInboundMessages > 0 ? (double) _inboundDecompressionDurationInNanos / numberOfDecompressedInboundMessages / 1000 : null;
+        }
+
+        /**
+         * Should be called by only one thread per node.
+         */
+        public void recordOutboundCompression(@Nonnegative int uncompressedLength, @Nonnegative int compressedLength, @Nonnegative long durationInNanos) {
+            _uncompressedOutboundBytes += uncompressedLength;
+            _compressedOutboundBytes += compressedLength;
+            _outboundCompressionDurationInNanos += durationInNanos;
+            _numberOfCompressedOutboundMessages++;
+        }
+
+        /**
+         * Should be called by only one thread per node.
+         */
+        public void recordInboundDecompression(@Nonnegative long durationInNanos) {
+            _inboundDecompressionDurationInNanos += durationInNanos;
+            _numberOfDecompressedInboundMessages++;
+        }
+
     }
 
 
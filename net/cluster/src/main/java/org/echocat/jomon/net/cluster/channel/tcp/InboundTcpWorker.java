@@ -14,31 +14,64 @@
 
 package org.echocat.jomon.net.cluster.channel.tcp;
 
+import org.echocat.jomon.net.cluster.channel.BufferPool;
+import org.echocat.jomon.net.cluster.channel.PooledBuffer;
 import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.Decompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.*;
 import java.net.Socket;
 import java.util.UUID;
 
+import static java.lang.System.nanoTime;
 import static org.echocat.jomon.net.cluster.channel.ByteUtils.*;
+import static org.echocat.jomon.net.cluster.channel.ClusterChannelConstants.pingCommand;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.COMPRESSED_FLAG;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.FEATURES;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.isPossibleUncompressedLength;
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
 
+/**
+ * Reads the messages of one inbound connection. The data of every message is read into a {@link PooledBuffer pooled buffer}
+ * which is released after the message was handled, see {@link ReceivedMessage}. Compressed frames are decompressed,
+ * see {@link TcpCompression}.
+ */
 public class InboundTcpWorker extends Thread implements AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(TcpClusterChannel.class);
 
+    protected static final int HEADER_LENGTH = 5;
+
+    private final byte[] _header = new byte[HEADER_LENGTH];
     private final InboundTcpNode _node;
     private final InputStream _is;
     private final Reader _reader;
+    private final BufferPool _bufferPool;
+    private final int _maximumFrameSize;
+    private final Decompressor _decompressor = new Decompressor();
 
     public InboundTcpWorker(@Nonnull Reader reader, @Nonnull Socket socket, @Nonnull UUID serverUuid, @Nonnull String service, @Nullable String name) throws IOException {
+        this(reader, socket, serverUuid, service, name, new BufferPool());
+    }
+
+    public InboundTcpWorker(@Nonnull Reader reader, @Nonnull Socket socket, @Nonnull UUID serverUuid, @Nonnull String service, @Nullable String name, @Nonnull BufferPool bufferPool) throws IOException {
+        this(reader, socket, serverUuid, service, name, bufferPool, TcpClusterChannelSupport.DEFAULT_MAXIMUM_FRAME_SIZE);
+    }
+
+    /**
+     * @param maximumFrameSize a received frame with more (uncompressed) data closes this connection.
+     */
+    public InboundTcpWorker(@Nonnull Reader reader, @Nonnull Socket socket, @Nonnull UUID serverUuid, @Nonnull String service, @Nullable String name, @Nonnull BufferPool bufferPool, @Nonnegative int maximumFrameSize) throws IOException {
         setName("InboundTcp(" + service + "/" + (name != null ? name : serverUuid) + ")<(resolving)");
         setDaemon(true);
         _reader = reader;
+        _bufferPool = bufferPool;
+        _maximumFrameSize = maximumFrameSize;
         final OutputStream os = socket.getOutputStream();
         sendInit(os, serverUuid);
         _is = socket.getInputStream();
@@ -50,11 +83,13 @@ public class InboundTcpWorker extends Thread implements AutoCloseable {
     public void run() {
         try {
             while (!currentThread().isInterrupted() && _node.isConnected()) {
-                final byte command = readCommand();
-                final byte[] messageData = readMessageData(_is);
-                final ReceivedMessage<TcpNode> message = new ReceivedMessage<TcpNode>(command, messageData, _node);
-                _reader.read(message);
-                _node.recordInbound();
+                final ReceivedMessage<TcpNode> message = readMessage(_is);
+                try {
+                    _reader.read(message);
+                    _node.recordInbound();
+                } finally {
+                    message.release();
+                }
             }
         } catch (InterruptedIOException ignored) {
             currentThread().interrupt();
@@ -64,23 +99,27 @@ public class InboundTcpWorker extends Thread implements AutoCloseable {
                 LOG.warn("Got unexpected error while handling connection from " + _node.getAddress() + ". Close this connection now.", e);
             }
         } finally {
-            closeQuietly(this);
-        }
-    }
-
-    private byte readCommand() throws IOException {
-        final byte[] command = new byte[1];
-        if (_is.read(command) < 1) {
-            throw new EOFException();
+            try {
+                closeQuietly(this);
+            } finally {
+                // Only used by this thread.
+                _decompressor.close();
+            }
         }
-        return command[0];
     }
 
+    /**
+     * Sends the UUID of this node followed by a ping frame with the supported {@link TcpCompression#FEATURES features}.
+     * Nodes of older versions never read the ping frame.
+     */
     protected void sendInit(@Nonnull OutputStream to, @Nonnull UUID serverUuid) throws IOException {
-        final byte[] uuidAsBytes = new byte[16];
-        putLong(uuidAsBytes, 0, serverUuid.getMostSignificantBits());
-        putLong(uuidAsBytes, 8, serverUuid.getLeastSignificantBits());
-        to.write(uuidAsBytes);
+        final byte[] init = new byte[16 + HEADER_LENGTH + 1];
+        putLong(init, 0, serverUuid.getMostSignificantBits());
+        putLong(init, 8, serverUuid.getLeastSignificantBits());
+        init[16] = pingCommand;
+        putInt(init, 17, 1);
+        init[16 + HEADER_LENGTH] = (byte) FEATURES;
+        to.write(init);
     }
 
     @Nonnull
@@ -100,34 +139,66 @@ public class InboundTcpWorker extends Thread implements AutoCloseable {
     }
 
     @Nonnull
-    protected byte[] readMessageData(@Nonnull InputStream is) throws IOException {
-        final int length = readLengthFrom(is);
-        final byte[] messageData = new byte[length];
-        int offset = 0;
-        int read = is.read(messageData);
-        while (read >= 0 && offset < length) {
-            offset += read;
-            read = is.read(messageData, offset, length - offset);
-        }
-        if (read < 0) {
-            throw new EOFException();
+    protected ReceivedMessage<TcpNode> readMessage(@Nonnull InputStream is) throws IOException {
+        readFully(is, _header, HEADER_LENGTH);
+        final byte command = _header[0];
+        final int length = getInt(_header, 1);
+        final boolean compressed = (length & COMPRESSED_FLAG) != 0;
+        final int payloadLength = length & ~COMPRESSED_FLAG;
+        if (payloadLength > _maximumFrameSize) {
+            throw new IOException("Received illegal packet. The length " + payloadLength + " exceeds the maximum frame size of " + _maximumFrameSize + " bytes.");
         }
-        if (offset != length) {
-            throw new IOException("Received a payload with another payload length then expected.");
+        final PooledBuffer buffer = _bufferPool.acquire(payloadLength);
+        boolean success = false;
+        try {
+            readFully(is, buffer.getData(), payloadLength);
+            final ReceivedMessage<TcpNode> result;
+            if (compressed) {
+                result = decompress(command, buffer, payloadLength);
+            } else {
+                result = new ReceivedMessage<TcpNode>(command, buffer, payloadLength, _node);
+            }
+            success = true;
+            return result;
+        } finally {
+            if (!success || compressed) {
+                buffer.release();
+            }
         }
-        return messageData;
     }
 
-    protected int readLengthFrom(@Nonnull InputStream is) throws IOException {
-        final byte[] bytes = new byte[4];
-        if (is.read(bytes) < 0) {
-            throw new EOFException();
+    @Nonnull
+    protected ReceivedMessage<TcpNode> decompress(byte command, @Nonnull PooledBuffer compressed, @Nonnegative int length) throws IOException {
+        final int uncompressedLength = length >= 4 ? getInt(compressed.getData(), 0) : -1;
+        if (uncompressedLength < 0) {
+            throw new IOException("Received illegal packet. Compressed frame does not contain the length of the following content.");
+        } else if (uncompressedLength > _maximumFrameSize || !isPossibleUncompressedLength(length - 4, uncompressedLength)) {
+            throw new IOException("Received illegal packet. Compressed frame of " + length + " bytes announces an uncompressed length of " + uncompressedLength + " bytes.");
         }
-        final int length = getInt(bytes, 0);
-        if (length < 0) {
-            throw new IOException("Received illegal packet. Leading packet is not the length of the following content.");
+        final PooledBuffer buffer = _bufferPool.acquire(uncompressedLength);
+        boolean success = false;
+        try {
+            final long start = nanoTime();
+            _decompressor.decompress(compressed.getData(), 4, length - 4, buffer.getData(), uncompressedLength);
+            _node.recordInboundDecompression(nanoTime() - start);
+            success = true;
+        } finally {
+            if (!success) {
+                buffer.release();
+            }
+        }
+        return new ReceivedMessage<TcpNode>(command, buffer, uncompressedLength, _node);
+    }
+
+    protected void readFully(@Nonnull InputStream is, @Nonnull byte[] to, @Nonnegative int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            final int read = is.read(to, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
         }
-        return length;
     }
 
     @Nonnull
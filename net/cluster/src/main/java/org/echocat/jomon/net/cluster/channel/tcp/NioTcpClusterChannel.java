@@ -0,0 +1,438 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.tcp.NioTcpConnection.Listener;
+import org.echocat.jomon.net.cluster.channel.tcp.NioTcpEventLoop.Selectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.currentThread;
+import static java.nio.channels.SelectionKey.OP_ACCEPT;
+import static org.echocat.jomon.net.cluster.channel.ClusterChannelConstants.pingCommand;
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * Speaks the same protocol as {@link TcpClusterChannel} but serves all connections with a fixed number of
+ * {@link NioTcpEventLoop event loops} instead of using one thread per inbound connection and one thread per remote
+ * node. The number of threads does not grow with the size of the cluster.
+ *
+ * <p>Received messages are delivered to the registered handlers by the event loop thread that has read them, so
+ * handlers should not block. A handler could only send messages if the channel is not {@link #setBlocking(boolean)
+ * blocking}. Such messages are dropped for every connection with a full sending queue because the event loop could
+ * not wait for itself.</p>
+ */
+@ThreadSafe
+public class NioTcpClusterChannel extends TcpClusterChannelSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTcpClusterChannel.class);
+
+    private final ConcurrentMap<InetSocketAddress, NioTcpConnection> _outbound = new ConcurrentHashMap<>();
+    private final Set<NioTcpConnection> _inbound = Collections.newSetFromMap(new ConcurrentHashMap<NioTcpConnection, Boolean>());
+    private final Set<InetSocketAddress> _selfAddresses = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+    private final AtomicInteger _nextEventLoop = new AtomicInteger();
+    private final Listener _listener = new Listener() {
+        @Override public void onEstablished(@Nonnull NioTcpConnection connection) {}
+        @Override public void read(@Nonnull ReceivedMessage<TcpNode> message) throws IOException {
+            NioTcpClusterChannel.this.read(message);
+        }
+        @Override public void onClose(@Nonnull NioTcpConnection connection) {
+            final InetSocketAddress target = connection.getTarget();
+            if (target != null) {
+                _outbound.remove(target, connection);
+                if (connection.isSelf()) {
+                    _selfAddresses.add(target);
+                }
+            } else {
+                _inbound.remove(connection);
+            }
+        }
+    };
+    private final Runnable _checker = new Runnable() { @Override public void run() {
+        check();
+    }};
+
+    private int _numberOfEventLoops = 2;
+
+    private volatile NioTcpEventLoop[] _eventLoops;
+    private volatile ServerSocketChannel _server;
+
+    public NioTcpClusterChannel() {}
+
+    public NioTcpClusterChannel(@Nullable UUID uuid) {
+        super(uuid);
+    }
+
+    @Nonnegative
+    public int getNumberOfEventLoops() {
+        return _numberOfEventLoops;
+    }
+
+    public void setNumberOfEventLoops(@Nonnegative final int numberOfEventLoops) {
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _numberOfEventLoops = numberOfEventLoops;
+            return null;
+        }});
+    }
+
+    @Override
+    protected void onRemoteAddressesChanged(@Nullable Collection<InetSocketAddress> remoteAddresses) throws Exception {
+        for (NioTcpConnection connection : _outbound.values()) {
+            if (remoteAddresses == null || !remoteAddresses.contains(connection.getTarget())) {
+                connection.close();
+            }
+        }
+        _selfAddresses.clear();
+        final NioTcpEventLoop[] eventLoops = _eventLoops;
+        if (eventLoops != null) {
+            eventLoops[0].execute(_checker);
+        }
+    }
+
+    @Override
+    protected void onAddressChanged(@Nullable InetSocketAddress address) throws Exception {
+        closeQuietly(_server);
+        _server = null;
+        closeQuietly(_inbound);
+        if (_eventLoops != null) {
+            listen();
+        }
+    }
+
+    @Override
+    protected void initInLock() throws Exception {
+        super.initInLock();
+        final String name = getName();
+        final int numberOfEventLoops = _numberOfEventLoops > 0 ? _numberOfEventLoops : 1;
+        final NioTcpEventLoop[] eventLoops = new NioTcpEventLoop[numberOfEventLoops];
+        for (int i = 0; i < numberOfEventLoops; i++) {
+            final String eventLoopName = "NioTcp(" + getService() + "/" + (name != null ? name : getUuid()) + ").EventLoop-" + i;
+            eventLoops[i] = i == 0 ? new NioTcpEventLoop(eventLoopName, _checker, getPingInterval()) : new NioTcpEventLoop(eventLoopName);
+        }
+        _eventLoops = eventLoops;
+        for (NioTcpEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        listen();
+    }
+
+    @Override
+    protected void closeInLock() throws Exception {
+        try {
+            closeQuietly(_server);
+            closeQuietly(_outbound.values());
+            closeQuietly(_inbound);
+            final NioTcpEventLoop[] eventLoops = _eventLoops;
+            if (eventLoops != null) {
+                closeQuietly(eventLoops);
+            }
+        } finally {
+            super.closeInLock();
+            _server = null;
+            _eventLoops = null;
+            _selfAddresses.clear();
+        }
+    }
+
+    protected void listen() {
+        final InetSocketAddress address = getAddress();
+        final NioTcpEventLoop[] eventLoops = _eventLoops;
+        if (_server == null && address != null && eventLoops != null) {
+            try {
+                final ServerSocketChannel server = ServerSocketChannel.open();
+                boolean success = false;
+                try {
+                    server.socket().setReuseAddress(true);
+                    server.bind(address);
+                    server.configureBlocking(false);
+                    eventLoops[0].register(server, OP_ACCEPT, new Acceptor(server));
+                    _server = server;
+                    success = true;
+                    LOG.info("Start to listen at " + address.getAddress().getCanonicalHostName() + ":" + address.getPort() + " for " + getService() + "...");
+                } finally {
+                    if (!success) {
+                        closeQuietly(server);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not listen at " + address + ". Retry it after " + getPingInterval() + "...", e);
+            }
+        }
+    }
+
+    /**
+     * Connects to all remote addresses without an open connection, drops connections which could not be
+     * established in time and sends a ping to all established ones.
+     */
+    protected void check() {
+        final NioTcpEventLoop[] eventLoops = _eventLoops;
+        if (eventLoops != null) {
+            final Lock lock = getLock();
+            // Never wait for the lock here. The closing thread holds it while it waits for the event loops.
+            if (_server == null && lock.tryLock()) {
+                try {
+                    listen();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            final long now = currentTimeMillis();
+            final long connectionTimeoutInMillis = getConnectionTimeout().toMilliSeconds();
+            final ByteBuffer ping = NioTcpConnection.toFrame(new Message(pingCommand, new byte[0]));
+            for (NioTcpConnection connection : _outbound.values()) {
+                if (connection.isEstablished()) {
+                    // This is executed by an event loop which could not wait for free space in the queue. A connection with a full
+                    // queue is alive anyway.
+                    if (connection.offer(ping.duplicate()) >= 0) {
+                        // noinspection ConstantConditions
+                        connection.getNode().recordOutbound();
+                    }
+                } else if (connection.getCreatedAtInMillis() + connectionTimeoutInMillis < now) {
+                    LOG.info("Could not connect to " + connection.getTarget() + " in " + getConnectionTimeout() + ". Retry it after " + getPingInterval() + "...");
+                    connection.close();
+                }
+            }
+            final Collection<InetSocketAddress> remoteAddresses = getRemoteAddresses();
+            if (remoteAddresses != null) {
+                for (InetSocketAddress remoteAddress : remoteAddresses) {
+                    if (!_outbound.containsKey(remoteAddress) && !_selfAddresses.contains(remoteAddress)) {
+                        connect(remoteAddress, eventLoops);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void connect(@Nonnull InetSocketAddress target, @Nonnull NioTcpEventLoop[] eventLoops) {
+        try {
+            final SocketChannel socketChannel = SocketChannel.open();
+            boolean success = false;
+            try {
+                socketChannel.configureBlocking(false);
+                socketChannel.socket().setKeepAlive(true);
+                socketChannel.socket().setReuseAddress(true);
+                socketChannel.socket().setTcpNoDelay(true);
+                socketChannel.connect(target);
+                final NioTcpConnection connection = new NioTcpConnection(_listener, nextEventLoopOf(eventLoops), socketChannel, getUuid(), target, getSendingQueueCapacity(), isDropMessagesIfQueueIsFull(), getReceiveBufferPool(), getMaximumFrameSize());
+                if (_outbound.putIfAbsent(target, connection) == null) {
+                    connection.start();
+                    success = true;
+                }
+            } finally {
+                if (!success) {
+                    closeQuietly(socketChannel);
+                }
+            }
+        } catch (IOException e) {
+            LOG.info("Could not connect to " + target + ". Retry it after " + getPingInterval() + "... Got: " + e.getMessage());
+        }
+    }
+
+    @Nonnull
+    protected NioTcpEventLoop nextEventLoopOf(@Nonnull NioTcpEventLoop[] eventLoops) {
+        return eventLoops[(_nextEventLoop.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    @Override
+    public void ping() {
+        recordPingSend();
+        check();
+    }
+
+    @Override
+    protected void readPing(@Nonnull ReceivedMessage<TcpNode> message) {
+        // This is done by the NioTcpConnection itself
+    }
+
+    @Override
+    public void send(@Nonnull Message message) throws IllegalArgumentException {
+        try {
+            send(message, 0);
+            recordMessageSend();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("It was not possible to send " + message + ".", e);
+        }
+    }
+
+    @Override
+    public void send(@Nonnull Message message, @Nonnegative long timeout, @Nonnull TimeUnit unit) throws IllegalArgumentException {
+        try {
+            send(message, currentTimeMillis() + Math.max(unit.toMillis(timeout), 1));
+            recordMessageSend();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("It was not possible to send " + message + ".", e);
+        }
+    }
+
+    /**
+     * @param timeoutAtInMillis if <code>0</code> the sending will not timeout.
+     * @throws IllegalStateException if this channel is {@link #isBlocking() blocking} and this is called by an event
+     * loop, e.g. by a handler. The event loops write the messages, so this would wait forever.
+     */
+    protected void send(@Nonnull Message message, @Nonnegative long timeoutAtInMillis) throws InterruptedException, TimeoutException {
+        if (_eventLoops == null) {
+            throw new IllegalStateException("Init was not called yet.");
+        }
+        final boolean inEventLoop = NioTcpEventLoop.isEventLoopThread();
+        final boolean waitForSendFinished = isBlocking();
+        if (inEventLoop && waitForSendFinished) {
+            throw new IllegalStateException("Could not send " + message + " blocking from the event loop " + currentThread().getName() + ". Use a non blocking channel to send messages from handlers.");
+        }
+        final ByteBuffer frame = NioTcpConnection.toFrame(message);
+        final Map<NioTcpConnection, Long> connectionToSequence = waitForSendFinished ? new HashMap<NioTcpConnection, Long>() : null;
+        for (NioTcpConnection connection : _outbound.values()) {
+            // The remote node could already be known through its inbound connection while this one is still in its
+            // handshake. The frame is written after the handshake in this case.
+            if (!connection.isClosed()) {
+                final long sequence = inEventLoop ? connection.offer(frame.duplicate()) : connection.enqueue(frame.duplicate(), timeoutAtInMillis);
+                if (sequence >= 0) {
+                    final NioTcpNode node = connection.getNode();
+                    if (node != null) {
+                        node.recordOutbound();
+                    }
+                    if (connectionToSequence != null) {
+                        connectionToSequence.put(connection, sequence);
+                    }
+                }
+            }
+        }
+        if (connectionToSequence != null) {
+            for (Map.Entry<NioTcpConnection, Long> connectionAndSequence : connectionToSequence.entrySet()) {
+                connectionAndSequence.getKey().awaitFlushed(connectionAndSequence.getValue(), timeoutAtInMillis);
+            }
+        }
+    }
+
+    @Override
+    public Integer getSendingQueueSize() {
+        Integer result = null;
+        if (_eventLoops != null) {
+            result = 0;
+            for (NioTcpConnection connection : _outbound.values()) {
+                result = Math.max(result, connection.getQueueSize());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return _eventLoops != null;
+    }
+
+    @Nonnull
+    @Override
+    public Set<? extends TcpNode> getNodes() {
+        return merge(nodesOf(_outbound.values()), nodesOf(_inbound));
+    }
+
+    @Nonnull
+    protected List<NioTcpNode> nodesOf(@Nonnull Iterable<NioTcpConnection> connections) {
+        final List<NioTcpNode> nodes = new ArrayList<>();
+        for (NioTcpConnection connection : connections) {
+            final NioTcpNode node = connection.getNode();
+            if (node != null && connection.isEstablished()) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    protected class Acceptor implements Selectable {
+
+        private final ServerSocketChannel _serverChannel;
+
+        public Acceptor(@Nonnull ServerSocketChannel serverChannel) {
+            _serverChannel = serverChannel;
+        }
+
+        @Override public void onRegistered(@Nonnull SelectionKey key) throws Exception {}
+
+        @Override
+        public void onSelected(@Nonnull SelectionKey key) throws Exception {
+            SocketChannel socketChannel = _serverChannel.accept();
+            while (socketChannel != null) {
+                boolean success = false;
+                try {
+                    handleIncoming(socketChannel);
+                    success = true;
+                } catch (IOException e) {
+                    LOG.info("Could not accept connection from " + socketChannel.getRemoteAddress() + ". Got: " + e.getMessage());
+                } finally {
+                    if (!success) {
+                        closeQuietly(socketChannel);
+                    }
+                }
+                socketChannel = _serverChannel.accept();
+            }
+        }
+
+        protected void handleIncoming(@Nonnull SocketChannel socketChannel) throws IOException {
+            final NioTcpEventLoop[] eventLoops = _eventLoops;
+            if (eventLoops == null) {
+                throw new IOException("Channel is closed.");
+            }
+            if (_inbound.size() < getMaxNumberOfIncomingConnections()) {
+                socketChannel.configureBlocking(false);
+                socketChannel.socket().setTcpNoDelay(true);
+                final NioTcpConnection connection = new NioTcpConnection(_listener, nextEventLoopOf(eventLoops), socketChannel, getUuid(), null, 1, true, getReceiveBufferPool(), getMaximumFrameSize());
+                _inbound.add(connection);
+                connection.start();
+            } else {
+                throw new IOException("The maximum of " + getMaxNumberOfIncomingConnections() + " incoming connections is reached.");
+            }
+        }
+
+        @Override
+        public void onError(@Nonnull Exception e) {
+            if (_serverChannel.isOpen()) {
+                LOG.warn("Got error while waiting for an incoming connection.", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final String name = getName();
+        final InetSocketAddress address = getAddress();
+        return "NioTcpClusterChannel(" + getService() + "/" + (name != null ? name : getUuid()) + "):" + (address != null ? address : "<offline>");
+    }
+}
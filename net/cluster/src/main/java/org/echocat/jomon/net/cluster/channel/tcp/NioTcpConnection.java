@@ -0,0 +1,510 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.cluster.channel.BufferPool;
+import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.PooledBuffer;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.tcp.NioTcpEventLoop.Selectable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.nio.channels.SelectionKey.*;
+import static java.util.Arrays.fill;
+import static org.echocat.jomon.net.cluster.channel.ClusterChannelConstants.pingCommand;
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * One non blocking connection of a {@link NioTcpClusterChannel}. All reads and writes are done by the assigned
+ * {@link NioTcpEventLoop}. Other threads only put complete frames in the sending queue of this connection.
+ */
+@ThreadSafe
+public class NioTcpConnection implements Selectable, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTcpConnection.class);
+
+    protected static final int UUID_LENGTH = 16;
+    protected static final int HEADER_LENGTH = 5;
+    protected static final int INITIAL_READ_BUFFER_SIZE = 16 * 1024;
+    protected static final int MAXIMUM_BUFFERS_PER_WRITE = 64;
+
+    private final Queue<ByteBuffer> _handshake = new ConcurrentLinkedQueue<>();
+    private final Queue<ByteBuffer> _pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean();
+    private final Runnable _flushTask = new Runnable() { @Override public void run() {
+        _flushScheduled.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            onError(e);
+        }
+    }};
+
+    private final Listener _listener;
+    private final NioTcpEventLoop _eventLoop;
+    private final SocketChannel _socketChannel;
+    private final UUID _localUuid;
+    private final InetSocketAddress _target;
+    private final int _queueCapacity;
+    private final boolean _dropMessagesIfQueueIsFull;
+    private final BufferPool _bufferPool;
+    private final int _maximumFrameSize;
+    private final long _createdAtInMillis = currentTimeMillis();
+
+    // Only accessed by the event loop thread
+    private final Deque<ByteBuffer> _writing = new ArrayDeque<>();
+    private final ByteBuffer[] _gathering = new ByteBuffer[MAXIMUM_BUFFERS_PER_WRITE];
+    private ByteBuffer _readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private int _requiredReadBufferSize;
+
+    private volatile SelectionKey _key;
+    private volatile NioTcpNode _node;
+    private volatile boolean _self;
+    private volatile boolean _closed;
+    private volatile long _flushed;
+    private volatile int _waiting;
+    private long _enqueued;
+
+    /**
+     * @param target if <code>null</code> this is an inbound connection which was accepted by the local server.
+     */
+    public NioTcpConnection(@Nonnull Listener listener, @Nonnull NioTcpEventLoop eventLoop, @Nonnull SocketChannel socketChannel, @Nonnull UUID localUuid, @Nullable InetSocketAddress target, @Nonnegative int queueCapacity, boolean dropMessagesIfQueueIsFull, @Nonnull BufferPool bufferPool) {
+        this(listener, eventLoop, socketChannel, localUuid, target, queueCapacity, dropMessagesIfQueueIsFull, bufferPool, TcpClusterChannelSupport.DEFAULT_MAXIMUM_FRAME_SIZE);
+    }
+
+    /**
+     * @param target if <code>null</code> this is an inbound connection which was accepted by the local server.
+     * @param maximumFrameSize a received frame with more data closes this connection.
+     */
+    public NioTcpConnection(@Nonnull Listener listener, @Nonnull NioTcpEventLoop eventLoop, @Nonnull SocketChannel socketChannel, @Nonnull UUID localUuid, @Nullable InetSocketAddress target, @Nonnegative int queueCapacity, boolean dropMessagesIfQueueIsFull, @Nonnull BufferPool bufferPool, @Nonnegative int maximumFrameSize) {
+        _listener = listener;
+        _eventLoop = eventLoop;
+        _socketChannel = socketChannel;
+        _localUuid = localUuid;
+        _target = target;
+        _queueCapacity = queueCapacity > 0 ? queueCapacity : 1;
+        _dropMessagesIfQueueIsFull = dropMessagesIfQueueIsFull;
+        _bufferPool = bufferPool;
+        _maximumFrameSize = Math.min(maximumFrameSize, Integer.MAX_VALUE - HEADER_LENGTH);
+    }
+
+    /**
+     * Registers this connection at its event loop. The accepting side of a connection starts the handshake by
+     * sending its UUID.
+     */
+    public void start() {
+        if (isInbound()) {
+            enqueueHandshake(toUuidBuffer(_localUuid));
+        }
+        _eventLoop.register(_socketChannel, _socketChannel.isConnectionPending() ? OP_CONNECT : OP_READ, this);
+    }
+
+    @Override
+    public void onRegistered(@Nonnull SelectionKey key) throws Exception {
+        _key = key;
+        if (_closed) {
+            key.cancel();
+        } else {
+            flush();
+        }
+    }
+
+    @Override
+    public void onSelected(@Nonnull SelectionKey key) throws Exception {
+        if (key.isConnectable()) {
+            _socketChannel.finishConnect();
+            key.interestOps(OP_READ);
+        }
+        if (key.isValid() && key.isReadable()) {
+            read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onError(@Nonnull Exception e) {
+        if (!_closed) {
+            if (!(e instanceof IOException)) {
+                LOG.warn("Got unexpected error while handling connection " + this + ". Close this connection now.", e);
+            } else if (!(e instanceof EOFException) && LOG.isDebugEnabled()) {
+                LOG.debug("Lost connection " + this + ". Close this connection now.", e);
+            }
+        }
+        closeQuietly(this);
+    }
+
+    protected void read() throws IOException {
+        if (_socketChannel.read(_readBuffer) < 0) {
+            throw new EOFException();
+        }
+        _readBuffer.flip();
+        try {
+            if (_node == null && _readBuffer.remaining() >= UUID_LENGTH) {
+                readHandshake();
+            }
+            if (_node != null && !_closed) {
+                if (isInbound()) {
+                    readFrames();
+                } else {
+                    // The accepting side never sends anything after the handshake.
+                    _readBuffer.position(_readBuffer.limit());
+                }
+            }
+        } finally {
+            _readBuffer.compact();
+        }
+        if (_requiredReadBufferSize > _readBuffer.capacity()) {
+            final ByteBuffer newReadBuffer = ByteBuffer.allocate(_requiredReadBufferSize);
+            _readBuffer.flip();
+            newReadBuffer.put(_readBuffer);
+            _readBuffer = newReadBuffer;
+        }
+    }
+
+    protected void readHandshake() throws IOException {
+        final UUID remoteUuid = new UUID(_readBuffer.getLong(), _readBuffer.getLong());
+        if (_localUuid.equals(remoteUuid)) {
+            // Ignore a connection of myself to me
+            _self = true;
+            close();
+        } else {
+            _node = new NioTcpNode(remoteUuid, this);
+            if (!isInbound()) {
+                enqueueHandshake(toUuidBuffer(_localUuid), toFrame(new Message(pingCommand, new byte[0])));
+            }
+            _listener.onEstablished(this);
+        }
+    }
+
+    protected void readFrames() throws IOException {
+        boolean complete = true;
+        while (complete && !_closed && _readBuffer.remaining() >= HEADER_LENGTH) {
+            final int position = _readBuffer.position();
+            final int length = _readBuffer.getInt(position + 1);
+            if (length < 0) {
+                throw new IOException("Received illegal packet. Leading packet is not the length of the following content.");
+            }
+            if (length > _maximumFrameSize) {
+                throw new IOException("Received illegal packet. The length " + length + " exceeds the maximum frame size of " + _maximumFrameSize + " bytes.");
+            }
+            if (_readBuffer.remaining() >= HEADER_LENGTH + length) {
+                final byte command = _readBuffer.get();
+                _readBuffer.position(position + HEADER_LENGTH);
+                // The read buffer is compacted after this call, so the data is moved to a buffer of its own.
+                final PooledBuffer buffer = _bufferPool.acquire(length);
+                try {
+                    _readBuffer.get(buffer.getData(), 0, length);
+                    _listener.read(new ReceivedMessage<TcpNode>(command, buffer, length, _node));
+                    _node.recordInbound();
+                } finally {
+                    buffer.release();
+                }
+            } else {
+                _requiredReadBufferSize = HEADER_LENGTH + length;
+                complete = false;
+            }
+        }
+    }
+
+    /**
+     * Puts the given frame in the sending queue of this connection.
+     *
+     * @param timeoutAtInMillis if <code>0</code> this call will wait without timeout for free space in the queue.
+     * @return the sequence of the given frame which could be used with {@link #awaitFlushed(long, long)} or
+     * <code>-1</code> if the frame was dropped or the connection is closed.
+     */
+    public long enqueue(@Nonnull ByteBuffer frame, @Nonnegative long timeoutAtInMillis) throws InterruptedException, TimeoutException {
+        return enqueue(frame, timeoutAtInMillis, _dropMessagesIfQueueIsFull);
+    }
+
+    /**
+     * Puts the given frame in the sending queue of this connection if there is free space. This never waits, so it
+     * could be called by an {@link NioTcpEventLoop event loop} thread.
+     *
+     * @return the sequence of the given frame or <code>-1</code> if the queue is full or the connection is closed.
+     */
+    public long offer(@Nonnull ByteBuffer frame) {
+        try {
+            return enqueue(frame, 0, true);
+        } catch (InterruptedException | TimeoutException e) {
+            throw new IllegalStateException("A dropping enqueue never waits.", e);
+        }
+    }
+
+    protected long enqueue(@Nonnull ByteBuffer frame, @Nonnegative long timeoutAtInMillis, boolean dropIfQueueIsFull) throws InterruptedException, TimeoutException {
+        long result = -1;
+        synchronized (this) {
+            boolean dropped = false;
+            while (!dropped && !_closed && _enqueued - _flushed >= _queueCapacity) {
+                if (dropIfQueueIsFull) {
+                    dropped = true;
+                } else {
+                    await(timeoutAtInMillis);
+                }
+            }
+            if (!dropped && !_closed) {
+                _pending.add(frame);
+                result = ++_enqueued;
+            }
+        }
+        if (result >= 0) {
+            scheduleFlush();
+        }
+        return result;
+    }
+
+    /**
+     * @param timeoutAtInMillis if <code>0</code> this call will wait without timeout.
+     * @return <code>false</code> if the connection was closed before the frame was written.
+     */
+    public boolean awaitFlushed(@Nonnegative long sequence, @Nonnegative long timeoutAtInMillis) throws InterruptedException, TimeoutException {
+        if (_flushed < sequence) {
+            synchronized (this) {
+                while (!_closed && _flushed < sequence) {
+                    await(timeoutAtInMillis);
+                }
+            }
+        }
+        return _flushed >= sequence;
+    }
+
+    private void await(@Nonnegative long timeoutAtInMillis) throws InterruptedException, TimeoutException {
+        _waiting++;
+        try {
+            if (timeoutAtInMillis > 0) {
+                final long timeoutInMillis = timeoutAtInMillis - currentTimeMillis();
+                if (timeoutInMillis <= 0) {
+                    throw new TimeoutException();
+                }
+                wait(timeoutInMillis);
+            } else {
+                wait();
+            }
+        } finally {
+            _waiting--;
+        }
+    }
+
+    /**
+     * The handshake is always written before the frames which were enqueued before the connection was established.
+     */
+    protected void enqueueHandshake(@Nonnull ByteBuffer... buffers) {
+        synchronized (this) {
+            for (ByteBuffer buffer : buffers) {
+                _handshake.add(buffer);
+                _enqueued++;
+            }
+        }
+        scheduleFlush();
+    }
+
+    protected void scheduleFlush() {
+        if (_flushScheduled.compareAndSet(false, true)) {
+            _eventLoop.execute(_flushTask);
+        }
+    }
+
+    /**
+     * Writes as much of the queued frames as possible with one gathering write per round. If the socket does not
+     * accept more data the connection waits for {@link SelectionKey#OP_WRITE} before it continues. An outbound
+     * connection writes nothing before it has read the handshake of the accepting side.
+     */
+    protected void flush() throws IOException {
+        final SelectionKey key = _key;
+        if (key != null && key.isValid() && !_socketChannel.isConnectionPending() && (isInbound() || _node != null)) {
+            int flushed = 0;
+            boolean socketIsFull = false;
+            final long start = nanoTime();
+            try {
+                drainPending();
+                while (!socketIsFull && !_writing.isEmpty()) {
+                    int numberOfBuffers = 0;
+                    for (ByteBuffer buffer : _writing) {
+                        if (numberOfBuffers >= _gathering.length) {
+                            break;
+                        }
+                        _gathering[numberOfBuffers++] = buffer;
+                    }
+                    _socketChannel.write(_gathering, 0, numberOfBuffers);
+                    int written = 0;
+                    while (!_writing.isEmpty() && !_writing.peekFirst().hasRemaining()) {
+                        _writing.pollFirst();
+                        written++;
+                    }
+                    flushed += written;
+                    socketIsFull = written < numberOfBuffers;
+                    drainPending();
+                }
+            } finally {
+                fill(_gathering, null);
+                onFlushed(flushed, nanoTime() - start);
+            }
+            key.interestOps(socketIsFull ? OP_READ | OP_WRITE : OP_READ);
+        }
+    }
+
+    private void drainPending() {
+        ByteBuffer buffer = _handshake.poll();
+        while (buffer != null) {
+            _writing.add(buffer);
+            buffer = _handshake.poll();
+        }
+        buffer = _pending.poll();
+        while (buffer != null) {
+            _writing.add(buffer);
+            buffer = _pending.poll();
+        }
+    }
+
+    private void onFlushed(@Nonnegative int flushed, @Nonnegative long durationInNanos) {
+        if (flushed > 0) {
+            final NioTcpNode node = _node;
+            if (node != null) {
+                node.recordOutboundBatch(flushed, durationInNanos);
+            }
+            _flushed += flushed;
+            if (_waiting > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    public boolean isInbound() {
+        return _target == null;
+    }
+
+    /**
+     * @return <code>true</code> if the handshake is done.
+     */
+    public boolean isEstablished() {
+        return _node != null && !_closed;
+    }
+
+    /**
+     * @return <code>true</code> if this connection was closed because the remote side is this channel itself.
+     */
+    public boolean isSelf() {
+        return _self;
+    }
+
+    public boolean isClosed() {
+        return _closed;
+    }
+
+    @Nullable
+    public NioTcpNode getNode() {
+        return _node;
+    }
+
+    @Nullable
+    public InetSocketAddress getTarget() {
+        return _target;
+    }
+
+    @Nonnull
+    public SocketChannel getSocketChannel() {
+        return _socketChannel;
+    }
+
+    @Nonnegative
+    public long getCreatedAtInMillis() {
+        return _createdAtInMillis;
+    }
+
+    @Nonnegative
+    public int getQueueSize() {
+        return (int) Math.max(_enqueued - _flushed, 0);
+    }
+
+    @Override
+    public void close() {
+        final boolean wasOpen;
+        synchronized (this) {
+            wasOpen = !_closed;
+            _closed = true;
+            notifyAll();
+        }
+        if (wasOpen) {
+            try {
+                final SelectionKey key = _key;
+                if (key != null) {
+                    key.cancel();
+                }
+                closeQuietly(_socketChannel);
+            } finally {
+                _listener.onClose(this);
+            }
+        }
+    }
+
+    @Nonnull
+    public static ByteBuffer toFrame(@Nonnull Message message) {
+        final int length = message.getLength();
+        final ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + length);
+        frame.put(message.getCommand());
+        frame.putInt(length);
+        frame.put(message.getData(), message.getOffset(), length);
+        frame.flip();
+        return frame;
+    }
+
+    @Nonnull
+    protected static ByteBuffer toUuidBuffer(@Nonnull UUID uuid) {
+        final ByteBuffer buffer = ByteBuffer.allocate(UUID_LENGTH);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        final NioTcpNode node = _node;
+        final Object remote = node != null ? node.getAddress() : _target;
+        return (isInbound() ? "<(" : ">(") + (remote != null ? remote : "(resolving)") + ")";
+    }
+
+    public static interface Listener {
+        public void onEstablished(@Nonnull NioTcpConnection connection);
+        public void read(@Nonnull ReceivedMessage<TcpNode> message) throws IOException;
+        public void onClose(@Nonnull NioTcpConnection connection);
+    }
+
+}
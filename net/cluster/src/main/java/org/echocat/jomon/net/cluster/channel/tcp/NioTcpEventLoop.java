@@ -0,0 +1,204 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.runtime.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.lang.System.currentTimeMillis;
+import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
+
+/**
+ * One thread which serves all {@link SelectableChannel channels} registered at it. All callbacks of a
+ * {@link Selectable} are executed by this thread, so they should never block.
+ */
+@ThreadSafe
+public class NioTcpEventLoop extends Thread implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NioTcpEventLoop.class);
+
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+    private final Selector _selector;
+    private final Runnable _ticker;
+    private final long _tickIntervalInMillis;
+
+    private long _nextTickAt;
+
+    public NioTcpEventLoop(@Nonnull String name) throws IOException {
+        this(name, null, null);
+    }
+
+    /**
+     * @param ticker if not <code>null</code> this will be executed every <code>tickInterval</code> by this thread.
+     */
+    public NioTcpEventLoop(@Nonnull String name, @Nullable Runnable ticker, @Nullable Duration tickInterval) throws IOException {
+        setName(name);
+        setDaemon(true);
+        _selector = Selector.open();
+        _ticker = ticker;
+        _tickIntervalInMillis = ticker != null && tickInterval != null ? Math.max(tickInterval.toMilliSeconds(), 1) : 0;
+    }
+
+    /**
+     * @return <code>true</code> if the current thread is an event loop. Such a thread must never wait for another one.
+     */
+    public static boolean isEventLoopThread() {
+        return currentThread() instanceof NioTcpEventLoop;
+    }
+
+    public void execute(@Nonnull Runnable task) {
+        _tasks.add(task);
+        if (currentThread() != this) {
+            _selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers the given channel at this event loop. This method could be called from every thread.
+     */
+    public void register(@Nonnull final SelectableChannel channel, final int interestOps, @Nonnull final Selectable selectable) {
+        execute(new Runnable() { @Override public void run() {
+            try {
+                selectable.onRegistered(channel.register(_selector, interestOps, selectable));
+            } catch (Exception e) {
+                selectable.onError(e);
+            }
+        }});
+    }
+
+    @Override
+    public void run() {
+        try {
+            _nextTickAt = currentTimeMillis();
+            while (!isInterrupted() && _selector.isOpen()) {
+                if (_tasks.isEmpty()) {
+                    _selector.select(getSelectTimeoutInMillis());
+                } else {
+                    _selector.selectNow();
+                }
+                handleSelectedKeys();
+                runTasks();
+                tickIfRequired();
+            }
+        } catch (ClosedSelectorException ignored) {
+        } catch (IOException e) {
+            if (_selector.isOpen()) {
+                LOG.error("Got unexpected error while waiting for events. " + this + " will be stopped now.", e);
+            }
+        } finally {
+            closeQuietly(_selector);
+        }
+    }
+
+    protected long getSelectTimeoutInMillis() {
+        final long result;
+        if (_ticker != null) {
+            result = Math.max(_nextTickAt - currentTimeMillis(), 1);
+        } else {
+            result = 0;
+        }
+        return result;
+    }
+
+    protected void handleSelectedKeys() {
+        final Iterator<SelectionKey> i = _selector.selectedKeys().iterator();
+        while (i.hasNext()) {
+            final SelectionKey key = i.next();
+            i.remove();
+            final Selectable selectable = (Selectable) key.attachment();
+            try {
+                if (key.isValid()) {
+                    selectable.onSelected(key);
+                }
+            } catch (Exception e) {
+                selectable.onError(e);
+            }
+        }
+    }
+
+    protected void runTasks() {
+        Runnable task = _tasks.poll();
+        while (task != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOG.warn("Got unexpected error while executing " + task + " in " + this + ".", e);
+            }
+            task = _tasks.poll();
+        }
+    }
+
+    protected void tickIfRequired() {
+        if (_ticker != null && _nextTickAt <= currentTimeMillis()) {
+            try {
+                _ticker.run();
+            } catch (Exception e) {
+                LOG.warn("Got unexpected error while executing " + _ticker + " in " + this + ".", e);
+            } finally {
+                _nextTickAt = currentTimeMillis() + _tickIntervalInMillis;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            interrupt();
+            _selector.wakeup();
+        } finally {
+            if (currentThread() != this) {
+                join();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    public static interface Selectable {
+
+        /**
+         * Is called by the event loop thread after the channel was registered.
+         */
+        public void onRegistered(@Nonnull SelectionKey key) throws Exception;
+
+        /**
+         * Is called by the event loop thread if one of the interested operations is ready.
+         */
+        public void onSelected(@Nonnull SelectionKey key) throws Exception;
+
+        /**
+         * Is called by the event loop thread if one of the other callbacks failed.
+         */
+        public void onError(@Nonnull Exception e);
+
+    }
+
+}
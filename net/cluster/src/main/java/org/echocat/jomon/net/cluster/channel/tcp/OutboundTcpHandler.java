@@ -16,6 +16,7 @@ package org.echocat.jomon.net.cluster.channel.tcp;
 
 import org.echocat.jomon.net.service.SrvEntryBasedServicesManager;
 import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.Compressor;
 import org.echocat.jomon.runtime.util.Duration;
 import org.echocat.jomon.runtime.util.ServiceTemporaryUnavailableException;
 
@@ -23,6 +24,7 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,18 +35,27 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static java.lang.System.arraycopy;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static java.lang.Thread.currentThread;
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.echocat.jomon.net.Protocol.tcp;
 import static org.echocat.jomon.net.cluster.channel.ByteUtils.*;
 import static org.echocat.jomon.net.cluster.channel.ClusterChannelConstants.pingCommand;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.COMPRESSED_FLAG;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.FEATURE_DEFLATE;
 import static org.echocat.jomon.runtime.concurrent.ThreadUtils.stop;
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
 
 @ThreadSafe
 public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketAddress, OutboundTcpNode> {
 
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
     private final Map<InetSocketAddress, OutboundTcpNode> _addressToNode = new WeakHashMap<>();
     private final Map<OutboundTcpNode, Sender> _nodeToSender = new ConcurrentHashMap<>();
 
@@ -56,6 +67,10 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
 
     private Duration _connectionTimeout = new Duration("2s");
     private Duration _soTimeout = new Duration("30s");
+    private volatile int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private volatile Duration _batchLinger = new Duration(0);
+    private volatile boolean _compressionEnabled;
+    private volatile int _compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
 
     public OutboundTcpHandler(@Nonnull String service, @Nonnull UUID uuid, @Nonnegative int queuePerNodeCapacity, @Nullable String name, boolean waitForSendFinished, boolean dropMessagesIfQueueIsFull) {
         super(tcp, service);
@@ -85,6 +100,52 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
         _soTimeout = soTimeout;
     }
 
+    @Nonnegative
+    public int getMaxBatchSize() {
+        return _maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of queued messages which are coalesced into one write to a node.
+     */
+    public void setMaxBatchSize(@Nonnegative int maxBatchSize) {
+        _maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 1;
+    }
+
+    @Nonnull
+    public Duration getBatchLinger() {
+        return _batchLinger;
+    }
+
+    /**
+     * @param batchLinger how long a sender waits for more messages before it writes a batch which is not full.
+     *                    The default of <code>0</code> writes everything that is queued at the moment of the wakeup.
+     */
+    public void setBatchLinger(@Nonnull Duration batchLinger) {
+        _batchLinger = batchLinger;
+    }
+
+    public boolean isCompressionEnabled() {
+        return _compressionEnabled;
+    }
+
+    /**
+     * @param compressionEnabled if <code>true</code> messages of at least {@link #getCompressionThreshold() threshold}
+     *                           bytes are compressed for all nodes which announced that they support it.
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        _compressionEnabled = compressionEnabled;
+    }
+
+    @Nonnegative
+    public int getCompressionThreshold() {
+        return _compressionThreshold;
+    }
+
+    public void setCompressionThreshold(@Nonnegative int compressionThreshold) {
+        _compressionThreshold = compressionThreshold;
+    }
+
     @Override
     protected OutboundTcpNode tryGetOutputFor(@Nonnull InetSocketAddress original, @Nonnull InetSocketAddress target, @Nonnull State oldState) throws Exception {
         synchronized (this) {
@@ -266,11 +327,11 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
         return super.getOutputs();
     }
 
-    protected void send(@Nonnull Message message, @Nonnull OutboundTcpNode to) throws IOException, InterruptedException {
+    protected void send(@Nonnull List<Message> messages, @Nonnull OutboundTcpNode to) throws IOException, InterruptedException {
         boolean success = false;
         boolean errorHandled = false;
         try {
-            sendUnsafe(message, to);
+            sendUnsafe(messages, to);
             success = true;
         } catch (ServiceTemporaryUnavailableException e) {
             markAsGone(to, e.getMessage());
@@ -282,23 +343,111 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
         }
     }
 
-    protected void sendUnsafe(@Nonnull Message message, @Nonnull final OutboundTcpNode to) throws IOException {
+    protected void sendUnsafe(@Nonnull Message message, @Nonnull OutboundTcpNode to) throws IOException {
+        sendUnsafe(singletonList(message), to);
+    }
+
+    /**
+     * Writes all given messages with one write to the given node.
+     */
+    protected void sendUnsafe(@Nonnull List<Message> messages, @Nonnull final OutboundTcpNode to) throws IOException {
         // noinspection SynchronizationOnLocalVariableOrMethodParameter
         synchronized (to) {
             try {
-                final OutputStream os = to.getOutputStream();
-                os.write(message.getCommand());
-                final byte[] lengthAsBytes = new byte[4];
-                putInt(lengthAsBytes, 0, message.getLength());
-                os.write(lengthAsBytes);
-                os.write(message.getData(), message.getOffset(), message.getLength());
-                to.recordOutbound();
+                final boolean compress = _compressionEnabled && isCompressionSupportedBy(to);
+                final byte[] frames = toFrames(messages, compress ? to : null);
+                final long start = nanoTime();
+                to.getOutputStream().write(frames);
+                to.recordOutboundBatch(messages.size(), nanoTime() - start);
+                for (int i = 0; i < messages.size(); i++) {
+                    to.recordOutbound();
+                }
             } catch (SocketException e) {
                 throw new ServiceTemporaryUnavailableException(e);
             }
         }
     }
 
+    /**
+     * @param compressFor if not <code>null</code> messages which reach the {@link #getCompressionThreshold() threshold}
+     *                    are compressed with the compressor of this node. Has to be called while holding its monitor.
+     */
+    @Nonnull
+    protected byte[] toFrames(@Nonnull List<Message> messages, @Nullable OutboundTcpNode compressFor) throws IOException {
+        int remaining = 0;
+        for (Message message : messages) {
+            remaining += 5 + message.getLength();
+        }
+        byte[] frames = new byte[remaining];
+        int offset = 0;
+        for (Message message : messages) {
+            remaining -= 5 + message.getLength();
+            if (compressFor != null && message.getLength() >= _compressionThreshold) {
+                final Compressor compressor = compressFor.getCompressor();
+                final long start = nanoTime();
+                final int compressedLength = compressor.compress(message.getData(), message.getOffset(), message.getLength());
+                final int frameLength = 9 + compressedLength;
+                compressFor.recordOutboundCompression(message.getLength(), frameLength, nanoTime() - start);
+                if (offset + frameLength + remaining > frames.length) {
+                    // Not compressible data could become larger.
+                    frames = copyOf(frames, offset + frameLength + remaining);
+                }
+                frames[offset] = message.getCommand();
+                putInt(frames, offset + 1, (4 + compressedLength) | COMPRESSED_FLAG);
+                putInt(frames, offset + 5, message.getLength());
+                arraycopy(compressor.getBuffer(), 0, frames, offset + 9, compressedLength);
+                offset += frameLength;
+            } else {
+                frames[offset] = message.getCommand();
+                putInt(frames, offset + 1, message.getLength());
+                arraycopy(message.getData(), message.getOffset(), frames, offset + 5, message.getLength());
+                offset += 5 + message.getLength();
+            }
+        }
+        return offset == frames.length ? frames : copyOf(frames, offset);
+    }
+
+    protected boolean isCompressionSupportedBy(@Nonnull OutboundTcpNode node) throws IOException {
+        final int features = readRemoteFeaturesIfAvailable(node);
+        return features >= 0 && (features & FEATURE_DEFLATE) != 0;
+    }
+
+    /**
+     * The accepting side sends its features as a ping frame directly after its UUID. Because nodes of older versions
+     * send nothing this is only read if it is already available.
+     *
+     * @return the features of the given node or <code>-1</code> if they are not known (yet).
+     */
+    protected int readRemoteFeaturesIfAvailable(@Nonnull OutboundTcpNode of) throws IOException {
+        if (of.getRemoteFeatures() < 0) {
+            final InputStream is = of.getInputStream();
+            if (is.available() >= 5) {
+                final byte[] header = readFully(is, 5);
+                final int length = getInt(header, 1);
+                if (header[0] != pingCommand || length < 0 || length > 1024) {
+                    throw new IOException("Received an unexpected content from " + of + ".");
+                }
+                final byte[] payload = readFully(is, length);
+                of.setRemoteFeatures(length > 0 ? payload[0] & 0xFF : 0);
+            }
+        }
+        return of.getRemoteFeatures();
+    }
+
+    @Nonnull
+    protected byte[] readFully(@Nonnull InputStream is, @Nonnegative int length) throws IOException {
+        final byte[] result = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int read = is.read(result, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return result;
+    }
+
     @Nonnull
     protected Message createPingMessage() {
         return new Message(pingCommand, new byte[0]);
@@ -386,19 +535,60 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
 
         @Override
         public void run() {
+            final List<SendingTask> batch = new ArrayList<>();
             try {
                 while (!currentThread().isInterrupted()) {
-                    final SendingTask task = _tasks.take();
-                    task.execute();
+                    batch.add(_tasks.take());
+                    collectMoreFor(batch);
+                    execute(batch);
+                    batch.clear();
                 }
             } catch (InterruptedException ignored) {
                 currentThread().interrupt();
             }
         }
 
+        protected void collectMoreFor(@Nonnull List<SendingTask> batch) throws InterruptedException {
+            final int maxBatchSize = _maxBatchSize;
+            _tasks.drainTo(batch, maxBatchSize - batch.size());
+            final long lingerInMillis = _batchLinger.toMilliSeconds();
+            if (lingerInMillis > 0) {
+                final long lingerUntil = currentTimeMillis() + lingerInMillis;
+                long currentLingerInMillis = lingerInMillis;
+                while (batch.size() < maxBatchSize && currentLingerInMillis > 0) {
+                    final SendingTask task = _tasks.poll(currentLingerInMillis, MILLISECONDS);
+                    if (task != null) {
+                        batch.add(task);
+                        _tasks.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                    currentLingerInMillis = lingerUntil - currentTimeMillis();
+                }
+            }
+        }
+
+        protected void execute(@Nonnull List<SendingTask> batch) throws InterruptedException {
+            final List<Message> messages = new ArrayList<>(batch.size());
+            for (SendingTask task : batch) {
+                messages.add(task.getMessage());
+            }
+            Throwable exception = null;
+            try {
+                send(messages, _node);
+            } catch (InterruptedException e) {
+                exception = e;
+                throw e;
+            } catch (Throwable e) {
+                exception = e;
+            } finally {
+                for (SendingTask task : batch) {
+                    task.done(exception);
+                }
+            }
+        }
+
         @Nonnull
         public SendingTask submit(@Nonnull Message message) throws InterruptedException {
-            final SendingTask task = new SendingTask(message, _node);
+            final SendingTask task = new SendingTask(message);
             final boolean isInQueue;
             if (_dropMessagesIfQueueIsFull) {
                 isInQueue = _tasks.offer(task);
@@ -411,7 +601,7 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
 
         @Nonnull
         public SendingTask submit(@Nonnull Message message, @Nonnegative long timeout, @Nonnull TimeUnit unit) throws InterruptedException, TimeoutException, IOException {
-            final SendingTask task = new SendingTask(message, _node);
+            final SendingTask task = new SendingTask(message);
             final boolean isInQueue = _tasks.offer(task, timeout, unit);
             if (isInQueue && !_dropMessagesIfQueueIsFull) {
                 throw new TimeoutException();
@@ -433,32 +623,31 @@ public class OutboundTcpHandler extends SrvEntryBasedServicesManager<InetSocketA
     protected class SendingTask implements Future<Void> {
 
         private final Message _message;
-        private final OutboundTcpNode _to;
         private final Lock _lock = new ReentrantLock(true);
         private final Condition _condition = _lock.newCondition();
 
         private volatile boolean _done;
         private Throwable _exception;
 
-        public SendingTask(@Nonnull Message message, @Nonnull OutboundTcpNode to) {
+        public SendingTask(@Nonnull Message message) {
             _message = message;
-            _to = to;
         }
 
-        public void execute() throws InterruptedException {
-            _lock.lockInterruptibly();
+        @Nonnull
+        public Message getMessage() {
+            return _message;
+        }
+
+        /**
+         * Marks this task as done after it was send as part of a batch.
+         */
+        public void done(@Nullable Throwable exception) {
+            _lock.lock();
             try {
                 if (!_done) {
-                    try {
-                        send(_message, _to);
-                    } catch (InterruptedException e) {
-                        throw e;
-                    } catch (Throwable e) {
-                        _exception = e;
-                    } finally {
-                        _done = true;
-                        _condition.signalAll();
-                    }
+                    _exception = exception;
+                    _done = true;
+                    _condition.signalAll();
                 }
             } finally {
                 _lock.unlock();
@@ -14,11 +14,15 @@
 
 package org.echocat.jomon.net.cluster.channel.tcp;
 
+import org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.Compressor;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketException;
 import java.util.UUID;
 
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
@@ -28,6 +32,10 @@ public class OutboundTcpNode extends RemoteTcpNode {
     private final OutputStream _outputStream;
     private final Runnable _onClose;
 
+    private volatile int _remoteFeatures = -1;
+    private Compressor _compressor;
+    private boolean _closed;
+
     public OutboundTcpNode(@Nonnull UUID id, @Nonnull Socket socket, @Nonnull OutputStream outputStream) throws IOException {
         this(id, socket, outputStream, null);
     }
@@ -43,6 +51,39 @@ public class OutboundTcpNode extends RemoteTcpNode {
         return _outputStream;
     }
 
+    @Nonnull
+    public InputStream getInputStream() throws IOException {
+        return getSocket().getInputStream();
+    }
+
+    /**
+     * @return the {@link TcpCompression#FEATURES features} announced by the remote node or <code>-1</code> if they are
+     * not received (yet). Nodes of older versions never announce anything.
+     */
+    public int getRemoteFeatures() {
+        return _remoteFeatures;
+    }
+
+    public void setRemoteFeatures(int remoteFeatures) {
+        _remoteFeatures = remoteFeatures;
+    }
+
+    /**
+     * Has to be called while holding the monitor of this node, all compressed frames are part of one stream.
+     *
+     * @throws SocketException if this node is already closed.
+     */
+    @Nonnull
+    public Compressor getCompressor() throws SocketException {
+        if (_closed) {
+            throw new SocketException("Socket closed");
+        }
+        if (_compressor == null) {
+            _compressor = new Compressor();
+        }
+        return _compressor;
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -53,7 +94,19 @@ public class OutboundTcpNode extends RemoteTcpNode {
             try {
                 closeQuietly(_outputStream);
             } finally {
-                super.close();
+                try {
+                    super.close();
+                } finally {
+                    // The socket is closed first, so a sender which blocks in a write while it holds the monitor fails
+                    // and releases it.
+                    synchronized (this) {
+                        _closed = true;
+                        if (_compressor != null) {
+                            _compressor.close();
+                            _compressor = null;
+                        }
+                    }
+                }
             }
         }
     }
@@ -32,6 +32,11 @@ public abstract class RemoteTcpNode extends TcpNodeSupport implements Closeable
         _socket = socket;
     }
 
+    @Nonnull
+    protected Socket getSocket() {
+        return _socket;
+    }
+
     @Nonnull
     @Override
     public InetSocketAddress getAddress() {
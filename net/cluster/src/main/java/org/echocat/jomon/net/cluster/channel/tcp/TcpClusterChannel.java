@@ -14,10 +14,9 @@
 
 package org.echocat.jomon.net.cluster.channel.tcp;
 
-import org.echocat.jomon.net.cluster.channel.*;
+import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
 import org.echocat.jomon.net.cluster.channel.tcp.InboundTcpWorker.Reader;
-import org.echocat.jomon.runtime.StringUtils;
-import org.echocat.jomon.runtime.jaxb.InetSocketAddressPropertyEditor;
 import org.echocat.jomon.runtime.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,16 +34,11 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
 import static java.lang.Thread.currentThread;
-import static java.util.Collections.unmodifiableSet;
-import static org.echocat.jomon.net.cluster.channel.Node.ADDRESS_BASED_COMPARATOR;
 import static org.echocat.jomon.runtime.concurrent.ThreadUtils.stop;
 import static org.echocat.jomon.runtime.util.ResourceUtils.closeQuietly;
 
 @ThreadSafe
-public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> implements AddressEnabledClusterChannel<UUID, TcpNode>, SendingQueueEnabledClusterChannel<UUID, TcpNode>, RemoteAddressesEnabledClusterChannel<UUID, TcpNode>, ServiceEnabledClusterChannel<UUID, TcpNode>, BlockableClusterChannel<UUID, TcpNode>, DropMessagesEnabledClusterChannel<UUID, TcpNode> {
-
-    public static final int DEFAULT_PORT = 56876;
-    public static final Duration RETRY_DURATION = new Duration("10s");
+public class TcpClusterChannel extends TcpClusterChannelSupport {
 
     private static final Logger LOG = LoggerFactory.getLogger(TcpClusterChannel.class);
 
@@ -68,15 +62,11 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
         }
     };
 
-    private String _service = "ttc";
-    private Duration _connectionTimeout = new Duration("2s");
-    private Collection<InetSocketAddress> _remoteAddresses;
-    private InetSocketAddress _address = new InetSocketAddress(DEFAULT_PORT);
-    private int _maxNumberOfIncomingConnections = 100;
     private int _numberOfIncomingWorker = 10;
-    private int _sendingQueueCapacity = 250;
-    private boolean _blocking = true;
-    private boolean _dropMessagesIfQueueIsFull;
+    private int _maxBatchSize = OutboundTcpHandler.DEFAULT_MAX_BATCH_SIZE;
+    private Duration _batchLinger = new Duration(0);
+    private boolean _compressionEnabled;
+    private int _compressionThreshold = OutboundTcpHandler.DEFAULT_COMPRESSION_THRESHOLD;
 
     private OutboundTcpHandler _outbound;
     private ServerSocket _in;
@@ -88,183 +78,115 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
         super(uuid);
     }
 
-    @Nonnull
-    @Override
-    public UUID getId() {
-        return getUuid();
-    }
-
-    @Override
-    @Nonnull
-    public String getService() {
-        return _service;
-    }
-
-    @Override
-    public void setService(@Nonnull final String service) {
-        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
-            _service = service;
-            return null;
-        }});
-    }
-
-    public Duration getConnectionTimeout() {
-        return _connectionTimeout;
-    }
-
-    public void setConnectionTimeout(final Duration connectionTimeout) {
-        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
-            _connectionTimeout = connectionTimeout;
-            if (_outbound != null) {
-                _outbound.setConnectionTimeout(connectionTimeout);
-            }
-            return null;
-        }});
-    }
-
     @Override
-    @Nullable
-    public Collection<InetSocketAddress> getRemoteAddresses() {
-        return _remoteAddresses;
-    }
-
-    @Override
-    public void setRemoteAddresses(@Nullable final Collection<InetSocketAddress> remoteAddresses) {
-        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
-            if (remoteAddresses != null ? !remoteAddresses.equals(_remoteAddresses) : _remoteAddresses != null) {
-                _remoteAddresses = remoteAddresses;
-                if (_outbound != null) {
-                    _outbound.setInputs(remoteAddresses);
-                    try {
-                        _outbound.check();
-                    } catch (InterruptedException ignored) {
-                        currentThread().interrupt();
-                    }
-                }
-            }
-            return null;
-        }});
+    protected void onConnectionTimeoutChanged(@Nonnull Duration connectionTimeout) throws Exception {
+        if (_outbound != null) {
+            _outbound.setConnectionTimeout(connectionTimeout);
+        }
     }
 
     @Override
-    @Nullable
-    public String getRemoteAddressesAsString() {
-        final Collection<InetSocketAddress> remoteAddresses = _remoteAddresses;
-        final String result;
-        if (remoteAddresses != null) {
-            final StringBuilder sb = new StringBuilder();
-            for (InetSocketAddress address : remoteAddresses) {
-                if (sb.length() > 0) {
-                    sb.append(',');
-                }
-                sb.append(address.getHostString()).append(':').append(address.getPort());
+    protected void onRemoteAddressesChanged(@Nullable Collection<InetSocketAddress> remoteAddresses) throws Exception {
+        if (_outbound != null) {
+            _outbound.setInputs(remoteAddresses);
+            try {
+                _outbound.check();
+            } catch (InterruptedException ignored) {
+                currentThread().interrupt();
             }
-            result = sb.toString();
-        } else {
-            result = null;
         }
-        return result;
     }
 
     @Override
-    public void setRemoteAddressesAsString(@Nullable String remoteAddressesAsString) {
-        final Collection<InetSocketAddress> addresses;
-        if (remoteAddressesAsString != null) {
-            addresses = new ArrayList<>();
-            final String[] remoteAddressesAsStrings = StringUtils.split(remoteAddressesAsString, ",;\n\r\t", false, true);
-            for (String remoteAddressAsString : remoteAddressesAsStrings) {
-                final InetSocketAddressPropertyEditor editor = new InetSocketAddressPropertyEditor();
-                editor.setAsText(remoteAddressAsString);
-                final Object value = editor.getValue();
-                if (value instanceof InetSocketAddress) {
-                    addresses.add((InetSocketAddress) value);
-                }
-            }
-        } else {
-            addresses = null;
-        }
-        setRemoteAddresses(addresses);
+    protected void onAddressChanged(@Nullable InetSocketAddress address) throws Exception {
+        closeQuietly(_in);
+        _in = null;
+        closeQuietly(_inboundWorkers);
     }
 
-    @Override
-    public int getSendingQueueCapacity() {
-        return _sendingQueueCapacity;
+    @Nonnegative
+    public int getNumberOfIncomingWorker() {
+        return _numberOfIncomingWorker;
     }
 
-    @Override
-    public void setSendingQueueCapacity(final int sendingQueueCapacity) {
+    public void setNumberOfIncomingWorker(@Nonnegative final int numberOfIncomingWorker) {
         doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
-            _sendingQueueCapacity = sendingQueueCapacity;
+            _numberOfIncomingWorker = numberOfIncomingWorker;
             return null;
         }});
     }
 
-    @Override
-    public boolean isBlocking() {
-        return _blocking;
+    @Nonnegative
+    public int getMaxBatchSize() {
+        return _maxBatchSize;
     }
 
-    @Override
-    public void setBlocking(final boolean blocking) {
-        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
-            _blocking = blocking;
+    /**
+     * @see OutboundTcpHandler#setMaxBatchSize(int)
+     */
+    public void setMaxBatchSize(@Nonnegative final int maxBatchSize) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            _maxBatchSize = maxBatchSize;
+            if (_outbound != null) {
+                _outbound.setMaxBatchSize(maxBatchSize);
+            }
             return null;
         }});
     }
 
-    @Override
-    public boolean isDropMessagesIfQueueIsFull() {
-        return _dropMessagesIfQueueIsFull;
+    @Nonnull
+    public Duration getBatchLinger() {
+        return _batchLinger;
     }
 
-    @Override
-    public void setDropMessagesIfQueueIsFull(final boolean dropMessagesIfQueueIsFull) {
-        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
-            _dropMessagesIfQueueIsFull = dropMessagesIfQueueIsFull;
+    /**
+     * @see OutboundTcpHandler#setBatchLinger(Duration)
+     */
+    public void setBatchLinger(@Nonnull final Duration batchLinger) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            _batchLinger = batchLinger;
+            if (_outbound != null) {
+                _outbound.setBatchLinger(batchLinger);
+            }
             return null;
         }});
     }
 
-    @Override
-    @Nullable
-    public InetSocketAddress getAddress() {
-        return _address;
+    public boolean isCompressionEnabled() {
+        return _compressionEnabled;
     }
 
-    @Override
-    public void setAddress(@Nullable final InetSocketAddress address) {
+    /**
+     * @see OutboundTcpHandler#setCompressionEnabled(boolean)
+     */
+    public void setCompressionEnabled(final boolean compressionEnabled) {
         doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
-            if (address != null ? !address.equals(_address) : _address != null) {
-                _address = address;
-                closeQuietly(_in);
-                _in = null;
-                closeQuietly(_inboundWorkers);
+            _compressionEnabled = compressionEnabled;
+            if (_outbound != null) {
+                _outbound.setCompressionEnabled(compressionEnabled);
             }
             return null;
         }});
     }
 
     @Nonnegative
-    public int getNumberOfIncomingWorker() {
-        return _numberOfIncomingWorker;
+    public int getCompressionThreshold() {
+        return _compressionThreshold;
     }
 
-    public void setNumberOfIncomingWorker(@Nonnegative final int numberOfIncomingWorker) {
-        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
-            _numberOfIncomingWorker = numberOfIncomingWorker;
+    /**
+     * @see OutboundTcpHandler#setCompressionThreshold(int)
+     */
+    public void setCompressionThreshold(@Nonnegative final int compressionThreshold) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            _compressionThreshold = compressionThreshold;
+            if (_outbound != null) {
+                _outbound.setCompressionThreshold(compressionThreshold);
+            }
             return null;
         }});
     }
 
-    @Nonnegative
-    public int getMaxNumberOfIncomingConnections() {
-        return _maxNumberOfIncomingConnections;
-    }
-
-    public void setMaxNumberOfIncomingConnections(@Nonnegative int maxNumberOfIncomingConnections) {
-        _maxNumberOfIncomingConnections = maxNumberOfIncomingConnections;
-    }
-
     @Override
     public void setSoTimeout(@Nonnull final Duration soTimeout) {
         doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
@@ -299,6 +221,10 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
         _outbound.setConnectionTimeout(getConnectionTimeout());
         _outbound.setSoTimeout(getSoTimeout());
         _outbound.setCheckInterval(getPingInterval());
+        _outbound.setMaxBatchSize(_maxBatchSize);
+        _outbound.setBatchLinger(_batchLinger);
+        _outbound.setCompressionEnabled(_compressionEnabled);
+        _outbound.setCompressionThreshold(_compressionThreshold);
         _outbound.setInputs(getRemoteAddresses());
 
         _acceptor = new Acceptor();
@@ -330,12 +256,13 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
                 closeQuietly(_in);
                 _in = null;
             }
-            if (_in == null && _address != null) {
+            final InetSocketAddress address = getAddress();
+            if (_in == null && address != null) {
                 _in = new ServerSocket();
-                _in.bind(_address);
+                _in.bind(address);
                 _in.setReuseAddress(true);
                 _in.setSoTimeout((int) getSoTimeout().toMilliSeconds());
-                LOG.info("Start to listen at " + _address.getAddress().getCanonicalHostName() + ":" + _address.getPort() + " for " + _service + "...");
+                LOG.info("Start to listen at " + address.getAddress().getCanonicalHostName() + ":" + address.getPort() + " for " + getService() + "...");
             }
             return _in;
         } finally {
@@ -398,12 +325,6 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
         return _outbound != null;
     }
 
-    @Nonnull
-    @Override
-    public LocalTcpNode getLocalNode() {
-        return new LocalTcpNode(getUuid(), _address);
-    }
-
     @Nonnull
     @Override
     public Set<? extends TcpNode> getNodes() {
@@ -423,33 +344,13 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
 
     @Nonnull
     protected Set<TcpNodeInfo> merge(@Nullable Object[] outboundTcpNodes, @Nullable Set<InboundTcpNode> inboundTcpNodes) {
-        final Map<UUID, TcpNodeInfo> uuidToNode = new HashMap<>();
+        final List<OutboundTcpNode> outbound = new ArrayList<>();
         if (outboundTcpNodes != null) {
             for (Object plainNode : outboundTcpNodes) {
-                final OutboundTcpNode node = (OutboundTcpNode) plainNode;
-                final UUID uuid = node.getUuid();
-                TcpNodeInfo info = uuidToNode.get(uuid);
-                if (info == null) {
-                    info = new TcpNodeInfo(uuid, node.getAddress());
-                    uuidToNode.put(uuid, info);
-                }
-                info.setOutbound(node);
-            }
-        }
-        if (inboundTcpNodes != null) {
-            for (InboundTcpNode node : inboundTcpNodes) {
-                final UUID uuid = node.getUuid();
-                TcpNodeInfo info = uuidToNode.get(uuid);
-                if (info == null) {
-                    info = new TcpNodeInfo(uuid, node.getAddress());
-                    uuidToNode.put(uuid, info);
-                }
-                info.setInbound(node);
+                outbound.add((OutboundTcpNode) plainNode);
             }
         }
-        final Set<TcpNodeInfo> info = new TreeSet<>(ADDRESS_BASED_COMPARATOR);
-        info.addAll(uuidToNode.values());
-        return unmodifiableSet(info);
+        return merge(outbound, inboundTcpNodes);
     }
 
     protected class Acceptor extends Thread {
@@ -509,8 +410,8 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
             final Lock lock = getLock();
             lock.lockInterruptibly();
             try {
-                if (_inboundWorkers.size() < _maxNumberOfIncomingConnections) {
-                    final InboundTcpWorker worker = new InboundTcpWorker(_reader, socket, getUuid(), getService(), TcpClusterChannel.this.getName());
+                if (_inboundWorkers.size() < getMaxNumberOfIncomingConnections()) {
+                    final InboundTcpWorker worker = new InboundTcpWorker(_reader, socket, getUuid(), getService(), TcpClusterChannel.this.getName(), getReceiveBufferPool(), getMaximumFrameSize());
                     final InboundTcpNode node = worker.getNode();
                     final UUID uuid = node.getUuid();
                     if (getUuid().equals(uuid)) {
@@ -521,7 +422,7 @@ public class TcpClusterChannel extends NetBasedClusterChannel<UUID, TcpNode> imp
                         _inboundWorkers.add(worker);
                     }
                 } else {
-                    LOG.warn("Dropping incoming connection from " + socket.getRemoteSocketAddress() + " because the maximum of " + _maxNumberOfIncomingConnections + " is reach.");
+                    LOG.warn("Dropping incoming connection from " + socket.getRemoteSocketAddress() + " because the maximum of " + getMaxNumberOfIncomingConnections() + " is reach.");
                 }
             } finally {
                 lock.unlock();
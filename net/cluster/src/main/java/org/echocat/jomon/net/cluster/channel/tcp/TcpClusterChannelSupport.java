@@ -0,0 +1,296 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.cluster.channel.*;
+import org.echocat.jomon.runtime.StringUtils;
+import org.echocat.jomon.runtime.jaxb.InetSocketAddressPropertyEditor;
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import static java.util.Collections.unmodifiableSet;
+import static org.echocat.jomon.net.cluster.channel.Node.ADDRESS_BASED_COMPARATOR;
+
+/**
+ * Holds the configuration and the node bookkeeping which is shared by all TCP based transports. The wire protocol
+ * of all implementations is the same: After the connection is established the accepting side sends its UUID
+ * (16 bytes) and the connecting side answers with its own UUID. After that every message is send as one command
+ * byte followed by the length of the payload (4 bytes) and the payload itself. The accepting side could additionally
+ * announce features which the connecting side could use, see {@link TcpCompression}.
+ */
+@ThreadSafe
+public abstract class TcpClusterChannelSupport extends NetBasedClusterChannel<UUID, TcpNode> implements AddressEnabledClusterChannel<UUID, TcpNode>, SendingQueueEnabledClusterChannel<UUID, TcpNode>, RemoteAddressesEnabledClusterChannel<UUID, TcpNode>, ServiceEnabledClusterChannel<UUID, TcpNode>, BlockableClusterChannel<UUID, TcpNode>, DropMessagesEnabledClusterChannel<UUID, TcpNode> {
+
+    public static final int DEFAULT_PORT = 56876;
+    public static final Duration RETRY_DURATION = new Duration("10s");
+    public static final int DEFAULT_MAXIMUM_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final BufferPool _receiveBufferPool = new BufferPool();
+
+    private String _service = "ttc";
+    private Duration _connectionTimeout = new Duration("2s");
+    private Collection<InetSocketAddress> _remoteAddresses;
+    private InetSocketAddress _address = new InetSocketAddress(DEFAULT_PORT);
+    private int _maxNumberOfIncomingConnections = 100;
+    private int _sendingQueueCapacity = 250;
+    private boolean _blocking = true;
+    private boolean _dropMessagesIfQueueIsFull;
+    private int _maximumFrameSize = DEFAULT_MAXIMUM_FRAME_SIZE;
+
+    protected TcpClusterChannelSupport() {}
+
+    protected TcpClusterChannelSupport(@Nullable UUID uuid) {
+        super(uuid);
+    }
+
+    @Nonnull
+    @Override
+    public UUID getId() {
+        return getUuid();
+    }
+
+    @Override
+    @Nonnull
+    public String getService() {
+        return _service;
+    }
+
+    @Override
+    public void setService(@Nonnull final String service) {
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _service = service;
+            return null;
+        }});
+    }
+
+    public Duration getConnectionTimeout() {
+        return _connectionTimeout;
+    }
+
+    public void setConnectionTimeout(final Duration connectionTimeout) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            _connectionTimeout = connectionTimeout;
+            onConnectionTimeoutChanged(connectionTimeout);
+            return null;
+        }});
+    }
+
+    @Override
+    @Nullable
+    public Collection<InetSocketAddress> getRemoteAddresses() {
+        return _remoteAddresses;
+    }
+
+    @Override
+    public void setRemoteAddresses(@Nullable final Collection<InetSocketAddress> remoteAddresses) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            if (remoteAddresses != null ? !remoteAddresses.equals(_remoteAddresses) : _remoteAddresses != null) {
+                _remoteAddresses = remoteAddresses;
+                onRemoteAddressesChanged(remoteAddresses);
+            }
+            return null;
+        }});
+    }
+
+    @Override
+    @Nullable
+    public String getRemoteAddressesAsString() {
+        final Collection<InetSocketAddress> remoteAddresses = _remoteAddresses;
+        final String result;
+        if (remoteAddresses != null) {
+            final StringBuilder sb = new StringBuilder();
+            for (InetSocketAddress address : remoteAddresses) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(address.getHostString()).append(':').append(address.getPort());
+            }
+            result = sb.toString();
+        } else {
+            result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public void setRemoteAddressesAsString(@Nullable String remoteAddressesAsString) {
+        final Collection<InetSocketAddress> addresses;
+        if (remoteAddressesAsString != null) {
+            addresses = new ArrayList<>();
+            final String[] remoteAddressesAsStrings = StringUtils.split(remoteAddressesAsString, ",;\n\r\t", false, true);
+            for (String remoteAddressAsString : remoteAddressesAsStrings) {
+                final InetSocketAddressPropertyEditor editor = new InetSocketAddressPropertyEditor();
+                editor.setAsText(remoteAddressAsString);
+                final Object value = editor.getValue();
+                if (value instanceof InetSocketAddress) {
+                    addresses.add((InetSocketAddress) value);
+                }
+            }
+        } else {
+            addresses = null;
+        }
+        setRemoteAddresses(addresses);
+    }
+
+    @Override
+    public int getSendingQueueCapacity() {
+        return _sendingQueueCapacity;
+    }
+
+    @Override
+    public void setSendingQueueCapacity(final int sendingQueueCapacity) {
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _sendingQueueCapacity = sendingQueueCapacity;
+            return null;
+        }});
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return _blocking;
+    }
+
+    @Override
+    public void setBlocking(final boolean blocking) {
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _blocking = blocking;
+            return null;
+        }});
+    }
+
+    @Override
+    public boolean isDropMessagesIfQueueIsFull() {
+        return _dropMessagesIfQueueIsFull;
+    }
+
+    @Override
+    public void setDropMessagesIfQueueIsFull(final boolean dropMessagesIfQueueIsFull) {
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _dropMessagesIfQueueIsFull = dropMessagesIfQueueIsFull;
+            return null;
+        }});
+    }
+
+    @Override
+    @Nullable
+    public InetSocketAddress getAddress() {
+        return _address;
+    }
+
+    @Override
+    public void setAddress(@Nullable final InetSocketAddress address) {
+        doSafe(new Callable<Void>() { @Override public Void call() throws Exception {
+            if (address != null ? !address.equals(_address) : _address != null) {
+                _address = address;
+                onAddressChanged(address);
+            }
+            return null;
+        }});
+    }
+
+    @Nonnegative
+    public int getMaxNumberOfIncomingConnections() {
+        return _maxNumberOfIncomingConnections;
+    }
+
+    public void setMaxNumberOfIncomingConnections(@Nonnegative int maxNumberOfIncomingConnections) {
+        _maxNumberOfIncomingConnections = maxNumberOfIncomingConnections;
+    }
+
+    @Nonnegative
+    public int getMaximumFrameSize() {
+        return _maximumFrameSize;
+    }
+
+    /**
+     * @param maximumFrameSize the maximum number of bytes of a received message. A connection which receives a larger
+     *                         one is closed, so a broken or malicious peer could not request arbitrary large buffers.
+     */
+    public void setMaximumFrameSize(@Nonnegative final int maximumFrameSize) {
+        if (maximumFrameSize <= 0) {
+            throw new IllegalArgumentException("The maximumFrameSize have to be greater than 0.");
+        }
+        doSafeAndReinetIfNeeded(new Callable<Void>() { @Override public Void call() throws Exception {
+            _maximumFrameSize = maximumFrameSize;
+            return null;
+        }});
+    }
+
+    /**
+     * @return the pool which holds the data of received messages while they are handled.
+     */
+    @Nonnull
+    public BufferPool getReceiveBufferPool() {
+        return _receiveBufferPool;
+    }
+
+    /**
+     * Is called while holding the {@link #getLock() lock}.
+     */
+    protected void onConnectionTimeoutChanged(@Nonnull Duration connectionTimeout) throws Exception {}
+
+    /**
+     * Is called while holding the {@link #getLock() lock}.
+     */
+    protected void onRemoteAddressesChanged(@Nullable Collection<InetSocketAddress> remoteAddresses) throws Exception {}
+
+    /**
+     * Is called while holding the {@link #getLock() lock}.
+     */
+    protected void onAddressChanged(@Nullable InetSocketAddress address) throws Exception {}
+
+    @Nonnull
+    @Override
+    public LocalTcpNode getLocalNode() {
+        return new LocalTcpNode(getUuid(), _address);
+    }
+
+    @Nonnull
+    protected Set<TcpNodeInfo> merge(@Nullable Iterable<? extends RemoteTcpNode> outboundTcpNodes, @Nullable Iterable<? extends RemoteTcpNode> inboundTcpNodes) {
+        final Map<UUID, TcpNodeInfo> uuidToNode = new HashMap<>();
+        if (outboundTcpNodes != null) {
+            for (RemoteTcpNode node : outboundTcpNodes) {
+                getInfoFor(node, uuidToNode).setOutbound(node);
+            }
+        }
+        if (inboundTcpNodes != null) {
+            for (RemoteTcpNode node : inboundTcpNodes) {
+                getInfoFor(node, uuidToNode).setInbound(node);
+            }
+        }
+        final Set<TcpNodeInfo> info = new TreeSet<>(ADDRESS_BASED_COMPARATOR);
+        info.addAll(uuidToNode.values());
+        return unmodifiableSet(info);
+    }
+
+    @Nonnull
+    private TcpNodeInfo getInfoFor(@Nonnull RemoteTcpNode node, @Nonnull Map<UUID, TcpNodeInfo> uuidToNode) {
+        final UUID uuid = node.getUuid();
+        TcpNodeInfo info = uuidToNode.get(uuid);
+        if (info == null) {
+            info = new TcpNodeInfo(uuid, node.getAddress());
+            uuidToNode.put(uuid, info);
+        }
+        return info;
+    }
+
+}
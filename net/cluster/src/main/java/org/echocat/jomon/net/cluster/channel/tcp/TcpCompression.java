@@ -0,0 +1,127 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.util.Arrays.copyOf;
+import static java.util.zip.Deflater.BEST_SPEED;
+import static java.util.zip.Deflater.SYNC_FLUSH;
+
+/**
+ * Compression of the TCP transport. The accepting side announces its {@link #FEATURE_DEFLATE features} with a ping
+ * frame directly after its UUID. A connecting side which knows this feature could send frames with the
+ * {@link #COMPRESSED_FLAG} set in the length. The payload of such a frame is the uncompressed length (4 bytes)
+ * followed by the deflated data. All compressed frames of one connection are one deflate stream, so similar small
+ * messages could reference the content of the previous ones.
+ */
+public final class TcpCompression {
+
+    public static final int FEATURE_DEFLATE = 1;
+    public static final int FEATURES = FEATURE_DEFLATE;
+
+    public static final int COMPRESSED_FLAG = 0x80000000;
+
+    /**
+     * Deflate could not compress data better than this. A frame which announces a larger uncompressed length is
+     * rejected before any buffer is allocated for it.
+     */
+    public static final int MAXIMUM_COMPRESSION_RATIO = 1032;
+
+    public static boolean isPossibleUncompressedLength(@Nonnegative int compressedLength, int uncompressedLength) {
+        return uncompressedLength >= 0 && uncompressedLength <= (long) compressedLength * MAXIMUM_COMPRESSION_RATIO;
+    }
+
+    @NotThreadSafe
+    public static class Compressor implements AutoCloseable {
+
+        private final Deflater _deflater = new Deflater(BEST_SPEED, true);
+        private byte[] _buffer = new byte[1024];
+
+        /**
+         * @return the number of compressed bytes which are available in {@link #getBuffer()}.
+         */
+        @Nonnegative
+        public int compress(@Nonnull byte[] data, @Nonnegative int offset, @Nonnegative int length) {
+            _deflater.setInput(data, offset, length);
+            int written = 0;
+            boolean bufferFull = true;
+            while (bufferFull) {
+                if (written == _buffer.length) {
+                    _buffer = copyOf(_buffer, _buffer.length * 2);
+                }
+                written += _deflater.deflate(_buffer, written, _buffer.length - written, SYNC_FLUSH);
+                bufferFull = written == _buffer.length;
+            }
+            return written;
+        }
+
+        @Nonnull
+        public byte[] getBuffer() {
+            return _buffer;
+        }
+
+        @Override
+        public void close() {
+            _deflater.end();
+        }
+    }
+
+    @NotThreadSafe
+    public static class Decompressor implements AutoCloseable {
+
+        private final Inflater _inflater = new Inflater(true);
+        private final byte[] _scratch = new byte[1];
+
+        public void decompress(@Nonnull byte[] compressed, @Nonnegative int offset, @Nonnegative int length, @Nonnull byte[] to, @Nonnegative int uncompressedLength) throws IOException {
+            _inflater.setInput(compressed, offset, length);
+            try {
+                int read = 0;
+                while (read < uncompressedLength) {
+                    final int inflated = _inflater.inflate(to, read, uncompressedLength - read);
+                    if (inflated == 0 && (_inflater.needsInput() || _inflater.needsDictionary() || _inflater.finished())) {
+                        throw new IOException("Received a compressed frame which contains less data than announced.");
+                    }
+                    read += inflated;
+                }
+                // Consume the marker of the sync flush which follows the data of every frame.
+                for (int i = 0; i < 8 && !_inflater.needsInput(); i++) {
+                    if (_inflater.inflate(_scratch) > 0) {
+                        throw new IOException("Received a compressed frame which contains more data than announced.");
+                    }
+                }
+                if (!_inflater.needsInput()) {
+                    throw new IOException("Received a compressed frame with unexpected trailing data.");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Received an illegal compressed frame.", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            _inflater.end();
+        }
+    }
+
+    private TcpCompression() {}
+
+}
@@ -0,0 +1,93 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.cache;
+
+import org.echocat.jomon.net.cluster.channel.Message;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeBatchCommand;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThan;
+
+public class RemoveBatchUnitTest {
+
+    @Test
+    public void testEncodeAndParse() throws Exception {
+        final RemoveBatch batch = new RemoveBatch();
+        batch.add("foo", "bar");
+        batch.add("foo", "\u00e4\u20ac");
+        batch.add("numbers", 1);
+        batch.add("numbers", -1);
+        batch.add("numbers", Integer.MIN_VALUE);
+        batch.add("longs", Long.MAX_VALUE);
+        batch.add("longs", Long.MIN_VALUE);
+        batch.add("booleans", true);
+        batch.add("booleans", false);
+        final Message message = batch.toMessage();
+        assertThat(message.getCommand(), is(removeBatchCommand));
+
+        final Map<String, List<Object>> cacheIdToKeys = RemoveBatch.parse(message.getData(), message.getOffset(), message.getLength());
+        assertThat(cacheIdToKeys.size(), is(4));
+        assertThat(cacheIdToKeys.get("foo"), is(Arrays.<Object>asList("bar", "\u00e4\u20ac")));
+        assertThat(cacheIdToKeys.get("numbers"), is(Arrays.<Object>asList(1, -1, Integer.MIN_VALUE)));
+        assertThat(cacheIdToKeys.get("longs"), is(Arrays.<Object>asList(Long.MAX_VALUE, Long.MIN_VALUE)));
+        assertThat(cacheIdToKeys.get("booleans"), is(Arrays.<Object>asList(true, false)));
+    }
+
+    @Test
+    public void testCacheIdIsOnlyWrittenOnce() throws Exception {
+        final RemoveBatch batch = new RemoveBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.add("aVeryLongCacheIdWhichShouldNotBeRepeated", i);
+        }
+        assertThat(batch.size(), is(100));
+        assertThat(batch.toMessage().getLength(), isLessThan(400));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseOfUnknownVersion() throws Exception {
+        final RemoveBatch batch = new RemoveBatch();
+        batch.add("foo", "bar");
+        final byte[] data = batch.toMessage().getData();
+        data[0] = RemoveBatch.VERSION + 1;
+        RemoveBatch.parse(data, 0, data.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseOfTruncatedData() throws Exception {
+        final RemoveBatch batch = new RemoveBatch();
+        batch.add("foo", "bar");
+        final byte[] data = batch.toMessage().getData();
+        RemoveBatch.parse(data, 0, data.length - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseOfTooLargeNumberOfCacheIds() throws Exception {
+        // version 1, numberOfCacheIds 2^31 - 1 but no further data.
+        final byte[] data = {RemoveBatch.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        RemoveBatch.parse(data, 0, data.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddOfUnsupportedKey() throws Exception {
+        new RemoveBatch().add("foo", new Object());
+    }
+
+}
@@ -15,22 +15,34 @@
 package org.echocat.jomon.net.cluster.cache;
 
 import org.echocat.jomon.cache.Cache;
+import org.echocat.jomon.cache.CacheEvent;
+import org.echocat.jomon.cache.CacheEventDispatcher;
 import org.echocat.jomon.cache.CacheListener;
 import org.echocat.jomon.cache.LruCache;
 import org.echocat.jomon.cache.Value;
 import org.echocat.jomon.cache.management.CacheRepository;
 import org.echocat.jomon.net.cluster.channel.HandlerEnabledClusterChannel;
 import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.Node;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.runtime.util.ValueProducer;
 import org.echocat.jomon.testing.environments.LogEnvironment;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jomon.net.cluster.cache.CacheListenerForClusterChannelSupport.CHARSET;
 import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.clearCommand;
+import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeBatchCommand;
 import static org.echocat.jomon.net.cluster.cache.CacheClusterChannelConstants.removeCommand;
 import static org.echocat.jomon.testing.Assert.assertThat;
 import static org.echocat.jomon.testing.BaseMatchers.is;
@@ -158,6 +170,44 @@ public class RemoveOverClusterListenerUnitTest extends ClusterListenerTestSuppor
         assertThat(numberOfAfterRemovedCalls.get(), is(2));
     }
 
+    @Test
+    public void testRemoveClearsTombstone() throws Exception {
+        final LruCache<String, String> cache = new LruCache<>(String.class, String.class);
+        cache.setId("foo");
+        cache.setNegativeMaximumLifetime(new Duration("1h"));
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final CacheRepository cacheRepository = cacheRepository();
+        doReturn(cache).when(cacheRepository).find("foo");
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository, clusterChannel);
+        cache.setListeners(Arrays.<CacheListener>asList(listener));
+        assertThat(cache.get("bar", new ValueProducer<String, String>() { @Override public String produce(String key) throws Exception {
+            return null;
+        }}), is((String) null));
+        assertThat(cache.getNegativeSize(), is(1L));
+        listener.getMessageHandler().handle(clusterChannel, message(removeCommand, "foo;bar"));
+        assertThat(cache.getNegativeSize(), is(0L));
+        verify(clusterChannel, wasInvokedTimes(0)).send(any(Message.class));
+    }
+
+    @Test
+    public void testAvoidEndlessLoopWithEventDispatcher() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final CacheRepository cacheRepository = cacheRepository();
+        doReturn(cache).when(cacheRepository).find("foo");
+        try (final CacheEventDispatcher dispatcher = new CacheEventDispatcher()) {
+            final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository, clusterChannel);
+            listener.setEventDispatcher(dispatcher);
+            cache.setListeners(Arrays.<CacheListener>asList(listener));
+            listener.getMessageHandler().handle(clusterChannel, message(removeCommand, "foo;bar"));
+            cache.remove("bar");
+            assertThat(dispatcher.awaitDelivery(5, SECONDS), is(true));
+            assertThat(dispatcher.getNumberOfQueuedEvents(), is(1L));
+            verify(clusterChannel, wasInvokedTimes(1)).send(any(Message.class));
+        }
+    }
+
     @Test
     public void testWithoutAvoidEndlessLoop() throws Exception {
         final AtomicInteger numberOfAfterRemovedCalls = new AtomicInteger();
@@ -182,6 +232,128 @@ public class RemoveOverClusterListenerUnitTest extends ClusterListenerTestSuppor
         assertThat(numberOfAfterRemovedCalls.get(), is(2));
     }
 
+    @Test
+    public void testHandleOfBatch() throws Exception {
+        // noinspection unchecked
+        final Cache<Object, ?> fooCache = mock(Cache.class);
+        doReturn(String.class).when(fooCache).getKeyType();
+        // noinspection unchecked
+        final Cache<Object, ?> barCache = mock(Cache.class);
+        doReturn(Long.class).when(barCache).getKeyType();
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final CacheRepository cacheRepository = cacheRepository();
+        doReturn(fooCache).when(cacheRepository).find("foo");
+        doReturn(barCache).when(cacheRepository).find("bar");
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository, clusterChannel);
+        final RemoveBatch batch = new RemoveBatch();
+        batch.add("foo", "a");
+        batch.add("bar", 1L);
+        batch.add("foo", "b");
+        batch.add("bar", "2");
+        listener.getMessageHandler().handle(clusterChannel, message(batch.toMessage()));
+        verify(cacheRepository, wasInvokedTimes(1)).find("foo");
+        verify(cacheRepository, wasInvokedTimes(1)).find("bar");
+        verify(cacheRepository, wasInvokedTimes(2)).find(anyString());
+        verify(fooCache, wasInvokedTimes(1)).remove("a");
+        verify(fooCache, wasInvokedTimes(1)).remove("b");
+        verify(barCache, wasInvokedTimes(1)).remove(1L);
+        verify(barCache, wasInvokedTimes(1)).remove(2L);
+        verify(clusterChannel, wasInvokedTimes(0)).send(any(Message.class));
+    }
+
+    @Test
+    public void testHandleOfBatchWithUnknownVersion() throws Exception {
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final CacheRepository cacheRepository = cacheRepository();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository, clusterChannel);
+        final RemoveBatch batch = new RemoveBatch();
+        batch.add("foo", "a");
+        final byte[] data = batch.toMessage().getData();
+        data[0] = RemoveBatch.VERSION + 1;
+        listener.getMessageHandler().handle(clusterChannel, new ReceivedMessage<Node<?>>(removeBatchCommand, data, node()));
+        verify(cacheRepository, wasInvokedTimes(0)).find(anyString());
+    }
+
+    @Test
+    public void testEventsAreSentAsOneBatch() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository(), clusterChannel);
+        listener.setProtocolVersion(RemoveBatch.VERSION);
+        listener.afterEvents(Arrays.asList(
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "a", null, null),
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "b", null, null),
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "c", null, null)
+        ));
+        assertThat(keysOf(sentMessagesOf(clusterChannel, 1).get(0)).get("foo"), is(Arrays.<Object>asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testBatchesAreLimitedByMaxBatchSize() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository(), clusterChannel);
+        listener.setProtocolVersion(RemoveBatch.VERSION);
+        listener.setMaxBatchSize(2);
+        listener.afterEvents(Arrays.asList(
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "a", null, null),
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "b", null, null),
+            new CacheEvent(CacheEvent.Type.afterRemove, cache, "c", null, null)
+        ));
+        final List<Message> messages = sentMessagesOf(clusterChannel, 2);
+        assertThat(keysOf(messages.get(0)).get("foo"), is(Arrays.<Object>asList("a", "b")));
+        assertThat(keysOf(messages.get(1)).get("foo"), is(Arrays.<Object>asList("c")));
+    }
+
+    @Test
+    public void testRemovesAreCollectedInBatchWindow() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository(), clusterChannel);
+        listener.setProtocolVersion(RemoveBatch.VERSION);
+        listener.setBatchWindow(new Duration("10s"));
+        cache.setListeners(Arrays.<CacheListener>asList(listener));
+        cache.remove("a");
+        cache.remove("b");
+        verify(clusterChannel, wasInvokedTimes(0)).send(any(Message.class));
+        listener.close();
+        assertThat(keysOf(sentMessagesOf(clusterChannel, 1).get(0)).get("foo"), is(Arrays.<Object>asList("a", "b")));
+    }
+
+    @Test
+    public void testRemovesAreSentAfterBatchWindow() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository(), clusterChannel);
+        try {
+            listener.setProtocolVersion(RemoveBatch.VERSION);
+            listener.setBatchWindow(new Duration("10ms"));
+            cache.setListeners(Arrays.<CacheListener>asList(listener));
+            cache.remove("a");
+            cache.remove("b");
+            verify(clusterChannel, timeout(5000)).send(any(Message.class));
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testLegacyProtocolVersionIsTheDefault() throws Exception {
+        final LruCache<String, ?> cache = new LruCache<>(String.class, Object.class);
+        cache.setId("foo");
+        final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
+        final RemoveOverClusterListener listener = new RemoveOverClusterListener(cacheRepository(), clusterChannel);
+        assertThat(listener.getProtocolVersion(), is(RemoveOverClusterListener.LEGACY_PROTOCOL_VERSION));
+        cache.setListeners(Arrays.<CacheListener>asList(listener));
+        cache.remove("bar");
+        verify(clusterChannel, wasInvokedTimes(1)).send(new Message(removeCommand, "foo;bar", CHARSET));
+        verify(clusterChannel, wasInvokedTimes(1)).send(any(Message.class));
+    }
+
     @Test
     public void testInitAndClose() throws Exception {
         final HandlerEnabledClusterChannel<?, ?> clusterChannel = clusterChannel();
@@ -195,5 +367,23 @@ public class RemoveOverClusterListenerUnitTest extends ClusterListenerTestSuppor
         verify(clusterChannel, wasInvokedTimes(1)).register(listener.getMessageHandler());
     }
 
+    @Nonnull
+    protected ReceivedMessage<Node<?>> message(@Nonnull Message message) {
+        return new ReceivedMessage<Node<?>>(message.getCommand(), message.getData(), message.getOffset(), message.getLength(), node());
+    }
+
+    @Nonnull
+    protected List<Message> sentMessagesOf(@Nonnull HandlerEnabledClusterChannel<?, ?> clusterChannel, int expectedNumberOfMessages) {
+        final ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+        verify(clusterChannel, wasInvokedTimes(expectedNumberOfMessages)).send(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Nonnull
+    protected Map<String, List<Object>> keysOf(@Nonnull Message message) {
+        assertThat(message.getCommand(), is(removeBatchCommand));
+        return RemoveBatch.parse(message.getData(), message.getOffset(), message.getLength());
+    }
+
 }
 
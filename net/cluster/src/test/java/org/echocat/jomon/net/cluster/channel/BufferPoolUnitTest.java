@@ -0,0 +1,102 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel;
+
+import org.junit.Test;
+
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isSameAs;
+import static org.mockito.Mockito.mock;
+
+public class BufferPoolUnitTest {
+
+    @Test
+    public void testReleasedBuffersAreReused() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final PooledBuffer buffer = pool.acquire(100);
+        assertThat(buffer.getCapacity(), is(BufferPool.MIN_CAPACITY));
+        assertThat(buffer.release(), is(true));
+        assertThat(pool.acquire(200), isSameAs(buffer));
+        assertThat(pool.getNumberOfAllocations(), is(1L));
+    }
+
+    @Test
+    public void testCapacitiesArePowersOfTwo() throws Exception {
+        final BufferPool pool = new BufferPool();
+        assertThat(pool.acquire(0).getCapacity(), is(256));
+        assertThat(pool.acquire(257).getCapacity(), is(512));
+        assertThat(pool.acquire(1024).getCapacity(), is(1024));
+        assertThat(pool.acquire(1025).getCapacity(), is(2048));
+    }
+
+    @Test
+    public void testRetainedBuffersAreNotReused() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final PooledBuffer buffer = pool.acquire(100);
+        buffer.retain();
+        assertThat(buffer.release(), is(false));
+        assertThat(pool.acquire(100) != buffer, is(true));
+        assertThat(buffer.release(), is(true));
+        assertThat(pool.acquire(100), isSameAs(buffer));
+    }
+
+    @Test
+    public void testLargeBuffersAreNotPooled() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 4);
+        final PooledBuffer buffer = pool.acquire(2000);
+        assertThat(buffer.getCapacity(), is(2000));
+        buffer.release();
+        assertThat(pool.acquire(2000) != buffer, is(true));
+        assertThat(pool.getNumberOfAllocations(), is(2L));
+    }
+
+    @Test
+    public void testNumberOfPooledBuffersIsLimited() throws Exception {
+        final BufferPool pool = new BufferPool(1024, 1);
+        final PooledBuffer first = pool.acquire(100);
+        final PooledBuffer second = pool.acquire(100);
+        first.release();
+        second.release();
+        assertThat(pool.acquire(100), isSameAs(first));
+        assertThat(pool.acquire(100) != second, is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseOfReleasedBuffer() throws Exception {
+        final PooledBuffer buffer = new BufferPool().acquire(100);
+        buffer.release();
+        buffer.release();
+    }
+
+    @Test
+    public void testCopyOfReceivedMessage() throws Exception {
+        final BufferPool pool = new BufferPool();
+        final PooledBuffer buffer = pool.acquire(3);
+        buffer.getData()[0] = 1;
+        buffer.getData()[1] = 2;
+        buffer.getData()[2] = 3;
+        final ReceivedMessage<Node<?>> message = new ReceivedMessage<Node<?>>((byte) 5, buffer, 3, mock(Node.class));
+        final ReceivedMessage<Node<?>> copy = message.copy();
+        assertThat(copy.isPooled(), is(false));
+        assertThat(copy, is(message));
+        assertThat(copy, is((Message) new Message((byte) 5, new byte[]{1, 2, 3})));
+        assertThat(message.getDataAsBuffer().remaining(), is(3));
+        buffer.release();
+        buffer.getData()[0] = 9;
+        assertThat(copy.getData()[0], is((byte) 1));
+    }
+
+}
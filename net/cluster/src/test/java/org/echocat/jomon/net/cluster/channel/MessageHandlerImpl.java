@@ -34,7 +34,7 @@ public class MessageHandlerImpl<ID, N extends Node<ID>, C extends ClusterChannel
     @Override
     public void handle(@Nonnull HandlerEnabledClusterChannel<?, ?> channel, @Nonnull ReceivedMessage<?> receivedMessage) {
         // noinspection unchecked
-        _messages.add((Pair<C, ReceivedMessage<N>>) new ImmutablePair(channel, receivedMessage));
+        _messages.add((Pair<C, ReceivedMessage<N>>) new ImmutablePair(channel, receivedMessage.copy()));
         _messagesReceivedCounter.record();
     }
 
@@ -0,0 +1,252 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.FreeTcpPortDetector;
+import org.echocat.jomon.net.cluster.channel.ClusterChannelTestSupport;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.StateCondition;
+import org.echocat.jomon.runtime.concurrent.StopWatch;
+import org.echocat.jomon.runtime.util.Duration;
+import org.echocat.jomon.testing.concurrent.ParallelTestRunner.Worker;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.net.InetAddress.getLoopbackAddress;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.echocat.jomon.net.cluster.channel.ClusterChannelUtils.formatNodesStatusOf;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.*;
+import static org.echocat.jomon.testing.CollectionMatchers.containsAllItemsOf;
+import static org.echocat.jomon.testing.CollectionMatchers.hasSize;
+import static org.echocat.jomon.testing.concurrent.ParallelTestRunner.run;
+
+public class NioTcpClusterChannelIntegrationTest extends ClusterChannelTestSupport<UUID, TcpNode, TcpClusterChannelSupport> {
+
+    private final Logger _logger = LoggerFactory.getLogger(NioTcpClusterChannel.class);
+    private final Set<UUID> _blockingChannels = new HashSet<>();
+    private final Set<UUID> _nonBlockingChannels = new HashSet<>();
+
+    public NioTcpClusterChannelIntegrationTest() {
+        super(TcpClusterChannelSupport.class);
+    }
+
+    @Test
+    public void test3Instances() throws Exception {
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2, U3);
+        try {
+            channels.get(0).send(message("message1"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(1), "message1", U1), message(channels.get(2), "message1", U1)));
+            resetMessageHandler();
+
+            channels.get(1).send(message("message2"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(0), "message2", U2), message(channels.get(2), "message2", U2)));
+
+            for (TcpClusterChannelSupport channel : channels) {
+                _logger.info("Nodes status of (" + channel + "):\n" + formatNodesStatusOf(channel));
+            }
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testInteroperabilityWithBlockingTransport() throws Exception {
+        _blockingChannels.add(U2);
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2, U3);
+        try {
+            assertThat(channels.get(1), isInstanceOf(TcpClusterChannel.class));
+
+            channels.get(0).send(message("message1"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(1), "message1", U1), message(channels.get(2), "message1", U1)));
+            resetMessageHandler();
+
+            channels.get(1).send(message("message2"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(0), "message2", U2), message(channels.get(2), "message2", U2)));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testInteroperabilityWithCompressingBlockingTransport() throws Exception {
+        _blockingChannels.add(U2);
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2);
+        try {
+            final TcpClusterChannel blocking = (TcpClusterChannel) channels.get(1);
+            blocking.setCompressionEnabled(true);
+            blocking.setCompressionThreshold(0);
+
+            blocking.send(message("message1"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(0), "message1", U2)));
+            resetMessageHandler();
+
+            channels.get(0).send(message("message2"));
+            waitFor(thatReceivedMessages(channels, message(channels.get(1), "message2", U1)));
+
+            assertThat(blocking.getNodes().iterator().next().getNumberOfCompressedOutboundMessages(), is(0L));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testNumberOfThreadsDoesNotDependOnClusterSize() throws Exception {
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2, U3, U4, U5, U6);
+        try {
+            for (TcpClusterChannelSupport channel : channels) {
+                assertThat(channel.getNodes(), hasSize(channels.size() - 1));
+                assertThat(numberOfThreadsOf(channel), is(((NioTcpClusterChannel) channel).getNumberOfEventLoops()));
+            }
+        } finally {
+            closeQuietly(channels);
+        }
+        for (TcpClusterChannelSupport channel : channels) {
+            assertThat(numberOfThreadsOf(channel), is(0));
+        }
+    }
+
+    @Test
+    public void test6InstancesConcurrent() throws Exception {
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2, U3, U4, U5, U6);
+        try {
+            final int numberOfWorkersPerChannel = 5;
+            final int numberOfMessagesPerWorker = 250;
+            final Set<String> messagesSend = Collections.synchronizedSet(new HashSet<String>());
+            final List<Worker> workers = createWorkersFor(numberOfWorkersPerChannel, numberOfMessagesPerWorker, messagesSend, channels, null);
+            final StopWatch stopWatch = new StopWatch();
+            run(workers);
+
+            assertThat(stopWatch.getCurrentDuration(), isLessThan(new Duration("2ms").multiplyBy(messagesSend.size())));
+            assertThat(messagesSend, hasSize(channels.size() * numberOfWorkersPerChannel * numberOfMessagesPerWorker));
+
+            waitFor(new StateCondition<TcpClusterChannelSupport>(new Duration("1ms").multiplyBy(numberOfMessagesPerWorker).multiplyBy(0.25)) {
+                @Override
+                public boolean check(@Nullable TcpClusterChannelSupport clusterChannel) throws Exception {
+                    assertThat(getNumberOfReceivedMessages(), is(messagesSend.size() * (channels.size() - 1)));
+                    final Map<String, AtomicInteger> messageToCount = getMessageToCount();
+                    for (String messageSend : messagesSend) {
+                        final AtomicInteger count = messageToCount.get(messageSend);
+                        assertThat(count, isNotNull());
+                        assertThat(count.get(), is(channels.size() - 1));
+                    }
+                    return true;
+                }
+            });
+
+            _logger.info("received: " + getNumberMessagesReceivedPerSecond() + " m/s");
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testOnlyNonBlockingSendFromEventLoop() throws Exception {
+        _nonBlockingChannels.add(U1);
+        final List<TcpClusterChannelSupport> channels = channels(U1, U2);
+        try (final NioTcpEventLoop eventLoop = new NioTcpEventLoop("test")) {
+            final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+            final CountDownLatch sent = new CountDownLatch(channels.size());
+            eventLoop.start();
+            for (final TcpClusterChannelSupport channel : channels) {
+                eventLoop.execute(new Runnable() { @Override public void run() {
+                    try {
+                        channel.send(message("message1"));
+                    } catch (Exception e) {
+                        failures.add(e);
+                    } finally {
+                        sent.countDown();
+                    }
+                }});
+            }
+            assertThat(sent.await(5, SECONDS), is(true));
+            waitFor(thatReceivedMessages(channels, message(channels.get(1), "message1", U1)));
+            assertThat(failures, hasSize(1));
+            assertThat(failures.get(0), isInstanceOf(IllegalStateException.class));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    protected int numberOfThreadsOf(@Nonnull TcpClusterChannelSupport channel) {
+        final String prefix = "NioTcp(" + channel.getService() + "/" + channel.getName() + ").";
+        int result = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix) && thread.isAlive()) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    protected StateCondition<TcpClusterChannelSupport> thatReceivedMessages(@Nonnull final List<TcpClusterChannelSupport> channels, @Nonnull final Pair<TcpClusterChannelSupport, ReceivedMessage<TcpNode>>... messages) {
+        return new StateCondition<TcpClusterChannelSupport>(new Duration(channels.size() * 1000)) { @Override public boolean check(@Nonnull TcpClusterChannelSupport clusterChannel) throws Exception {
+            assertThat(getReceivedMessages(), containsAllItemsOf(messages));
+            return true;
+        }};
+    }
+
+    @Override
+    @Nonnull
+    protected TcpClusterChannelSupport channel(@Nonnull UUID uuid) throws Exception {
+        final TcpClusterChannelSupport channel = _blockingChannels.contains(uuid) ? new TcpClusterChannel(uuid) : new NioTcpClusterChannel(uuid);
+        final int port = new FreeTcpPortDetector(getLoopbackAddress(), 10000, 50000).detect();
+        channel.setAddress(new InetSocketAddress(getLoopbackAddress(), port));
+        channel.register(getMessageHandler());
+        channel.register(getStateHandler());
+        channel.setName(uuid.getLeastSignificantBits() + "");
+        if (_nonBlockingChannels.contains(uuid)) {
+            channel.setBlocking(false);
+        }
+        return channel;
+    }
+
+    @Override
+    protected void afterAllChannelsCreated(@Nonnull List<TcpClusterChannelSupport> channels) throws Exception {
+        super.afterAllChannelsCreated(channels);
+        final Set<InetSocketAddress> remotes = new HashSet<>();
+        for (TcpClusterChannelSupport channel : channels) {
+            remotes.add(channel.getAddress());
+        }
+        for (TcpClusterChannelSupport channel : channels) {
+            channel.setRemoteAddresses(remotes);
+        }
+        for (TcpClusterChannelSupport channel : channels) {
+            channel.init();
+        }
+    }
+
+    @Nonnull
+    @Override
+    protected TcpNode createNode(@Nonnull final UUID uuid) {
+        return new TcpNodeSupport(uuid) {
+            @Nonnull
+            @Override
+            public InetSocketAddress getAddress() {
+                return new InetSocketAddress((int) uuid.getLeastSignificantBits());
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.cluster.channel.BufferPool;
+import org.echocat.jomon.net.cluster.channel.Message;
+import org.echocat.jomon.net.cluster.channel.ReceivedMessage;
+import org.echocat.jomon.net.cluster.channel.tcp.NioTcpConnection.Listener;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+
+import static org.echocat.jomon.net.cluster.channel.ClusterChannelConstants.pingCommand;
+import static java.net.InetAddress.getLoopbackAddress;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+
+public class NioTcpConnectionUnitTest {
+
+    protected static final Listener LISTENER = new Listener() {
+        @Override public void onEstablished(@Nonnull NioTcpConnection connection) {}
+        @Override public void read(@Nonnull ReceivedMessage<TcpNode> message) {}
+        @Override public void onClose(@Nonnull NioTcpConnection connection) {}
+    };
+
+    @Test
+    public void testOfferDoesNotWaitForAFullQueue() throws Exception {
+        try (final NioTcpEventLoop eventLoop = new NioTcpEventLoop("test"); final SocketChannel socketChannel = SocketChannel.open()) {
+            final NioTcpConnection connection = new NioTcpConnection(LISTENER, eventLoop, socketChannel, UUID.randomUUID(), null, 1, false, new BufferPool());
+            assertThat(connection.offer(NioTcpConnection.toFrame(new Message(pingCommand, new byte[0]))), is(1L));
+            assertThat(connection.offer(NioTcpConnection.toFrame(new Message(pingCommand, new byte[0]))), is(-1L));
+            assertThat(connection.getQueueSize(), is(1));
+        }
+    }
+
+    @Test
+    public void testFrameAboveTheMaximumSizeClosesTheConnection() throws Exception {
+        try (final NioTcpEventLoop eventLoop = new NioTcpEventLoop("test"); final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            eventLoop.start();
+            serverSocketChannel.bind(new InetSocketAddress(getLoopbackAddress(), 0));
+            try (final Socket socket = new Socket(getLoopbackAddress(), serverSocketChannel.socket().getLocalPort())) {
+                final SocketChannel socketChannel = serverSocketChannel.accept();
+                socketChannel.configureBlocking(false);
+                final NioTcpConnection connection = new NioTcpConnection(LISTENER, eventLoop, socketChannel, UUID.randomUUID(), null, 1, true, new BufferPool(), 1024);
+                connection.start();
+
+                final DataOutputStream os = new DataOutputStream(socket.getOutputStream());
+                os.write(NioTcpConnection.toUuidBuffer(UUID.randomUUID()).array());
+                os.write(pingCommand);
+                os.writeInt(Integer.MAX_VALUE - 2);
+                os.flush();
+
+                final InputStream is = socket.getInputStream();
+                socket.setSoTimeout(10000);
+                for (int i = 0; i < NioTcpConnection.UUID_LENGTH; i++) {
+                    assertThat(is.read() >= 0, is(true));
+                }
+                assertThat(is.read(), is(-1));
+                assertThat(connection.isClosed(), is(true));
+            }
+        }
+    }
+
+}
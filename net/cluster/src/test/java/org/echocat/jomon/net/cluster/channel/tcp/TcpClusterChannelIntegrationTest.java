@@ -50,6 +50,9 @@ public class TcpClusterChannelIntegrationTest extends ClusterChannelTestSupport<
 
     private final Logger _logger = LoggerFactory.getLogger(TcpClusterChannel.class);
 
+    private boolean _blocking = true;
+    private boolean _compressionEnabled;
+
     public TcpClusterChannelIntegrationTest() {
         super(TcpClusterChannel.class);
     }
@@ -132,6 +135,84 @@ public class TcpClusterChannelIntegrationTest extends ClusterChannelTestSupport<
         }
     }
 
+    @Test
+    public void testQueuedMessagesAreCoalesced() throws Exception {
+        _blocking = false;
+        final List<TcpClusterChannel> channels = channels(U1, U2);
+        try {
+            final TcpClusterChannel channel = channels.get(0);
+            channel.setBatchLinger(new Duration("20ms"));
+            final int numberOfMessages = 500;
+            for (int i = 0; i < numberOfMessages; i++) {
+                channel.send(message("message" + i));
+            }
+            waitFor(new StateCondition<TcpClusterChannel>(new Duration("5s")) { @Override public boolean check(@Nullable TcpClusterChannel clusterChannel) throws Exception {
+                assertThat(getNumberOfReceivedMessages(), is(numberOfMessages));
+                return true;
+            }});
+
+            final TcpNode node = channel.getNodes().iterator().next();
+            assertThat(node.getNumberOfOutboundBatches(), isLessThan((long) numberOfMessages));
+            assertThat(node.getAverageOutboundBatchSize(), isGreaterThan(1d));
+            assertThat(node.getAverageOutboundFlushDurationInMicroseconds(), isNotNull());
+            _logger.info("Nodes status of (" + channel + "):\n" + formatNodesStatusOf(channel));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testReceiveBuffersAreReused() throws Exception {
+        final List<TcpClusterChannel> channels = channels(U1, U2);
+        try {
+            final int numberOfMessages = 1000;
+            for (int i = 0; i < numberOfMessages; i++) {
+                channels.get(0).send(message("message" + i));
+            }
+            waitFor(new StateCondition<TcpClusterChannel>(new Duration("5s")) { @Override public boolean check(@Nullable TcpClusterChannel clusterChannel) throws Exception {
+                assertThat(getNumberOfReceivedMessages(), is(numberOfMessages));
+                return true;
+            }});
+            assertThat(channels.get(1).getReceiveBufferPool().getNumberOfAllocations(), isLessThan(10L));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
+    @Test
+    public void testLargeMessagesAreCompressed() throws Exception {
+        _compressionEnabled = true;
+        final List<TcpClusterChannel> channels = channels(U1, U2);
+        try {
+            final TcpClusterChannel channel = channels.get(0);
+            channel.setCompressionThreshold(100);
+            channel.send(message("small"));
+            waitFor(thatQueuesAreEmptyAndReceivedMessages(channels, message(channels.get(1), "small", U1)));
+            resetMessageHandler();
+
+            final List<Pair<TcpClusterChannel, ReceivedMessage<TcpNode>>> expected = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < 100; j++) {
+                    sb.append("report").append(i).append(".entry").append(j).append("=value").append(j % 7).append('\n');
+                }
+                channel.send(message(sb.toString()));
+                expected.add(message(channels.get(1), sb.toString(), U1));
+            }
+            // noinspection unchecked
+            waitFor(thatQueuesAreEmptyAndReceivedMessages(channels, expected.toArray(new Pair[expected.size()])));
+
+            final TcpNode node = channel.getNodes().iterator().next();
+            assertThat(node.getNumberOfCompressedOutboundMessages(), is(20L));
+            assertThat(node.getOutboundCompressionRatio(), isLessThan(0.5d));
+            assertThat(node.getAverageOutboundCompressionDurationInMicroseconds(), isNotNull());
+            assertThat(channels.get(1).getNodes().iterator().next().getAverageInboundDecompressionDurationInMicroseconds(), isNotNull());
+            _logger.info("Nodes status of (" + channel + "):\n" + formatNodesStatusOf(channel));
+        } finally {
+            closeQuietly(channels);
+        }
+    }
+
     @Nonnull
     protected StateCondition<TcpClusterChannel> thatQueuesAreEmptyAndReceivedMessages(@Nonnull final List<TcpClusterChannel> channels, @Nonnull final Pair<TcpClusterChannel, ReceivedMessage<TcpNode>>... messages) {
         return new StateCondition<TcpClusterChannel>(new Duration(channels.size() * 1000)) { @Override public boolean check(@Nonnull TcpClusterChannel clusterChannel) throws Exception {
@@ -148,6 +229,8 @@ public class TcpClusterChannelIntegrationTest extends ClusterChannelTestSupport<
         channel.register(getMessageHandler());
         channel.register(getStateHandler());
         channel.setName(uuid.getLeastSignificantBits() + "");
+        channel.setBlocking(_blocking);
+        channel.setCompressionEnabled(_compressionEnabled);
         return channel;
     }
 
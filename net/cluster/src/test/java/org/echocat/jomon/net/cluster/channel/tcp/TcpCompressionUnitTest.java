@@ -0,0 +1,97 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.net.cluster.channel.tcp;
+
+import org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.Compressor;
+import org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.Decompressor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static java.util.Arrays.copyOf;
+import static org.echocat.jomon.testing.Assert.assertThat;
+import static org.echocat.jomon.net.cluster.channel.tcp.TcpCompression.isPossibleUncompressedLength;
+import static org.echocat.jomon.testing.BaseMatchers.is;
+import static org.echocat.jomon.testing.BaseMatchers.isLessThan;
+
+public class TcpCompressionUnitTest {
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testStreamOfMessages() throws Exception {
+        try (final Compressor compressor = new Compressor(); final Decompressor decompressor = new Decompressor()) {
+            int previousCompressedLength = Integer.MAX_VALUE;
+            for (int i = 0; i < 10; i++) {
+                final byte[] data = ("{\"name\": \"config\", \"version\": " + i + ", \"enabled\": true, \"entries\": [1, 2, 3]}").getBytes(UTF_8);
+                final int compressedLength = compressor.compress(data, 0, data.length);
+                final byte[] decompressed = new byte[data.length];
+                decompressor.decompress(compressor.getBuffer(), 0, compressedLength, decompressed, data.length);
+                assertThat(decompressed, is(data));
+                if (i == 1) {
+                    // The second message could reference the first one.
+                    assertThat(compressedLength, isLessThan(previousCompressedLength / 2));
+                }
+                previousCompressedLength = compressedLength;
+            }
+        }
+    }
+
+    @Test
+    public void testIncompressibleData() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(666).nextBytes(data);
+        try (final Compressor compressor = new Compressor(); final Decompressor decompressor = new Decompressor()) {
+            final int compressedLength = compressor.compress(data, 0, data.length);
+            final byte[] decompressed = new byte[data.length];
+            decompressor.decompress(compressor.getBuffer(), 0, compressedLength, decompressed, data.length);
+            assertThat(decompressed, is(data));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedData() throws Exception {
+        final byte[] data = "foo, bar, foo, bar, foo, bar, foo, bar".getBytes(UTF_8);
+        try (final Compressor compressor = new Compressor(); final Decompressor decompressor = new Decompressor()) {
+            final int compressedLength = compressor.compress(data, 0, data.length);
+            final byte[] truncated = copyOf(compressor.getBuffer(), compressedLength / 2);
+            decompressor.decompress(truncated, 0, truncated.length, new byte[data.length], data.length);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testAnnouncedLengthTooSmall() throws Exception {
+        final byte[] data = "foo, bar, foo, bar, foo, bar, foo, bar".getBytes(UTF_8);
+        try (final Compressor compressor = new Compressor(); final Decompressor decompressor = new Decompressor()) {
+            final int compressedLength = compressor.compress(data, 0, data.length);
+            decompressor.decompress(compressor.getBuffer(), 0, compressedLength, new byte[data.length], data.length - 1);
+        }
+    }
+
+    @Test
+    public void testPossibleUncompressedLength() throws Exception {
+        final byte[] data = new byte[1024 * 1024];
+        try (final Compressor compressor = new Compressor()) {
+            final int compressedLength = compressor.compress(data, 0, data.length);
+            assertThat(isPossibleUncompressedLength(compressedLength, data.length), is(true));
+        }
+        assertThat(isPossibleUncompressedLength(5, 0), is(true));
+        assertThat(isPossibleUncompressedLength(5, -1), is(false));
+        assertThat(isPossibleUncompressedLength(5, Integer.MAX_VALUE), is(false));
+    }
+
+}
@@ -0,0 +1,136 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.runtime.math;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A lock free histogram of durations in nanoseconds with a log linear bucket layout like HdrHistogram: Every power of
+ * two is divided in {@value #SUB_BUCKETS} linear sub buckets, so every recorded value is kept with a relative error of
+ * at most about 3%. The memory footprint is fixed and does not depend on the number of recorded values.</p>
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_OF_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final StripedCounter _count = new StripedCounter();
+    private final StripedCounter _sum = new StripedCounter();
+    private final AtomicLong _maximum = new AtomicLong();
+
+    public void record(long valueInNanos) {
+        final long value = valueInNanos > 0 ? valueInNanos : 0;
+        _buckets.incrementAndGet(indexOf(value));
+        _count.increment();
+        _sum.add(value);
+        long maximum = _maximum.get();
+        while (value > maximum && !_maximum.compareAndSet(maximum, value)) {
+            maximum = _maximum.get();
+        }
+    }
+
+    @Nonnegative
+    public long getCount() {
+        return _count.get();
+    }
+
+    @Nonnegative
+    public long getMaximum() {
+        return _maximum.get();
+    }
+
+    @Nonnegative
+    public long getMean() {
+        final long count = _count.get();
+        return count > 0 ? _sum.get() / count : 0;
+    }
+
+    /**
+     * @param percentile between <code>0</code> and <code>100</code>.
+     * @return the highest value of the bucket the given percentile falls into or <code>0</code> if nothing was recorded.
+     */
+    @Nonnegative
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 100 but was " + percentile + ".");
+        }
+        long total = 0;
+        final long[] counts = new long[NUMBER_OF_BUCKETS];
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            counts[i] = _buckets.get(i);
+            total += counts[i];
+        }
+        long result = 0;
+        if (total > 0) {
+            final long target = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+            long seen = 0;
+            for (int i = 0; i < NUMBER_OF_BUCKETS && seen < target; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    result = Math.min(highestValueOf(i), _maximum.get());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets everything to <code>0</code>. Values which are recorded concurrently could be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            _buckets.set(i, 0);
+        }
+        _count.reset();
+        _sum.reset();
+        _maximum.set(0);
+    }
+
+    protected static int indexOf(@Nonnegative long value) {
+        final int result;
+        if (value < SUB_BUCKETS) {
+            result = (int) value;
+        } else {
+            final int exponent = 63 - Long.numberOfLeadingZeros(value);
+            final int shift = exponent - SUB_BUCKET_BITS;
+            result = SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+        return result;
+    }
+
+    protected static long highestValueOf(@Nonnegative int index) {
+        final long result;
+        if (index < SUB_BUCKETS) {
+            result = index;
+        } else {
+            final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+            final long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+            result = ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + getCount() + ", mean: " + getMean() + "ns, 99%: " + getValueAtPercentile(99) + "ns, max: " + getMaximum() + "ns";
+    }
+
+}
@@ -0,0 +1,130 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.runtime.math;
+
+import org.echocat.jomon.runtime.util.Duration;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * <p>Counts events and how many of them were positive (like hits of a cache) over the last {@link #getMeasurePeriod()
+ * measure period}. In contrast to {@link OverPeriodCounter} this does not lock: Every slot of the period is reset by the
+ * first update that sees it is outdated, concurrent updates of this moment could get lost.</p>
+ */
+@ThreadSafe
+public class OverPeriodRatio {
+
+    private final long _measurePeriod;
+    private final long _resolution;
+    private final int _numberOfSlots;
+
+    private final AtomicLongArray _slotTimes;
+    private final AtomicLongArray _events;
+    private final AtomicLongArray _positives;
+
+    public OverPeriodRatio(@Nonnull Duration measurePeriod, @Nonnull Duration resolution) {
+        if (measurePeriod.isLessThan(resolution)) {
+            throw new IllegalArgumentException("The given measure period have to be larger or equal than the resolution.");
+        }
+        _resolution = resolution.toMilliSeconds();
+        _numberOfSlots = (int) (measurePeriod.toMilliSeconds() / _resolution);
+        if (_numberOfSlots > OverPeriodCounter.MAX_NUMBER_OF_MEASURE_POINTS) {
+            throw new IllegalArgumentException("The difference between measurePeriod and resolution is to high. Do not reach measurePeriod/resolution > " + OverPeriodCounter.MAX_NUMBER_OF_MEASURE_POINTS + ".");
+        }
+        _measurePeriod = _numberOfSlots * _resolution;
+        _slotTimes = new AtomicLongArray(_numberOfSlots);
+        _events = new AtomicLongArray(_numberOfSlots);
+        _positives = new AtomicLongArray(_numberOfSlots);
+    }
+
+    public void record(boolean positive) {
+        final long slotTime = currentTimeMillis() / _resolution;
+        final int i = (int) (slotTime % _numberOfSlots);
+        final long oldSlotTime = _slotTimes.get(i);
+        if (oldSlotTime != slotTime && _slotTimes.compareAndSet(i, oldSlotTime, slotTime)) {
+            _events.set(i, 0);
+            _positives.set(i, 0);
+        }
+        _events.incrementAndGet(i);
+        if (positive) {
+            _positives.incrementAndGet(i);
+        }
+    }
+
+    @Nonnegative
+    public long getNumberOfEvents() {
+        return sumOf(_events);
+    }
+
+    @Nonnegative
+    public long getNumberOfPositives() {
+        return sumOf(_positives);
+    }
+
+    /**
+     * @return <code>null</code> if there was no event in the measure period.
+     */
+    @Nullable
+    public Double getRatio() {
+        final long events = getNumberOfEvents();
+        return events > 0 ? (double) getNumberOfPositives() / (double) events : null;
+    }
+
+    @Nonnegative
+    public double getEventsPerSecond() {
+        return getNumberOfEvents() * 1000d / _measurePeriod;
+    }
+
+    @Nonnull
+    public Duration getMeasurePeriod() {
+        return new Duration(_measurePeriod);
+    }
+
+    @Nonnull
+    public Duration getResolution() {
+        return new Duration(_resolution);
+    }
+
+    public void reset() {
+        for (int i = 0; i < _numberOfSlots; i++) {
+            _slotTimes.set(i, 0);
+            _events.set(i, 0);
+            _positives.set(i, 0);
+        }
+    }
+
+    protected long sumOf(@Nonnull AtomicLongArray values) {
+        final long oldestSlotTime = currentTimeMillis() / _resolution - _numberOfSlots;
+        long result = 0;
+        for (int i = 0; i < _numberOfSlots; i++) {
+            if (_slotTimes.get(i) > oldestSlotTime) {
+                result += values.get(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getRatio() + "/" + getMeasurePeriod();
+    }
+
+}
@@ -0,0 +1,165 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.runtime.math;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * <p>A counter which spreads its updates over several cells to avoid that concurrent threads are contending for the
+ * same cache line. Reading the {@link #get() value} sums all cells and is therefore more expensive than an update.</p>
+ *
+ * <p>An uncontended counter only uses a single value. The cells are created when two threads collide on it and their
+ * number is doubled with every further collision until there are two cells per processor. So counters which are
+ * rarely updated concurrently do not pay for padded cells of all processors.</p>
+ *
+ * <p>This is a replacement for <code>java.util.concurrent.atomic.LongAdder</code> which is not available in Java 7.</p>
+ */
+@ThreadSafe
+public class StripedCounter {
+
+    // 8 longs are 64 bytes, so every cell lives in its own cache line.
+    private static final int PADDING_SHIFT = 3;
+    private static final int MAXIMUM_STRIPES = maximumStripes();
+
+    private final AtomicLong _base = new AtomicLong();
+    private final AtomicReference<Cells> _cells = new AtomicReference<>();
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        final Cells cells = _cells.get();
+        if (cells == null) {
+            final long value = _base.get();
+            if (!_base.compareAndSet(value, value + delta)) {
+                grow(null);
+                _base.getAndAdd(delta);
+            }
+        } else if (!cells.tryAdd(delta)) {
+            grow(cells);
+            cells.add(delta);
+        }
+    }
+
+    public long get() {
+        final Cells cells = _cells.get();
+        return _base.get() + (cells != null ? cells.sum() : 0);
+    }
+
+    /**
+     * Sets all cells to <code>0</code>. Updates which are running concurrently could be lost.
+     */
+    public void reset() {
+        _base.set(0);
+        final Cells cells = _cells.get();
+        if (cells != null) {
+            cells.reset();
+        }
+    }
+
+    /**
+     * @return the number of cells the updates are currently spread over.
+     */
+    @Nonnegative
+    public int getNumberOfStripes() {
+        final Cells cells = _cells.get();
+        return cells != null ? cells.getNumberOfStripes() : 1;
+    }
+
+    protected void grow(@Nullable Cells current) {
+        final int stripes = current != null ? current.getNumberOfStripes() << 1 : 2;
+        if (stripes <= MAXIMUM_STRIPES) {
+            // If this fails another thread has already grown the cells.
+            _cells.compareAndSet(current, new Cells(stripes, current));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    private static int maximumStripes() {
+        int result = 2;
+        while (result < Runtime.getRuntime().availableProcessors() * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * The cells of one size. Smaller cells which were replaced by these are still referenced, so updates which were
+     * made on them while growing are not lost.
+     */
+    protected static class Cells {
+
+        private final int _mask;
+        private final AtomicLongArray _values;
+        private final Cells _previous;
+
+        protected Cells(@Nonnegative int stripes, @Nullable Cells previous) {
+            _mask = stripes - 1;
+            _values = new AtomicLongArray(stripes << PADDING_SHIFT);
+            _previous = previous;
+        }
+
+        protected boolean tryAdd(long delta) {
+            final int index = indexOfCurrentThread();
+            final long value = _values.get(index);
+            return _values.compareAndSet(index, value, value + delta);
+        }
+
+        protected void add(long delta) {
+            _values.getAndAdd(indexOfCurrentThread(), delta);
+        }
+
+        protected long sum() {
+            long result = _previous != null ? _previous.sum() : 0;
+            for (int i = 0; i <= _mask; i++) {
+                result += _values.get(i << PADDING_SHIFT);
+            }
+            return result;
+        }
+
+        protected void reset() {
+            if (_previous != null) {
+                _previous.reset();
+            }
+            for (int i = 0; i <= _mask; i++) {
+                _values.set(i << PADDING_SHIFT, 0);
+            }
+        }
+
+        @Nonnegative
+        protected int getNumberOfStripes() {
+            return _mask + 1;
+        }
+
+        protected int indexOfCurrentThread() {
+            final long id = currentThread().getId();
+            final int hash = (int) (id ^ (id >>> 16)) * 0x9E3779B9;
+            return ((hash >>> 16) & _mask) << PADDING_SHIFT;
+        }
+    }
+
+}
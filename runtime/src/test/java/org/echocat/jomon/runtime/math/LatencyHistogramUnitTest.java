@@ -0,0 +1,93 @@
+/*****************************************************************************************
+ * *** BEGIN LICENSE BLOCK *****
+ *
+ * Version: MPL 2.0
+ *
+ * echocat Jomon, Copyright (c) 2012 echocat
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ *
+ * *** END LICENSE BLOCK *****
+ ****************************************************************************************/
+
+package org.echocat.jomon.runtime.math;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramUnitTest {
+
+    @Test
+    public void testBucketBoundaries() throws Exception {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE / 3}) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long highest = LatencyHistogram.highestValueOf(index);
+            assertThat(value + " <= " + highest, value <= highest, is(true));
+            assertThat(value + " within 1/32 of " + highest, highest - value <= value / LatencyHistogram.SUB_BUCKETS, is(true));
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getMaximum(), is(1000000L));
+        assertThat(histogram.getMean(), is(500500L));
+        assertThat(isAbout(histogram.getValueAtPercentile(50), 500000L), is(true));
+        assertThat(isAbout(histogram.getValueAtPercentile(99), 990000L), is(true));
+        assertThat(histogram.getValueAtPercentile(100), is(1000000L));
+
+        histogram.reset();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+    }
+
+    @Test
+    public void testStripedCounter() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() { @Override public void run() {
+                for (int j = 0; j < 10000; j++) {
+                    counter.increment();
+                }
+            }};
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(counter.get(), is(40000L));
+    }
+
+    @Test
+    public void testStripedCounterGrowsOnlyOnContention() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        counter.add(5);
+        counter.increment();
+        assertThat(counter.getNumberOfStripes(), is(1));
+
+        counter.grow(null);
+        counter.add(2);
+        assertThat(counter.getNumberOfStripes(), is(2));
+        assertThat(counter.get(), is(8L));
+
+        counter.add(3);
+        assertThat(counter.get(), is(11L));
+
+        counter.reset();
+        assertThat(counter.get(), is(0L));
+    }
+
+    protected static boolean isAbout(long value, long expected) {
+        return Math.abs(value - expected) <= expected / LatencyHistogram.SUB_BUCKETS;
+    }
+
+}